@@ -29,10 +29,12 @@ import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ToJitVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITProgram;
+import org.dbsp.sqlCompiler.compiler.backend.rust.BenchmarkGenerator;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
 import org.dbsp.sqlCompiler.compiler.backend.*;
+import org.dbsp.util.IndentStream;
 
 import javax.annotation.Nullable;
 import java.io.*;
@@ -57,7 +59,9 @@ public class CompilerMain {
         commander.setProgramName("sql-to-dbsp");
         try {
             commander.parse(argv);
+            this.options.benchmarkOptions.validate();
         } catch (ParameterException ex) {
+            System.err.println(ex.getMessage());
             commander.usage();
             System.exit(1);
         }
@@ -128,12 +132,24 @@ public class CompilerMain {
         try {
             PrintStream stream = this.getOutputStream();
             if (this.options.ioOptions.emitJson) {
-                JITProgram program = ToJitVisitor.circuitToJIT(dbsp);
+                JITProgram program = ToJitVisitor.circuitToJIT(dbsp, this.options.jitOptions);
                 String output = program.asJson().toPrettyString();
                 stream.println(output);
+            } else if (this.options.ioOptions.emitBinaryJson) {
+                JITProgram program = ToJitVisitor.circuitToJIT(dbsp, this.options.jitOptions);
+                program.writeBinary(stream);
+            } else if (this.options.benchmarkOptions.emitBenchmark) {
+                // The benchmark drives the circuit directly, without handles
+                RustFileWriter writer = new RustFileWriter(stream);
+                writer.instrument(this.options.ioOptions.instrument);
+                writer.add(dbsp);
+                writer.write();
+                IndentStream builder = new IndentStream(stream);
+                new BenchmarkGenerator(builder, this.options.benchmarkOptions).generate(dbsp);
             } else {
                 RustFileWriter writer = new RustFileWriter(stream);
                 writer.emitCodeWithHandle(true);
+                writer.instrument(this.options.ioOptions.instrument);
                 writer.add(dbsp);
                 writer.write();
             }
@@ -24,11 +24,14 @@
 package org.dbsp.sqlCompiler.compiler;
 
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.ParametersDelegate;
 import org.apache.calcite.config.Lex;
 import org.dbsp.util.SqlLexicalRulesConverter;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Packages options for a compiler from SQL to Rust.
@@ -66,6 +69,8 @@ public class CompilerOptions {
         public String outputFile = null;
         @Parameter(names = "-j", description = "Emit JSON instead of Rust")
         public boolean emitJson = false;
+        @Parameter(names = "-jb", description = "Emit the JIT program in binary (CBOR) format instead of Rust")
+        public boolean emitBinaryJson = false;
         @Parameter(names = "-jpg", description = "Emit a jpg image of the circuit instead of Rust")
         public boolean emitJpeg = false;
         @Parameter(names = "-je", description = "Emit error messages as a JSON array to stderr")
@@ -81,16 +86,109 @@ public class CompilerOptions {
         @Parameter(names = "-d", description = "SQL syntax dialect used",
                    converter = SqlLexicalRulesConverter.class)
         public Lex lexicalRules;
+        @Parameter(names = "-instrument", description = "Generate Rust code which collects runtime metrics for each operator")
+        public boolean instrument = false;
 
         IO() {
             this.lexicalRules = Lex.ORACLE;
         }
     }
 
+    /**
+     * Options for the generation of JIT programs.
+     */
+    @SuppressWarnings("CanBeFinal")
+    public static class Jit {
+        /**
+         * If true the functions of the program are optimized.
+         */
+        public boolean optimize = true;
+        @Parameter(names = "-jv", description = "Experimental: invoke JIT map and filter functions on batches of rows")
+        public boolean batch = false;
+        @Parameter(names = "-ja", description = "Describe standard JIT aggregates with descriptors instead of fold functions")
+        public boolean describeAggregates = false;
+    }
+
+    /**
+     * Options for the generated benchmark driver.
+     */
+    @SuppressWarnings("CanBeFinal")
+    public static class Benchmark {
+        @Parameter(names = "-bench", description = "Emit a Rust benchmark main which feeds the circuit with synthetic data")
+        public boolean emitBenchmark = false;
+        @Parameter(names = "-benchSteps", description = "Number of circuit steps executed by the benchmark")
+        public int steps = 100;
+        @Parameter(names = "-benchBatch", description = "Number of rows inserted in each input table at each step")
+        public int batchSize = 1000;
+        @Parameter(names = "-benchCardinality", description = "Number of distinct values generated for each column")
+        public long cardinality = 1000;
+        @Parameter(names = "-benchTableCardinality", description = "Cardinality for the columns of one table, as TABLE=N")
+        public List<String> tableCardinality = new ArrayList<>();
+        @Parameter(names = "-benchSkew", description = "Skew of the generated values; 0 is uniform")
+        public double skew = 0.0;
+        @Parameter(names = "-benchNulls", description = "Fraction of NULL values generated for nullable columns")
+        public double nullRatio = 0.1;
+        @Parameter(names = "-benchSeed", description = "Seed of the random number generator")
+        public long seed = 1;
+
+        /**
+         * The number of distinct values generated for the columns of the specified table.
+         */
+        public long getCardinality(String table) {
+            for (String spec: this.tableCardinality) {
+                String[] parts = spec.split("=");
+                if (parts.length != 2)
+                    throw new ParameterException("Expected TABLE=N, got " + spec);
+                if (parts[0].equalsIgnoreCase(table))
+                    return checkCardinality(spec, parts[1]);
+            }
+            return this.cardinality;
+        }
+
+        static long checkCardinality(String option, String value) {
+            long result;
+            try {
+                result = Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+                throw new ParameterException("Expected a number for " + option + ", got " + value);
+            }
+            // The generated code computes cardinality - 1 on unsigned values
+            if (result < 1)
+                throw new ParameterException(option + " must be at least 1, got " + value);
+            return result;
+        }
+
+        /**
+         * Check that the options describe a benchmark which can be generated.
+         * @throws ParameterException if some option is out of range.
+         */
+        public void validate() {
+            checkCardinality("-benchCardinality", Long.toString(this.cardinality));
+            for (String spec: this.tableCardinality) {
+                String[] parts = spec.split("=");
+                if (parts.length != 2)
+                    throw new ParameterException("Expected TABLE=N, got " + spec);
+                checkCardinality(spec, parts[1]);
+            }
+            if (this.steps < 1)
+                throw new ParameterException("-benchSteps must be at least 1, got " + this.steps);
+            if (this.batchSize < 0)
+                throw new ParameterException("-benchBatch must not be negative, got " + this.batchSize);
+            if (this.skew < 0)
+                throw new ParameterException("-benchSkew must not be negative, got " + this.skew);
+            if (this.nullRatio < 0 || this.nullRatio > 1)
+                throw new ParameterException("-benchNulls must be between 0 and 1, got " + this.nullRatio);
+        }
+    }
+
     @Parameter(names = {"-h", "--help", "-"}, help=true, description = "Show this message and exit")
     public boolean help;
     @ParametersDelegate
     public IO ioOptions = new IO();
     @ParametersDelegate
     public Optimizer optimizerOptions = new Optimizer();
+    @ParametersDelegate
+    public Jit jitOptions = new Jit();
+    @ParametersDelegate
+    public Benchmark benchmarkOptions = new Benchmark();
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustVisitor;
+import org.dbsp.sqlCompiler.compiler.backend.visitors.CircuitDelegateVisitor;
+import org.dbsp.sqlCompiler.ir.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.InnerVisitor;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the parts of the compiler and of the runtime library that a circuit depends on:
+ * the classes of all the operators and inner nodes, and the names of all the functions
+ * called by the generated Rust code.  Most library calls, e.g., for arithmetic
+ * and casts, are only chosen when the code is generated, so the functions are
+ * found in the generated code.  This over-approximates the set of runtime library
+ * functions, since it also includes other functions and methods.
+ * A class is recorded together with its superclasses, and nested classes are recorded
+ * as the top-level class that contains them, so that the classes can be matched
+ * against the source files that define them.
+ */
+public class CircuitFootprint extends InnerVisitor {
+    /**
+     * Simple names of the classes of all IR nodes.
+     */
+    public final Set<String> classes;
+    /**
+     * Names of the functions called by the generated code.
+     */
+    public final Set<String> functions;
+    /**
+     * An identifier followed by arguments or by generic arguments.
+     */
+    public static final Pattern CALL = Pattern.compile("\\b([A-Za-z_]\\w*)\\s*(\\(|::<)");
+
+    public CircuitFootprint() {
+        super(true);
+        this.classes = new TreeSet<>();
+        this.functions = new TreeSet<>();
+    }
+
+    static void addClass(Set<String> classes, Class<?> clazz) {
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            Class<?> topLevel = c;
+            while (topLevel.getEnclosingClass() != null)
+                topLevel = topLevel.getEnclosingClass();
+            classes.add(topLevel.getSimpleName());
+        }
+    }
+
+    @Override
+    public boolean preorder(IDBSPInnerNode node) {
+        addClass(this.classes, node.getClass());
+        return true;
+    }
+
+    static class OuterCircuitFootprint extends CircuitDelegateVisitor {
+        final Set<String> classes;
+
+        OuterCircuitFootprint(CircuitFootprint visitor) {
+            super(visitor);
+            this.classes = visitor.classes;
+        }
+
+        @Override
+        public boolean preorder(DBSPOperator operator) {
+            addClass(this.classes, operator.getClass());
+            return true;
+        }
+    }
+
+    @Override
+    public CircuitVisitor getCircuitVisitor() {
+        return new OuterCircuitFootprint(this);
+    }
+
+    /**
+     * Compute the footprint of a circuit.
+     * The footprint is computed on the circuit produced by the passes of
+     * {@link RustFileWriter}, which is the one that is translated to code.
+     */
+    public static CircuitFootprint compute(DBSPCircuit circuit) {
+        circuit = RustFileWriter.prepare(circuit);
+        CircuitFootprint footprint = new CircuitFootprint();
+        footprint.getCircuitVisitor().apply(circuit);
+        Matcher matcher = CALL.matcher(ToRustVisitor.toRustString(circuit));
+        while (matcher.find())
+            footprint.functions.add(matcher.group(1));
+        return footprint;
+    }
+}
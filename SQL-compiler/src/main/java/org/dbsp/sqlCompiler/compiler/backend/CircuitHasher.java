@@ -0,0 +1,178 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
+import org.dbsp.sqlCompiler.circuit.IDBSPDeclaration;
+import org.dbsp.sqlCompiler.circuit.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.circuit.operator.*;
+import org.dbsp.sqlCompiler.compiler.backend.rust.LowerCircuitVisitor;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
+import org.dbsp.sqlCompiler.ir.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.util.NameGen;
+import org.dbsp.util.Utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a canonical hash of a circuit.
+ * The hash covers the types, closures, and the shape of the operator graph.
+ * Names of internal streams are generated by the compiler and depend on the
+ * order in which circuits were compiled, so they are replaced by the position
+ * of the operator in the circuit.  Inputs and outputs keep their names,
+ * since they are part of the circuit interface.  Other generated names
+ * appearing in the code, e.g., of aggregation variables, are replaced by
+ * their order of appearance.
+ * Two circuits with the same hash generate the same code up to generated names.
+ */
+public class CircuitHasher extends CircuitVisitor {
+    private final MessageDigest digest;
+    /**
+     * Canonical name assigned to each operator visited so far.
+     */
+    private final Map<DBSPOperator, String> canonicalName;
+    /**
+     * Canonical name assigned to each generated identifier seen so far.
+     */
+    private final Map<String, String> canonicalIdentifier;
+    static final Pattern IDENTIFIER = Pattern.compile("\\b([A-Za-z_]+?)(\\d+)\\b");
+
+    public CircuitHasher() {
+        super(true);
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+        this.canonicalName = new HashMap<>();
+        this.canonicalIdentifier = new HashMap<>();
+    }
+
+    void add(String data) {
+        this.digest.update(data.getBytes(StandardCharsets.UTF_8));
+        // Separator, so that concatenations of different strings cannot collide.
+        this.digest.update((byte)0);
+    }
+
+    void add(IDBSPInnerNode node) {
+        this.add(this.canonicalize(ToRustInnerVisitor.toRustString(node)));
+    }
+
+    /**
+     * Replace the identifiers produced by a NameGen in some code.
+     */
+    String canonicalize(String code) {
+        Matcher matcher = IDENTIFIER.matcher(code);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String replacement = matcher.group();
+            if (NameGen.isPrefix(matcher.group(1)))
+                // '$' cannot appear in Rust identifiers
+                replacement = this.canonicalIdentifier.computeIfAbsent(
+                        matcher.group(), k -> "$" + this.canonicalIdentifier.size());
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    void addOperator(DBSPOperator operator, String name) {
+        this.add(operator.getClass().getSimpleName());
+        this.add(operator.operation);
+        this.add(operator.outputType);
+        if (operator.function != null) {
+            DBSPExpression function = this.getCircuit().circuit.resolve(operator.function);
+            this.add(function);
+        }
+        this.add(Integer.toString(operator.inputs.size()));
+        for (DBSPOperator input: operator.inputs)
+            this.add(Utilities.getExists(this.canonicalName, input));
+        Utilities.putNew(this.canonicalName, operator, name);
+    }
+
+    @Override
+    public boolean preorder(DBSPPartialCircuit circuit) {
+        this.add(Integer.toString(circuit.getInputCount()));
+        this.add(Integer.toString(circuit.getOutputCount()));
+        return true;
+    }
+
+    @Override
+    public boolean preorder(IDBSPDeclaration declaration) {
+        // Declarations are inlined in the operators that use them by resolve().
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPSourceOperator operator) {
+        this.addOperator(operator, operator.outputName);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPSinkOperator operator) {
+        this.addOperator(operator, operator.outputName);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPWindowAggregateOperator operator) {
+        this.add(operator.window);
+        return this.preorder((DBSPOperator) operator);
+    }
+
+    @Override
+    public boolean preorder(DBSPOperator operator) {
+        this.addOperator(operator, "s" + this.canonicalName.size());
+        return false;
+    }
+
+    /**
+     * The hash of the digested data as a hex string.
+     */
+    public String getHash() {
+        return Utilities.toHex(this.digest.digest());
+    }
+
+    /**
+     * Compute the canonical hash of a circuit.
+     * The hash is computed on the lowered circuit, which is the one
+     * that is translated to code.
+     */
+    public static String hash(DBSPCircuit circuit) {
+        LowerCircuitVisitor lower = new LowerCircuitVisitor();
+        circuit = lower.apply(circuit);
+        CircuitHasher hasher = new CircuitHasher();
+        hasher.apply(circuit);
+        return hasher.getHash();
+    }
+}
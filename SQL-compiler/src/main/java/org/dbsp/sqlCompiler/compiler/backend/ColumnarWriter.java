@@ -0,0 +1,268 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend;
+
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.primitive.*;
+import org.dbsp.util.UnsupportedException;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Serializes ZSet literals to a binary columnar format, which is read
+ * by the 'read_columns' function from the Rust 'readers' crate.
+ * All numbers are little-endian.  The file contains:
+ * - the magic string "DBSPCOL1"
+ * - the number of columns (u32) and rows (u64)
+ * - for each column the type code (u8) and a nullable flag (u8)
+ * - the weight of each row (i64)
+ * - for each column: if nullable, a bitmap with one bit per row that is set
+ *   when the value is present; then the values.  Fixed-width values are stored
+ *   in an array with one element per row (nulls are stored as 0).  Strings are
+ *   stored as an array of rows + 1 offsets (u32) followed by the UTF-8 bytes.
+ * Dates and timestamps are stored as strings, in the format expected by
+ * their Rust deserializers.
+ */
+public class ColumnarWriter {
+    static final byte[] MAGIC = "DBSPCOL1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Column type codes; must match the ones in the Rust reader.
+     */
+    enum ColumnType {
+        BOOL(1), I16(2), I32(4), I64(8), U32(4), U64(8), F32(4), F64(8), STR(0);
+
+        /**
+         * Size of a value in bytes, 0 for variable-size values.
+         */
+        final int width;
+
+        ColumnType(int width) {
+            this.width = width;
+        }
+    }
+
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /**
+     * The column type used to store values of the specified type,
+     * or null if the type is not supported.
+     */
+    @Nullable
+    static ColumnType getColumnType(DBSPType type) {
+        if (type.is(DBSPTypeBool.class))
+            return ColumnType.BOOL;
+        if (type.is(DBSPTypeInteger.class)) {
+            DBSPTypeInteger integer = type.to(DBSPTypeInteger.class);
+            switch (integer.getWidth()) {
+                case 16:
+                    return integer.signed ? ColumnType.I16 : null;
+                case 32:
+                    return integer.signed ? ColumnType.I32 : ColumnType.U32;
+                case 64:
+                    return integer.signed ? ColumnType.I64 : ColumnType.U64;
+                default:
+                    return null;
+            }
+        }
+        if (type.is(DBSPTypeFloat.class))
+            return ColumnType.F32;
+        if (type.is(DBSPTypeDouble.class))
+            return ColumnType.F64;
+        if (type.is(DBSPTypeString.class) || type.is(DBSPTypeDate.class) || type.is(DBSPTypeTimestamp.class))
+            return ColumnType.STR;
+        return null;
+    }
+
+    /**
+     * True if the literal can be represented in the columnar format:
+     * all columns must have supported types and all values must be literals.
+     */
+    public static boolean isSupported(DBSPZSetLiteral literal) {
+        DBSPTypeTuple tuple = literal.getElementType().as(DBSPTypeTuple.class);
+        if (tuple == null)
+            return false;
+        for (DBSPType field: tuple.tupFields)
+            if (getColumnType(field) == null)
+                return false;
+        for (DBSPExpression row: literal.data.keySet()) {
+            DBSPTupleExpression tupleExpression = row.as(DBSPTupleExpression.class);
+            if (tupleExpression == null)
+                return false;
+            for (DBSPExpression field: tupleExpression.fields)
+                if (!field.is(DBSPLiteral.class))
+                    return false;
+        }
+        return true;
+    }
+
+    final DataOutput output;
+    final ByteBuffer buffer;
+
+    ColumnarWriter(DataOutput output) {
+        this.output = output;
+        this.buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void writeLong(long value) throws IOException {
+        this.buffer.clear();
+        this.buffer.putLong(value);
+        this.output.write(this.buffer.array(), 0, 8);
+    }
+
+    void writeInt(int value) throws IOException {
+        this.buffer.clear();
+        this.buffer.putInt(value);
+        this.output.write(this.buffer.array(), 0, 4);
+    }
+
+    void writeShort(short value) throws IOException {
+        this.buffer.clear();
+        this.buffer.putShort(value);
+        this.output.write(this.buffer.array(), 0, 2);
+    }
+
+    static String toStringValue(DBSPType type, Object value) {
+        if (type.is(DBSPTypeTimestamp.class))
+            return LocalDateTime.ofEpochSecond(
+                    Math.floorDiv((Long) value, 1000L),
+                    (int) Math.floorMod((Long) value, 1000L) * 1000000,
+                    ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+        if (type.is(DBSPTypeDate.class))
+            return LocalDate.ofEpochDay((Integer) value).toString();
+        return (String) value;
+    }
+
+    void writeColumn(DBSPType type, ColumnType columnType, List<DBSPLiteral> values) throws IOException {
+        if (type.mayBeNull) {
+            byte[] present = new byte[(values.size() + 7) / 8];
+            for (int i = 0; i < values.size(); i++)
+                if (!values.get(i).isNull)
+                    present[i / 8] |= (byte) (1 << (i % 8));
+            this.output.write(present);
+        }
+        if (columnType == ColumnType.STR) {
+            List<byte[]> strings = new ArrayList<>(values.size());
+            int offset = 0;
+            this.writeInt(offset);
+            for (DBSPLiteral value: values) {
+                byte[] bytes = value.isNull ? new byte[0] :
+                        toStringValue(type, value.value).getBytes(StandardCharsets.UTF_8);
+                strings.add(bytes);
+                offset += bytes.length;
+                this.writeInt(offset);
+            }
+            for (byte[] bytes: strings)
+                this.output.write(bytes);
+            return;
+        }
+        for (DBSPLiteral literal: values) {
+            Object value = literal.value;
+            switch (columnType) {
+                case BOOL:
+                    this.output.writeByte(value != null && (Boolean) value ? 1 : 0);
+                    break;
+                case I16:
+                    this.writeShort(value == null ? 0 : ((Number) value).shortValue());
+                    break;
+                case I32:
+                case U32:
+                    this.writeInt(value == null ? 0 : ((Number) value).intValue());
+                    break;
+                case I64:
+                case U64:
+                    this.writeLong(value == null ? 0 : ((Number) value).longValue());
+                    break;
+                case F32:
+                    this.writeInt(Float.floatToIntBits(value == null ? 0 : ((Number) value).floatValue()));
+                    break;
+                case F64:
+                    this.writeLong(Double.doubleToLongBits(value == null ? 0 : ((Number) value).doubleValue()));
+                    break;
+                default:
+                    throw new UnsupportedException(columnType.toString(), type.getNode());
+            }
+        }
+    }
+
+    void write(DBSPZSetLiteral literal) throws IOException {
+        if (!isSupported(literal))
+            throw new UnsupportedException("Columnar representation of " + literal.getElementType(),
+                    literal.getNode());
+        DBSPTypeTuple tuple = literal.getElementType().to(DBSPTypeTuple.class);
+        int columns = tuple.tupFields.length;
+        List<List<DBSPLiteral>> data = new ArrayList<>(columns);
+        for (int i = 0; i < columns; i++)
+            data.add(new ArrayList<>(literal.size()));
+        this.output.write(MAGIC);
+        this.writeInt(columns);
+        this.writeLong(literal.data.size());
+        for (DBSPType field: tuple.tupFields) {
+            this.output.writeByte(Objects.requireNonNull(getColumnType(field)).ordinal());
+            this.output.writeByte(field.mayBeNull ? 1 : 0);
+        }
+        for (Map.Entry<DBSPExpression, Long> entry: literal.data.entrySet()) {
+            this.writeLong(entry.getValue());
+            DBSPTupleExpression row = entry.getKey().to(DBSPTupleExpression.class);
+            for (int i = 0; i < columns; i++)
+                data.get(i).add(row.fields[i].to(DBSPLiteral.class));
+        }
+        for (int i = 0; i < columns; i++) {
+            DBSPType field = tuple.tupFields[i];
+            this.writeColumn(field, Objects.requireNonNull(getColumnType(field)), data.get(i));
+        }
+    }
+
+    /**
+     * Write a literal to a file in the columnar format.
+     * @param fileName  File to write to.
+     * @param literal   Literal to write.
+     */
+    public static File toColumns(String fileName, DBSPZSetLiteral literal) throws IOException {
+        File file = new File(fileName);
+        try (DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            new ColumnarWriter(stream).write(literal);
+        }
+        return file;
+    }
+}
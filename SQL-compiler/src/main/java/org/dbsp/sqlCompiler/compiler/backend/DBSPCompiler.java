@@ -45,6 +45,7 @@ import org.dbsp.sqlCompiler.compiler.frontend.CalciteToDBSPCompiler;
 import org.dbsp.sqlCompiler.compiler.frontend.TableContents;
 import org.dbsp.util.IModule;
 import org.dbsp.util.Logger;
+import org.dbsp.util.PhaseTimes;
 import org.dbsp.util.Unimplemented;
 
 import javax.annotation.Nullable;
@@ -97,6 +98,10 @@ public class DBSPCompiler implements IModule, ICompilerComponent {
     public final @Nullable ObjectNode ios;
     public final TypeCompiler typeCompiler;
     public boolean hasWarnings;
+    /**
+     * Time spent in each compilation phase.
+     */
+    public final PhaseTimes phaseTimes;
 
     /**
      * Circuit produced by the compiler.
@@ -112,6 +117,7 @@ public class DBSPCompiler implements IModule, ICompilerComponent {
         this.sources = new SourceFileContents();
         this.circuit = null;
         this.typeCompiler = new TypeCompiler(this);
+        this.phaseTimes = new PhaseTimes();
         if (options.ioOptions.emitJsonSchema != null) {
             this.inputs = this.mapper.createArrayNode();
             this.outputs = this.mapper.createArrayNode();
@@ -169,11 +175,14 @@ public class DBSPCompiler implements IModule, ICompilerComponent {
         }
 
         try {
+            long start = System.nanoTime();
             if (many) {
                 SqlNodeList nodes = this.frontend.parseStatements(statements);
                 for (SqlNode node : nodes) {
                     FrontEndStatement fe = this.frontend.compile(node.toString(), node, null, this.inputs, this.outputs);
+                    start = this.phaseTimes.addSince(PhaseTimes.Phase.PARSE, start);
                     this.midend.compile(fe);
+                    start = this.phaseTimes.addSince(PhaseTimes.Phase.TRANSLATE, start);
                 }
             } else {
                 SqlNode node = this.frontend.parse(statements);
@@ -183,7 +192,9 @@ public class DBSPCompiler implements IModule, ICompilerComponent {
                         .append(node.toString())
                         .newline();
                 FrontEndStatement fe = this.frontend.compile(statements, node, comment, this.inputs, this.outputs);
+                start = this.phaseTimes.addSince(PhaseTimes.Phase.PARSE, start);
                 this.midend.compile(fe);
+                this.phaseTimes.addSince(PhaseTimes.Phase.TRANSLATE, start);
             }
         } catch (SqlParseException e) {
             this.messages.reportError(e);
@@ -218,8 +229,10 @@ public class DBSPCompiler implements IModule, ICompilerComponent {
         if (this.circuit == null) {
             this.circuit = this.getFinalCircuit("tmp");
         }
+        long start = System.nanoTime();
         CircuitOptimizer optimizer = new CircuitOptimizer(this.options.optimizerOptions, this);
         this.circuit = optimizer.optimize(circuit);
+        this.phaseTimes.addSince(PhaseTimes.Phase.OPTIMIZE, start);
     }
 
     public void compileStatement(String statement) {
@@ -251,8 +264,10 @@ public class DBSPCompiler implements IModule, ICompilerComponent {
      */
     public DBSPCircuit getFinalCircuit(String name) {
         if (this.circuit == null) {
+            long start = System.nanoTime();
             DBSPPartialCircuit circuit = this.midend.getFinalCircuit();
             this.circuit = circuit.seal(name);
+            this.phaseTimes.addSince(PhaseTimes.Phase.TRANSLATE, start);
         }
         DBSPCircuit result = this.circuit.rename(name);
         this.circuit = null;
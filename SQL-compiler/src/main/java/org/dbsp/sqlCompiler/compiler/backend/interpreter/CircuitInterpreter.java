@@ -0,0 +1,385 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ExpandOperators;
+import org.dbsp.sqlCompiler.ir.CircuitVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPAggregate;
+import org.dbsp.sqlCompiler.ir.expression.DBSPClosureExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.DBSPFlatmap;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeZSet;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Linq;
+import org.dbsp.util.Logger;
+import org.dbsp.util.Unimplemented;
+import org.dbsp.util.Utilities;
+
+import java.util.*;
+
+/**
+ * Executes a circuit in the compiler process, without generating code.
+ * Each call to 'step' feeds one Z-set to each input of the circuit
+ * and returns the Z-sets produced by the outputs.
+ * Integral and differential operators keep their state between steps.
+ * Incremental operators are first expanded into integrals and differentials.
+ * This is much slower than the Rust code, but it has no compilation
+ * latency, and it is useful as a reference implementation.
+ * Optionally the closures of the operators are compiled to JVM bytecode
+ * by the ClosureCompiler; closures which cannot be compiled are interpreted.
+ */
+public class CircuitInterpreter extends CircuitVisitor implements IModule {
+    final DBSPCircuit toExecute;
+    final ExpressionEvaluator evaluator;
+    /**
+     * Value produced by each operator in the current step.
+     */
+    final Map<DBSPOperator, ZSet> values;
+    /**
+     * Sum of all inputs received so far by each integral operator.
+     */
+    final Map<DBSPOperator, ZSet> integrals;
+    /**
+     * Input received in the previous step by each differential operator.
+     */
+    final Map<DBSPOperator, ZSet> previous;
+    /**
+     * Inputs of the current step, in the order of the circuit inputs.
+     */
+    List<ZSet> inputs;
+    /**
+     * If true compile the closures of the operators to bytecode.
+     */
+    final boolean compileClosures;
+    /**
+     * Executable version of the closures of each operator, created when first needed.
+     */
+    final Map<DBSPOperator, List<ICompiledClosure>> closures;
+
+    public CircuitInterpreter(DBSPCircuit circuit) {
+        this(circuit, false);
+    }
+
+    public CircuitInterpreter(DBSPCircuit circuit, boolean compileClosures) {
+        super(true);
+        this.compileClosures = compileClosures;
+        this.closures = new HashMap<>();
+        this.toExecute = new ExpandOperators().apply(circuit);
+        this.evaluator = new ExpressionEvaluator(this.toExecute.circuit);
+        this.values = new HashMap<>();
+        this.integrals = new HashMap<>();
+        this.previous = new HashMap<>();
+        this.inputs = new ArrayList<>();
+    }
+
+    /**
+     * Forget the state accumulated in all previous steps.
+     */
+    public void reset() {
+        this.integrals.clear();
+        this.previous.clear();
+    }
+
+    /**
+     * Execute one step of the circuit.
+     * @param inputs  One Z-set for each circuit input.
+     * @return        One Z-set for each circuit output.
+     */
+    public List<ZSet> step(List<ZSet> inputs) {
+        int expected = this.toExecute.circuit.getInputCount();
+        if (inputs.size() != expected)
+            throw new RuntimeException("Circuit expects " + expected + " inputs, but received " + inputs.size());
+        this.inputs = inputs;
+        this.values.clear();
+        this.apply(this.toExecute);
+        List<ZSet> result = Linq.map(this.toExecute.circuit.outputOperators,
+                o -> Utilities.getExists(this.values, o));
+        Logger.INSTANCE.from(this, 1)
+                .append("Step produced ")
+                .append(result.toString())
+                .newline();
+        return result;
+    }
+
+    /**
+     * Execute one step of the circuit on literal inputs.
+     * @param inputs  One Z-set for each circuit input.
+     * @return        One Z-set for each circuit output.
+     */
+    public List<DBSPZSetLiteral> step(DBSPZSetLiteral... inputs) {
+        List<ZSet> outputs = this.step(Linq.map(Arrays.asList(inputs), ZSet::fromLiteral));
+        List<DBSPZSetLiteral> result = new ArrayList<>();
+        for (int i = 0; i < outputs.size(); i++) {
+            DBSPTypeZSet type = this.toExecute.getOutputType(i).to(DBSPTypeZSet.class);
+            result.add(outputs.get(i).toLiteral(type));
+        }
+        return result;
+    }
+
+    ZSet input(DBSPOperator operator, int index) {
+        return Utilities.getExists(this.values, operator.inputs.get(index));
+    }
+
+    ZSet input(DBSPOperator operator) {
+        return this.input(operator, 0);
+    }
+
+    void set(DBSPOperator operator, ZSet value) {
+        Utilities.putNew(this.values, operator, value);
+    }
+
+    DBSPClosureExpression getClosure(DBSPOperator operator) {
+        return this.resolve(operator.getFunction()).to(DBSPClosureExpression.class);
+    }
+
+    ICompiledClosure makeExecutable(DBSPClosureExpression closure) {
+        if (this.compileClosures) {
+            try {
+                return ClosureCompiler.compile(closure);
+            } catch (Unimplemented ex) {
+                Logger.INSTANCE.from(this, 1)
+                        .append("Interpreting closure: ")
+                        .append(ex.getMessage())
+                        .newline();
+            }
+        }
+        return arguments -> this.evaluator.apply(closure, arguments);
+    }
+
+    /**
+     * Executable versions of the specified closures of an operator.
+     */
+    List<ICompiledClosure> getExecutable(DBSPOperator operator, DBSPClosureExpression... closures) {
+        return this.closures.computeIfAbsent(operator,
+                o -> Linq.map(Arrays.asList(closures), this::makeExecutable));
+    }
+
+    ICompiledClosure getExecutable(DBSPOperator operator) {
+        return this.getExecutable(operator, this.getClosure(operator)).get(0);
+    }
+
+    @Override
+    public boolean preorder(DBSPSourceOperator operator) {
+        int index = this.toExecute.circuit.inputOperators.indexOf(operator);
+        this.set(operator, this.inputs.get(index));
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPConstantOperator operator) {
+        DBSPZSetLiteral literal = this.resolve(operator.getFunction()).to(DBSPZSetLiteral.class);
+        this.set(operator, ZSet.fromLiteral(literal));
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPSinkOperator operator) {
+        this.set(operator, this.input(operator));
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPMapOperator operator) {
+        ICompiledClosure closure = this.getExecutable(operator);
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet())
+            result.add(Objects.requireNonNull(closure.apply(new Object[] { entry.getKey() })), entry.getValue());
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPMapIndexOperator operator) {
+        // The closure produces a (key, value) tuple, which is
+        // how indexed Z-sets are represented.
+        ICompiledClosure closure = this.getExecutable(operator);
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet())
+            result.add(Objects.requireNonNull(closure.apply(new Object[] { entry.getKey() })), entry.getValue());
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPIndexOperator operator) {
+        ICompiledClosure closure = this.getExecutable(operator);
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet())
+            result.add(Objects.requireNonNull(closure.apply(new Object[] { entry.getKey() })), entry.getValue());
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPFilterOperator operator) {
+        ICompiledClosure closure = this.getExecutable(operator);
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet()) {
+            Object keep = closure.apply(new Object[] { entry.getKey() });
+            if (Boolean.TRUE.equals(keep))
+                result.add(entry.getKey(), entry.getValue());
+        }
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPFlatMapOperator operator) {
+        DBSPExpression function = this.resolve(operator.getFunction());
+        if (!function.is(DBSPFlatmap.class))
+            throw new Unimplemented(operator);
+        DBSPFlatmap flatmap = function.to(DBSPFlatmap.class);
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet()) {
+            Tuple row = (Tuple) entry.getKey();
+            List<?> collection = (List<?>) row.get(flatmap.collectionFieldIndex);
+            if (collection == null)
+                continue;
+            for (int i = 0; i < collection.size(); i++) {
+                List<Object> fields = new ArrayList<>();
+                for (int field: flatmap.outputFields)
+                    fields.add(row.get(field));
+                fields.add(collection.get(i));
+                if (flatmap.indexType != null)
+                    fields.add(ExpressionEvaluator.cast((long)i + 1, flatmap.indexType));
+                result.add(new Tuple(fields.toArray()), entry.getValue());
+            }
+        }
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPJoinOperator operator) {
+        ICompiledClosure closure = this.getExecutable(operator);
+        ZSet left = this.input(operator, 0);
+        ZSet right = this.input(operator, 1);
+        Map<Object, List<Map.Entry<Object, Long>>> rightByKey = new HashMap<>();
+        for (Map.Entry<Object, Long> entry: right.entrySet()) {
+            Tuple keyValue = (Tuple) entry.getKey();
+            rightByKey.computeIfAbsent(keyValue.get(0), k -> new ArrayList<>()).add(entry);
+        }
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: left.entrySet()) {
+            Tuple leftKeyValue = (Tuple) entry.getKey();
+            Object key = leftKeyValue.get(0);
+            List<Map.Entry<Object, Long>> matches = rightByKey.get(key);
+            if (matches == null)
+                continue;
+            for (Map.Entry<Object, Long> match: matches) {
+                Tuple rightKeyValue = (Tuple) match.getKey();
+                Object value = closure.apply(new Object[] {
+                        key, leftKeyValue.get(1), rightKeyValue.get(1) });
+                result.add(Objects.requireNonNull(value),
+                        Math.multiplyExact(entry.getValue(), match.getValue()));
+            }
+        }
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPAggregateOperator operator) {
+        if (operator.function != null)
+            throw new Unimplemented(operator);
+        DBSPAggregate aggregate = operator.getAggregate();
+        Object zero = this.evaluator.evaluate(this.resolve(aggregate.getZero()));
+        List<ICompiledClosure> functions = this.getExecutable(operator,
+                aggregate.getIncrement(), aggregate.getPostprocessing());
+        ICompiledClosure increment = functions.get(0);
+        ICompiledClosure postprocess = functions.get(1);
+
+        // Group the values by key, preserving the weights
+        Map<Object, List<Map.Entry<Object, Long>>> groups = new HashMap<>();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet()) {
+            Tuple keyValue = (Tuple) entry.getKey();
+            groups.computeIfAbsent(keyValue.get(0), k -> new ArrayList<>()).add(entry);
+        }
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, List<Map.Entry<Object, Long>>> group: groups.entrySet()) {
+            Object accumulator = zero;
+            for (Map.Entry<Object, Long> entry: group.getValue()) {
+                Tuple keyValue = (Tuple) entry.getKey();
+                accumulator = increment.apply(new Object[] { accumulator, keyValue.get(1), entry.getValue() });
+            }
+            Object value = postprocess.apply(new Object[] { accumulator });
+            result.add(new Tuple(group.getKey(), value), 1);
+        }
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPDistinctOperator operator) {
+        this.set(operator, this.input(operator).distinct());
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPIntegralOperator operator) {
+        ZSet sum = this.integrals.computeIfAbsent(operator, o -> new ZSet());
+        sum.add(this.input(operator));
+        this.set(operator, new ZSet(sum));
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPDifferentialOperator operator) {
+        ZSet current = this.input(operator);
+        ZSet previous = this.previous.getOrDefault(operator, new ZSet());
+        this.previous.put(operator, current);
+        this.set(operator, current.minus(previous));
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPSumOperator operator) {
+        ZSet result = new ZSet();
+        for (int i = 0; i < operator.inputs.size(); i++)
+            result.add(this.input(operator, i));
+        this.set(operator, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPSubtractOperator operator) {
+        this.set(operator, this.input(operator, 0).minus(this.input(operator, 1)));
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPNegateOperator operator) {
+        this.set(operator, this.input(operator).negate());
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPOperator operator) {
+        throw new Unimplemented(operator);
+    }
+}
@@ -0,0 +1,720 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.janino.SimpleCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ToJitVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.*;
+import org.dbsp.sqlCompiler.ir.expression.literal.*;
+import org.dbsp.sqlCompiler.ir.pattern.*;
+import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.type.*;
+import org.dbsp.sqlCompiler.ir.type.primitive.*;
+import org.dbsp.util.IModule;
+import org.dbsp.util.IndentStream;
+import org.dbsp.util.Logger;
+import org.dbsp.util.Unimplemented;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles closures to JVM bytecode, which is much faster than
+ * evaluating them with the ExpressionEvaluator.
+ * The closure is translated to the source of a Java class implementing
+ * ICompiledClosure, which is compiled in memory by Janino.
+ * Scalar values are kept in unboxed local variables, each nullable value
+ * being represented by a pair of locals (value, isNull); values are boxed
+ * only when stored into tuples and when returned.  Arguments and results
+ * use the representation of the ExpressionEvaluator, so compiled and
+ * interpreted closures can be mixed.
+ * Operations on values which do not have a primitive representation
+ * (e.g., decimals) call the static methods of ExpressionEvaluator.
+ * Constructs which are not supported throw Unimplemented.
+ *
+ * <p>Rows are not specialized: there are no generated row classes with
+ * primitive fields.  Every call receives its arguments as an Object[]
+ * holding boxed values and Tuple rows, each field read from a Tuple is
+ * cast and unboxed, and each field stored into a result Tuple is boxed.
+ * So the cost of boxing is paid once per field accessed or produced at
+ * the closure boundary, but not by the computations inside the closure.
+ * Typed rows would also require the Z-sets of the CircuitInterpreter to
+ * store them, which is why they are not generated.
+ * OtherTests.closureCompilerBenchmark compares this compiler with the
+ * ExpressionEvaluator.
+ */
+public class ClosureCompiler implements IModule {
+    static final AtomicInteger classCount = new AtomicInteger();
+    static final String EVALUATOR = ExpressionEvaluator.class.getName();
+
+    /**
+     * Java representation of a value.
+     */
+    enum Kind {
+        BOOL("boolean", "Boolean", "false"),
+        INT("int", "Integer", "0"),
+        LONG("long", "Long", "0L"),
+        FLOAT("float", "Float", "0.0F"),
+        DOUBLE("double", "Double", "0.0"),
+        STRING("String", "String", "null"),
+        DECIMAL("java.math.BigDecimal", "java.math.BigDecimal", "null"),
+        TUPLE(Tuple.class.getName(), Tuple.class.getName(), "null");
+
+        final String javaType;
+        final String boxedType;
+        final String defaultValue;
+
+        Kind(String javaType, String boxedType, String defaultValue) {
+            this.javaType = javaType;
+            this.boxedType = boxedType;
+            this.defaultValue = defaultValue;
+        }
+
+        boolean isPrimitive() {
+            return !this.javaType.equals(this.boxedType);
+        }
+
+        boolean isNumeric() {
+            return this == INT || this == LONG || this == FLOAT || this == DOUBLE;
+        }
+    }
+
+    /**
+     * A compiled value.
+     */
+    static class Value {
+        final Kind kind;
+        /**
+         * Java expression (usually a local variable) holding the value.
+         */
+        final String value;
+        /**
+         * Java boolean expression which is true when the value is null.
+         * Null when the value can never be null.
+         * When the value is null 'value' holds the default value of its kind.
+         */
+        @Nullable
+        final String isNull;
+
+        Value(Kind kind, String value, @Nullable String isNull) {
+            this.kind = kind;
+            this.value = value;
+            this.isNull = isNull;
+        }
+
+        boolean mayBeNull() {
+            return this.isNull != null;
+        }
+
+        String isNullOrFalse() {
+            return this.isNull != null ? this.isNull : "false";
+        }
+    }
+
+    final StringBuilder builder;
+    final IndentStream code;
+    /**
+     * Objects which are referenced by the generated code.
+     */
+    final List<Object> constants;
+    /**
+     * Variable bindings, innermost scope last.
+     */
+    final List<Map<String, Value>> scopes;
+    int nextLocal;
+
+    ClosureCompiler() {
+        this.builder = new StringBuilder();
+        this.code = new IndentStream(this.builder);
+        this.constants = new ArrayList<>();
+        this.scopes = new ArrayList<>();
+        this.nextLocal = 0;
+    }
+
+    static Kind kind(DBSPType type) {
+        type = Objects.requireNonNull(ToJitVisitor.resolveWeightType(type.derefIfNeeded()));
+        if (type.is(DBSPTypeBool.class))
+            return Kind.BOOL;
+        if (type.is(DBSPTypeInteger.class))
+            return type.to(DBSPTypeInteger.class).getWidth() <= 32 ? Kind.INT : Kind.LONG;
+        if (type.is(DBSPTypeISize.class) || type.is(DBSPTypeUSize.class) ||
+                type.is(DBSPTypeTimestamp.class) || type.is(DBSPTypeMillisInterval.class))
+            return Kind.LONG;
+        if (type.is(DBSPTypeDate.class) || type.is(DBSPTypeMonthsInterval.class))
+            return Kind.INT;
+        if (type.is(DBSPTypeDouble.class))
+            return Kind.DOUBLE;
+        if (type.is(DBSPTypeFloat.class))
+            return Kind.FLOAT;
+        if (type.is(DBSPTypeString.class) || type.is(DBSPTypeStr.class))
+            return Kind.STRING;
+        if (type.is(DBSPTypeDecimal.class))
+            return Kind.DECIMAL;
+        if (type.is(DBSPTypeTuple.class) || type.is(DBSPTypeRawTuple.class))
+            return Kind.TUPLE;
+        throw new Unimplemented("Compiling values of type", type);
+    }
+
+    String newLocal() {
+        return "v" + this.nextLocal++;
+    }
+
+    /**
+     * A Java expression which evaluates to the specified object.
+     */
+    String constant(Object value) {
+        int index = this.constants.size();
+        this.constants.add(value);
+        return "this.constants[" + index + "]";
+    }
+
+    /**
+     * Store the result of a computation into fresh local variables.
+     */
+    Value declare(Kind kind, String value, @Nullable String isNull) {
+        String local = this.newLocal();
+        String nullLocal = null;
+        if (isNull != null) {
+            nullLocal = local + "n";
+            this.code.append("boolean ").append(nullLocal).append(" = ").append(isNull).append(";").newline();
+            value = nullLocal + " ? " + kind.defaultValue + " : " + value;
+        }
+        this.code.append(kind.javaType).append(" ").append(local)
+                .append(" = ").append(value).append(";").newline();
+        return new Value(kind, local, nullLocal);
+    }
+
+    /**
+     * Convert a Java expression of type Object to a value of the specified kind.
+     */
+    Value unbox(String object, Kind kind, boolean mayBeNull) {
+        String local = this.newLocal();
+        this.code.append("Object ").append(local).append("o = ").append(object).append(";").newline();
+        String source = local + "o";
+        String converted;
+        switch (kind) {
+            case BOOL:
+                converted = "((Boolean) " + source + ").booleanValue()";
+                break;
+            case INT:
+                converted = "((Number) " + source + ").intValue()";
+                break;
+            case LONG:
+                converted = "((Number) " + source + ").longValue()";
+                break;
+            case FLOAT:
+                converted = "((Number) " + source + ").floatValue()";
+                break;
+            case DOUBLE:
+                converted = "((Number) " + source + ").doubleValue()";
+                break;
+            default:
+                converted = "(" + kind.javaType + ") " + source;
+                break;
+        }
+        return this.declare(kind, converted, mayBeNull ? source + " == null" : null);
+    }
+
+    /**
+     * A Java expression of type Object holding the boxed value.
+     */
+    static String box(Value value) {
+        String boxed = value.value;
+        if (value.kind.isPrimitive())
+            boxed = value.kind.boxedType + ".valueOf(" + value.value + ")";
+        if (value.isNull != null)
+            return "(" + value.isNull + " ? null : (Object) " + boxed + ")";
+        return "((Object) " + boxed + ")";
+    }
+
+    @Nullable
+    String nullIfAny(Value left, Value right) {
+        if (left.isNull == null)
+            return right.isNull;
+        if (right.isNull == null)
+            return left.isNull;
+        return "(" + left.isNull + " || " + right.isNull + ")";
+    }
+
+    void bind(String name, Value value) {
+        this.scopes.get(this.scopes.size() - 1).put(name, value);
+    }
+
+    void bind(DBSPPattern pattern, DBSPType type, Value value) {
+        if (pattern.is(DBSPIdentifierPattern.class)) {
+            this.bind(pattern.to(DBSPIdentifierPattern.class).identifier, value);
+        } else if (pattern.is(DBSPRefPattern.class)) {
+            this.bind(pattern.to(DBSPRefPattern.class).pattern, type.derefIfNeeded(), value);
+        } else if (pattern.is(DBSPTuplePattern.class)) {
+            DBSPPattern[] fields = pattern.to(DBSPTuplePattern.class).fields;
+            DBSPTypeTupleBase tuple = type.derefIfNeeded().to(DBSPTypeTupleBase.class);
+            for (int i = 0; i < fields.length; i++) {
+                DBSPType fieldType = tuple.getFieldType(i);
+                Value field = this.unbox(value.value + ".get(" + i + ")", kind(fieldType), fieldType.mayBeNull);
+                this.bind(fields[i], fieldType, field);
+            }
+        } else if (!pattern.is(DBSPWildcardPattern.class)) {
+            throw new Unimplemented(pattern);
+        }
+    }
+
+    Value lookup(DBSPVariablePath variable) {
+        for (int i = this.scopes.size() - 1; i >= 0; i--) {
+            Value value = this.scopes.get(i).get(variable.variable);
+            if (value != null)
+                return value;
+        }
+        // Probably a declaration of the circuit
+        throw new Unimplemented("Compiling free variable", variable);
+    }
+
+    Value compile(DBSPExpression expression) {
+        if (expression.is(DBSPLiteral.class))
+            return this.literal(expression.to(DBSPLiteral.class));
+        if (expression.is(DBSPVariablePath.class))
+            return this.lookup(expression.to(DBSPVariablePath.class));
+        if (expression.is(DBSPFieldExpression.class)) {
+            DBSPFieldExpression field = expression.to(DBSPFieldExpression.class);
+            Value source = this.compile(field.expression);
+            String get = source.value + ".get(" + field.fieldNo + ")";
+            if (source.isNull != null)
+                get = "(" + source.isNull + " ? null : " + get + ")";
+            DBSPType type = expression.getNonVoidType();
+            return this.unbox(get, kind(type), type.mayBeNull || source.mayBeNull());
+        }
+        if (expression.is(DBSPTupleExpression.class))
+            return this.tuple(expression.to(DBSPTupleExpression.class).fields);
+        if (expression.is(DBSPRawTupleExpression.class))
+            return this.tuple(expression.to(DBSPRawTupleExpression.class).fields);
+        if (expression.is(DBSPBorrowExpression.class))
+            return this.compile(expression.to(DBSPBorrowExpression.class).expression);
+        if (expression.is(DBSPDerefExpression.class))
+            return this.compile(expression.to(DBSPDerefExpression.class).expression);
+        if (expression.is(DBSPCloneExpression.class))
+            return this.compile(expression.to(DBSPCloneExpression.class).expression);
+        if (expression.is(DBSPIsNullExpression.class)) {
+            Value source = this.compile(expression.to(DBSPIsNullExpression.class).expression);
+            return new Value(Kind.BOOL, source.isNullOrFalse(), null);
+        }
+        if (expression.is(DBSPCastExpression.class)) {
+            DBSPCastExpression cast = expression.to(DBSPCastExpression.class);
+            return this.cast(this.compile(cast.source), cast.destinationType);
+        }
+        if (expression.is(DBSPUnaryExpression.class))
+            return this.unary(expression.to(DBSPUnaryExpression.class));
+        if (expression.is(DBSPBinaryExpression.class))
+            return this.binary(expression.to(DBSPBinaryExpression.class));
+        if (expression.is(DBSPIfExpression.class))
+            return this.ifExpression(expression.to(DBSPIfExpression.class));
+        if (expression.is(DBSPBlockExpression.class))
+            return this.block(expression.to(DBSPBlockExpression.class));
+        if (expression.is(DBSPApplyExpression.class))
+            return this.call(expression.to(DBSPApplyExpression.class));
+        throw new Unimplemented(expression);
+    }
+
+    Value literal(DBSPLiteral literal) {
+        DBSPType type = literal.getNonVoidType();
+        Kind kind = kind(type);
+        if (literal.isNull)
+            return new Value(kind, kind.defaultValue, "true");
+        String isNull = type.mayBeNull ? "false" : null;
+        Object value = Objects.requireNonNull(literal.value);
+        String result;
+        switch (kind) {
+            case BOOL:
+                result = value.toString();
+                break;
+            case INT: {
+                int i = ((Number) value).intValue();
+                result = i == Integer.MIN_VALUE ? "Integer.MIN_VALUE" : "(" + i + ")";
+                break;
+            }
+            case LONG: {
+                long l = ((Number) value).longValue();
+                result = l == Long.MIN_VALUE ? "Long.MIN_VALUE" : "(" + l + "L)";
+                break;
+            }
+            case FLOAT:
+                // Bit patterns also handle infinities and NaN
+                result = "Float.intBitsToFloat(" + Float.floatToRawIntBits((Float) value) + ")";
+                break;
+            case DOUBLE:
+                result = "Double.longBitsToDouble(" + Double.doubleToRawLongBits((Double) value) + "L)";
+                break;
+            case STRING:
+                result = "\"" + StringEscapeUtils.escapeJava(value.toString()) + "\"";
+                break;
+            case DECIMAL:
+                result = "((java.math.BigDecimal) " +
+                        this.constant(Objects.requireNonNull(ExpressionEvaluator.normalize(value))) + ")";
+                break;
+            default:
+                throw new Unimplemented(literal);
+        }
+        return new Value(kind, result, isNull);
+    }
+
+    Value tuple(DBSPExpression[] fields) {
+        List<String> boxed = new ArrayList<>();
+        for (DBSPExpression field: fields)
+            boxed.add(box(this.compile(field)));
+        return this.declare(Kind.TUPLE, "new " + Kind.TUPLE.javaType + "(new Object[] { " +
+                String.join(", ", boxed) + " })", null);
+    }
+
+    Value cast(Value source, DBSPType type) {
+        Kind kind = kind(type);
+        if (source.mayBeNull() && !type.mayBeNull)
+            this.code.append("if (").append(source.isNullOrFalse())
+                    .append(") throw new RuntimeException(\"Cast of NULL value to non-nullable type ")
+                    .append(StringEscapeUtils.escapeJava(type.toString())).append("\");").newline();
+        String isNull = type.mayBeNull ? source.isNull : null;
+        if (source.kind == kind)
+            return new Value(kind, source.value, isNull);
+        if (source.kind.isNumeric() && kind.isNumeric()) {
+            String value = source.value;
+            if (kind == Kind.INT && (source.kind == Kind.FLOAT || source.kind == Kind.DOUBLE))
+                // Same conversion as the ExpressionEvaluator
+                value = "(long) " + value;
+            return this.declare(kind, "(" + kind.javaType + ") " + value, isNull);
+        }
+        if (kind == Kind.STRING && source.kind.isPrimitive())
+            return this.declare(kind, "String.valueOf(" + source.value + ")", isNull);
+        // General case: use the interpreter.
+        String cast = EVALUATOR + ".cast(" + box(source) + ", (" + DBSPType.class.getName() + ") " +
+                this.constant(type) + ")";
+        return this.unbox(cast, kind, type.mayBeNull);
+    }
+
+    Value unary(DBSPUnaryExpression expression) {
+        Value source = this.compile(expression.source);
+        String n = source.isNullOrFalse();
+        String v = source.value;
+        switch (expression.operation) {
+            case "-":
+                if (source.kind == Kind.INT || source.kind == Kind.LONG)
+                    return this.declare(source.kind, "Math.negateExact(" + v + ")", source.isNull);
+                if (source.kind == Kind.FLOAT || source.kind == Kind.DOUBLE)
+                    return this.declare(source.kind, "-" + v, source.isNull);
+                return this.unbox(EVALUATOR + ".negate(" + box(source) + ")", source.kind, source.mayBeNull());
+            case "!":
+                return this.declare(Kind.BOOL, "!" + v, source.isNull);
+            case "wrap_bool":
+            case "is_true":
+                return this.declare(Kind.BOOL, "!" + n + " && " + v, null);
+            case "is_false":
+                return this.declare(Kind.BOOL, "!" + n + " && !" + v, null);
+            case "is_not_true":
+                return this.declare(Kind.BOOL, n + " || !" + v, null);
+            case "is_not_false":
+                return this.declare(Kind.BOOL, n + " || " + v, null);
+            case "indicator":
+                return this.declare(Kind.LONG, n + " ? 0L : 1L", null);
+            default:
+                throw new Unimplemented(expression);
+        }
+    }
+
+    /**
+     * Java expression comparing two non-null values; the result has
+     * the same sign as the comparison.
+     */
+    String compare(Value left, Value right) {
+        if (left.kind == right.kind) {
+            switch (left.kind) {
+                case BOOL:
+                    return "Boolean.compare(" + left.value + ", " + right.value + ")";
+                case INT:
+                    return "Integer.compare(" + left.value + ", " + right.value + ")";
+                case LONG:
+                    return "Long.compare(" + left.value + ", " + right.value + ")";
+                case FLOAT:
+                    return "Float.compare(" + left.value + ", " + right.value + ")";
+                case DOUBLE:
+                    return "Double.compare(" + left.value + ", " + right.value + ")";
+                default:
+                    break;
+            }
+        }
+        return EVALUATOR + ".compare(" + box(left) + ", " + box(right) + ")";
+    }
+
+    /**
+     * Java expression for an arithmetic operation on two non-null
+     * values of the same primitive kind, or null if there is none.
+     */
+    @Nullable
+    static String primitiveArithmetic(String operation, Kind kind, String left, String right) {
+        boolean integral = kind == Kind.INT || kind == Kind.LONG;
+        boolean fp = kind == Kind.FLOAT || kind == Kind.DOUBLE;
+        switch (operation) {
+            case "+":
+                if (integral)
+                    return "Math.addExact(" + left + ", " + right + ")";
+                return fp ? left + " + " + right : null;
+            case "-":
+                if (integral)
+                    return "Math.subtractExact(" + left + ", " + right + ")";
+                return fp ? left + " - " + right : null;
+            case "*":
+                if (integral)
+                    return "Math.multiplyExact(" + left + ", " + right + ")";
+                return fp ? left + " * " + right : null;
+            case "%":
+                return integral || fp ? left + " % " + right : null;
+            case "&":
+            case "|":
+            case "^":
+                return integral || kind == Kind.BOOL ? left + " " + operation + " " + right : null;
+            case "<<":
+            case ">>":
+                return integral ? left + " " + operation + " " + right : null;
+            case "min":
+            case "max":
+                return integral || fp ? "Math." + operation + "(" + left + ", " + right + ")" : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Arithmetic operation on values which are not null.
+     * @param resultKind  Kind of the result.
+     * @param isNull      Java boolean expression which is true if one of the operands is null.
+     */
+    Value arithmetic(String operation, Kind resultKind, Value left, Value right, @Nullable String isNull) {
+        if (left.kind == right.kind && left.kind == resultKind) {
+            if (operation.equals("/") && (left.kind == Kind.INT || left.kind == Kind.LONG)) {
+                // Division by 0 produces NULL
+                String zero = "(" + right.value + " == 0)";
+                isNull = isNull == null ? zero : "(" + isNull + " || " + zero + ")";
+                return this.declare(resultKind, left.value + " / " + right.value, isNull);
+            }
+            if (operation.equals("/") && (left.kind == Kind.FLOAT || left.kind == Kind.DOUBLE))
+                return this.declare(resultKind, left.value + " / " + right.value, isNull);
+            String result = primitiveArithmetic(operation, left.kind, left.value, right.value);
+            if (result != null)
+                return this.declare(resultKind, result, isNull);
+        }
+        // Either the result is boxed, or this is a null produced by division by 0.
+        String call = EVALUATOR + ".arithmetic(\"" + operation + "\", " +
+                box(new Value(left.kind, left.value, null)) + ", " +
+                box(new Value(right.kind, right.value, null)) + ")";
+        if (isNull != null)
+            call = "(" + isNull + " ? null : " + call + ")";
+        return this.unbox(call, resultKind, true);
+    }
+
+    Value binary(DBSPBinaryExpression expression) {
+        Value left = this.compile(expression.left);
+        Value right = this.compile(expression.right);
+        String ln = left.isNullOrFalse();
+        String rn = right.isNullOrFalse();
+        String l = left.value;
+        String r = right.value;
+        Kind resultKind = kind(expression.getNonVoidType());
+        switch (expression.operation) {
+            case "&&": {
+                // SQL three-valued logic
+                Value isFalse = this.declare(Kind.BOOL, "(!" + ln + " && !" + l + ") || (!" + rn + " && !" + r + ")", null);
+                Value isNull = this.declare(Kind.BOOL, "!" + isFalse.value + " && (" + ln + " || " + rn + ")", null);
+                return new Value(Kind.BOOL, "(!" + isFalse.value + " && !" + isNull.value + ")", isNull.value);
+            }
+            case "||": {
+                if (left.kind == Kind.BOOL) {
+                    Value isTrue = this.declare(Kind.BOOL, "(!" + ln + " && " + l + ") || (!" + rn + " && " + r + ")", null);
+                    Value isNull = this.declare(Kind.BOOL, "!" + isTrue.value + " && (" + ln + " || " + rn + ")", null);
+                    return new Value(Kind.BOOL, isTrue.value, isNull.value);
+                }
+                return this.declare(Kind.STRING, l + " + " + r, this.nullIfAny(left, right));
+            }
+            case "is_distinct":
+                return this.declare(Kind.BOOL, "(" + ln + " || " + rn + ") ? " + ln + " != " + rn +
+                        " : " + this.compare(left, right) + " != 0", null);
+            case "agg_plus":
+            case "agg_min":
+            case "agg_max": {
+                // Null operands are ignored
+                String operation = expression.operation.equals("agg_plus") ? "+" : expression.operation.substring(4);
+                Value both = this.arithmetic(operation, resultKind, left, right, this.nullIfAny(left, right));
+                String result = ln + " ? " + r + " : (" + rn + " ? " + l + " : " + both.value + ")";
+                String isNull = left.mayBeNull() && right.mayBeNull() ? "(" + ln + " && " + rn + ")" : null;
+                if (left.kind != resultKind || right.kind != resultKind)
+                    throw new Unimplemented(expression);
+                return this.declare(resultKind, result, isNull);
+            }
+            case "mul_weight": {
+                Value weight = this.cast(right, expression.left.getNonVoidType().setMayBeNull(false));
+                return this.arithmetic("*", left.kind, left, weight, left.isNull);
+            }
+            case "==":
+            case "!=":
+            case "<":
+            case ">":
+            case "<=":
+            case ">=": {
+                String isNull = this.nullIfAny(left, right);
+                String compare = this.compare(left, right);
+                if (isNull != null)
+                    compare = isNull + " ? 0 : " + compare;
+                return this.declare(Kind.BOOL, "(" + compare + ") " + expression.operation + " 0", isNull);
+            }
+            default:
+                break;
+        }
+        DBSPType leftType = expression.left.getNonVoidType();
+        DBSPType rightType = expression.right.getNonVoidType();
+        if (leftType.is(DBSPTypeDate.class) || leftType.is(DBSPTypeMonthsInterval.class) ||
+                rightType.is(DBSPTypeDate.class) || rightType.is(DBSPTypeMonthsInterval.class))
+            throw new Unimplemented(expression);
+        return this.arithmetic(expression.operation, resultKind, left, right, this.nullIfAny(left, right));
+    }
+
+    Value ifExpression(DBSPIfExpression expression) {
+        Value condition = this.compile(expression.condition);
+        Kind kind = kind(expression.getNonVoidType());
+        String result = this.newLocal();
+        String isNull = result + "n";
+        this.code.append(kind.javaType).append(" ").append(result).append(" = ")
+                .append(kind.defaultValue).append(";").newline()
+                .append("boolean ").append(isNull).append(" = false;").newline()
+                .append("if (!").append(condition.isNullOrFalse()).append(" && ")
+                .append(condition.value).append(") {").increase();
+        this.branch(expression.positive, result, isNull);
+        this.code.decrease().append("} else {").increase();
+        this.branch(expression.negative, result, isNull);
+        this.code.decrease().append("}").newline();
+        return new Value(kind, result, isNull);
+    }
+
+    void branch(DBSPExpression expression, String result, String isNull) {
+        Value value = this.compile(expression);
+        this.code.append(result).append(" = ").append(value.value).append(";").newline()
+                .append(isNull).append(" = ").append(value.isNullOrFalse()).append(";");
+    }
+
+    Value block(DBSPBlockExpression block) {
+        this.scopes.add(new HashMap<>());
+        for (DBSPStatement stat: block.contents) {
+            if (stat.is(DBSPLetStatement.class)) {
+                DBSPLetStatement let = stat.to(DBSPLetStatement.class);
+                if (let.initializer == null)
+                    throw new Unimplemented(stat);
+                this.bind(let.variable, this.compile(let.initializer));
+            } else if (stat.is(DBSPExpressionStatement.class)) {
+                this.compile(stat.to(DBSPExpressionStatement.class).expression);
+            } else {
+                throw new Unimplemented(stat);
+            }
+        }
+        if (block.lastExpression == null)
+            throw new Unimplemented(block);
+        Value result = this.compile(block.lastExpression);
+        Utilities.removeLast(this.scopes);
+        return result;
+    }
+
+    Value call(DBSPApplyExpression expression) {
+        List<Value> arguments = new ArrayList<>();
+        for (DBSPExpression argument: expression.arguments)
+            arguments.add(this.compile(argument));
+        if (expression.function.is(DBSPClosureExpression.class)) {
+            // Inline the closure
+            DBSPClosureExpression closure = expression.function.to(DBSPClosureExpression.class);
+            this.scopes.add(new HashMap<>());
+            for (int i = 0; i < closure.parameters.length; i++) {
+                DBSPParameter parameter = closure.parameters[i];
+                this.bind(parameter.pattern, parameter.type, arguments.get(i));
+            }
+            Value result = this.compile(closure.body);
+            Utilities.removeLast(this.scopes);
+            return result;
+        }
+        if (expression.function.is(DBSPPathExpression.class)) {
+            String function = expression.function.to(DBSPPathExpression.class).path.toString();
+            if (function.startsWith("abs_") && arguments.size() == 1) {
+                Value argument = arguments.get(0);
+                if (argument.kind.isNumeric())
+                    return this.declare(argument.kind, "Math.abs(" + argument.value + ")", argument.isNull);
+            }
+        }
+        throw new Unimplemented(expression);
+    }
+
+    String generate(String className, DBSPClosureExpression closure) {
+        this.code.append("public final class ").append(className)
+                .append(" implements ").append(ICompiledClosure.class.getName()).append(" {").increase()
+                .append("final Object[] constants;").newline()
+                .append("public ").append(className).append("(Object[] constants) {").increase()
+                .append("this.constants = constants;").decrease()
+                .append("}").newline()
+                .append("public Object apply(Object[] arguments) {").increase();
+        this.scopes.add(new HashMap<>());
+        for (int i = 0; i < closure.parameters.length; i++) {
+            DBSPParameter parameter = closure.parameters[i];
+            DBSPType type = parameter.type.derefIfNeeded();
+            Value argument = this.unbox("arguments[" + i + "]", kind(type), type.mayBeNull);
+            this.bind(parameter.pattern, type, argument);
+        }
+        Value result = this.compile(closure.body);
+        this.code.append("return ").append(box(result)).append(";").decrease()
+                .append("}").decrease()
+                .append("}").newline();
+        return this.builder.toString();
+    }
+
+    /**
+     * Compile a closure to a Java class and instantiate it.
+     * Throws Unimplemented if the closure contains unsupported constructs.
+     */
+    public static ICompiledClosure compile(DBSPClosureExpression closure) {
+        ClosureCompiler compiler = new ClosureCompiler();
+        String className = "Closure" + classCount.getAndIncrement();
+        String source = compiler.generate(className, closure);
+        Logger.INSTANCE.from(compiler, 2)
+                .append(source)
+                .newline();
+        try {
+            SimpleCompiler javaCompiler = new SimpleCompiler();
+            // Each class gets its own class loader, so it can be collected when no longer used.
+            javaCompiler.setParentClassLoader(ClosureCompiler.class.getClassLoader());
+            javaCompiler.cook(source);
+            Class<?> clazz = javaCompiler.getClassLoader().loadClass(className);
+            return (ICompiledClosure) clazz.getConstructor(Object[].class)
+                    .newInstance((Object) compiler.constants.toArray());
+        } catch (CompileException | ReflectiveOperationException ex) {
+            throw new RuntimeException("Error compiling closure " + closure + "\n" + source, ex);
+        }
+    }
+}
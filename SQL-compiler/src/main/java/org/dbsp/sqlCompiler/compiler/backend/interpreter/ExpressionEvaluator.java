@@ -0,0 +1,777 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.apache.calcite.util.DateString;
+import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.*;
+import org.dbsp.sqlCompiler.ir.expression.literal.*;
+import org.dbsp.sqlCompiler.ir.pattern.*;
+import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeVec;
+import org.dbsp.sqlCompiler.ir.type.primitive.*;
+import org.dbsp.util.Unimplemented;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Evaluates expressions of the inner language over Java values.
+ * Values are represented as follows:
+ * - SQL NULL (Rust None) is Java null
+ * - integers of at most 32 bits, dates and month intervals are Integer
+ * - 64-bit integers, isize, usize, timestamps and millisecond intervals are Long
+ * - DOUBLE and FLOAT are Double and Float
+ * - DECIMAL is BigDecimal, without trailing zeros
+ * - strings are String
+ * - tuples and raw tuples are Tuple
+ * - vectors are List
+ * - closures are Closure
+ * The semantics of the operations follows the Rust runtime library sqllib.
+ */
+public class ExpressionEvaluator {
+    /**
+     * Used to evaluate variables which are not bound in the current
+     * environment, but are declared in the circuit.
+     */
+    @Nullable
+    final DBSPPartialCircuit circuit;
+
+    /**
+     * Variable bindings.
+     */
+    static class Environment {
+        @Nullable
+        final Environment parent;
+        final Map<String, Object> values;
+
+        Environment(@Nullable Environment parent) {
+            this.parent = parent;
+            this.values = new HashMap<>();
+        }
+
+        void bind(String name, @Nullable Object value) {
+            this.values.put(name, value);
+        }
+
+        @Nullable
+        Environment find(String name) {
+            Environment env = this;
+            while (env != null) {
+                if (env.values.containsKey(name))
+                    return env;
+                env = env.parent;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The value of a closure expression: the closure and the environment it was defined in.
+     */
+    static class Closure {
+        final DBSPClosureExpression expression;
+        final Environment environment;
+
+        Closure(DBSPClosureExpression expression, Environment environment) {
+            this.expression = expression;
+            this.environment = environment;
+        }
+    }
+
+    public ExpressionEvaluator(@Nullable DBSPPartialCircuit circuit) {
+        this.circuit = circuit;
+    }
+
+    /**
+     * Evaluate an expression which does not have free variables.
+     */
+    @Nullable
+    public Object evaluate(DBSPExpression expression) {
+        return this.evaluate(expression, new Environment(null));
+    }
+
+    /**
+     * Apply a closure to the specified arguments.
+     */
+    @Nullable
+    public Object apply(DBSPClosureExpression closure, Object... arguments) {
+        return this.apply(new Closure(closure, new Environment(null)), arguments);
+    }
+
+    @Nullable
+    Object apply(Closure closure, Object... arguments) {
+        DBSPParameter[] parameters = closure.expression.parameters;
+        if (parameters.length != arguments.length)
+            throw new RuntimeException("Closure " + closure.expression + " expects " +
+                    parameters.length + " arguments, but received " + arguments.length);
+        Environment env = new Environment(closure.environment);
+        for (int i = 0; i < parameters.length; i++)
+            this.bind(parameters[i].pattern, arguments[i], env);
+        return this.evaluate(closure.expression.body, env);
+    }
+
+    void bind(DBSPPattern pattern, @Nullable Object value, Environment env) {
+        if (pattern.is(DBSPIdentifierPattern.class)) {
+            env.bind(pattern.to(DBSPIdentifierPattern.class).identifier, value);
+        } else if (pattern.is(DBSPRefPattern.class)) {
+            this.bind(pattern.to(DBSPRefPattern.class).pattern, value, env);
+        } else if (pattern.is(DBSPTuplePattern.class)) {
+            DBSPPattern[] fields = pattern.to(DBSPTuplePattern.class).fields;
+            Tuple tuple = (Tuple) Objects.requireNonNull(value);
+            for (int i = 0; i < fields.length; i++)
+                this.bind(fields[i], tuple.get(i), env);
+        } else if (!pattern.is(DBSPWildcardPattern.class)) {
+            throw new Unimplemented(pattern);
+        }
+    }
+
+    @Nullable
+    Object lookup(DBSPVariablePath variable, Environment env) {
+        Environment definition = env.find(variable.variable);
+        if (definition != null)
+            return definition.values.get(variable.variable);
+        if (this.circuit != null && this.circuit.declarations.containsKey(variable.variable)) {
+            DBSPLetStatement stat = this.circuit.getDefinition(variable.variable).to(DBSPLetStatement.class);
+            return this.evaluate(Objects.requireNonNull(stat.initializer), new Environment(null));
+        }
+        throw new RuntimeException("Undefined variable " + variable.variable);
+    }
+
+    @Nullable
+    Object evaluate(DBSPExpression expression, Environment env) {
+        if (expression.is(DBSPLiteral.class))
+            return this.literal(expression.to(DBSPLiteral.class), env);
+        if (expression.is(DBSPVariablePath.class))
+            return this.lookup(expression.to(DBSPVariablePath.class), env);
+        if (expression.is(DBSPFieldExpression.class)) {
+            DBSPFieldExpression field = expression.to(DBSPFieldExpression.class);
+            Object source = this.evaluate(field.expression, env);
+            if (source == null)
+                // Field of a nullable tuple
+                return null;
+            return ((Tuple) source).get(field.fieldNo);
+        }
+        if (expression.is(DBSPTupleExpression.class))
+            return this.tuple(expression.to(DBSPTupleExpression.class).fields, env);
+        if (expression.is(DBSPRawTupleExpression.class))
+            return this.tuple(expression.to(DBSPRawTupleExpression.class).fields, env);
+        if (expression.is(DBSPBorrowExpression.class))
+            return this.evaluate(expression.to(DBSPBorrowExpression.class).expression, env);
+        if (expression.is(DBSPDerefExpression.class))
+            return this.evaluate(expression.to(DBSPDerefExpression.class).expression, env);
+        if (expression.is(DBSPCloneExpression.class))
+            return this.evaluate(expression.to(DBSPCloneExpression.class).expression, env);
+        if (expression.is(DBSPIsNullExpression.class))
+            return this.evaluate(expression.to(DBSPIsNullExpression.class).expression, env) == null;
+        if (expression.is(DBSPCastExpression.class)) {
+            DBSPCastExpression cast = expression.to(DBSPCastExpression.class);
+            return cast(this.evaluate(cast.source, env), cast.destinationType);
+        }
+        if (expression.is(DBSPAsExpression.class)) {
+            DBSPAsExpression as = expression.to(DBSPAsExpression.class);
+            return cast(this.evaluate(as.source, env), as.getNonVoidType());
+        }
+        if (expression.is(DBSPUnaryExpression.class))
+            return this.unary(expression.to(DBSPUnaryExpression.class), env);
+        if (expression.is(DBSPBinaryExpression.class))
+            return this.binary(expression.to(DBSPBinaryExpression.class), env);
+        if (expression.is(DBSPIfExpression.class)) {
+            DBSPIfExpression ifExpression = expression.to(DBSPIfExpression.class);
+            Object condition = this.evaluate(ifExpression.condition, env);
+            if (Boolean.TRUE.equals(condition))
+                return this.evaluate(ifExpression.positive, env);
+            return this.evaluate(ifExpression.negative, env);
+        }
+        if (expression.is(DBSPBlockExpression.class))
+            return this.block(expression.to(DBSPBlockExpression.class), env);
+        if (expression.is(DBSPClosureExpression.class))
+            return new Closure(expression.to(DBSPClosureExpression.class), env);
+        if (expression.is(DBSPApplyExpression.class))
+            return this.call(expression.to(DBSPApplyExpression.class), env);
+        if (expression.is(DBSPAssignmentExpression.class)) {
+            DBSPAssignmentExpression assignment = expression.to(DBSPAssignmentExpression.class);
+            if (!assignment.left.is(DBSPVariablePath.class))
+                throw new Unimplemented(expression);
+            String variable = assignment.left.to(DBSPVariablePath.class).variable;
+            Environment definition = env.find(variable);
+            if (definition == null)
+                throw new RuntimeException("Undefined variable " + variable);
+            definition.bind(variable, this.evaluate(assignment.right, env));
+            return null;
+        }
+        throw new Unimplemented(expression);
+    }
+
+    Tuple tuple(DBSPExpression[] fields, Environment env) {
+        Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            values[i] = this.evaluate(fields[i], env);
+        return new Tuple(values);
+    }
+
+    @Nullable
+    Object literal(DBSPLiteral literal, Environment env) {
+        if (literal.isNull)
+            return null;
+        if (literal.is(DBSPVecLiteral.class)) {
+            List<Object> result = new ArrayList<>();
+            for (DBSPExpression e: literal.to(DBSPVecLiteral.class).data)
+                result.add(this.evaluate(e, env));
+            return result;
+        }
+        if (literal.is(DBSPZSetLiteral.class))
+            throw new Unimplemented(literal);
+        return normalize(literal.value);
+    }
+
+    @Nullable
+    Object block(DBSPBlockExpression block, Environment env) {
+        Environment inner = new Environment(env);
+        for (DBSPStatement stat: block.contents) {
+            if (stat.is(DBSPLetStatement.class)) {
+                DBSPLetStatement let = stat.to(DBSPLetStatement.class);
+                Object value = null;
+                if (let.initializer != null)
+                    value = this.evaluate(let.initializer, inner);
+                // Shadow any previous definition
+                inner = new Environment(inner);
+                inner.bind(let.variable, value);
+            } else if (stat.is(DBSPExpressionStatement.class)) {
+                this.evaluate(stat.to(DBSPExpressionStatement.class).expression, inner);
+            } else {
+                throw new Unimplemented(stat);
+            }
+        }
+        if (block.lastExpression == null)
+            return null;
+        return this.evaluate(block.lastExpression, inner);
+    }
+
+    @Nullable
+    Object call(DBSPApplyExpression expression, Environment env) {
+        Object[] arguments = new Object[expression.arguments.length];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = this.evaluate(expression.arguments[i], env);
+        if (expression.function.is(DBSPPathExpression.class)) {
+            String function = expression.function.to(DBSPPathExpression.class).path.toString();
+            if (function.equals("vec!")) {
+                List<Object> result = new ArrayList<>();
+                for (Object argument: arguments)
+                    result.add(argument);
+                return result;
+            } else if (function.startsWith("abs_")) {
+                if (arguments[0] == null)
+                    return null;
+                return abs(arguments[0]);
+            }
+            throw new Unimplemented(expression);
+        }
+        Object function = this.evaluate(expression.function, env);
+        if (function instanceof Closure)
+            return this.apply((Closure) function, arguments);
+        throw new Unimplemented(expression);
+    }
+
+    @Nullable
+    Object unary(DBSPUnaryExpression expression, Environment env) {
+        Object source = this.evaluate(expression.source, env);
+        switch (expression.operation) {
+            case "-":
+                if (source == null)
+                    return null;
+                return negate(source);
+            case "!":
+                if (source == null)
+                    return null;
+                return !(Boolean) source;
+            case "wrap_bool":
+            case "is_true":
+                return Boolean.TRUE.equals(source);
+            case "is_false":
+                return Boolean.FALSE.equals(source);
+            case "is_not_true":
+                return !Boolean.TRUE.equals(source);
+            case "is_not_false":
+                return !Boolean.FALSE.equals(source);
+            case "indicator":
+                return source == null ? 0L : 1L;
+            default:
+                throw new Unimplemented(expression);
+        }
+    }
+
+    @Nullable
+    Object binary(DBSPBinaryExpression expression, Environment env) {
+        Object left = this.evaluate(expression.left, env);
+        Object right = this.evaluate(expression.right, env);
+        String operation = expression.operation;
+        DBSPType leftType = expression.left.getNonVoidType();
+        boolean isBool = leftType.is(DBSPTypeBool.class);
+        switch (operation) {
+            case "&&":
+                // SQL three-valued logic
+                if (Boolean.FALSE.equals(left) || Boolean.FALSE.equals(right))
+                    return false;
+                if (left == null || right == null)
+                    return null;
+                return true;
+            case "||":
+                if (isBool) {
+                    if (Boolean.TRUE.equals(left) || Boolean.TRUE.equals(right))
+                        return true;
+                    if (left == null || right == null)
+                        return null;
+                    return false;
+                }
+                if (left == null || right == null)
+                    return null;
+                // String concatenation
+                return left.toString() + right;
+            case "is_distinct":
+                if (left == null || right == null)
+                    return left != right;
+                return compare(left, right) != 0;
+            case "agg_plus":
+                if (left == null)
+                    return right;
+                if (right == null)
+                    return left;
+                return arithmetic("+", left, right);
+            case "agg_min":
+            case "agg_max":
+                if (left == null)
+                    return right;
+                if (right == null)
+                    return left;
+                return arithmetic(operation.substring(4), left, right);
+            case "mul_weight":
+                if (left == null)
+                    return null;
+                return arithmetic("*", left, cast(right, leftType.setMayBeNull(false)));
+            default:
+                break;
+        }
+        if (left == null || right == null)
+            return null;
+        switch (operation) {
+            case "==":
+                return compare(left, right) == 0;
+            case "!=":
+                return compare(left, right) != 0;
+            case "<":
+                return compare(left, right) < 0;
+            case ">":
+                return compare(left, right) > 0;
+            case "<=":
+                return compare(left, right) <= 0;
+            case ">=":
+                return compare(left, right) >= 0;
+            default:
+                break;
+        }
+        // Timestamps and millisecond intervals are numbers of milliseconds,
+        // but arithmetic on dates and month intervals needs calendar computations.
+        DBSPType rightType = expression.right.getNonVoidType();
+        if (leftType.is(DBSPTypeDate.class) || leftType.is(DBSPTypeMonthsInterval.class) ||
+                rightType.is(DBSPTypeDate.class) || rightType.is(DBSPTypeMonthsInterval.class))
+            throw new Unimplemented(expression);
+        return arithmetic(operation, left, right);
+    }
+
+    /**
+     * Canonical representation of a value, used to make
+     * equal SQL values also equal as Java objects.
+     */
+    @Nullable
+    static Object normalize(@Nullable Object value) {
+        if (value instanceof BigDecimal)
+            return ((BigDecimal) value).stripTrailingZeros();
+        return value;
+    }
+
+    public static int compare(Object left, Object right) {
+        if (left.equals(right))
+            return 0;
+        if (left instanceof Number && right instanceof Number && left.getClass() != right.getClass()) {
+            if (left instanceof BigDecimal || right instanceof BigDecimal)
+                return toDecimal(left).compareTo(toDecimal(right));
+            if (isIntegral(left) && isIntegral(right))
+                return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left instanceof Comparable) {
+            @SuppressWarnings("unchecked")
+            Comparable<Object> comparable = (Comparable<Object>) left;
+            return comparable.compareTo(right);
+        }
+        if (left instanceof Tuple && right instanceof Tuple) {
+            Tuple l = (Tuple) left;
+            Tuple r = (Tuple) right;
+            for (int i = 0; i < Math.min(l.size(), r.size()); i++) {
+                Object lf = l.get(i);
+                Object rf = r.get(i);
+                if (lf == null || rf == null) {
+                    // None < Some in Rust
+                    if (lf != rf)
+                        return lf == null ? -1 : 1;
+                    continue;
+                }
+                int c = compare(lf, rf);
+                if (c != 0)
+                    return c;
+            }
+            return Integer.compare(l.size(), r.size());
+        }
+        throw new RuntimeException("Cannot compare " + left + " and " + right);
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short;
+    }
+
+    static BigDecimal toDecimal(Object value) {
+        if (value instanceof BigDecimal)
+            return (BigDecimal) value;
+        if (isIntegral(value))
+            return BigDecimal.valueOf(((Number) value).longValue());
+        return BigDecimal.valueOf(((Number) value).doubleValue());
+    }
+
+    public static Object negate(Object value) {
+        if (value instanceof Integer)
+            return Math.negateExact((Integer) value);
+        if (value instanceof Long)
+            return Math.negateExact((Long) value);
+        if (value instanceof Double)
+            return -(Double) value;
+        if (value instanceof Float)
+            return -(Float) value;
+        if (value instanceof BigDecimal)
+            return normalize(((BigDecimal) value).negate());
+        throw new Unimplemented("Negation of", value);
+    }
+
+    public static Object abs(Object value) {
+        if (value instanceof Integer)
+            return Math.abs((Integer) value);
+        if (value instanceof Long)
+            return Math.abs((Long) value);
+        if (value instanceof Double)
+            return Math.abs((Double) value);
+        if (value instanceof Float)
+            return Math.abs((Float) value);
+        if (value instanceof BigDecimal)
+            return ((BigDecimal) value).abs();
+        throw new Unimplemented("abs of", value);
+    }
+
+    /**
+     * Apply an arithmetic operation on two non-null values.
+     * The operation is performed in the type of the left operand,
+     * like in the generated code.
+     * @return null for integer division by 0.
+     */
+    @Nullable
+    public static Object arithmetic(String operation, Object left, Object right) {
+        if (operation.equals("min"))
+            return compare(left, right) <= 0 ? left : right;
+        if (operation.equals("max"))
+            return compare(left, right) >= 0 ? left : right;
+        if (left instanceof Boolean) {
+            boolean l = (Boolean) left;
+            boolean r = (Boolean) right;
+            switch (operation) {
+                case "&":
+                    return l & r;
+                case "|":
+                    return l | r;
+                case "^":
+                    return l ^ r;
+                default:
+                    break;
+            }
+        } else if (left instanceof Integer) {
+            int l = (Integer) left;
+            int r = ((Number) right).intValue();
+            switch (operation) {
+                case "+":
+                    return Math.addExact(l, r);
+                case "-":
+                    return Math.subtractExact(l, r);
+                case "*":
+                    return Math.multiplyExact(l, r);
+                case "/":
+                    return r == 0 ? null : l / r;
+                case "%":
+                    return l % r;
+                case "&":
+                    return l & r;
+                case "|":
+                    return l | r;
+                case "^":
+                    return l ^ r;
+                case "<<":
+                    return l << r;
+                case ">>":
+                    return l >> r;
+                default:
+                    break;
+            }
+        } else if (left instanceof Long) {
+            long l = (Long) left;
+            long r = ((Number) right).longValue();
+            switch (operation) {
+                case "+":
+                    return Math.addExact(l, r);
+                case "-":
+                    return Math.subtractExact(l, r);
+                case "*":
+                    return Math.multiplyExact(l, r);
+                case "/":
+                    return r == 0 ? null : l / r;
+                case "%":
+                    return l % r;
+                case "&":
+                    return l & r;
+                case "|":
+                    return l | r;
+                case "^":
+                    return l ^ r;
+                case "<<":
+                    return l << r;
+                case ">>":
+                    return l >> r;
+                default:
+                    break;
+            }
+        } else if (left instanceof Double) {
+            double l = (Double) left;
+            double r = ((Number) right).doubleValue();
+            switch (operation) {
+                case "+":
+                    return l + r;
+                case "-":
+                    return l - r;
+                case "*":
+                    return l * r;
+                case "/":
+                    return l / r;
+                case "%":
+                    return l % r;
+                default:
+                    break;
+            }
+        } else if (left instanceof Float) {
+            float l = (Float) left;
+            float r = ((Number) right).floatValue();
+            switch (operation) {
+                case "+":
+                    return l + r;
+                case "-":
+                    return l - r;
+                case "*":
+                    return l * r;
+                case "/":
+                    return l / r;
+                case "%":
+                    return l % r;
+                default:
+                    break;
+            }
+        } else if (left instanceof BigDecimal) {
+            BigDecimal l = (BigDecimal) left;
+            BigDecimal r = toDecimal(right);
+            switch (operation) {
+                case "+":
+                    return normalize(l.add(r));
+                case "-":
+                    return normalize(l.subtract(r));
+                case "*":
+                    return normalize(l.multiply(r));
+                case "/":
+                    if (r.signum() == 0)
+                        return null;
+                    return normalize(l.divide(r, MathContext.DECIMAL128));
+                case "%":
+                    return normalize(l.remainder(r));
+                default:
+                    break;
+            }
+        }
+        throw new Unimplemented("Operation " + operation + " on " + left + " and " + right, left);
+    }
+
+    /**
+     * Convert a value to the specified type.
+     */
+    @Nullable
+    public static Object cast(@Nullable Object value, DBSPType type) {
+        if (value == null) {
+            if (!type.mayBeNull)
+                throw new RuntimeException("Cast of NULL value to non-nullable type " + type);
+            return null;
+        }
+        if (type.is(DBSPTypeInteger.class)) {
+            DBSPTypeInteger integer = type.to(DBSPTypeInteger.class);
+            if (integer.getWidth() <= 32)
+                return (int) toLong(value, type);
+            return toLong(value, type);
+        }
+        if (type.is(DBSPTypeISize.class) || type.is(DBSPTypeUSize.class) ||
+                type.is(DBSPTypeTimestamp.class) || type.is(DBSPTypeMillisInterval.class)) {
+            if (value instanceof String)
+                throw new Unimplemented("Cast from string to " + type, type);
+            return toLong(value, type);
+        }
+        if (type.is(DBSPTypeDate.class) || type.is(DBSPTypeMonthsInterval.class)) {
+            if (value instanceof String)
+                throw new Unimplemented("Cast from string to " + type, type);
+            return (int) toLong(value, type);
+        }
+        if (type.is(DBSPTypeDouble.class)) {
+            if (value instanceof String)
+                return Double.parseDouble(((String) value).trim());
+            if (value instanceof Boolean)
+                return (Boolean) value ? 1.0 : 0.0;
+            return ((Number) value).doubleValue();
+        }
+        if (type.is(DBSPTypeFloat.class)) {
+            if (value instanceof String)
+                return Float.parseFloat(((String) value).trim());
+            if (value instanceof Boolean)
+                return (Boolean) value ? 1.0F : 0.0F;
+            return ((Number) value).floatValue();
+        }
+        if (type.is(DBSPTypeDecimal.class)) {
+            if (value instanceof String)
+                return normalize(new BigDecimal(((String) value).trim()));
+            if (value instanceof Boolean)
+                return (Boolean) value ? BigDecimal.ONE : BigDecimal.ZERO;
+            return normalize(toDecimal(value));
+        }
+        if (type.is(DBSPTypeBool.class)) {
+            if (value instanceof Boolean)
+                return value;
+            if (value instanceof String)
+                return ((String) value).trim().equalsIgnoreCase("true");
+            return ((Number) value).doubleValue() != 0;
+        }
+        if (type.is(DBSPTypeString.class) || type.is(DBSPTypeStr.class))
+            return value.toString();
+        // Other casts do not change the representation, e.g., casts
+        // that only change the nullability of tuple fields.
+        return value;
+    }
+
+    static long toLong(Object value, DBSPType type) {
+        if (value instanceof String)
+            return Long.parseLong(((String) value).trim());
+        if (value instanceof Boolean)
+            return (Boolean) value ? 1 : 0;
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+        throw new Unimplemented("Cast of " + value + " to " + type, type);
+    }
+
+    /**
+     * Convert a value produced by the interpreter to a constant expression of the specified type.
+     */
+    public static DBSPExpression toExpression(@Nullable Object value, DBSPType type) {
+        type = type.derefIfNeeded();
+        if (value == null)
+            return DBSPLiteral.none(type);
+        boolean mayBeNull = type.mayBeNull;
+        if (type.is(DBSPTypeTuple.class) || type.is(DBSPTypeRawTuple.class)) {
+            DBSPTypeTupleBase tupleType = type.to(DBSPTypeTupleBase.class);
+            Tuple tuple = (Tuple) value;
+            DBSPExpression[] fields = new DBSPExpression[tuple.size()];
+            for (int i = 0; i < fields.length; i++)
+                fields[i] = toExpression(tuple.get(i), tupleType.getFieldType(i));
+            if (type.is(DBSPTypeRawTuple.class))
+                return new DBSPRawTupleExpression(fields);
+            return new DBSPTupleExpression(null, mayBeNull, fields);
+        }
+        if (type.is(DBSPTypeBool.class))
+            return new DBSPBoolLiteral((Boolean) value, mayBeNull);
+        if (type.is(DBSPTypeInteger.class)) {
+            DBSPTypeInteger integer = type.to(DBSPTypeInteger.class);
+            if (integer.getWidth() == 32)
+                return integer.signed ?
+                        new DBSPI32Literal((Integer) value, mayBeNull) :
+                        new DBSPU32Literal((Integer) value, mayBeNull);
+            if (integer.getWidth() == 64)
+                return integer.signed ?
+                        new DBSPI64Literal((Long) value, mayBeNull) :
+                        new DBSPU64Literal((Long) value, mayBeNull);
+        }
+        if (type.is(DBSPTypeISize.class))
+            return new DBSPISizeLiteral((Long) value, mayBeNull);
+        if (type.is(DBSPTypeUSize.class))
+            return new DBSPUSizeLiteral((Long) value, mayBeNull);
+        if (type.is(DBSPTypeDouble.class))
+            return new DBSPDoubleLiteral((Double) value, mayBeNull);
+        if (type.is(DBSPTypeFloat.class))
+            return new DBSPFloatLiteral((Float) value, mayBeNull);
+        if (type.is(DBSPTypeString.class))
+            return new DBSPStringLiteral((String) value, mayBeNull);
+        if (type.is(DBSPTypeStr.class))
+            return new DBSPStrLiteral((String) value, mayBeNull);
+        if (type.is(DBSPTypeDecimal.class))
+            return new DBSPDecimalLiteral(null, type, (BigDecimal) value);
+        if (type.is(DBSPTypeDate.class))
+            return new DBSPDateLiteral(null, type, DateString.fromDaysSinceEpoch((Integer) value));
+        if (type.is(DBSPTypeTimestamp.class))
+            return new DBSPTimestampLiteral(null, type, (Long) value);
+        if (type.is(DBSPTypeMillisInterval.class))
+            return new DBSPIntervalMillisLiteral(null, type, value);
+        if (type.is(DBSPTypeMonthsInterval.class))
+            return new DBSPIntervalMonthsLiteral(null, type, value);
+        if (type.is(DBSPTypeVec.class)) {
+            DBSPType elementType = type.to(DBSPTypeVec.class).getElementType();
+            List<?> list = (List<?>) value;
+            if (list.isEmpty())
+                return new DBSPVecLiteral(elementType);
+            DBSPExpression[] data = new DBSPExpression[list.size()];
+            for (int i = 0; i < data.length; i++)
+                data[i] = toExpression(list.get(i), elementType);
+            return new DBSPVecLiteral(data);
+        }
+        throw new Unimplemented("Converting value " + value + " to type " + type, type);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Differential testing of incremental circuits.
+ * Runs an incremental circuit on a sequence of changes, and checks that
+ * after each step the sum of all its outputs is the output of the
+ * corresponding non-incremental circuit applied to the sum of all inputs.
+ * Both circuits must be compiled from the same program, and must have
+ * the same inputs, in the same order.
+ */
+public class IncrementalChecker implements IModule {
+    /**
+     * Thrown when the outputs of the two circuits differ.
+     */
+    public static class Mismatch extends RuntimeException {
+        Mismatch(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Description of one step of the incremental circuit.
+     */
+    public static class Step {
+        /**
+         * Number of changed rows in all inputs.
+         */
+        public final int changes;
+        /**
+         * Time taken by the incremental circuit to process the changes.
+         */
+        public final long nanos;
+
+        Step(int changes, long nanos) {
+            this.changes = changes;
+            this.nanos = nanos;
+        }
+    }
+
+    final DBSPCircuit nonIncremental;
+    final DBSPCircuit incremental;
+
+    public IncrementalChecker(DBSPCircuit nonIncremental, DBSPCircuit incremental) {
+        if (!nonIncremental.getInputTables().equals(incremental.getInputTables()))
+            throw new RuntimeException("Circuits have different inputs: " +
+                    nonIncremental.getInputTables() + " and " + incremental.getInputTables());
+        this.nonIncremental = nonIncremental;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Run the check.
+     * @param steps  For each step one change for each circuit input,
+     *               e.g., as produced by IncrementalWorkload.
+     * @return       A description of each step.
+     * @throws Mismatch if the outputs differ at some step.
+     */
+    public List<Step> check(List<List<ZSet>> steps) {
+        CircuitInterpreter full = new CircuitInterpreter(this.nonIncremental);
+        CircuitInterpreter delta = new CircuitInterpreter(this.incremental);
+        List<ZSet> inputs = new ArrayList<>();
+        List<ZSet> outputs = new ArrayList<>();
+        List<Step> result = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            List<ZSet> changes = steps.get(i);
+            int changed = 0;
+            for (int j = 0; j < changes.size(); j++) {
+                if (inputs.size() <= j)
+                    inputs.add(new ZSet());
+                inputs.get(j).add(changes.get(j));
+                changed += changes.get(j).size();
+            }
+            long start = System.nanoTime();
+            List<ZSet> produced = delta.step(changes);
+            long nanos = System.nanoTime() - start;
+            result.add(new Step(changed, nanos));
+            Logger.INSTANCE.from(this, 1)
+                    .append("Step ")
+                    .append(i)
+                    .append(": ")
+                    .append(changed)
+                    .append(" changes took ")
+                    .append(nanos / 1000)
+                    .append("us")
+                    .newline();
+
+            // The non-incremental circuit has no state, so it can be executed on the whole input.
+            List<ZSet> expected = full.step(inputs);
+            for (int j = 0; j < produced.size(); j++) {
+                if (outputs.size() <= j)
+                    outputs.add(new ZSet());
+                outputs.get(j).add(produced.get(j));
+                if (!outputs.get(j).equals(expected.get(j)))
+                    throw new Mismatch("Output " + j + " differs after step " + i +
+                            ": incremental " + outputs.get(j) + ", expected " + expected.get(j));
+            }
+        }
+        return result;
+    }
+}
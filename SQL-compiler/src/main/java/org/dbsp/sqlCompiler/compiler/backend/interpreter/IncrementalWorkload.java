@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.util.Utilities;
+
+import java.util.*;
+
+/**
+ * Generates random workloads for incremental circuits.
+ * The contents of each table is split into a sequence of changes.
+ * Each change inserts a random batch of rows, and may retract some
+ * of the rows inserted by earlier changes.  Retracted rows are inserted
+ * again by a later change, so the sum of all the changes to a table
+ * is always the original table contents.
+ */
+public class IncrementalWorkload {
+    final long seed;
+    final Random random;
+    /**
+     * Maximum number of rows inserted by a change.
+     */
+    final int maxBatchSize;
+    /**
+     * Probability that a change retracts a row, for each row that it inserts.
+     */
+    final double retractionProbability;
+
+    public IncrementalWorkload(long seed, int maxBatchSize, double retractionProbability) {
+        if (maxBatchSize < 1)
+            throw new RuntimeException("Batch size must be positive: " + maxBatchSize);
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.maxBatchSize = maxBatchSize;
+        this.retractionProbability = retractionProbability;
+    }
+
+    /**
+     * Called when starting to execute a test file.
+     * Derives the random seed from the seed of this workload and the file path,
+     * so the workloads generated for a file do not depend on the files
+     * executed before it, or on the worker which executes it.
+     * @param file  Path of the test file.
+     */
+    public void startFile(String file) {
+        this.random.setSeed(31 * this.seed + file.hashCode());
+    }
+
+    /**
+     * Split the contents of a table into a sequence of changes.
+     * Each row is retracted at most once, so the sequence is finite.
+     */
+    public List<ZSet> split(ZSet table) {
+        List<Map.Entry<Object, Long>> toInsert = new ArrayList<>(table.entrySet());
+        Collections.shuffle(toInsert, this.random);
+        // Rows inserted by previous changes which can be retracted
+        List<Map.Entry<Object, Long>> inserted = new ArrayList<>();
+        Set<Object> retracted = new HashSet<>();
+        List<ZSet> result = new ArrayList<>();
+        while (!toInsert.isEmpty()) {
+            ZSet change = new ZSet();
+            int previous = inserted.size();
+            int size = 1 + this.random.nextInt(this.maxBatchSize);
+            for (int i = 0; i < size && !toInsert.isEmpty(); i++) {
+                Map.Entry<Object, Long> row = Utilities.removeLast(toInsert);
+                change.add(row.getKey(), row.getValue());
+                inserted.add(row);
+            }
+            for (int i = 0; i < size && previous > 0; i++) {
+                if (this.random.nextDouble() >= this.retractionProbability)
+                    continue;
+                int index = this.random.nextInt(previous);
+                Map.Entry<Object, Long> row = inserted.get(index);
+                if (!retracted.add(row.getKey()))
+                    continue;
+                change.add(row.getKey(), -row.getValue());
+                inserted.remove(index);
+                previous--;
+                toInsert.add(this.random.nextInt(toInsert.size() + 1), row);
+            }
+            result.add(change);
+        }
+        return result;
+    }
+
+    /**
+     * Generate a workload for a set of tables.
+     * @param tables  Contents of the tables.
+     * @return        A list of steps; each step contains one change for each table.
+     *                Tables with fewer changes receive empty changes in the last steps.
+     */
+    public List<List<ZSet>> generate(List<ZSet> tables) {
+        List<List<ZSet>> changes = new ArrayList<>();
+        int steps = 0;
+        for (ZSet table: tables) {
+            List<ZSet> split = this.split(table);
+            changes.add(split);
+            steps = Math.max(steps, split.size());
+        }
+        List<List<ZSet>> result = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            List<ZSet> step = new ArrayList<>();
+            for (List<ZSet> change: changes)
+                step.add(i < change.size() ? change.get(i) : new ZSet());
+            result.add(step);
+        }
+        return result;
+    }
+}
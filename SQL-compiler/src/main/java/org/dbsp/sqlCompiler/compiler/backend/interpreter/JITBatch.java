@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITParameter;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITBoolType;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The native arguments of a call of a function that uses the BATCH calling
+ * convention, in the layout described by JITFunction.CallingConvention.BATCH.
+ * A pointer to N consecutive values of a column is represented by an array
+ * of N values, using the representation of JITRow; bitmaps are byte arrays,
+ * and N is a Long.
+ */
+public class JITBatch {
+    public final JITFunction function;
+    /**
+     * Number of rows in the batch.
+     */
+    public final int size;
+    /**
+     * The native arguments, in order.
+     */
+    public final List<Object> arguments;
+    /**
+     * For each parameter and column, the index in 'arguments' of the column values.
+     * If the column is nullable its null bitmap follows.
+     */
+    final int[][] columnIndex;
+    /**
+     * Index in 'arguments' of the result bitmap; -1 if the result is unit.
+     */
+    final int resultIndex;
+
+    public JITBatch(JITFunction function, int size) {
+        if (!function.canBatch())
+            throw new RuntimeException("Function cannot use the batch calling convention");
+        this.function = function;
+        this.size = size;
+        this.arguments = new ArrayList<>();
+        this.columnIndex = new int[function.parameters.size()][];
+        for (int i = 0; i < function.parameters.size(); i++) {
+            JITRowType type = function.parameters.get(i).type;
+            this.columnIndex[i] = new int[type.size()];
+            for (int column = 0; column < type.size(); column++) {
+                this.columnIndex[i][column] = this.arguments.size();
+                this.arguments.add(new Object[size]);
+                if (type.isNullable(column))
+                    this.arguments.add(new byte[bitmapSize(size)]);
+            }
+        }
+        this.arguments.add((long) size);
+        if (function.resultType.is(JITBoolType.class)) {
+            this.resultIndex = this.arguments.size();
+            this.arguments.add(new byte[bitmapSize(size)]);
+        } else {
+            this.resultIndex = -1;
+        }
+    }
+
+    /**
+     * Number of bytes of a bitmap with a bit for each of 'size' rows.
+     */
+    public static int bitmapSize(int size) {
+        return (size + 7) / 8;
+    }
+
+    public static boolean getBit(byte[] bitmap, int index) {
+        return (bitmap[index / 8] & (1 << (index % 8))) != 0;
+    }
+
+    public static void setBit(byte[] bitmap, int index, boolean value) {
+        if (value)
+            bitmap[index / 8] |= (byte) (1 << (index % 8));
+        else
+            bitmap[index / 8] &= (byte) ~(1 << (index % 8));
+    }
+
+    Object[] values(int parameter, int column) {
+        return (Object[]) this.arguments.get(this.columnIndex[parameter][column]);
+    }
+
+    byte[] nulls(int parameter, int column) {
+        return (byte[]) this.arguments.get(this.columnIndex[parameter][column] + 1);
+    }
+
+    /**
+     * Store a row in the columns of a parameter.
+     * @param parameter  Index of the parameter.
+     * @param index      Index of the row in the batch.
+     */
+    public void setRow(int parameter, int index, JITRow row) {
+        JITParameter param = this.function.parameters.get(parameter);
+        for (int column = 0; column < param.type.size(); column++) {
+            this.values(parameter, column)[index] = row.get(column);
+            if (param.type.isNullable(column))
+                setBit(this.nulls(parameter, column), index, row.isNull(column));
+        }
+    }
+
+    /**
+     * Read a row from the columns of a parameter.
+     * @param parameter  Index of the parameter.
+     * @param index      Index of the row in the batch.
+     * @param row        Row that receives the values.
+     */
+    public void getRow(int parameter, int index, JITRow row) {
+        JITParameter param = this.function.parameters.get(parameter);
+        for (int column = 0; column < param.type.size(); column++) {
+            row.set(column, this.values(parameter, column)[index]);
+            if (param.type.isNullable(column))
+                row.setNull(column, getBit(this.nulls(parameter, column), index));
+        }
+    }
+
+    public void setResult(int index, boolean value) {
+        if (this.resultIndex < 0)
+            throw new RuntimeException("Function does not return a Bool");
+        setBit((byte[]) this.arguments.get(this.resultIndex), index, value);
+    }
+
+    /**
+     * The result of the function for a row; null if the function returns unit.
+     */
+    @Nullable
+    public Boolean getResult(int index) {
+        if (this.resultIndex < 0)
+            return null;
+        return getBit((byte[]) this.arguments.get(this.resultIndex), index);
+    }
+}
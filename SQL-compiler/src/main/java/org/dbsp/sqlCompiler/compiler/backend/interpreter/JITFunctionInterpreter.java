@@ -0,0 +1,450 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITParameter;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.*;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.primitive.*;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+import org.dbsp.util.Unimplemented;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes a JITFunction, by interpreting its blocks one instruction at a time.
+ * This is a reference implementation of the semantics of the JIT IR,
+ * used to check the code generated for closures without invoking the JIT.
+ * Scalar values use the representation of the ExpressionEvaluator;
+ * rows are represented by JITRow objects.
+ * The JIT may read values which were never computed, e.g., the result
+ * of a function that is not called because an argument is null,
+ * as long as the result is never used.  Such values are represented
+ * as Java nulls, and operations on them produce nulls.
+ */
+public class JITFunctionInterpreter implements IModule {
+    final JITFunction function;
+    final Map<Long, JITBlock> blocks;
+    /**
+     * Value of each instruction, parameter, and block parameter computed so far.
+     */
+    final Map<Long, Object> values;
+
+    public JITFunctionInterpreter(JITFunction function) {
+        this.function = function;
+        this.blocks = new HashMap<>();
+        for (JITBlock block: function.blocks)
+            Utilities.putNew(this.blocks, block.getId(), block);
+        this.values = new HashMap<>();
+    }
+
+    /**
+     * The type used by the ExpressionEvaluator for values of a JIT type.
+     */
+    static DBSPType toDBSPType(JITScalarType type) {
+        if (type.is(JITBoolType.class))
+            return DBSPTypeBool.INSTANCE;
+        if (type.is(JITI16Type.class))
+            return DBSPTypeInteger.SIGNED_16;
+        if (type.is(JITI32Type.class))
+            return DBSPTypeInteger.SIGNED_32;
+        if (type.is(JITI64Type.class))
+            return DBSPTypeInteger.SIGNED_64;
+        if (type.is(JITISizeType.class))
+            return DBSPTypeISize.INSTANCE;
+        if (type.is(JITUSizeType.class))
+            return DBSPTypeUSize.INSTANCE;
+        if (type.is(JITF32Type.class))
+            return DBSPTypeFloat.INSTANCE;
+        if (type.is(JITF64Type.class))
+            return DBSPTypeDouble.INSTANCE;
+        if (type.is(JITStringType.class))
+            return DBSPTypeString.INSTANCE;
+        if (type.is(JITDateType.class))
+            return DBSPTypeDate.INSTANCE;
+        if (type.is(JITTimestampType.class))
+            return DBSPTypeTimestamp.INSTANCE;
+        if (type.is(JITUnitType.class))
+            return new DBSPTypeTuple();
+        throw new Unimplemented("Values of JIT type " + type);
+    }
+
+    @Nullable
+    static Object convert(@Nullable Object value, JITType type) {
+        if (value == null)
+            return null;
+        return ExpressionEvaluator.cast(value, toDBSPType(type.to(JITScalarType.class)));
+    }
+
+    @Nullable
+    Object get(JITInstructionReference reference) {
+        return this.values.get(reference.getId());
+    }
+
+    JITRow getRow(JITInstructionReference reference) {
+        Object value = this.get(reference);
+        if (!(value instanceof JITRow))
+            throw new RuntimeException("Value " + reference + " is not a row: " + value);
+        return (JITRow) value;
+    }
+
+    static String operationSymbol(JITBinaryInstruction.Operation operation) {
+        switch (operation) {
+            case ADD:
+                return "+";
+            case SUB:
+                return "-";
+            case MUL:
+                return "*";
+            case DIV:
+                return "/";
+            case AND:
+                return "&";
+            case OR:
+                return "|";
+            case XOR:
+                return "^";
+            case MAX:
+                return "max";
+            case MIN:
+                return "min";
+            default:
+                throw new Unimplemented("JIT operation " + operation);
+        }
+    }
+
+    @Nullable
+    static Object binary(JITBinaryInstruction instruction, @Nullable Object left, @Nullable Object right) {
+        if (left == null || right == null)
+            return null;
+        switch (instruction.operation) {
+            case EQ:
+                return ExpressionEvaluator.compare(left, right) == 0;
+            case NEQ:
+                return ExpressionEvaluator.compare(left, right) != 0;
+            case LT:
+                return ExpressionEvaluator.compare(left, right) < 0;
+            case GT:
+                return ExpressionEvaluator.compare(left, right) > 0;
+            case LTE:
+                return ExpressionEvaluator.compare(left, right) <= 0;
+            case GTE:
+                return ExpressionEvaluator.compare(left, right) >= 0;
+            default:
+                Object result = ExpressionEvaluator.arithmetic(
+                        operationSymbol(instruction.operation), left, right);
+                // E.g., integer division by zero, which the JIT does not handle.
+                if (result == null)
+                    throw new RuntimeException("Instruction " + instruction + " cannot be evaluated for " +
+                            left + ", " + right);
+                return convert(result, instruction.type);
+        }
+    }
+
+    @Nullable
+    static Object unary(JITUnaryInstruction instruction, @Nullable Object operand) {
+        if (operand == null)
+            return null;
+        switch (instruction.operation) {
+            case NEG:
+                return ExpressionEvaluator.negate(operand);
+            case NOT:
+                if (operand instanceof Boolean)
+                    return !(Boolean) operand;
+                if (operand instanceof Integer)
+                    return ~(Integer) operand;
+                if (operand instanceof Long)
+                    return ~(Long) operand;
+                break;
+            default:
+                break;
+        }
+        throw new Unimplemented("JIT instruction " + instruction);
+    }
+
+    static final long MILLIS_PER_DAY = 86400 * 1000;
+
+    static long timestampField(String field, long millis) {
+        LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        switch (field) {
+            case "second":
+                return date.getSecond();
+            case "minute":
+                return date.getMinute();
+            case "hour":
+                return date.getHour();
+            case "day":
+                return date.getDayOfMonth();
+            case "day_of_week":
+                // Sunday is 1
+                return date.getDayOfWeek().getValue() % 7 + 1;
+            case "iso_day_of_week":
+                return date.getDayOfWeek().getValue();
+            case "day_of_year":
+                return date.getDayOfYear();
+            case "week":
+                return date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            case "month":
+                return date.getMonthValue();
+            case "year":
+                return date.getYear();
+            case "isoyear":
+                return date.get(IsoFields.WEEK_BASED_YEAR);
+            case "quarter":
+                return (date.getMonthValue() - 1) / 3 + 1;
+            case "decade":
+                return date.getYear() / 10;
+            case "century":
+                return (date.getYear() + 99) / 100;
+            case "millennium":
+                return (date.getYear() + 999) / 1000;
+            case "epoch":
+                return millis / 1000;
+            case "millisecond":
+                return date.getSecond() * 1000L + date.getNano() / 1_000_000;
+            case "microsecond":
+                return date.getSecond() * 1_000_000L + date.getNano() / 1000;
+            case "floor_week": {
+                // Start of the week, which begins on Sunday
+                long day = Math.floorDiv(millis, MILLIS_PER_DAY);
+                long dayOfWeek = date.getDayOfWeek().getValue() % 7;
+                return (day - dayOfWeek) * MILLIS_PER_DAY;
+            }
+            default:
+                throw new Unimplemented("JIT function dbsp.timestamp." + field);
+        }
+    }
+
+    /**
+     * Execute a call to a function of the JIT runtime.
+     */
+    @Nullable
+    static Object call(JITFunctionCall call, List<Object> arguments) {
+        for (Object argument: arguments)
+            if (argument == null)
+                return null;
+        String name = call.functionName;
+        // Where the strings are allocated does not matter here
+        if (name.equals("dbsp.str.concat_clone") || name.equals("dbsp.str.concat"))
+            return arguments.get(0).toString() + arguments.get(1).toString();
+        if (name.equals("dbsp.str.clone"))
+            return arguments.get(0);
+        String timestamp = "dbsp.timestamp.";
+        if (name.startsWith(timestamp))
+            return convert(timestampField(name.substring(timestamp.length()),
+                    ((Number) arguments.get(0)).longValue()), call.returnType);
+        String date = "dbsp.date.";
+        if (name.startsWith(date))
+            return convert(timestampField(name.substring(date.length()),
+                    ((Number) arguments.get(0)).longValue() * MILLIS_PER_DAY), call.returnType);
+        throw new Unimplemented("JIT function " + name);
+    }
+
+    @Nullable
+    Object execute(JITInstruction instruction) {
+        if (instruction.is(JITBinaryInstruction.class)) {
+            JITBinaryInstruction binary = instruction.to(JITBinaryInstruction.class);
+            return binary(binary, this.get(binary.left), this.get(binary.right));
+        } else if (instruction.is(JITUnaryInstruction.class)) {
+            JITUnaryInstruction unary = instruction.to(JITUnaryInstruction.class);
+            return unary(unary, this.get(unary.operand));
+        } else if (instruction.is(JITCastInstruction.class)) {
+            JITCastInstruction cast = instruction.to(JITCastInstruction.class);
+            return convert(this.get(cast.operand), cast.destinationType);
+        } else if (instruction.is(JITConstantInstruction.class)) {
+            JITConstantInstruction constant = instruction.to(JITConstantInstruction.class);
+            if (!constant.valueOrNull)
+                return constant.value.isNull();
+            return convert(constant.value.literal.value, constant.type);
+        } else if (instruction.is(JITCopyInstruction.class)) {
+            return this.get(instruction.to(JITCopyInstruction.class).operand);
+        } else if (instruction.is(JITFunctionCall.class)) {
+            JITFunctionCall call = instruction.to(JITFunctionCall.class);
+            List<Object> arguments = new ArrayList<>();
+            for (JITInstructionReference argument: call.arguments)
+                arguments.add(this.get(argument));
+            return call(call, arguments);
+        } else if (instruction.is(JITMuxInstruction.class)) {
+            JITMuxInstruction mux = instruction.to(JITMuxInstruction.class);
+            Object condition = this.get(mux.condition);
+            if (condition == null)
+                return null;
+            return (Boolean) condition ? this.get(mux.left) : this.get(mux.right);
+        } else if (instruction.is(JITIsNullInstruction.class)) {
+            JITIsNullInstruction isNull = instruction.to(JITIsNullInstruction.class);
+            return this.getRow(isNull.target).isNull(isNull.column);
+        } else if (instruction.is(JITLoadInstruction.class)) {
+            JITLoadInstruction load = instruction.to(JITLoadInstruction.class);
+            return this.getRow(load.source).get(load.column);
+        } else if (instruction.is(JITStoreInstruction.class)) {
+            JITStoreInstruction store = instruction.to(JITStoreInstruction.class);
+            this.getRow(store.target).set(store.column, this.get(store.source));
+            return null;
+        } else if (instruction.is(JITSetNullInstruction.class)) {
+            JITSetNullInstruction setNull = instruction.to(JITSetNullInstruction.class);
+            Object isNull = this.get(setNull.source);
+            if (isNull == null)
+                throw new RuntimeException("Instruction " + instruction + " uses a value that was not computed");
+            this.getRow(setNull.target).setNull(setNull.column, (Boolean) isNull);
+            return null;
+        } else if (instruction.is(JITUninitRowInstruction.class)) {
+            return new JITRow(instruction.to(JITUninitRowInstruction.class).type);
+        }
+        throw new Unimplemented("JIT instruction " + instruction);
+    }
+
+    /**
+     * Bind the parameters of a block to the values of the arguments.
+     */
+    JITBlock jump(JITBlockReference target, List<JITInstructionReference> arguments) {
+        JITBlock block = Utilities.getExists(this.blocks, target.getId());
+        List<JITBlockParameter> parameters = block.getParameters();
+        // All arguments are evaluated before any parameter is bound
+        List<Object> values = new ArrayList<>();
+        for (JITInstructionReference argument: arguments)
+            values.add(this.get(argument));
+        for (int i = 0; i < parameters.size(); i++)
+            this.values.put(parameters.get(i).argument.getId(), values.get(i));
+        return block;
+    }
+
+    /**
+     * Execute the function.
+     * @param arguments  One row for each parameter of the function, in order.
+     *                   The rows corresponding to output parameters are
+     *                   written by the function.
+     * @return           The scalar value returned by the function, or null
+     *                   if the function returns Unit.
+     */
+    @Nullable
+    public Object call(JITRow... arguments) {
+        List<JITParameter> parameters = this.function.parameters;
+        if (arguments.length != parameters.size())
+            throw new RuntimeException("Function expects " + parameters.size() +
+                    " arguments, but received " + arguments.length);
+        this.values.clear();
+        for (int i = 0; i < arguments.length; i++)
+            this.values.put(parameters.get(i).getId(), arguments[i]);
+
+        JITBlock block = this.function.blocks.get(0);
+        while (true) {
+            Logger.INSTANCE.from(this, 3)
+                    .append("Executing ")
+                    .append(block.toString())
+                    .newline();
+            for (JITInstruction instruction: block.getInstructions())
+                this.values.put(instruction.getId(), this.execute(instruction));
+            JITBlockTerminator terminator = block.getTerminator();
+            if (terminator.is(JITReturnTerminator.class)) {
+                JITReturnTerminator ret = terminator.to(JITReturnTerminator.class);
+                if (!ret.retVal.isValid())
+                    return null;
+                return this.get(ret.retVal);
+            } else if (terminator.is(JITJumpTerminator.class)) {
+                JITJumpTerminator jump = terminator.to(JITJumpTerminator.class);
+                block = this.jump(jump.target, jump.getArguments());
+            } else if (terminator.is(JITBranchTerminator.class)) {
+                JITBranchTerminator branch = terminator.to(JITBranchTerminator.class);
+                Object condition = this.get(branch.condition);
+                if (condition == null)
+                    throw new RuntimeException("Branch on a value that was not computed " + branch);
+                if ((Boolean) condition)
+                    block = this.jump(branch.truthy, branch.getArguments());
+                else
+                    block = this.jump(branch.falsy, branch.getFalseArguments());
+            } else {
+                throw new Unimplemented("JIT terminator " + terminator);
+            }
+        }
+    }
+
+    /**
+     * Execute a function that uses the BATCH calling convention on its native arguments.
+     * The blocks describe the computation for a single row: each row is read
+     * from the column slices of the input parameters, and its outputs are written
+     * to the column slices of the output parameters and to the result bitmap.
+     */
+    public void callBatch(JITBatch batch) {
+        if (this.function.callingConvention != JITFunction.CallingConvention.BATCH)
+            throw new RuntimeException("Function does not use the batch calling convention");
+        List<JITParameter> parameters = this.function.parameters;
+        for (int index = 0; index < batch.size; index++) {
+            JITRow[] arguments = new JITRow[parameters.size()];
+            for (int i = 0; i < parameters.size(); i++) {
+                arguments[i] = new JITRow(parameters.get(i).type);
+                if (parameters.get(i).isInput)
+                    batch.getRow(i, index, arguments[i]);
+            }
+            Object result = this.call(arguments);
+            for (int i = 0; i < parameters.size(); i++)
+                if (!parameters.get(i).isInput)
+                    batch.setRow(i, index, arguments[i]);
+            if (this.function.resultType.is(JITBoolType.class)) {
+                if (result == null)
+                    throw new RuntimeException("Function did not compute its result");
+                batch.setResult(index, (Boolean) result);
+            }
+        }
+    }
+
+    /**
+     * Execute a function that uses the BATCH calling convention.
+     * The rows are marshaled into the native arguments of the batch;
+     * the output rows are filled from the output column slices.
+     * @param batch  Arguments for each row of the batch.
+     * @return       The value returned for each row of the batch.
+     */
+    public List<Object> callBatch(List<JITRow[]> batch) {
+        List<JITParameter> parameters = this.function.parameters;
+        JITBatch arguments = new JITBatch(this.function, batch.size());
+        for (int index = 0; index < batch.size(); index++)
+            for (int i = 0; i < parameters.size(); i++)
+                if (parameters.get(i).isInput)
+                    arguments.setRow(i, index, batch.get(index)[i]);
+        this.callBatch(arguments);
+        List<Object> result = new ArrayList<>(batch.size());
+        for (int index = 0; index < batch.size(); index++) {
+            for (int i = 0; i < parameters.size(); i++)
+                if (!parameters.get(i).isInput)
+                    arguments.getRow(i, index, batch.get(index)[i]);
+            result.add(arguments.getResult(index));
+        }
+        return result;
+    }
+}
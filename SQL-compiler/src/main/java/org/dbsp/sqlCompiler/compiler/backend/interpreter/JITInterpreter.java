@@ -0,0 +1,433 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceOperator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ToJitVisitor;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITAggregateDescriptor;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITParameter;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITProgram;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITLiteral;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITTupleLiteral;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITScalarType;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Linq;
+import org.dbsp.util.Logger;
+import org.dbsp.util.Unimplemented;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Executes a JIT program in the compiler process, by interpreting
+ * the functions of its operators with the JITFunctionInterpreter.
+ * Z-sets use the same representation as the CircuitInterpreter,
+ * so the results of the two interpreters can be compared directly;
+ * this checks the translation of circuits to the JIT representation
+ * without running the JIT compiler.
+ */
+public class JITInterpreter implements IModule {
+    final JITProgram program;
+    /**
+     * Value produced by each operator in the current step.
+     */
+    final Map<Long, ZSet> values;
+    /**
+     * Sum of all inputs received so far by each integral operator.
+     */
+    final Map<Long, ZSet> integrals;
+    /**
+     * Input received in the previous step by each differential operator.
+     */
+    final Map<Long, ZSet> previous;
+    /**
+     * Interpreter for each function of the program.
+     */
+    final Map<JITFunction, JITFunctionInterpreter> functions;
+
+    public JITInterpreter(JITProgram program) {
+        this.program = program;
+        this.values = new HashMap<>();
+        this.integrals = new HashMap<>();
+        this.previous = new HashMap<>();
+        this.functions = new HashMap<>();
+    }
+
+    /**
+     * Forget the state accumulated in all previous steps.
+     */
+    public void reset() {
+        this.integrals.clear();
+        this.previous.clear();
+    }
+
+    ZSet input(JITOperator operator, int index) {
+        return Utilities.getExists(this.values, operator.inputs.get(index).getId());
+    }
+
+    ZSet input(JITOperator operator) {
+        return this.input(operator, 0);
+    }
+
+    /**
+     * Apply a function to a list of elements of a Z-set.
+     * Each element is split into one row for each input parameter:
+     * elements of indexed Z-sets are (key, value) tuples, which are
+     * passed as two rows.  Similarly, the rows written to the output
+     * parameters are combined into a single element.
+     * Functions using the BATCH calling convention are invoked once for all elements.
+     * @param function  Function to apply.
+     * @param elements  Elements of a Z-set, or tuples with an element of each input.
+     * @param inputs    Number of rows that each element must be split into.
+     * @return          The result produced by the function for each element, either a
+     *                  scalar, or the element built from the output rows.
+     */
+    List<Object> applyAll(JITFunction function, List<Object> elements, int inputs) {
+        JITFunctionInterpreter interpreter = this.functions.computeIfAbsent(function, JITFunctionInterpreter::new);
+        List<JITParameter> parameters = function.parameters;
+        List<JITRow[]> batch = new ArrayList<>(elements.size());
+        List<List<JITRow>> outputs = new ArrayList<>(elements.size());
+        for (Object element: elements) {
+            JITRow[] arguments = new JITRow[parameters.size()];
+            List<JITRow> elementOutputs = new ArrayList<>();
+            int inputIndex = 0;
+            for (int i = 0; i < parameters.size(); i++) {
+                JITParameter parameter = parameters.get(i);
+                if (parameter.isInput) {
+                    Tuple row = (Tuple) (inputs == 1 ? element : ((Tuple) element).get(inputIndex));
+                    arguments[i] = JITRow.fromTuple(row, parameter.type);
+                    inputIndex++;
+                } else {
+                    arguments[i] = new JITRow(parameter.type);
+                    elementOutputs.add(arguments[i]);
+                }
+            }
+            if (inputIndex != inputs)
+                throw new RuntimeException("Function expects " + inputIndex + " input rows, but received " + inputs);
+            batch.add(arguments);
+            outputs.add(elementOutputs);
+        }
+
+        List<Object> returned;
+        if (function.callingConvention == JITFunction.CallingConvention.BATCH) {
+            returned = interpreter.callBatch(batch);
+        } else {
+            returned = new ArrayList<>(batch.size());
+            for (JITRow[] arguments: batch)
+                returned.add(interpreter.call(arguments));
+        }
+
+        List<Object> result = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            List<JITRow> elementOutputs = outputs.get(i);
+            if (elementOutputs.isEmpty())
+                result.add(returned.get(i));
+            else if (elementOutputs.size() == 1)
+                result.add(elementOutputs.get(0).toTuple());
+            else
+                result.add(new Tuple(Linq.map(elementOutputs, JITRow::toTuple).toArray()));
+        }
+        return result;
+    }
+
+    /**
+     * Apply a function to an element of a Z-set.
+     * See applyAll.
+     */
+    @Nullable
+    Object apply(JITFunction function, Object element, int inputs) {
+        return this.applyAll(function, Linq.list(element), inputs).get(0);
+    }
+
+    static Tuple toTuple(JITTupleLiteral literal) {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(null);
+        List<Object> fields = new ArrayList<>();
+        for (JITLiteral field: literal.fields)
+            fields.add(evaluator.evaluate(field.literal));
+        return new Tuple(fields.toArray());
+    }
+
+    ZSet map(JITOperator operator, int inputs) {
+        JITFunction function = Objects.requireNonNull(operator.function);
+        List<Map.Entry<Object, Long>> entries = new ArrayList<>(this.input(operator).entrySet());
+        List<Object> values = this.applyAll(function, Linq.map(entries, Map.Entry::getKey), inputs);
+        ZSet result = new ZSet();
+        for (int i = 0; i < entries.size(); i++)
+            result.add(Objects.requireNonNull(values.get(i)), entries.get(i).getValue());
+        return result;
+    }
+
+    /**
+     * Number of input parameters of a function.
+     */
+    static int inputCount(JITFunction function) {
+        return (int) function.parameters.stream().filter(p -> p.isInput).count();
+    }
+
+    ZSet filter(JITFilterOperator operator) {
+        JITFunction function = Objects.requireNonNull(operator.function);
+        List<Map.Entry<Object, Long>> entries = new ArrayList<>(this.input(operator).entrySet());
+        List<Object> keep = this.applyAll(function, Linq.map(entries, Map.Entry::getKey), inputCount(function));
+        ZSet result = new ZSet();
+        for (int i = 0; i < entries.size(); i++) {
+            if (Boolean.TRUE.equals(keep.get(i)))
+                result.add(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        return result;
+    }
+
+    ZSet join(JITJoinOperator operator) {
+        JITFunction function = Objects.requireNonNull(operator.function);
+        Map<Object, List<Map.Entry<Object, Long>>> rightByKey = new HashMap<>();
+        for (Map.Entry<Object, Long> entry: this.input(operator, 1).entrySet()) {
+            Tuple keyValue = (Tuple) entry.getKey();
+            rightByKey.computeIfAbsent(keyValue.get(0), k -> new ArrayList<>()).add(entry);
+        }
+        ZSet result = new ZSet();
+        for (Map.Entry<Object, Long> entry: this.input(operator, 0).entrySet()) {
+            Tuple left = (Tuple) entry.getKey();
+            List<Map.Entry<Object, Long>> matches = rightByKey.get(left.get(0));
+            if (matches == null)
+                continue;
+            for (Map.Entry<Object, Long> match: matches) {
+                Tuple right = (Tuple) match.getKey();
+                Object value = this.apply(function, new Tuple(left.get(0), left.get(1), right.get(1)), 3);
+                result.add(Objects.requireNonNull(value), Math.multiplyExact(entry.getValue(), match.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the accumulator of an aggregate descriptor over the rows of a group.
+     * Rows where the aggregated column is null do not contribute to the result.
+     * The accumulator of an Average is returned already divided.
+     */
+    @Nullable
+    static Object accumulate(JITAggregateDescriptor aggregate, List<Map.Entry<Object, Long>> group) {
+        JITScalarType accType = aggregate.accLayout.getFieldType(0);
+        @Nullable Object accumulator = null;
+        long sum = 0;
+        long count = 0;
+        for (Map.Entry<Object, Long> entry: group) {
+            long weight = aggregate.weighted ? entry.getValue() : 1;
+            Object value = null;
+            if (aggregate.column >= 0) {
+                Tuple row = (Tuple) ((Tuple) entry.getKey()).get(1);
+                value = row.get(aggregate.column);
+                if (value == null)
+                    continue;
+            }
+            switch (aggregate.kind) {
+                case Count:
+                    count += weight;
+                    break;
+                case Sum: {
+                    Object increment = JITFunctionInterpreter.convert(
+                            ExpressionEvaluator.arithmetic("*", Objects.requireNonNull(value), weight), accType);
+                    accumulator = accumulator == null ? increment :
+                            ExpressionEvaluator.arithmetic("+", accumulator, Objects.requireNonNull(increment));
+                    break;
+                }
+                case Min:
+                case Max: {
+                    Object converted = Objects.requireNonNull(JITFunctionInterpreter.convert(value, accType));
+                    String operation = aggregate.kind == JITAggregateDescriptor.Kind.Min ? "min" : "max";
+                    accumulator = accumulator == null ? converted :
+                            ExpressionEvaluator.arithmetic(operation, accumulator, converted);
+                    break;
+                }
+                case Average:
+                    long longValue = ((Number) Objects.requireNonNull(value)).longValue();
+                    sum = Math.addExact(sum, Math.multiplyExact(longValue, weight));
+                    count += weight;
+                    break;
+            }
+        }
+        switch (aggregate.kind) {
+            case Count:
+                return JITFunctionInterpreter.convert(count, accType);
+            case Sum:
+                if (accumulator == null && !aggregate.accLayout.isNullable(0))
+                    return JITFunctionInterpreter.convert(0L, accType);
+                return accumulator;
+            case Average:
+                return count == 0 ? null : sum / count;
+            default:
+                return accumulator;
+        }
+    }
+
+    ZSet aggregate(JITAggregateOperator operator) {
+        Map<Object, List<Map.Entry<Object, Long>>> groups = new HashMap<>();
+        for (Map.Entry<Object, Long> entry: this.input(operator).entrySet()) {
+            Tuple keyValue = (Tuple) entry.getKey();
+            groups.computeIfAbsent(keyValue.get(0), k -> new ArrayList<>()).add(entry);
+        }
+        ZSet result = new ZSet();
+        if (operator.aggregates != null) {
+            for (Map.Entry<Object, List<Map.Entry<Object, Long>>> group: groups.entrySet()) {
+                Object[] values = new Object[operator.aggregates.size()];
+                for (int i = 0; i < values.length; i++) {
+                    Object value = accumulate(operator.aggregates.get(i), group.getValue());
+                    values[i] = JITFunctionInterpreter.convert(value, operator.type.getFieldType(i));
+                }
+                result.add(new Tuple(group.getKey(), new Tuple(values)), 1);
+            }
+            return result;
+        }
+
+        Tuple init = toTuple(Objects.requireNonNull(operator.init));
+        JITFunction stepFn = Objects.requireNonNull(operator.stepFn);
+        JITFunction finishFn = Objects.requireNonNull(operator.finishFn);
+        for (Map.Entry<Object, List<Map.Entry<Object, Long>>> group: groups.entrySet()) {
+            Object accumulator = init;
+            for (Map.Entry<Object, Long> entry: group.getValue()) {
+                Tuple keyValue = (Tuple) entry.getKey();
+                // The weight is passed as a row with a single column
+                accumulator = this.apply(stepFn,
+                        new Tuple(accumulator, keyValue.get(1), new Tuple(entry.getValue())), 3);
+            }
+            Object value = this.apply(finishFn, Objects.requireNonNull(accumulator), 1);
+            result.add(new Tuple(group.getKey(), value), 1);
+        }
+        return result;
+    }
+
+    ZSet evaluate(JITOperator operator, Map<String, ZSet> inputs) {
+        if (operator.is(JITSourceOperator.class)) {
+            String table = operator.to(JITSourceOperator.class).table;
+            ZSet input = inputs.get(table);
+            if (input == null)
+                throw new RuntimeException("No input provided for table " + table);
+            return input;
+        } else if (operator.is(JITConstantOperator.class)) {
+            ZSet result = new ZSet();
+            for (Map.Entry<JITTupleLiteral, Long> entry: operator.to(JITConstantOperator.class).value.elements.entrySet())
+                result.add(toTuple(entry.getKey()), entry.getValue());
+            return result;
+        } else if (operator.is(JITSinkOperator.class)) {
+            return this.input(operator);
+        } else if (operator.is(JITMapOperator.class) || operator.is(JITMapIndexOperator.class) ||
+                operator.is(JITIndexWithOperator.class)) {
+            return this.map(operator, inputCount(Objects.requireNonNull(operator.function)));
+        } else if (operator.is(JITFilterOperator.class)) {
+            return this.filter(operator.to(JITFilterOperator.class));
+        } else if (operator.is(JITJoinOperator.class)) {
+            return this.join(operator.to(JITJoinOperator.class));
+        } else if (operator.is(JITAggregateOperator.class)) {
+            return this.aggregate(operator.to(JITAggregateOperator.class));
+        } else if (operator.is(JITDistinctOperator.class)) {
+            return this.input(operator).distinct();
+        } else if (operator.is(JITSumOperator.class)) {
+            ZSet result = new ZSet();
+            for (int i = 0; i < operator.inputs.size(); i++)
+                result.add(this.input(operator, i));
+            return result;
+        } else if (operator.is(JITSubtractOperator.class)) {
+            return this.input(operator, 0).minus(this.input(operator, 1));
+        } else if (operator.is(JITNegOperator.class)) {
+            return this.input(operator).negate();
+        } else if (operator.is(JITIntegrateOperator.class)) {
+            ZSet sum = this.integrals.computeIfAbsent(operator.getId(), o -> new ZSet());
+            sum.add(this.input(operator));
+            return new ZSet(sum);
+        } else if (operator.is(JITDifferentiateOperator.class)) {
+            ZSet current = this.input(operator);
+            ZSet previous = this.previous.getOrDefault(operator.getId(), new ZSet());
+            this.previous.put(operator.getId(), current);
+            return current.minus(previous);
+        }
+        throw new Unimplemented("Interpreting JIT operator " + operator.name);
+    }
+
+    /**
+     * Execute one step of the program.
+     * @param inputs  Input Z-set for each table.
+     * @return        The Z-set produced by each output, indexed by output name.
+     */
+    public Map<String, ZSet> step(Map<String, ZSet> inputs) {
+        this.values.clear();
+        Map<String, ZSet> result = new LinkedHashMap<>();
+        for (JITOperator operator: this.program.getOperators()) {
+            ZSet value = this.evaluate(operator, inputs);
+            Utilities.putNew(this.values, operator.getId(), value);
+            if (operator.is(JITSinkOperator.class))
+                result.put(operator.to(JITSinkOperator.class).outputName, value);
+        }
+        Logger.INSTANCE.from(this, 1)
+                .append("Step produced ")
+                .append(result.toString())
+                .newline();
+        return result;
+    }
+
+    /**
+     * Execute the circuit both with the CircuitInterpreter and by interpreting its
+     * JIT representation, and check that the two produce the same outputs.
+     * @param circuit  Circuit to check.
+     * @param inputs   A list of steps; each step has one Z-set for each circuit input.
+     */
+    public static void crossCheck(DBSPCircuit circuit, List<List<DBSPZSetLiteral>> inputs) {
+        crossCheck(circuit, ToJitVisitor.circuitToJIT(circuit), inputs);
+    }
+
+    /**
+     * Execute the circuit both with the CircuitInterpreter and by interpreting
+     * the specified JIT program, and check that the two produce the same outputs.
+     * @param circuit  Circuit to check.
+     * @param program  JIT program generated for the circuit.
+     * @param inputs   A list of steps; each step has one Z-set for each circuit input.
+     */
+    public static void crossCheck(DBSPCircuit circuit, JITProgram program, List<List<DBSPZSetLiteral>> inputs) {
+        CircuitInterpreter reference = new CircuitInterpreter(circuit);
+        JITInterpreter jit = new JITInterpreter(program);
+        List<DBSPSourceOperator> sources = circuit.circuit.inputOperators;
+        List<DBSPSinkOperator> sinks = circuit.circuit.outputOperators;
+        int stepNumber = 0;
+        for (List<DBSPZSetLiteral> step: inputs) {
+            List<ZSet> zsets = Linq.map(step, ZSet::fromLiteral);
+            Map<String, ZSet> tables = new HashMap<>();
+            for (int i = 0; i < sources.size(); i++)
+                tables.put(sources.get(i).outputName, zsets.get(i));
+            List<ZSet> expected = reference.step(zsets);
+            Map<String, ZSet> actual = jit.step(tables);
+            for (int i = 0; i < sinks.size(); i++) {
+                String name = sinks.get(i).outputName;
+                ZSet result = actual.get(name);
+                if (!expected.get(i).equals(result))
+                    throw new RuntimeException("JIT program for " + circuit.name + " produces in step " +
+                            stepNumber + " for output " + name + "\n" + result + "\ninstead of\n" + expected.get(i));
+            }
+            stepNumber++;
+        }
+    }
+}
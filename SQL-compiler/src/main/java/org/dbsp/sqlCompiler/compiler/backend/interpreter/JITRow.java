@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * A mutable row manipulated by JIT functions.
+ * Like in the JIT each column has a value and, if the column is
+ * nullable, a separate null flag.  The value of a column which has
+ * never been written is null.
+ */
+public class JITRow {
+    public final JITRowType type;
+    final Object[] values;
+    final boolean[] isNull;
+
+    public JITRow(JITRowType type) {
+        this.type = type;
+        this.values = new Object[type.size()];
+        this.isNull = new boolean[type.size()];
+    }
+
+    /**
+     * Create a row from the representation used by the ExpressionEvaluator.
+     */
+    public static JITRow fromTuple(Tuple tuple, JITRowType type) {
+        if (tuple.size() != type.size())
+            throw new RuntimeException("Tuple " + tuple + " does not have layout " + type);
+        JITRow result = new JITRow(type);
+        for (int i = 0; i < tuple.size(); i++) {
+            Object value = tuple.get(i);
+            if (value == null) {
+                if (!type.isNullable(i))
+                    throw new RuntimeException("Null value in non-nullable column " + i + " of " + tuple);
+                result.isNull[i] = true;
+            } else {
+                result.values[i] = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convert the row to the representation used by the ExpressionEvaluator.
+     */
+    public Tuple toTuple() {
+        Object[] fields = new Object[this.values.length];
+        for (int i = 0; i < fields.length; i++) {
+            if (this.isNull[i])
+                continue;
+            if (this.values[i] == null)
+                throw new RuntimeException("Column " + i + " of row " + this + " was never written");
+            fields[i] = this.values[i];
+        }
+        return new Tuple(fields);
+    }
+
+    @Nullable
+    public Object get(int column) {
+        return this.values[column];
+    }
+
+    public void set(int column, @Nullable Object value) {
+        this.values[column] = value;
+    }
+
+    public boolean isNull(int column) {
+        return this.isNull[column];
+    }
+
+    public void setNull(int column, boolean isNull) {
+        this.isNull[column] = isNull;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.values) + Arrays.toString(this.isNull);
+    }
+}
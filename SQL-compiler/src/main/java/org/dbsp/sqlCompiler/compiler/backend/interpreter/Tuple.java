@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Value of a tuple (or raw tuple) expression in the interpreter.
+ * Tuples are immutable and compared structurally, so they can be used
+ * as elements of Z-sets.  SQL NULL fields are represented by Java null.
+ */
+public class Tuple {
+    private final Object[] fields;
+
+    public Tuple(Object... fields) {
+        this.fields = fields;
+    }
+
+    @Nullable
+    public Object get(int index) {
+        return this.fields[index];
+    }
+
+    public int size() {
+        return this.fields.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Tuple tuple = (Tuple) o;
+        return Arrays.equals(this.fields, tuple.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.fields);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(");
+        for (int i = 0; i < this.fields.length; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(this.fields[i]);
+        }
+        builder.append(")");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.interpreter;
+
+import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeZSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A Z-set manipulated by the interpreter: a map from values to non-zero weights.
+ * An indexed Z-set is represented as a Z-set whose elements are
+ * (key, value) tuples with two fields.
+ */
+public class ZSet {
+    private final Map<Object, Long> data;
+
+    public ZSet() {
+        this.data = new HashMap<>();
+    }
+
+    public ZSet(ZSet other) {
+        this.data = new HashMap<>(other.data);
+    }
+
+    /**
+     * Evaluate the elements of a Z-set literal.
+     */
+    public static ZSet fromLiteral(DBSPZSetLiteral literal) {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(null);
+        ZSet result = new ZSet();
+        for (Map.Entry<DBSPExpression, Long> entry: literal.data.entrySet())
+            result.add(Objects.requireNonNull(evaluator.evaluate(entry.getKey())), entry.getValue());
+        return result;
+    }
+
+    /**
+     * Convert this Z-set to a literal with the specified type.
+     */
+    public DBSPZSetLiteral toLiteral(DBSPTypeZSet type) {
+        DBSPZSetLiteral result = DBSPZSetLiteral.emptyWithType(type);
+        for (Map.Entry<Object, Long> entry: this.data.entrySet())
+            result.add(ExpressionEvaluator.toExpression(entry.getKey(), type.elementType), entry.getValue());
+        return result;
+    }
+
+    public void add(Object value, long weight) {
+        if (weight == 0)
+            return;
+        long newWeight = Math.addExact(this.data.getOrDefault(value, 0L), weight);
+        if (newWeight == 0)
+            this.data.remove(value);
+        else
+            this.data.put(value, newWeight);
+    }
+
+    public void add(ZSet other) {
+        other.data.forEach(this::add);
+    }
+
+    public ZSet negate() {
+        ZSet result = new ZSet();
+        this.data.forEach((k, w) -> result.add(k, -w));
+        return result;
+    }
+
+    public ZSet minus(ZSet other) {
+        ZSet result = new ZSet(this);
+        other.data.forEach((k, w) -> result.add(k, -w));
+        return result;
+    }
+
+    /**
+     * Keep the elements with a positive weight, each with weight 1.
+     */
+    public ZSet distinct() {
+        ZSet result = new ZSet();
+        this.data.forEach((k, w) -> {
+            if (w > 0)
+                result.add(k, 1);
+        });
+        return result;
+    }
+
+    public Set<Map.Entry<Object, Long>> entrySet() {
+        return this.data.entrySet();
+    }
+
+    public long getWeight(Object value) {
+        return this.data.getOrDefault(value, 0L);
+    }
+
+    public int size() {
+        return this.data.size();
+    }
+
+    public boolean isEmpty() {
+        return this.data.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ZSet zSet = (ZSet) o;
+        return this.data.equals(zSet.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.data);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{ ");
+        boolean first = true;
+        for (Map.Entry<Object, Long> e: this.data.entrySet()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(e.getKey())
+                    .append(" => ")
+                    .append(e.getValue());
+        }
+        builder.append("}");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit;
+
+import org.dbsp.sqlCompiler.circuit.operator.*;
+import org.dbsp.sqlCompiler.compiler.backend.visitors.CircuitCloneVisitor;
+
+import java.util.List;
+
+/**
+ * Expands operators which have no JIT counterpart into
+ * equivalent combinations of operators that do.
+ * - incremental distinct: D(distinct(I(x)))
+ * - incremental aggregate: D(aggregate(I(x)))
+ * - incremental join: the change of (I(a) join I(b)) is
+ *   (a join I(b)) + (I(a) join b) - (a join b)
+ * - noop: replaced by its input
+ */
+public class ExpandOperators extends CircuitCloneVisitor {
+    public ExpandOperators() {
+        super(false);
+    }
+
+    @Override
+    public void postorder(DBSPIncrementalDistinctOperator node) {
+        DBSPOperator input = this.mapped(node.input());
+        DBSPOperator integral = new DBSPIntegralOperator(node.getNode(), input);
+        this.addOperator(integral);
+        DBSPOperator distinct = new DBSPDistinctOperator(node.getNode(), integral);
+        this.addOperator(distinct);
+        DBSPOperator result = new DBSPDifferentialOperator(node.getNode(), distinct);
+        this.map(node, result);
+    }
+
+    @Override
+    public void postorder(DBSPIncrementalAggregateOperator node) {
+        DBSPOperator input = this.mapped(node.input());
+        DBSPOperator integral = new DBSPIntegralOperator(node.getNode(), input);
+        this.addOperator(integral);
+        DBSPOperator aggregate = new DBSPAggregateOperator(node.getNode(), node.keyType,
+                node.outputElementType, node.function, node.aggregate, integral);
+        this.addOperator(aggregate);
+        DBSPOperator result = new DBSPDifferentialOperator(node.getNode(), aggregate);
+        this.map(node, result);
+    }
+
+    @Override
+    public void postorder(DBSPIncrementalJoinOperator node) {
+        List<DBSPOperator> inputs = node.inputs;
+        DBSPOperator left = this.mapped(inputs.get(0));
+        DBSPOperator right = this.mapped(inputs.get(1));
+        DBSPOperator leftIntegral = new DBSPIntegralOperator(node.getNode(), left);
+        this.addOperator(leftIntegral);
+        DBSPOperator rightIntegral = new DBSPIntegralOperator(node.getNode(), right);
+        this.addOperator(rightIntegral);
+        DBSPOperator leftDelta = new DBSPJoinOperator(node.getNode(), node.elementResultType,
+                node.getFunction(), node.isMultiset, left, rightIntegral);
+        this.addOperator(leftDelta);
+        DBSPOperator rightDelta = new DBSPJoinOperator(node.getNode(), node.elementResultType,
+                node.getFunction(), node.isMultiset, leftIntegral, right);
+        this.addOperator(rightDelta);
+        // a join b is counted in both terms above
+        DBSPOperator both = new DBSPJoinOperator(node.getNode(), node.elementResultType,
+                node.getFunction(), node.isMultiset, left, right);
+        this.addOperator(both);
+        DBSPOperator sum = new DBSPSumOperator(node.getNode(), leftDelta, rightDelta);
+        this.addOperator(sum);
+        DBSPOperator result = new DBSPSubtractOperator(node.getNode(), sum, both);
+        this.map(node, result);
+    }
+
+    @Override
+    public void postorder(DBSPNoopOperator node) {
+        this.map(node, this.mapped(node.input()), false);
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.jit;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITAggregateDescriptor;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITParameter;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITProgram;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.*;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Checks the well-formedness of a JIT program before it is handed to the
+ * JIT compiler, which reports most errors only by crashing.
+ * For each function it checks that:
+ * - blocks and values have unique ids, and all blocks are terminated
+ * - every value used is defined in the function, and values defined in
+ *   the same block are defined before they are used
+ * - jumps target existing blocks, with one argument for each block parameter
+ * - operands of instructions have the types expected by the instructions,
+ *   and rows are accessed with their own layout.
+ * For the program it checks that operators only consume the outputs
+ * of operators that precede them.
+ */
+public class JITValidator implements IModule {
+    final List<String> errors;
+    /**
+     * Description of the function being validated, used in error messages.
+     */
+    String context;
+    /**
+     * Type of each value defined in the current function.
+     * Null for values whose type cannot be determined locally.
+     */
+    final Map<Long, JITType> valueType;
+    /**
+     * Values defined in the current function which are not yet known to be defined.
+     */
+    final Set<Long> pending;
+    /**
+     * Values in the current function allocated in the runtime arena.
+     */
+    final Set<Long> arenaValues;
+
+    public JITValidator() {
+        this.errors = new ArrayList<>();
+        this.context = "";
+        this.valueType = new HashMap<>();
+        this.pending = new HashSet<>();
+        this.arenaValues = new HashSet<>();
+    }
+
+    void error(String message) {
+        this.errors.add(this.context + ": " + message);
+    }
+
+    static boolean sameType(JITType left, JITType right) {
+        if (left.isScalarType() && right.isScalarType())
+            return left.toString().equals(right.toString());
+        if (left.is(JITRowType.class) && right.is(JITRowType.class))
+            return left.to(JITRowType.class).getId() == right.to(JITRowType.class).getId();
+        return false;
+    }
+
+    void define(long id, @Nullable JITType type) {
+        if (this.valueType.containsKey(id))
+            this.error("Value " + id + " is defined multiple times");
+        this.valueType.put(id, type);
+    }
+
+    @Nullable
+    static JITType resultType(JITInstruction instruction) {
+        if (instruction.is(JITBinaryInstruction.class)) {
+            JITBinaryInstruction binary = instruction.to(JITBinaryInstruction.class);
+            switch (binary.operation) {
+                case EQ:
+                case NEQ:
+                case LT:
+                case GT:
+                case LTE:
+                case GTE:
+                    return JITBoolType.INSTANCE;
+                default:
+                    return binary.type;
+            }
+        } else if (instruction.is(JITUnaryInstruction.class)) {
+            return instruction.to(JITUnaryInstruction.class).type;
+        } else if (instruction.is(JITCastInstruction.class)) {
+            return instruction.to(JITCastInstruction.class).destinationType;
+        } else if (instruction.is(JITConstantInstruction.class)) {
+            JITConstantInstruction constant = instruction.to(JITConstantInstruction.class);
+            return constant.valueOrNull ? constant.type : JITBoolType.INSTANCE;
+        } else if (instruction.is(JITCopyInstruction.class)) {
+            return instruction.to(JITCopyInstruction.class).type;
+        } else if (instruction.is(JITFunctionCall.class)) {
+            return instruction.to(JITFunctionCall.class).returnType;
+        } else if (instruction.is(JITIsNullInstruction.class)) {
+            return JITBoolType.INSTANCE;
+        } else if (instruction.is(JITLoadInstruction.class)) {
+            return instruction.to(JITLoadInstruction.class).resultType;
+        } else if (instruction.is(JITUninitRowInstruction.class)) {
+            return instruction.to(JITUninitRowInstruction.class).type;
+        } else if (instruction.is(JITStoreInstruction.class) || instruction.is(JITSetNullInstruction.class)) {
+            return JITUnitType.INSTANCE;
+        }
+        // E.g., Mux, whose type is the type of its operands
+        return null;
+    }
+
+    /**
+     * Check that a value used by an instruction or terminator is defined.
+     * @return The type of the value, if known.
+     */
+    @Nullable
+    JITType use(JITInstructionReference reference, String user) {
+        if (!reference.isValid()) {
+            this.error(user + " uses an invalid value");
+            return null;
+        }
+        long id = reference.getId();
+        if (!this.valueType.containsKey(id)) {
+            this.error(user + " uses undefined value " + id);
+            return null;
+        }
+        if (this.pending.contains(id))
+            this.error(user + " uses value " + id + " before it is defined");
+        return this.valueType.get(id);
+    }
+
+    void expectType(@Nullable JITType actual, JITType expected, String user) {
+        if (actual != null && !sameType(actual, expected))
+            this.error(user + " has an operand of type " + actual + " where " + expected + " is expected");
+    }
+
+    void checkRowAccess(JITInstructionReference target, JITRowType layout, int column, String user) {
+        JITType type = this.use(target, user);
+        this.expectType(type, layout, user);
+        if (column < 0 || column >= layout.size())
+            this.error(user + " accesses column " + column + " of a row with " + layout.size() + " columns");
+    }
+
+    void checkInstruction(JITInstruction instruction) {
+        String user = "Instruction " + instruction.getId();
+        if (instruction.is(JITBinaryInstruction.class)) {
+            JITBinaryInstruction binary = instruction.to(JITBinaryInstruction.class);
+            this.expectType(this.use(binary.left, user), binary.type, user);
+            this.expectType(this.use(binary.right, user), binary.type, user);
+        } else if (instruction.is(JITUnaryInstruction.class)) {
+            JITUnaryInstruction unary = instruction.to(JITUnaryInstruction.class);
+            this.expectType(this.use(unary.operand, user), unary.type, user);
+        } else if (instruction.is(JITCastInstruction.class)) {
+            JITCastInstruction cast = instruction.to(JITCastInstruction.class);
+            this.expectType(this.use(cast.operand, user), cast.sourceType, user);
+        } else if (instruction.is(JITCopyInstruction.class)) {
+            JITCopyInstruction copy = instruction.to(JITCopyInstruction.class);
+            this.expectType(this.use(copy.operand, user), copy.type, user);
+        } else if (instruction.is(JITFunctionCall.class)) {
+            JITFunctionCall call = instruction.to(JITFunctionCall.class);
+            if (call.arguments.size() != call.argumentTypes.size())
+                this.error(user + " has " + call.arguments.size() + " arguments, but " +
+                        call.argumentTypes.size() + " argument types");
+            for (int i = 0; i < Math.min(call.arguments.size(), call.argumentTypes.size()); i++)
+                this.expectType(this.use(call.arguments.get(i), user), call.argumentTypes.get(i), user);
+        } else if (instruction.is(JITMuxInstruction.class)) {
+            JITMuxInstruction mux = instruction.to(JITMuxInstruction.class);
+            this.expectType(this.use(mux.condition, user), JITBoolType.INSTANCE, user);
+            JITType left = this.use(mux.left, user);
+            JITType right = this.use(mux.right, user);
+            if (left != null && right != null)
+                this.expectType(right, left, user);
+            // Now the type of the result is known
+            this.valueType.put(instruction.getId(), left != null ? left : right);
+        } else if (instruction.is(JITIsNullInstruction.class)) {
+            JITIsNullInstruction isNull = instruction.to(JITIsNullInstruction.class);
+            this.checkRowAccess(isNull.target, isNull.targetType, isNull.column, user);
+        } else if (instruction.is(JITLoadInstruction.class)) {
+            JITLoadInstruction load = instruction.to(JITLoadInstruction.class);
+            this.checkRowAccess(load.source, load.sourceType, load.column, user);
+            if (load.column >= 0 && load.column < load.sourceType.size())
+                this.expectType(load.sourceType.getFieldType(load.column), load.resultType, user);
+        } else if (instruction.is(JITStoreInstruction.class)) {
+            JITStoreInstruction store = instruction.to(JITStoreInstruction.class);
+            this.checkRowAccess(store.target, store.targetType, store.column, user);
+            this.expectType(this.use(store.source, user), store.valueType, user);
+            if (store.column >= 0 && store.column < store.targetType.size())
+                this.expectType(store.valueType, store.targetType.getFieldType(store.column), user);
+            if (this.arenaValues.contains(store.source.getId()))
+                this.error(user + " stores a value allocated in the arena");
+        } else if (instruction.is(JITSetNullInstruction.class)) {
+            JITSetNullInstruction setNull = instruction.to(JITSetNullInstruction.class);
+            this.checkRowAccess(setNull.target, setNull.targetType, setNull.column, user);
+            this.expectType(this.use(setNull.source, user), JITBoolType.INSTANCE, user);
+            if (setNull.column >= 0 && setNull.column < setNull.targetType.size() &&
+                    !setNull.targetType.isNullable(setNull.column))
+                this.error(user + " sets the null flag of non-nullable column " + setNull.column);
+        } else if (!instruction.is(JITConstantInstruction.class) &&
+                !instruction.is(JITUninitRowInstruction.class)) {
+            this.error(user + " has unexpected kind " + instruction.name);
+        }
+    }
+
+    void checkJump(JITBlockReference target, List<JITInstructionReference> arguments,
+                   Map<Long, JITBlock> blocks, String user) {
+        JITBlock block = blocks.get(target.getId());
+        if (block == null) {
+            this.error(user + " jumps to unknown block " + target);
+            return;
+        }
+        List<JITBlockParameter> parameters = block.getParameters();
+        if (parameters.size() != arguments.size()) {
+            this.error(user + " passes " + arguments.size() + " arguments to " + block +
+                    " which has " + parameters.size() + " parameters");
+            return;
+        }
+        for (int i = 0; i < arguments.size(); i++)
+            this.expectType(this.use(arguments.get(i), user), parameters.get(i).type, user);
+    }
+
+    void checkTerminator(JITBlock block, JITFunction function, Map<Long, JITBlock> blocks) {
+        String user = "Terminator of " + block;
+        if (!block.isTerminated()) {
+            this.error(block + " is not terminated");
+            return;
+        }
+        JITBlockTerminator terminator = block.getTerminator();
+        if (terminator.is(JITReturnTerminator.class)) {
+            JITReturnTerminator ret = terminator.to(JITReturnTerminator.class);
+            if (ret.retVal.isValid()) {
+                this.expectType(this.use(ret.retVal, user), function.resultType, user);
+            } else if (!function.resultType.is(JITUnitType.class)) {
+                this.error(user + " returns no value from a function returning " + function.resultType);
+            }
+        } else if (terminator.is(JITJumpTerminator.class)) {
+            JITJumpTerminator jump = terminator.to(JITJumpTerminator.class);
+            this.checkJump(jump.target, jump.getArguments(), blocks, user);
+        } else if (terminator.is(JITBranchTerminator.class)) {
+            JITBranchTerminator branch = terminator.to(JITBranchTerminator.class);
+            this.expectType(this.use(branch.condition, user), JITBoolType.INSTANCE, user);
+            this.checkJump(branch.truthy, branch.getArguments(), blocks, user);
+            this.checkJump(branch.falsy, branch.getFalseArguments(), blocks, user);
+        } else {
+            this.error(user + " has unexpected kind " + terminator);
+        }
+    }
+
+    /**
+     * Validate a function; the problems found are added to the list of errors.
+     * @param context  Description of the function used in error messages.
+     */
+    public void validate(JITFunction function, String context) {
+        this.context = context;
+        this.valueType.clear();
+        this.arenaValues.clear();
+        if (function.blocks.isEmpty()) {
+            this.error("Function has no blocks");
+            return;
+        }
+        for (JITParameter parameter: function.parameters)
+            this.define(parameter.getId(), parameter.type);
+        Map<Long, JITBlock> blocks = new HashMap<>();
+        for (JITBlock block: function.blocks) {
+            if (blocks.put(block.getId(), block) != null)
+                this.error(block + " is defined multiple times");
+            for (JITBlockParameter parameter: block.getParameters())
+                this.define(parameter.argument.getId(), parameter.type);
+            for (JITInstruction instruction: block.getInstructions()) {
+                this.define(instruction.getId(), resultType(instruction));
+                if (instruction.is(JITFunctionCall.class) && instruction.to(JITFunctionCall.class).arena)
+                    this.arenaValues.add(instruction.getId());
+                // Casting a string does not copy it
+                if (instruction.is(JITCastInstruction.class) &&
+                        instruction.to(JITCastInstruction.class).destinationType.is(JITStringType.class) &&
+                        this.arenaValues.contains(instruction.to(JITCastInstruction.class).operand.getId()))
+                    this.arenaValues.add(instruction.getId());
+            }
+        }
+        if (function.blocks.get(0).hasParameters())
+            this.error("Entry block has parameters");
+        if (function.callingConvention == JITFunction.CallingConvention.BATCH && !function.canBatch())
+            this.error("Function returning " + function.resultType + " cannot use the batch calling convention");
+
+        for (JITBlock block: function.blocks) {
+            // Values computed in this block must be defined before their uses.
+            // Uses of values defined in other blocks are not checked for dominance.
+            this.pending.clear();
+            for (JITInstruction instruction: block.getInstructions())
+                this.pending.add(instruction.getId());
+            for (JITInstruction instruction: block.getInstructions()) {
+                this.checkInstruction(instruction);
+                this.pending.remove(instruction.getId());
+            }
+            this.checkTerminator(block, function, blocks);
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Validate all functions of a program and the connections between its operators.
+     */
+    public void validate(JITProgram program) {
+        Set<Long> defined = new HashSet<>();
+        for (JITOperator operator: program.getOperators()) {
+            String context = "Operator " + operator.getId() + " " + operator.name;
+            this.context = context;
+            for (JITOperatorReference input: operator.inputs) {
+                if (!defined.contains(input.getId()))
+                    this.error("Input " + input + " is not the output of a previous operator");
+            }
+            if (!defined.add(operator.getId()))
+                this.error("Operator id is used multiple times");
+            if (operator.function != null)
+                this.validate(operator.function, context + " " + operator.functionName);
+            if (operator.is(JITAggregateOperator.class)) {
+                JITAggregateOperator aggregate = operator.to(JITAggregateOperator.class);
+                this.validateAggregate(context, aggregate.accLayout, aggregate.type,
+                        aggregate.aggregates, aggregate.stepFn, aggregate.finishFn);
+            } else if (operator.is(JITWindowAggregateOperator.class)) {
+                JITWindowAggregateOperator aggregate = operator.to(JITWindowAggregateOperator.class);
+                this.validateAggregate(context, aggregate.accLayout, aggregate.type,
+                        aggregate.aggregates, aggregate.stepFn, aggregate.finishFn);
+            }
+        }
+    }
+
+    /**
+     * Validate the aggregate descriptors, or the fold functions if there are no descriptors.
+     */
+    void validateAggregate(String context, JITRowType accLayout, JITRowType outputLayout,
+                           @Nullable List<JITAggregateDescriptor> aggregates,
+                           @Nullable JITFunction stepFn, @Nullable JITFunction finishFn) {
+        if (aggregates == null) {
+            if (stepFn == null || finishFn == null) {
+                this.error("Aggregate has neither descriptors nor fold functions");
+                return;
+            }
+            this.validate(stepFn, context + " step_fn");
+            this.validate(finishFn, context + " finish_fn");
+            return;
+        }
+        if (aggregates.size() != outputLayout.size())
+            this.error("Aggregate has " + aggregates.size() + " descriptors but produces " +
+                    outputLayout.size() + " columns");
+        int accSize = 0;
+        for (JITAggregateDescriptor aggregate: aggregates) {
+            int size = aggregate.accumulatorSize();
+            if (aggregate.accLayout.size() != size) {
+                this.error(aggregate.kind + " accumulator should have " + size + " fields, not " +
+                        aggregate.accLayout.size());
+                return;
+            }
+            if (aggregate.column < 0 && aggregate.kind != JITAggregateDescriptor.Kind.Count)
+                this.error(aggregate.kind + " aggregate requires a column");
+            if (aggregate.kind == JITAggregateDescriptor.Kind.Count && aggregate.accLayout.isNullable(0))
+                this.error("Count accumulator cannot be nullable");
+            for (int i = 0; i < size; i++) {
+                if (!sameType(accLayout.getFieldType(accSize + i), aggregate.accLayout.getFieldType(i)))
+                    this.error("Accumulator field " + (accSize + i) + " has type " +
+                            accLayout.getFieldType(accSize + i) + " but " + aggregate.kind + " expects " +
+                            aggregate.accLayout.getFieldType(i));
+            }
+            accSize += size;
+        }
+        if (accSize != accLayout.size())
+            this.error("Accumulator has " + accLayout.size() + " fields, but the aggregates need " + accSize);
+    }
+
+    public List<String> getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Throw if the validation has found any problems.
+     */
+    public void throwIfErrors() {
+        if (this.errors.isEmpty())
+            return;
+        Logger.INSTANCE.from(this, 1)
+                .append(String.join(System.lineSeparator(), this.errors))
+                .newline();
+        throw new RuntimeException("Invalid JIT program: " + this.errors.size() + " problems, first: " +
+                this.errors.get(0));
+    }
+
+    public static void validateProgram(JITProgram program) {
+        JITValidator validator = new JITValidator();
+        validator.validate(program);
+        validator.throwIfErrors();
+    }
+}
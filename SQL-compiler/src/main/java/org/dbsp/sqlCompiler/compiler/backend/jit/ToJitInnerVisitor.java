@@ -59,8 +59,12 @@ import org.dbsp.sqlCompiler.ir.pattern.DBSPIdentifierPattern;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRef;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.sqlCompiler.ir.type.IsNumericType;
 import org.dbsp.sqlCompiler.ir.type.primitive.*;
+import org.dbsp.util.Linq;
 import org.dbsp.util.Unimplemented;
 import org.dbsp.util.Utilities;
 
@@ -114,6 +118,17 @@ public class ToJitInnerVisitor extends InnerVisitor {
             this.variables.put(varName, result);
             return result;
         }
+
+        /**
+         * Add a new variable to the current context whose value
+         * is computed by existing instructions.
+         */
+        void bindVariable(String varName, JITInstructionPair value) {
+            if (this.variables.containsKey(varName)) {
+                throw new RuntimeException("Duplicate declaration " + varName);
+            }
+            this.variables.put(varName, value);
+        }
     }
 
     /**
@@ -149,6 +164,18 @@ public class ToJitInnerVisitor extends InnerVisitor {
      * A description how closure parameters are mapped to JIT parameters.
      */
     final JITParameterMapping mapping;
+    /**
+     * Ids of the string values allocated in the runtime arena.
+     * These must be cloned before being stored in a row.
+     */
+    final Set<Long> arenaValues;
+    /**
+     * Expression whose value is being stored in a row, if any.
+     * A string function whose result is stored directly in a row
+     * allocates the result on the heap instead of the arena.
+     */
+    @Nullable
+    DBSPExpression storedExpression;
 
     public ToJitInnerVisitor(List<JITBlock> blocks, TypeCatalog typeCatalog, JITParameterMapping mapping) {
         super(true);
@@ -159,6 +186,8 @@ public class ToJitInnerVisitor extends InnerVisitor {
         this.currentBlock = null;
         this.mapping = mapping;
         this.variableAssigned = new ArrayList<>();
+        this.arenaValues = new HashSet<>();
+        this.storedExpression = null;
     }
 
     long nextInstructionId() {
@@ -252,19 +281,22 @@ public class ToJitInnerVisitor extends InnerVisitor {
         return Objects.requireNonNull(this.currentBlock);
     }
 
-    void createFunctionCall(String name,
-                            DBSPExpression expression,  // usually an ApplyExpression, but not always
-                            DBSPExpression... arguments) {
-        // This assumes that the function is called only if no argument is nullable,
-        // and that if any argument IS nullable the result is NULL.
+    /**
+     * Generate a call to a function of the JIT runtime.
+     * This assumes that the function is called only if no argument is nullable,
+     * and that if any argument IS nullable the result is NULL.
+     * @param name          Name of the JIT function.
+     * @param resultType    Type of the result produced by the function.
+     * @param arena         True if the function allocates its result in the arena.
+     * @param arguments     Values of the arguments.
+     * @param argumentTypes Types of the arguments.
+     */
+    JITInstructionPair callFunction(String name, JITScalarType resultType, boolean arena,
+                                    List<JITInstructionPair> arguments, List<JITType> argumentTypes) {
         List<JITInstructionReference> nullableArgs = new ArrayList<>();
-        List<JITType> argumentTypes = new ArrayList<>();
         List<JITInstructionReference> args = new ArrayList<>();
-        for (DBSPExpression arg: arguments) {
-            JITInstructionPair argValues = this.accept(arg);
-            DBSPType argType = arg.getNonVoidType();
+        for (JITInstructionPair argValues: arguments) {
             args.add(argValues.value);
-            argumentTypes.add(this.convertType(argType));
             if (argValues.hasNull())
                 nullableArgs.add(argValues.isNull);
         }
@@ -299,10 +331,11 @@ public class ToJitInnerVisitor extends InnerVisitor {
             // The function call will be inserted in the onFalseBlock
         }
 
-        JITScalarType resultType = convertScalarType(expression);
         long id = this.nextInstructionId();
-        JITFunctionCall call = new JITFunctionCall(id, name, args, argumentTypes, resultType);
+        JITFunctionCall call = new JITFunctionCall(id, name, args, argumentTypes, resultType, arena);
         this.add(call);
+        if (arena)
+            this.arenaValues.add(id);
         JITInstructionPair result;
 
         if (isNull.isValid()) {
@@ -317,6 +350,24 @@ public class ToJitInnerVisitor extends InnerVisitor {
         } else {
             result = new JITInstructionPair(call);
         }
+        return result;
+    }
+
+    void createFunctionCall(String name,
+                            DBSPExpression expression,  // usually an ApplyExpression, but not always
+                            DBSPExpression... arguments) {
+        // Strings produced by functions are allocated in the arena,
+        // unless they are stored directly in a row.
+        boolean arena = expression.getNonVoidType().is(DBSPTypeString.class) &&
+                expression != this.storedExpression;
+        List<JITInstructionPair> args = new ArrayList<>();
+        List<JITType> argumentTypes = new ArrayList<>();
+        for (DBSPExpression arg: arguments) {
+            args.add(this.accept(arg));
+            argumentTypes.add(this.convertType(arg.getNonVoidType()));
+        }
+        JITInstructionPair result = this.callFunction(
+                name, convertScalarType(expression), arena, args, argumentTypes);
         this.map(expression, result);
     }
 
@@ -327,64 +378,60 @@ public class ToJitInnerVisitor extends InnerVisitor {
         throw new Unimplemented(expression);
     }
 
+    /**
+     * Maps functions from the SQL runtime library to the JIT runtime functions
+     * that implement them.  Functions with nullable arguments have the same
+     * implementation, since the JIT function is only called on non-null values.
+     */
+    static final Map<String, String> runtimeFunctions = new HashMap<>();
+
+    static {
+        // EXTRACT(field FROM value) fields
+        Map<String, String> fields = new HashMap<>();
+        fields.put("second", "second");
+        fields.put("minute", "minute");
+        fields.put("hour", "hour");
+        fields.put("day", "day");
+        fields.put("dow", "day_of_week");
+        fields.put("doy", "day_of_year");
+        fields.put("isodow", "iso_day_of_week");
+        fields.put("week", "week");
+        fields.put("month", "month");
+        fields.put("year", "year");
+        fields.put("isoyear", "isoyear");
+        fields.put("quarter", "quarter");
+        fields.put("decade", "decade");
+        fields.put("century", "century");
+        fields.put("millennium", "millennium");
+        fields.put("epoch", "epoch");
+        fields.put("millisecond", "millisecond");
+        fields.put("microsecond", "microsecond");
+        for (Map.Entry<String, String> field: fields.entrySet()) {
+            runtimeFunctions.put("extract_Timestamp_" + field.getKey(), "dbsp.timestamp." + field.getValue());
+            runtimeFunctions.put("extract_Date_" + field.getKey(), "dbsp.date." + field.getValue());
+        }
+        runtimeFunctions.put("floor_Timestamp_week", "dbsp.timestamp.floor_week");
+    }
+
+    /**
+     * The JIT function implementing a function from the SQL runtime library.
+     * @param function  Name of the SQL runtime function.
+     * @return          null if the function is not supported by the JIT.
+     */
+    @Nullable
+    static String getJITFunction(String function) {
+        String result = runtimeFunctions.get(function);
+        if (result == null && function.endsWith("N"))
+            // Version with nullable arguments
+            result = runtimeFunctions.get(function.substring(0, function.length() - 1));
+        return result;
+    }
+
     @Override
     public boolean preorder(DBSPApplyExpression expression) {
         DBSPPathExpression path = expression.function.as(DBSPPathExpression.class);
         if (path != null) {
-            String jitFunction = null;
-            String function = path.path.toString();
-            switch (function) {
-                case "extract_Timestamp_second":
-                    jitFunction = "dbsp.timestamp.second";
-                    break;
-                case "extract_Timestamp_minute":
-                    jitFunction = "dbsp.timestamp.minute";
-                    break;
-                case "extract_Timestamp_hour":
-                    jitFunction = "dbsp.timestamp.hour";
-                    break;
-                case "extract_Timestamp_day":
-                    jitFunction = "dbsp.timestamp.day";
-                    break;
-                case "extract_Timestamp_dow":
-                    jitFunction = "dbsp.timestamp.day_of_week";
-                    break;
-                case "extract_Timestamp_doy":
-                    jitFunction = "dbsp.timestamp.day_of_year";
-                    break;
-                case "extract_Timestamp_isodow":
-                    jitFunction = "dbsp.timestamp.iso_day_of_week";
-                    break;
-                case "extract_Timestamp_week":
-                    jitFunction = "dbsp.timestamp.week";
-                    break;
-                case "extract_Timestamp_month":
-                    jitFunction = "dbsp.timestamp.month";
-                    break;
-                case "extract_Timestamp_year":
-                    jitFunction = "dbsp.timestamp.year";
-                    break;
-                case "extract_Timestamp_isoyear":
-                    jitFunction = "dbsp.timestamp.isoyear";
-                    break;
-                case "extract_Timestamp_quarter":
-                    jitFunction = "dbsp.timestamp.quarter";
-                    break;
-                case "extract_Timestamp_decade":
-                    jitFunction = "dbsp.timestamp.decade";
-                    break;
-                case "extract_Timestamp_century":
-                    jitFunction = "dbsp.timestamp.century";
-                    break;
-                case "extract_Timestamp_millennium":
-                    jitFunction = "dbsp.timestamp.millennium";
-                    break;
-                case "extract_Timestamp_epoch":
-                    jitFunction = "dbsp.timestamp.epoch";
-                    break;
-                default:
-                    break;
-            }
+            String jitFunction = getJITFunction(path.path.toString());
             if (jitFunction != null) {
                 this.createFunctionCall(jitFunction, expression, expression.arguments);
                 return false;
@@ -426,21 +473,22 @@ public class ToJitInnerVisitor extends InnerVisitor {
         JITScalarType destinationType = convertScalarType(expression);
         JITInstruction cast = new JITCastInstruction(id, sourceId.value, sourceType, destinationType);
         this.add(cast);
+        if (this.arenaValues.contains(sourceId.value.getId()) && expression.getNonVoidType().is(DBSPTypeString.class))
+            // The cast does not copy the string
+            this.arenaValues.add(id);
 
         JITInstructionReference isNull = new JITInstructionReference();
         if (needsNull(expression)) {
             if (needsNull(expression.source)) {
                 isNull = sourceId.isNull;
             } else {
-                // TODO: if source is nullable and is null must panic at runtime
-                // this.createFunctionCall("dbsp.error.abort", expression);
-            }
-        } else {
-            if (needsNull(expression.source)) {
+                // A non-nullable value converted to a nullable type is never null
                 JITInstructionPair f = this.constantBool(false);
                 isNull = f.value;
             }
-            // else nothing to do
+        } else {
+            // TODO: if source is nullable and is null must panic at runtime
+            // this.createFunctionCall("dbsp.error.abort", expression);
         }
         this.map(expression, new JITInstructionPair(cast.getInstructionReference(), isNull));
         return false;
@@ -465,22 +513,61 @@ public class ToJitInnerVisitor extends InnerVisitor {
         opNames.put("|", JITBinaryInstruction.Operation.OR);
         opNames.put("||",JITBinaryInstruction.Operation.OR);
         opNames.put("^", JITBinaryInstruction.Operation.OR);
+        opNames.put("agg_plus", JITBinaryInstruction.Operation.ADD);
         opNames.put("agg_max", JITBinaryInstruction.Operation.MAX);
         opNames.put("agg_min", JITBinaryInstruction.Operation.MIN);
     }
 
+    /**
+     * The result of a division is null if either operand is null.
+     * Integer division by 0 also produces null; in that case the
+     * division is performed with a divisor of 1, to avoid a trap.
+     */
+    void division(DBSPBinaryExpression expression) {
+        JITInstructionPair leftId = this.accept(expression.left);
+        JITInstructionPair rightId = this.accept(expression.right);
+        JITScalarType type = convertScalarType(expression.left);
+        List<JITInstructionReference> nulls = new ArrayList<>();
+        if (leftId.hasNull())
+            nulls.add(leftId.isNull);
+        if (rightId.hasNull())
+            nulls.add(rightId.isNull);
+        JITInstructionReference divisor = rightId.value;
+        DBSPType rightType = expression.right.getNonVoidType().setMayBeNull(false);
+        if (!rightType.is(DBSPTypeFP.class)) {
+            IsNumericType numeric = rightType.to(IsNumericType.class);
+            JITInstructionPair zero = this.accept(numeric.getZero());
+            JITInstructionPair one = this.accept(numeric.getOne());
+            JITInstruction isZero = this.add(new JITBinaryInstruction(this.nextInstructionId(),
+                    JITBinaryInstruction.Operation.EQ, rightId.value, zero.value, type));
+            nulls.add(isZero.getInstructionReference());
+            divisor = this.add(new JITMuxInstruction(this.nextInstructionId(),
+                    isZero.getInstructionReference(), one.value, rightId.value)).getInstructionReference();
+        }
+        JITInstruction value = this.add(new JITBinaryInstruction(this.nextInstructionId(),
+                JITBinaryInstruction.Operation.DIV, leftId.value, divisor, type));
+        JITInstructionReference isNull = nulls.isEmpty() ? this.constantBool(false).value : nulls.get(0);
+        for (int i = 1; i < nulls.size(); i++) {
+            isNull = this.add(new JITBinaryInstruction(this.nextInstructionId(),
+                    JITBinaryInstruction.Operation.OR, isNull, nulls.get(i), JITBoolType.INSTANCE))
+                    .getInstructionReference();
+        }
+        this.map(expression, new JITInstructionPair(value.getInstructionReference(), isNull));
+    }
+
     @Override
     public boolean preorder(DBSPBinaryExpression expression) {
         // a || b for strings is concatenation.
         if (expression.left.getNonVoidType().is(DBSPTypeString.class) &&
                 expression.operation.equals("||")) {
-            this.createFunctionCall("dbsp.str.concat_clone", expression,
+            boolean arena = expression != this.storedExpression;
+            this.createFunctionCall(arena ? "dbsp.str.concat" : "dbsp.str.concat_clone", expression,
                     expression.left, expression.right);
             return false;
         }
         if (expression.operation.equals("/")) {
-            // TODO: division by 0 returns null.
-            throw new Unimplemented(expression);
+            this.division(expression);
+            return false;
         }
 
         JITInstructionPair leftId = this.accept(expression.left);
@@ -578,34 +665,43 @@ public class ToJitInnerVisitor extends InnerVisitor {
                 this.map(expression, new JITInstructionPair(value, isNull));
             }
             return false;
-        } else if (expression.operation.equals("agg_plus")) {
-            JITInstruction value = this.add(new JITBinaryInstruction(
-                    this.nextInstructionId(), JITBinaryInstruction.Operation.ADD,
+        } else if (expression.operation.startsWith("agg_")) {
+            // Aggregation functions ignore null operands:
+            // agg(a, b).value = a.is_null ? b.value : (b.is_null ? a.value : a.value op b.value)
+            JITInstructionReference value = this.add(new JITBinaryInstruction(
+                    this.nextInstructionId(), Utilities.getExists(opNames, expression.operation),
                     leftId.value, rightId.value,
-                    convertScalarType(expression.left)));
-            JITInstruction isNull = null;
+                    convertScalarType(expression.left))).getInstructionReference();
+            JITInstructionReference isNull = new JITInstructionReference();
             if (needsNull(expression)) {
+                if (rightId.hasNull())
+                    value = this.add(new JITMuxInstruction(this.nextInstructionId(),
+                            rightId.isNull, leftId.value, value)).getInstructionReference();
+                if (leftId.hasNull())
+                    value = this.add(new JITMuxInstruction(this.nextInstructionId(),
+                            leftId.isNull, rightId.value, value)).getInstructionReference();
                 // The result is null if both operands are null.
                 isNull = this.add(new JITBinaryInstruction(
                         this.nextInstructionId(), JITBinaryInstruction.Operation.AND,
-                        leftNullId, rightNullId, JITBoolType.INSTANCE));
+                        leftNullId, rightNullId, JITBoolType.INSTANCE)).getInstructionReference();
             }
             this.map(expression, new JITInstructionPair(value, isNull));
             return false;
         } else if (expression.operation.equals("mul_weight")) {
             // (a * w).value = (a.value * (type_of_a)w)
             // (a * w).is_null = a.is_null
-            JITInstructionReference left;
-            DBSPType rightType = ToJitVisitor.resolveWeightType(expression.right.getNonVoidType());
-            if (expression.left.getNonVoidType().sameType(rightType)) {
+            JITInstructionReference right = rightId.value;
+            DBSPType rightType = expression.right.getNonVoidType();
+            if (rightType.is(DBSPTypeRef.class))
+                rightType = rightType.to(DBSPTypeRef.class).type;
+            rightType = ToJitVisitor.resolveWeightType(rightType);
+            if (!expression.left.getNonVoidType().setMayBeNull(false).sameType(rightType)) {
                 JITInstruction cast = this.add(new JITCastInstruction(this.nextInstructionId(),
-                    rightId.value, convertScalarType(expression.right), convertScalarType(expression.left)));
-                left = cast.getInstructionReference();
-            } else {
-                left = leftId.value;
+                    rightId.value, JITScalarType.scalarType(rightType), convertScalarType(expression.left)));
+                right = cast.getInstructionReference();
             }
             JITInstruction value = this.add(new JITBinaryInstruction(this.nextInstructionId(),
-                JITBinaryInstruction.Operation.MUL, left, rightId.value, convertScalarType(expression.left)));
+                JITBinaryInstruction.Operation.MUL, leftId.value, right, convertScalarType(expression.left)));
             JITInstruction isNull = null;
             if (needsNull(expression)) {
                 isNull = this.add(new JITCopyInstruction(this.nextInstructionId(),
@@ -712,8 +808,11 @@ public class ToJitInnerVisitor extends InnerVisitor {
             case "indicator": {
                 if (!source.hasNull())
                     throw new RuntimeException("indicator called on non-nullable expression" + expression);
+                // 1 for non-null values, 0 for nulls
+                JITInstruction isPresent = this.add(new JITUnaryInstruction(this.nextInstructionId(),
+                    JITUnaryInstruction.Operation.NOT, source.isNull, JITBoolType.INSTANCE));
                 JITInstruction value = this.add(new JITCastInstruction(this.nextInstructionId(),
-                    source.isNull, JITBoolType.INSTANCE, JITI64Type.INSTANCE));
+                    isPresent.getInstructionReference(), JITBoolType.INSTANCE, JITI64Type.INSTANCE));
                 this.map(expression, new JITInstructionPair(value));
                 return false;
             }
@@ -743,6 +842,10 @@ public class ToJitInnerVisitor extends InnerVisitor {
         for (DBSPParameter param: closure.parameters) {
             DBSPIdentifierPattern identifier = param.pattern.to(DBSPIdentifierPattern.class);
             this.declare(identifier.identifier, needsNull(param.type));
+            // A raw tuple parameter is passed as multiple JIT parameters;
+            // skip their ids, which are accessed through the mapping.
+            for (int i = 1; i < this.mapping.getPartCount(param); i++)
+                this.nextInstructionId();
         }
 
         for (DBSPParameter param: this.mapping.outputParameters) {
@@ -761,45 +864,99 @@ public class ToJitInnerVisitor extends InnerVisitor {
 
     @Override
     public boolean preorder(DBSPLetStatement statement) {
-        boolean isTuple = statement.type.is(DBSPTypeTuple.class);
+        boolean isTuple = statement.type.is(DBSPTypeTupleBase.class);
+        if (!isTuple && statement.initializer != null) {
+            // A scalar variable is just a name for the value of the initializer.
+            // The initializer is compiled first, since it may refer to
+            // a variable with the same name, e.g.: let w = w.0;
+            JITInstructionPair value = this.accept(statement.initializer);
+            this.getCurrentContext().bindVariable(statement.variable, value);
+            return false;
+        }
         JITInstructionPair ids = this.declare(statement.variable, needsNull(statement.type));
         this.variableAssigned.add(statement.variable);
         JITType type = this.convertType(statement.type);
         if (isTuple)
             this.add(new JITUninitRowInstruction(ids.value.getId(), type.to(JITRowType.class)));
-        if (statement.initializer != null)
-            statement.initializer.accept(this);
+        if (statement.initializer != null) {
+            DBSPExpression initializer = statement.initializer;
+            // A raw tuple stored in a variable is a row like any other tuple
+            if (initializer.is(DBSPRawTupleExpression.class))
+                initializer = new DBSPTupleExpression(initializer.to(DBSPRawTupleExpression.class).fields);
+            initializer.accept(this);
+        }
         Utilities.removeLast(this.variableAssigned);
         return false;
     }
 
+    /**
+     * True if the variable with the specified name is a parameter of the
+     * closure that is being compiled, and not a local variable shadowing it.
+     */
+    boolean isClosureParameter(String varName) {
+        for (int i = this.declarations.size() - 1; i >= 0; i--) {
+            if (this.declarations.get(i).lookup(varName) != null)
+                return i == 0;
+        }
+        return false;
+    }
+
+    /**
+     * If the expression is a field of a raw tuple parameter which is
+     * passed as separate JIT parameters return the corresponding JIT parameter.
+     */
+    @Nullable
+    JITParameter getParameterReference(DBSPFieldExpression expression) {
+        if (expression.expression.is(DBSPParameter.class)) {
+            return this.mapping.getParameterReference(expression.expression.to(DBSPParameter.class), expression.fieldNo);
+        } else if (expression.expression.is(DBSPVariablePath.class)) {
+            // The fields of a raw tuple parameter are passed as separate rows.
+            String varName = expression.expression.to(DBSPVariablePath.class).variable;
+            if (this.isClosureParameter(varName))
+                return this.mapping.getParameterReference(varName, expression.fieldNo);
+        }
+        return null;
+    }
+
     @Override
     public boolean preorder(DBSPFieldExpression expression) {
-        if (expression.expression.is(DBSPParameter.class)) {
-            // check for parameter decompositions.
-            JITParameter param  = this.mapping.getParameterReference(expression.expression.to(DBSPParameter.class), expression.fieldNo);
-            if (param != null) {
-                JITInstructionReference value = new JITInstructionReference(param.getId());
-                JITInstructionReference isNullRef = new JITInstructionReference();
-                if (needsNull(expression)) {
-                    JITInstruction isNull = this.add(new JITIsNullInstruction(this.nextInstructionId(),
-                            param.getInstructionReference(), param.type, 0));
-                    isNullRef = isNull.getInstructionReference();
-                }
-                this.map(expression, new JITInstructionPair(value, isNullRef));
-                return false;
+        JITParameter param = this.getParameterReference(expression);
+        if (param != null) {
+            JITInstructionReference value = new JITInstructionReference(param.getId());
+            JITInstructionReference isNullRef = new JITInstructionReference();
+            if (needsNull(expression)) {
+                JITInstruction isNull = this.add(new JITIsNullInstruction(this.nextInstructionId(),
+                        param.getInstructionReference(), param.type, 0));
+                isNullRef = isNull.getInstructionReference();
             }
+            this.map(expression, new JITInstructionPair(value, isNullRef));
+            return false;
+        }
+        if (TypeCatalog.isNested(expression.getNonVoidType()))
+            // Only the scalar fields of a nested tuple can be accessed,
+            // or the whole tuple can be copied into another tuple.
+            throw new Unimplemented("Reference to a nested tuple", expression);
+
+        // Nested tuples are stored in the columns of the enclosing row,
+        // so a.1.0 is a single column of a.
+        DBSPExpression source = expression.expression;
+        int column = TypeCatalog.columnIndex(source.getNonVoidType(), expression.fieldNo);
+        while (source.is(DBSPFieldExpression.class) &&
+                this.getParameterReference(source.to(DBSPFieldExpression.class)) == null) {
+            DBSPFieldExpression field = source.to(DBSPFieldExpression.class);
+            column += TypeCatalog.columnIndex(field.expression.getNonVoidType(), field.fieldNo);
+            source = field.expression;
         }
 
         JITInstruction isNull = null;
-        JITInstructionPair sourceId = this.accept(expression.expression);
-        JITRowType sourceType = this.typeCatalog.convertTupleType(expression.expression.getNonVoidType());
+        JITInstructionPair sourceId = this.accept(source);
+        JITRowType sourceType = this.typeCatalog.convertTupleType(source.getNonVoidType());
         JITInstruction load = this.add(new JITLoadInstruction(
                 this.nextInstructionId(), sourceId.value, sourceType,
-                expression.fieldNo, convertScalarType(expression)));
+                column, convertScalarType(expression)));
         if (needsNull(expression)) {
             isNull = this.add(new JITIsNullInstruction(this.nextInstructionId(), sourceId.value,
-                sourceType, expression.fieldNo));
+                sourceType, column));
         }
         this.map(expression, new JITInstructionPair(load, isNull));
         return false;
@@ -822,7 +979,28 @@ public class ToJitInnerVisitor extends InnerVisitor {
 
     @Override
     public boolean preorder(DBSPIfExpression expression) {
-        // TODO
+        if (!ToJitVisitor.isScalarType(expression.getType()))
+            throw new Unimplemented("Conditional with a tuple value", expression);
+        // Blocks cannot pass values to their successors yet, so both branches
+        // are evaluated and the result is selected with a Mux.
+        JITInstructionPair cond = this.accept(expression.condition);
+        JITInstructionPair positive = this.accept(expression.positive);
+        JITInstructionPair negative = this.accept(expression.negative);
+        JITInstruction value = this.add(new JITMuxInstruction(this.nextInstructionId(),
+                cond.value, positive.value, negative.value));
+        if (this.arenaValues.contains(positive.value.getId()) ||
+                this.arenaValues.contains(negative.value.getId()))
+            this.arenaValues.add(value.getId());
+        JITInstruction isNull = null;
+        if (needsNull(expression)) {
+            JITInstructionReference positiveNull = positive.hasNull() ?
+                    positive.isNull : this.constantBool(false).value;
+            JITInstructionReference negativeNull = negative.hasNull() ?
+                    negative.isNull : this.constantBool(false).value;
+            isNull = this.add(new JITMuxInstruction(this.nextInstructionId(),
+                    cond.value, positiveNull, negativeNull));
+        }
+        this.map(expression, new JITInstructionPair(value, isNull));
         return false;
     }
 
@@ -839,30 +1017,75 @@ public class ToJitInnerVisitor extends InnerVisitor {
             // Convert RawTuples inside RawTuples to regular Tuples
             if (field.is(DBSPRawTupleExpression.class))
                 field = new DBSPTupleExpression(field.to(DBSPRawTupleExpression.class).fields);
+            else if (!field.is(DBSPTupleExpression.class) && TypeCatalog.isNested(field.getNonVoidType()))
+                // A tuple computed by another expression is copied field by field
+                field = new DBSPTupleExpression(fieldsOf(field));
             field.accept(this);
         }
         return false;
     }
 
-    @Override
-    public boolean preorder(DBSPTupleExpression expression) {
-        // Compile this as an assignment to the currently assigned variable
-        String variableAssigned = this.variableAssigned.get(this.variableAssigned.size() - 1);
-        JITInstructionPair retValId = this.resolve(variableAssigned);
-        JITRowType tupleTypeId = this.typeCatalog.convertTupleType(expression.getNonVoidType());
-        int index = 0;
-        for (DBSPExpression field: expression.fields) {
+    /**
+     * The expressions that compute the fields of a tuple-valued expression.
+     */
+    static DBSPExpression[] fieldsOf(DBSPExpression tuple) {
+        if (tuple.is(DBSPCloneExpression.class))
+            tuple = tuple.to(DBSPCloneExpression.class).expression;
+        if (tuple.is(DBSPTupleExpression.class))
+            return tuple.to(DBSPTupleExpression.class).fields;
+        if (tuple.is(DBSPRawTupleExpression.class))
+            return tuple.to(DBSPRawTupleExpression.class).fields;
+        int size = tuple.getNonVoidType().toRef(DBSPTypeTupleBase.class).size();
+        DBSPExpression[] result = new DBSPExpression[size];
+        for (int i = 0; i < size; i++)
+            result[i] = tuple.field(i);
+        return result;
+    }
+
+    /**
+     * Store the fields of a tuple in consecutive columns of a row.
+     * @param row     Row that is written.
+     * @param rowType Type of the row.
+     * @param column  First column written.
+     * @param fields  Values of the fields.
+     * @return        The column following the last one written.
+     */
+    int storeFields(JITInstructionPair row, JITRowType rowType, int column, DBSPExpression[] fields) {
+        for (DBSPExpression field: fields) {
+            if (TypeCatalog.isNested(field.getNonVoidType())) {
+                // The fields of a nested tuple are stored in the columns of the row
+                column = this.storeFields(row, rowType, column, fieldsOf(field));
+                continue;
+            }
+
             // Generates 1 or 2 instructions for each field (depending on nullability)
+            this.storedExpression = field;
             JITInstructionPair fieldId = this.accept(field);
+            this.storedExpression = null;
+            if (this.arenaValues.contains(fieldId.value.getId())) {
+                // Strings in the arena do not outlive the batch
+                fieldId = this.callFunction("dbsp.str.clone", JITScalarType.scalarType(field.getNonVoidType()),
+                        false, Linq.list(fieldId), Linq.list(JITScalarType.scalarType(field.getNonVoidType())));
+            }
             this.add(new JITStoreInstruction(this.nextInstructionId(),
-                    retValId.value, tupleTypeId, index, fieldId.value,
+                    row.value, rowType, column, fieldId.value,
                     JITScalarType.scalarType(field.getNonVoidType())));
             if (fieldId.hasNull()) {
                 this.add(new JITSetNullInstruction(this.nextInstructionId(),
-                        retValId.value, tupleTypeId, index, fieldId.isNull));
+                        row.value, rowType, column, fieldId.isNull));
             }
-            index++;
+            column++;
         }
+        return column;
+    }
+
+    @Override
+    public boolean preorder(DBSPTupleExpression expression) {
+        // Compile this as an assignment to the currently assigned variable
+        String variableAssigned = this.variableAssigned.get(this.variableAssigned.size() - 1);
+        JITInstructionPair retValId = this.resolve(variableAssigned);
+        JITRowType tupleTypeId = this.typeCatalog.convertTupleType(expression.getNonVoidType());
+        this.storeFields(retValId, tupleTypeId, 0, expression.fields);
         this.map(expression, retValId);
         return false;
     }
@@ -28,14 +28,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.circuit.IDBSPInnerNode;
 import org.dbsp.sqlCompiler.circuit.operator.*;
+import org.dbsp.sqlCompiler.compiler.CompilerOptions;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITAggregateDescriptor;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITParameterMapping;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITProgram;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITLiteral;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITTupleLiteral;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITZSetLiteral;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.*;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.optimize.IJITFunctionPass;
+import org.dbsp.sqlCompiler.compiler.backend.jit.optimize.JITOptimizer;
 import org.dbsp.sqlCompiler.compiler.backend.optimize.BetaReduction;
 import org.dbsp.sqlCompiler.compiler.backend.optimize.Simplify;
 import org.dbsp.sqlCompiler.compiler.backend.visitors.PassesVisitor;
@@ -45,6 +50,9 @@ import org.dbsp.sqlCompiler.ir.DBSPAggregate;
 import org.dbsp.sqlCompiler.ir.DBSPParameter;
 import org.dbsp.sqlCompiler.ir.expression.*;
 import org.dbsp.sqlCompiler.ir.expression.literal.*;
+import org.dbsp.sqlCompiler.ir.path.DBSPPath;
+import org.dbsp.sqlCompiler.ir.path.DBSPPathSegment;
+import org.dbsp.sqlCompiler.ir.path.DBSPSimplePathSegment;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
 import org.dbsp.sqlCompiler.ir.type.*;
@@ -62,12 +70,34 @@ import java.util.*;
  */
 public class ToJitVisitor extends CircuitVisitor implements IModule {
     JITProgram program;
+    /**
+     * Optimizations applied to each function generated.
+     */
+    @Nullable
+    final IJITFunctionPass optimizer;
+    /**
+     * If true the functions of map and filter operators use the
+     * BATCH calling convention, and process many rows per call.
+     */
+    final boolean batch;
+    /**
+     * If true aggregates made only of standard aggregate functions
+     * are described by JITAggregateDescriptors instead of fold functions.
+     */
+    final boolean describeAggregates;
 
-    public ToJitVisitor() {
+    public ToJitVisitor(CompilerOptions.Jit options) {
         super(true);
         this.program = new JITProgram();
+        this.optimizer = options.optimize ? JITOptimizer.create() : null;
+        this.batch = options.batch;
+        this.describeAggregates = options.describeAggregates;
     }
-    
+
+    public ToJitVisitor() {
+        this(new CompilerOptions.Jit());
+    }
+
     public TypeCatalog getTypeCatalog() {
         return this.program.typeCatalog;
     }
@@ -93,7 +123,13 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
         final JITRowType type;
 
         public OperatorConversion(DBSPOperator operator) {
-            this.type = ToJitVisitor.this.getTypeCatalog().convertTupleType(operator.getOutputZSetElementType());
+            DBSPType elementType;
+            if (operator.outputType.is(DBSPTypeIndexedZSet.class))
+                // Operators that do not change the data, like integrate, are also applied to indexed collections
+                elementType = operator.outputType.to(DBSPTypeIndexedZSet.class).elementType;
+            else
+                elementType = operator.getOutputZSetElementType();
+            this.type = ToJitVisitor.this.getTypeCatalog().convertTupleType(elementType);
             if (operator.function != null) {
                 DBSPExpression func = ToJitVisitor.this.resolve(operator.function);
                 this.function = ToJitVisitor.this.convertFunction(func.to(DBSPClosureExpression.class));
@@ -104,6 +140,16 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
         }
 
         public JITFunction getFunction() { return Objects.requireNonNull(this.function); }
+
+        /**
+         * The function, using the BATCH calling convention if enabled.
+         */
+        public JITFunction getBatchFunction() {
+            JITFunction function = this.getFunction();
+            if (ToJitVisitor.this.batch && function.canBatch())
+                return function.withCallingConvention(JITFunction.CallingConvention.BATCH);
+            return function;
+        }
     }
 
     JITFunction convertFunction(DBSPClosureExpression function) {
@@ -124,6 +170,8 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
 
         List<JITBlock> blocks = ToJitInnerVisitor.convertClosure(mapping, function, this.getTypeCatalog());
         JITFunction result = new JITFunction(mapping.allParameters, blocks, returnType);
+        if (this.optimizer != null)
+            result = this.optimizer.apply(result);
         Logger.INSTANCE.from(this, 4)
                 .append(result.toAssembly())
                 .newline();
@@ -151,7 +199,7 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
     public boolean preorder(DBSPFilterOperator operator) {
         OperatorConversion conversion = new OperatorConversion(operator);
         JITFilterOperator result = new JITFilterOperator(operator.id, conversion.type,
-                conversion.inputs, conversion.getFunction());
+                conversion.inputs, conversion.getBatchFunction());
         this.program.add(result);
         return false;
     }
@@ -161,8 +209,10 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
         OperatorConversion conversion = new OperatorConversion(operator);
         JITRowType keyType = this.getTypeCatalog().convertTupleType(operator.keType);
         JITRowType valueType = this.getTypeCatalog().convertTupleType(operator.valueType);
+        JITRowType inputType = this.getTypeCatalog().convertTupleType(
+                operator.input().getOutputZSetElementType());
         JITOperator result = new JITMapIndexOperator(operator.id,
-                keyType, valueType, conversion.type,
+                keyType, valueType, inputType,
                 conversion.inputs, conversion.getFunction());
         this.program.add(result);
         return false;
@@ -171,10 +221,20 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
     @Override
     public boolean preorder(DBSPMapOperator operator) {
         OperatorConversion conversion = new OperatorConversion(operator);
-        JITRowType inputType = this.getTypeCatalog().convertTupleType(
-                operator.input().getOutputZSetElementType());
-        JITOperator result = new JITMapOperator(operator.id, conversion.type, inputType,
-                conversion.inputs, conversion.getFunction());
+        JITOperator result;
+        DBSPTypeIndexedZSet indexedInput = operator.input().outputType.as(DBSPTypeIndexedZSet.class);
+        if (indexedInput != null) {
+            // The function receives the key and the value
+            JITRowType keyType = this.getTypeCatalog().convertTupleType(indexedInput.keyType);
+            JITRowType valueType = this.getTypeCatalog().convertTupleType(indexedInput.elementType);
+            result = new JITMapOperator(operator.id, conversion.type, keyType, valueType,
+                    conversion.inputs, conversion.getBatchFunction());
+        } else {
+            JITRowType inputType = this.getTypeCatalog().convertTupleType(
+                    operator.input().getOutputZSetElementType());
+            result = new JITMapOperator(operator.id, conversion.type, inputType,
+                    conversion.inputs, conversion.getBatchFunction());
+        }
         this.program.add(result);
         return false;
     }
@@ -267,7 +327,8 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
         int index = 0;
         for (DBSPParameter param: closure.parameters) {
             if (isScalarType(param.type)) {
-                DBSPParameter tuple = new DBSPParameter(param.pattern, new DBSPTypeRawTuple(param.type));
+                DBSPParameter tuple = new DBSPParameter(param.pattern,
+                        new DBSPTypeTuple(Objects.requireNonNull(resolveWeightType(param.type))));
                 statements.add(new DBSPLetStatement(
                         tuple.asVariableReference().variable,
                         tuple.asVariableReference().field(0)));
@@ -287,6 +348,160 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
         return newBlock.closure(newParams);
     }
 
+    /**
+     * Describe an aggregate function with a typed accumulator, if it is
+     * one of the standard aggregates that the runtime knows how to compute.
+     * @return null if the aggregate cannot be described.
+     */
+    @Nullable
+    JITAggregateDescriptor getAggregateDescriptor(DBSPAggregate.Implementation implementation, int columnOffset) {
+        if (implementation.operator == null)
+            return null;
+        JITAggregateDescriptor.Kind kind;
+        switch (implementation.operator.getKind()) {
+            case COUNT:
+                kind = JITAggregateDescriptor.Kind.Count;
+                break;
+            case SUM:
+            case SUM0:
+                kind = JITAggregateDescriptor.Kind.Sum;
+                break;
+            case MIN:
+                kind = JITAggregateDescriptor.Kind.Min;
+                break;
+            case MAX:
+                kind = JITAggregateDescriptor.Kind.Max;
+                break;
+            case AVG:
+                kind = JITAggregateDescriptor.Kind.Average;
+                break;
+            default:
+                return null;
+        }
+        DBSPTypeUser semigroup = implementation.semigroup.as(DBSPTypeUser.class);
+        if (semigroup == null)
+            return null;
+        JITRowType accLayout = this.getTypeCatalog().convertAccumulatorType(implementation.zero.getNonVoidType());
+        int column = implementation.column < 0 ? implementation.column : implementation.column + columnOffset;
+        return new JITAggregateDescriptor(
+                kind, column, implementation.weighted, accLayout, semigroup.name);
+    }
+
+    /**
+     * The JIT representation of the functions of an aggregate.
+     * If enabled, aggregates made only of standard aggregate functions are
+     * represented by descriptors; otherwise the aggregate is a fold with
+     * a step and a finish function.
+     */
+    class AggregateConversion {
+        @Nullable
+        final JITTupleLiteral init;
+        @Nullable
+        final JITFunction stepFn;
+        @Nullable
+        final JITFunction finishFn;
+        final JITRowType accLayout;
+        @Nullable
+        final JITRowType stepLayout;
+        @Nullable
+        final List<JITAggregateDescriptor> aggregates;
+
+        /**
+         * @param aggregate      Aggregate to convert.
+         * @param timestampType  For window aggregates the type of the timestamp.
+         *                       The values of the window input are rows
+         *                       that start with the timestamp, followed by
+         *                       the columns of the aggregated row.
+         */
+        AggregateConversion(DBSPAggregate aggregate, @Nullable DBSPType timestampType) {
+            int columnOffset = timestampType == null ? 0 : TypeCatalog.columnCount(timestampType);
+            List<JITAggregateDescriptor> descriptors = null;
+            List<DBSPType> accFields = new ArrayList<>();
+            if (ToJitVisitor.this.describeAggregates) {
+                descriptors = new ArrayList<>();
+                for (DBSPAggregate.Implementation implementation: aggregate.components) {
+                    JITAggregateDescriptor descriptor = ToJitVisitor.this.getAggregateDescriptor(
+                            implementation, columnOffset);
+                    if (descriptor == null) {
+                        descriptors = null;
+                        break;
+                    }
+                    descriptors.add(descriptor);
+                    DBSPType accType = implementation.zero.getNonVoidType();
+                    if (accType.is(DBSPTypeTupleBase.class))
+                        accFields.addAll(Linq.list(accType.to(DBSPTypeTupleBase.class).tupFields));
+                    else
+                        accFields.add(accType);
+                }
+            }
+            this.aggregates = descriptors;
+
+            if (descriptors != null) {
+                this.init = null;
+                this.stepFn = null;
+                this.finishFn = null;
+                this.stepLayout = null;
+                this.accLayout = ToJitVisitor.this.getTypeCatalog().convertTupleType(new DBSPTypeTuple(accFields));
+                return;
+            }
+
+            DBSPExpression initial = ToJitVisitor.this.resolve(aggregate.getZero());
+            DBSPTupleExpression elementValue = initial.to(DBSPTupleExpression.class);
+            this.init = new JITTupleLiteral(elementValue);
+
+            DBSPClosureExpression closure = aggregate.getIncrement();
+            if (timestampType != null) {
+                // The step function receives the whole value: |a, v, w| body
+                // becomes |a, tv, w| body[v := tv.1]
+                DBSPParameter row = closure.parameters[1];
+                DBSPType rowType = row.getNonVoidType();
+                if (rowType.is(DBSPTypeRef.class))
+                    rowType = rowType.to(DBSPTypeRef.class).type;
+                DBSPVariablePath value = new DBSPTypeTuple(timestampType, rowType).ref().var("tv");
+                DBSPParameter acc = closure.parameters[0];
+                DBSPParameter weight = closure.parameters[2];
+                closure = closure.call(acc.asVariableReference(), value.field(1), weight.asVariableReference())
+                        .closure(acc, value.asParameter(), weight);
+            }
+            BetaReduction reducer = new BetaReduction();
+            IDBSPInnerNode reduced = reducer.apply(closure);
+            closure = Objects.requireNonNull(reduced).to(DBSPClosureExpression.class);
+            closure = ToJitVisitor.this.tupleEachParameter(closure);
+            this.stepFn = ToJitVisitor.this.convertFunction(closure);
+
+            closure = aggregate.getPostprocessing();
+            reduced = reducer.apply(closure);
+            closure = Objects.requireNonNull(reduced).to(DBSPClosureExpression.class);
+            closure = ToJitVisitor.this.tupleEachParameter(closure);
+            this.finishFn = ToJitVisitor.this.convertFunction(closure);
+
+            this.accLayout = ToJitVisitor.this.getTypeCatalog().convertTupleType(aggregate.defaultZeroType());
+            this.stepLayout = ToJitVisitor.this.getTypeCatalog().convertTupleType(
+                    Objects.requireNonNull(aggregate.getIncrement().getResultType()));
+        }
+
+        JITAggregateOperator makeOperator(long id, JITRowType outputType, List<JITOperatorReference> inputs) {
+            if (this.aggregates != null)
+                return new JITAggregateOperator(id, this.accLayout, outputType, inputs, this.aggregates);
+            return new JITAggregateOperator(
+                    id, this.accLayout, Objects.requireNonNull(this.stepLayout), outputType, inputs,
+                    Objects.requireNonNull(this.init),
+                    Objects.requireNonNull(this.stepFn), Objects.requireNonNull(this.finishFn));
+        }
+
+        JITWindowAggregateOperator makeWindowOperator(
+                long id, JITRowType outputType, List<JITOperatorReference> inputs,
+                JITWindowAggregateOperator.Bound lower, JITWindowAggregateOperator.Bound upper) {
+            if (this.aggregates != null)
+                return new JITWindowAggregateOperator(
+                        id, this.accLayout, outputType, inputs, this.aggregates, lower, upper);
+            return new JITWindowAggregateOperator(
+                    id, this.accLayout, Objects.requireNonNull(this.stepLayout), outputType, inputs,
+                    Objects.requireNonNull(this.init),
+                    Objects.requireNonNull(this.stepFn), Objects.requireNonNull(this.finishFn), lower, upper);
+        }
+    }
+
     @Override
     public boolean preorder(DBSPAggregateOperator operator) {
         if (operator.function != null)
@@ -295,33 +510,43 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
         List<JITOperatorReference> inputs = Linq.map(
                 operator.inputs, i -> new JITOperatorReference(i.id));
         JITRowType outputType = this.getTypeCatalog().convertTupleType(operator.outputElementType);
-
-        DBSPAggregate aggregate = operator.getAggregate();
-        DBSPExpression initial = this.resolve(aggregate.getZero());
-        DBSPTupleExpression elementValue = initial.to(DBSPTupleExpression.class);
-        JITTupleLiteral init = new JITTupleLiteral(elementValue);
-
-        DBSPClosureExpression closure = aggregate.getIncrement();
-        BetaReduction reducer = new BetaReduction();
-        IDBSPInnerNode reduced = reducer.apply(closure);
-        closure = Objects.requireNonNull(reduced).to(DBSPClosureExpression.class);
-        closure = this.tupleEachParameter(closure);
-        JITFunction stepFn = this.convertFunction(closure);
-
-        closure = aggregate.getPostprocessing();
-        reduced = reducer.apply(closure);
-        closure = Objects.requireNonNull(reduced).to(DBSPClosureExpression.class);
-        closure = this.tupleEachParameter(closure);
-        JITFunction finishFn = this.convertFunction(closure);
-
-        JITRowType accLayout = this.getTypeCatalog().convertTupleType(aggregate.defaultZeroType());
-        JITRowType stepLayout = this.getTypeCatalog().convertTupleType(
-                Objects.requireNonNull(aggregate.getIncrement().getResultType()));
-        JITOperator result = new JITAggregateOperator(
-                operator.id, accLayout, stepLayout, outputType,
-                inputs, init, stepFn, finishFn);
+        AggregateConversion conversion = new AggregateConversion(operator.getAggregate(), null);
+        JITOperator result = conversion.makeOperator(operator.id, outputType, inputs);
         this.program.add(result);
+        return false;
+    }
 
+    /**
+     * Convert a window bound of the form RelOffset::Before(value).
+     */
+    JITWindowAggregateOperator.Bound convertWindowBound(DBSPExpression bound) {
+        DBSPStructExpression offset = bound.to(DBSPStructExpression.class);
+        DBSPPath path = offset.function.to(DBSPPathExpression.class).path;
+        DBSPPathSegment last = path.components[path.components.length - 1];
+        boolean before = last.to(DBSPSimplePathSegment.class).identifier.equals("Before");
+        DBSPExpression value = offset.arguments[0];
+        if (value.is(DBSPCastExpression.class))
+            // Casts of constants between integer types do not change their value
+            value = value.to(DBSPCastExpression.class).source;
+        if (!value.is(DBSPLiteral.class))
+            throw new Unimplemented("Window bound that is not a constant", value);
+        return new JITWindowAggregateOperator.Bound(before, new JITLiteral(value.to(DBSPLiteral.class)));
+    }
+
+    @Override
+    public boolean preorder(DBSPWindowAggregateOperator operator) {
+        if (operator.function != null)
+            throw new RuntimeException("Didn't expect the window aggregate to have a function");
+
+        List<JITOperatorReference> inputs = Linq.map(
+                operator.inputs, i -> new JITOperatorReference(i.id));
+        JITRowType outputType = this.getTypeCatalog().convertTupleType(operator.aggregateType);
+        AggregateConversion conversion = new AggregateConversion(operator.getAggregate(), operator.timestampType);
+        DBSPStructExpression window = this.resolve(operator.window).to(DBSPStructExpression.class);
+        JITWindowAggregateOperator.Bound lower = this.convertWindowBound(window.arguments[0]);
+        JITWindowAggregateOperator.Bound upper = this.convertWindowBound(window.arguments[1]);
+        JITOperator result = conversion.makeWindowOperator(operator.id, outputType, inputs, lower, upper);
+        this.program.add(result);
         return false;
     }
 
@@ -336,7 +561,8 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
     @Override
     public boolean preorder(DBSPSinkOperator operator) {
         OperatorConversion conversion = new OperatorConversion(operator);
-        JITOperator result = new JITSinkOperator(operator.id, conversion.type, conversion.inputs, operator.query);
+        JITOperator result = new JITSinkOperator(operator.id, conversion.type, conversion.inputs,
+                operator.outputName, operator.query);
         this.program.add(result);
         return false;
     }
@@ -359,7 +585,17 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
     }
 
     public static JITProgram circuitToJIT(DBSPCircuit circuit) {
+        return circuitToJIT(circuit, new CompilerOptions.Jit());
+    }
+
+    /**
+     * Convert a circuit to a JIT program.
+     * @param circuit   Circuit to convert.
+     * @param options   Options controlling the generated program.
+     */
+    public static JITProgram circuitToJIT(DBSPCircuit circuit, CompilerOptions.Jit options) {
         PassesVisitor rewriter = new PassesVisitor();
+        rewriter.add(new ExpandOperators());
         rewriter.add(new BlockClosures());
         rewriter.add(new Simplify().circuitRewriter());
         circuit = rewriter.apply(circuit);
@@ -367,7 +603,7 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
                 .append("Converting to JIT")
                 .newline()
                 .append(circuit.toString());
-        ToJitVisitor visitor = new ToJitVisitor();
+        ToJitVisitor visitor = new ToJitVisitor(options);
         visitor.apply(circuit);
         return visitor.program;
     }
@@ -383,6 +619,7 @@ public class ToJitVisitor extends CircuitVisitor implements IModule {
             Logger.INSTANCE.from("ToJitVisitor", 2)
                     .append(program.toAssembly())
                     .newline();
+            JITValidator.validateProgram(program);
             String json = program.asJson().toPrettyString();
             Logger.INSTANCE.from("ToJitVisitor", 2)
                     .append(json);
@@ -31,19 +31,35 @@ import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeRef;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+import org.dbsp.util.Unimplemented;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Maps each tuple type to an integer id.
+ * Tuple types that have the same JIT layout share the same id,
+ * so operators that process rows with the same shape have identical
+ * signatures.  E.g., a Tuple and a RawTuple with the same fields,
+ * or a tuple and its nullable version, are represented by the same layout.
+ * JIT rows cannot contain other rows, so nested tuples are flattened:
+ * the layout of (i32, Tuple2<i32, String>) is [i32, i32, String].
  */
 public class TypeCatalog {
     public final Map<DBSPType, JITRowType> typeId;
+    /**
+     * Maps the description of a layout to the unique row type with that layout.
+     */
+    final Map<String, JITRowType> layouts;
 
     public TypeCatalog() {
         this.typeId = new HashMap<>();
+        this.layouts = new LinkedHashMap<>();
     }
 
     public JITRowType convertTupleType(DBSPType type) {
@@ -52,15 +68,99 @@ public class TypeCatalog {
         DBSPTypeTupleBase tuple = type.to(DBSPTypeTupleBase.class);
         if (this.typeId.containsKey(tuple))
             return this.typeId.get(tuple);
-        long id = this.typeId.size() + 1;  // 0 is not a valid id
-        JITRowType result = new JITRowType(id, tuple);
+        long id = this.layouts.size() + 1;  // 0 is not a valid id
+        JITRowType result = new JITRowType(id, flatten(tuple));
+        String layout = result.toString();
+        if (this.layouts.containsKey(layout))
+            result = this.layouts.get(layout);
+        else
+            this.layouts.put(layout, result);
         this.typeId.put(tuple, result);
         return result;
     }
 
+    /**
+     * True if the type is a tuple that is stored as a sequence of columns
+     * when it appears within another tuple.
+     */
+    public static boolean isNested(DBSPType type) {
+        if (type.is(DBSPTypeRef.class))
+            type = type.to(DBSPTypeRef.class).type;
+        // Empty tuples are represented as Unit scalars
+        return type.is(DBSPTypeTupleBase.class) && type.to(DBSPTypeTupleBase.class).size() > 0;
+    }
+
+    /**
+     * Number of columns used to represent a value of the specified type.
+     */
+    public static int columnCount(DBSPType type) {
+        if (!isNested(type))
+            return 1;
+        if (type.is(DBSPTypeRef.class))
+            type = type.to(DBSPTypeRef.class).type;
+        int result = 0;
+        for (DBSPType field: type.to(DBSPTypeTupleBase.class).tupFields)
+            result += columnCount(field);
+        return result;
+    }
+
+    /**
+     * Index of the first column that represents the specified field of a tuple.
+     */
+    public static int columnIndex(DBSPType type, int fieldNo) {
+        if (type.is(DBSPTypeRef.class))
+            type = type.to(DBSPTypeRef.class).type;
+        DBSPTypeTupleBase tuple = type.to(DBSPTypeTupleBase.class);
+        int result = 0;
+        for (int i = 0; i < fieldNo; i++)
+            result += columnCount(tuple.getFieldType(i));
+        return result;
+    }
+
+    /**
+     * A tuple type with the columns of the specified type, where
+     * all nested tuples are replaced by their fields.
+     */
+    static DBSPTypeTupleBase flatten(DBSPTypeTupleBase tuple) {
+        boolean nested = false;
+        for (DBSPType field: tuple.tupFields)
+            nested = nested || isNested(field);
+        if (!nested)
+            return tuple;
+        List<DBSPType> columns = new ArrayList<>();
+        flatten(tuple, columns);
+        return new DBSPTypeTuple(columns);
+    }
+
+    static void flatten(DBSPType type, List<DBSPType> columns) {
+        if (type.is(DBSPTypeRef.class))
+            type = type.to(DBSPTypeRef.class).type;
+        for (DBSPType field: type.to(DBSPTypeTupleBase.class).tupFields) {
+            if (isNested(field)) {
+                if (field.mayBeNull)
+                    // A missing tuple would need a null bit for each column
+                    throw new Unimplemented("Nullable tuple in a JIT layout", field);
+                flatten(field, columns);
+            } else {
+                columns.add(field);
+            }
+        }
+    }
+
+    /**
+     * Layout of an aggregate accumulator.  Accumulators that are
+     * tuples use the layout of the tuple; scalar accumulators are
+     * represented as rows with a single column.
+     */
+    public JITRowType convertAccumulatorType(DBSPType type) {
+        if (type.is(DBSPTypeTupleBase.class))
+            return this.convertTupleType(type);
+        return this.convertTupleType(new DBSPTypeTuple(type));
+    }
+
     public BaseJsonNode asJson() {
         ObjectNode result = JITNode.jsonFactory().createObjectNode();
-        for (JITRowType row: this.typeId.values()) {
+        for (JITRowType row: this.layouts.values()) {
             result.set(Long.toString(row.id), row.asJson());
         }
         return result;
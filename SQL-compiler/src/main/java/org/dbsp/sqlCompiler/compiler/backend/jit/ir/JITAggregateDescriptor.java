@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.ir;
+
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
+import org.dbsp.util.IIndentStream;
+
+/**
+ * Describes one of the aggregate functions computed by an aggregate operator.
+ * The runtime can compute such an aggregate with a specialized loop
+ * over a typed accumulator, instead of calling a compiled step function
+ * for each row.
+ */
+public class JITAggregateDescriptor extends JITNode {
+    public enum Kind {
+        Count,
+        Sum,
+        Min,
+        Max,
+        /**
+         * The accumulator has two fields: the sum and the count.
+         */
+        Average
+    }
+
+    public final Kind kind;
+    /**
+     * Index of the aggregated column in the input value; -1 for COUNT(*).
+     */
+    public final int column;
+    /**
+     * If true the contribution of each row is multiplied with its weight.
+     */
+    public final boolean weighted;
+    /**
+     * Layout of the accumulator.
+     */
+    public final JITRowType accLayout;
+    /**
+     * Name of the semigroup used to combine two accumulators.
+     */
+    public final String semigroup;
+
+    public JITAggregateDescriptor(Kind kind, int column, boolean weighted,
+                                  JITRowType accLayout, String semigroup) {
+        this.kind = kind;
+        this.column = column;
+        this.weighted = weighted;
+        this.accLayout = accLayout;
+        this.semigroup = semigroup;
+    }
+
+    /**
+     * Number of fields of the accumulator of an aggregate of this kind.
+     */
+    public int accumulatorSize() {
+        return this.kind == Kind.Average ? 2 : 1;
+    }
+
+    @Override
+    public BaseJsonNode asJson() {
+        ObjectNode result = jsonFactory().createObjectNode();
+        result.put("kind", this.kind.toString());
+        if (this.column >= 0)
+            result.put("column", this.column);
+        result.put("weighted", this.weighted);
+        result.put("acc_layout", this.accLayout.getId());
+        result.put("semigroup", this.semigroup);
+        return result;
+    }
+
+    @Override
+    public IIndentStream toString(IIndentStream builder) {
+        builder.append(this.kind.toString())
+                .append("(");
+        if (this.column >= 0)
+            builder.append(this.column);
+        else
+            builder.append("*");
+        return builder.append(") ")
+                .append(this.weighted ? "weighted " : "")
+                .append(this.accLayout.toString())
+                .append(" ")
+                .append(this.semigroup);
+    }
+}
@@ -27,21 +27,98 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITBoolType;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITScalarType;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITUnitType;
 import org.dbsp.util.IIndentStream;
 
 import java.util.List;
 
 public class JITFunction extends JITNode {
+    /**
+     * How the runtime invokes a function.
+     */
+    public enum CallingConvention {
+        /**
+         * The function is invoked once for each row.
+         * Each parameter is a pointer to a row.
+         */
+        ROW("Row"),
+        /**
+         * Experimental: the function is invoked once for a batch of rows.
+         * This only describes an ABI; the blocks are not lowered to it.
+         * They still describe the computation for a single row, as for ROW,
+         * and the JIT compiler is expected to generate the loop over the batch.
+         * A runtime which does not implement this convention must reject
+         * the program.
+         *
+         * <p>For a batch of N rows the native arguments are, in order:
+         * <ul>
+         *     <li>for each parameter, in order, and for each column of its layout,
+         *     in order:
+         *     <ul>
+         *         <li>a pointer to N consecutive values of the column, using the
+         *         same native representation as a column of a row
+         *         (const for input parameters, mutable for output parameters);</li>
+         *         <li>if the column is nullable, a pointer to a null bitmap of
+         *         (N + 7) / 8 bytes, where bit (i % 8) of byte (i / 8) is set
+         *         if the column of row i is null (const for input parameters,
+         *         mutable for output parameters);</li>
+         *     </ul></li>
+         *     <li>N, as a usize;</li>
+         *     <li>if the result type is Bool, a mutable pointer to a bitmap of
+         *     (N + 7) / 8 bytes, in the same bit order, where the bit for row i
+         *     is set if the function returns true for row i.</li>
+         * </ul>
+         * The native function returns unit.  Only functions whose result is
+         * Bool or unit can use this convention (see canBatch).
+         * JITBatch models these arguments, and JITFunctionInterpreter.callBatch
+         * is the reference implementation of the convention.
+         */
+        BATCH("Batch");
+
+        private final String text;
+
+        CallingConvention(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return this.text;
+        }
+    }
+
     public final List<JITParameter> parameters;
     public final List<JITBlock> blocks;
     public final JITScalarType resultType;
+    public final CallingConvention callingConvention;
 
     public JITFunction(List<JITParameter> parameters, List<JITBlock> blocks,
-                       JITScalarType resultType) {
+                       JITScalarType resultType, CallingConvention callingConvention) {
         this.parameters = parameters;
         this.blocks = blocks;
         this.resultType = resultType;
+        this.callingConvention = callingConvention;
+    }
+
+    public JITFunction(List<JITParameter> parameters, List<JITBlock> blocks,
+                       JITScalarType resultType) {
+        this(parameters, blocks, resultType, CallingConvention.ROW);
+    }
+
+    /**
+     * True if this function can be invoked using the BATCH calling convention:
+     * the result must be either a Bool or returned in output parameters.
+     */
+    public boolean canBatch() {
+        return this.resultType.is(JITBoolType.class) || this.resultType.is(JITUnitType.class);
+    }
+
+    public JITFunction withCallingConvention(CallingConvention callingConvention) {
+        if (this.callingConvention == callingConvention)
+            return this;
+        return new JITFunction(this.parameters, this.blocks, this.resultType, callingConvention);
     }
 
     @Override
@@ -53,6 +130,8 @@ public class JITFunction extends JITNode {
         }
         result.set("ret", this.resultType.asJson());
         result.put("entry_block", this.blocks.get(0).getId());
+        if (this.callingConvention != CallingConvention.ROW)
+            result.put("calling_convention", this.callingConvention.toString());
         ObjectNode blocks = result.putObject("blocks");
         for (JITBlock block: this.blocks) {
             blocks.set(Long.toString(block.id), block.asJson());
@@ -62,6 +141,9 @@ public class JITFunction extends JITNode {
 
     @Override
     public IIndentStream toString(IIndentStream builder) {
+        if (this.callingConvention != CallingConvention.ROW)
+            builder.append(this.callingConvention.toString())
+                    .append(" ");
         return builder.append("(")
                 .joinI(", ", this.parameters)
                 .append(")")
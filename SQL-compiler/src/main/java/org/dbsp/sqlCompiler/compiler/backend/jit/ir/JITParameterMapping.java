@@ -30,6 +30,7 @@ import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITScalarType;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITUnitType;
 import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.pattern.DBSPIdentifierPattern;
 import org.dbsp.sqlCompiler.ir.type.DBSPType;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeRef;
@@ -84,8 +85,9 @@ public class JITParameterMapping {
         } else {
             DBSPTypeRef ref = type.as(DBSPTypeRef.class);
             if (ref != null)
+                // A reference to a raw tuple, e.g., a join key, is a single row
                 type = ref.type;
-            types.add(type.to(DBSPTypeTuple.class));
+            types.add(makeTupleType(type));
         }
         return types;
     }
@@ -179,6 +181,16 @@ public class JITParameterMapping {
         return JITUnitType.INSTANCE;
     }
 
+    /**
+     * Number of JIT parameters used to represent an input parameter.
+     */
+    public int getPartCount(DBSPParameter param) {
+        Decomposition decomp = this.mapping.get(param);
+        if (decomp == null)
+            return 1;
+        return decomp.parts.size();
+    }
+
     @Nullable
     public JITParameter getParameterReference(DBSPParameter param, int fieldNo) {
         if (!this.mapping.containsKey(param))
@@ -186,4 +198,24 @@ public class JITParameterMapping {
         Decomposition decomp = this.mapping.get(param);
         return decomp.parts.get(fieldNo);
     }
+
+    /**
+     * Find the JIT parameter holding a field of a raw tuple parameter.
+     * @param varName  Name of the closure parameter.
+     * @param fieldNo  Field of the raw tuple.
+     * @return         null if there is no such parameter, or if
+     *                 the parameter has not been decomposed.
+     */
+    @Nullable
+    public JITParameter getParameterReference(String varName, int fieldNo) {
+        for (Map.Entry<DBSPParameter, Decomposition> entry: this.mapping.entrySet()) {
+            DBSPParameter param = entry.getKey();
+            if (!param.getNonVoidType().is(DBSPTypeRawTuple.class))
+                continue;
+            DBSPIdentifierPattern pattern = param.pattern.as(DBSPIdentifierPattern.class);
+            if (pattern != null && pattern.identifier.equals(varName))
+                return entry.getValue().parts.get(fieldNo);
+        }
+        return null;
+    }
 }
@@ -29,8 +29,11 @@ import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.TypeCatalog;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.JITOperator;
+import org.dbsp.util.CborWriter;
 import org.dbsp.util.IIndentStream;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -55,6 +58,32 @@ public class JITProgram extends JITNode {
         return result;
     }
 
+    /**
+     * Write the program in CBOR format.  The encoded data has the same
+     * structure as the JSON produced by asJson(), but is more compact
+     * and faster to decode.  This is not a streaming serializer: the
+     * JSON tree of each operator is still built with asJson() and then
+     * encoded.  The trees are built one operator at a time, so only
+     * the largest operator is held in memory, never the whole program.
+     */
+    public void writeBinary(OutputStream stream) throws IOException {
+        CborWriter writer = new CborWriter(stream);
+        writer.writeMapHeader(2);
+        writer.write("nodes");
+        writer.writeMapHeader(this.operators.size());
+        for (JITOperator operator: this.operators) {
+            writer.write(Long.toString(operator.getId()));
+            writer.write(operator.asJson());
+        }
+        writer.write("layouts");
+        writer.write(this.typeCatalog.asJson());
+        writer.flush();
+    }
+
+    public List<JITOperator> getOperators() {
+        return this.operators;
+    }
+
     public void add(JITOperator source) {
         this.operators.add(source);
     }
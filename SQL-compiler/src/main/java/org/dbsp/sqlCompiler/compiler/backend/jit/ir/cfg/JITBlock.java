@@ -90,6 +90,35 @@ public class JITBlock extends JITNode implements IJITId {
         return result;
     }
 
+    /**
+     * A block with the same id and parameters, without instructions or terminator.
+     */
+    public JITBlock emptyCopy() {
+        JITBlock result = new JITBlock(this.id);
+        result.parameters.addAll(this.parameters);
+        return result;
+    }
+
+    public List<JITInstruction> getInstructions() {
+        return this.instructions;
+    }
+
+    public JITBlockTerminator getTerminator() {
+        return Objects.requireNonNull(this.terminator);
+    }
+
+    public boolean hasParameters() {
+        return !this.parameters.isEmpty();
+    }
+
+    public List<JITBlockParameter> getParameters() {
+        return this.parameters;
+    }
+
+    public boolean isTerminated() {
+        return this.terminator != null;
+    }
+
     public void add(JITInstruction instruction) {
         if (this.terminator != null)
             throw new RuntimeException("Block already terminated while adding instruction " + instruction);
@@ -26,6 +26,10 @@ package org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
 public abstract class JITBlockTerminator extends JITNode {
     // These are called 'parameters' in Rust, but they really are arguments.
     final JITBlockArguments arguments;
@@ -37,4 +41,42 @@ public abstract class JITBlockTerminator extends JITNode {
     public void addArgument(JITInstructionReference arg) {
         this.arguments.addArgument(arg);
     }
+
+    /**
+     * The blocks that this terminator can transfer control to.
+     */
+    public abstract List<JITBlockReference> getSuccessors();
+
+    /**
+     * The values used by this terminator, including the block arguments.
+     */
+    public List<JITInstructionReference> getOperands() {
+        return new ArrayList<>(this.arguments.arguments);
+    }
+
+    /**
+     * The values bound to the parameters of the target block.
+     * For a branch these are the arguments of the 'true' target.
+     */
+    public List<JITInstructionReference> getArguments() {
+        return this.arguments.arguments;
+    }
+
+    public boolean hasArguments() {
+        return !this.arguments.arguments.isEmpty();
+    }
+
+    /**
+     * Create a terminator with the same targets that uses different operands.
+     * @param replacement  Function that supplies the new value for each operand.
+     */
+    public abstract JITBlockTerminator replaceOperands(UnaryOperator<JITInstructionReference> replacement);
+
+    /**
+     * Copy the arguments of this terminator to another one, replacing them.
+     */
+    void copyArguments(JITBlockTerminator to, UnaryOperator<JITInstructionReference> replacement) {
+        for (JITInstructionReference arg: this.arguments.arguments)
+            to.addArgument(replacement.apply(arg));
+    }
 }
@@ -27,6 +27,10 @@ import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITBranchTerminator extends JITBlockTerminator {
     public final JITBlockArguments falseArguments;
@@ -57,6 +61,38 @@ public class JITBranchTerminator extends JITBlockTerminator {
         return result;
     }
 
+    @Override
+    public List<JITBlockReference> getSuccessors() {
+        return Linq.list(this.truthy, this.falsy);
+    }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        List<JITInstructionReference> result = super.getOperands();
+        result.add(this.condition);
+        result.addAll(this.falseArguments.arguments);
+        return result;
+    }
+
+    @Override
+    public JITBlockTerminator replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        JITBranchTerminator result = new JITBranchTerminator(
+                replacement.apply(this.condition), this.truthy, this.falsy);
+        this.copyArguments(result, replacement);
+        for (JITInstructionReference arg: this.falseArguments.arguments)
+            result.falseArguments.addArgument(replacement.apply(arg));
+        return result;
+    }
+
+    public List<JITInstructionReference> getFalseArguments() {
+        return this.falseArguments.arguments;
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return super.hasArguments() || !this.falseArguments.arguments.isEmpty();
+    }
+
     @Override
     public IIndentStream toString(IIndentStream builder) {
         return builder.append("if ")
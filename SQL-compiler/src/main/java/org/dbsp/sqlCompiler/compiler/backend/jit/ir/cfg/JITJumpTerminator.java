@@ -25,7 +25,12 @@ package org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg;
 
 import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITJumpTerminator extends JITBlockTerminator {
     public final JITBlockReference target;
@@ -44,6 +49,18 @@ public class JITJumpTerminator extends JITBlockTerminator {
         return result;
     }
 
+    @Override
+    public List<JITBlockReference> getSuccessors() {
+        return Linq.list(this.target);
+    }
+
+    @Override
+    public JITBlockTerminator replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        JITJumpTerminator result = new JITJumpTerminator(this.target);
+        this.copyArguments(result, replacement);
+        return result;
+    }
+
     @Override
     public IIndentStream toString(IIndentStream builder) {
         return builder.append("jump ")
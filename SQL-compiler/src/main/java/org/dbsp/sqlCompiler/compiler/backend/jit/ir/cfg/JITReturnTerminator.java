@@ -27,6 +27,10 @@ import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITReturnTerminator extends JITBlockTerminator {
     public final JITInstructionReference retVal;
@@ -48,6 +52,25 @@ public class JITReturnTerminator extends JITBlockTerminator {
         return result;
     }
 
+    @Override
+    public List<JITBlockReference> getSuccessors() {
+        return Linq.list();
+    }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        if (this.retVal.isValid())
+            return Linq.list(this.retVal);
+        return Linq.list();
+    }
+
+    @Override
+    public JITBlockTerminator replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        if (!this.retVal.isValid())
+            return this;
+        return new JITReturnTerminator(replacement.apply(this.retVal));
+    }
+
     @Override
     public IIndentStream toString(IIndentStream builder) {
         return builder.append("return ")
@@ -28,6 +28,10 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITType;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITCopyInstruction extends JITInstruction {
     public final JITInstructionReference operand;
@@ -53,4 +57,14 @@ public class JITCopyInstruction extends JITInstruction {
                 .append(" ")
                 .append(this.operand);
     }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return Linq.list(this.operand);
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITCopyInstruction(this.id, replacement.apply(this.operand), this.type);
+    }
 }
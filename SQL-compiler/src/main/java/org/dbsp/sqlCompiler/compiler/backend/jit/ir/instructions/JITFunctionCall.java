@@ -32,20 +32,34 @@ import org.dbsp.util.IIndentStream;
 import org.dbsp.util.Linq;
 
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITFunctionCall extends JITInstruction {
     public final String functionName;
     public final List<JITInstructionReference> arguments;
     public final List<JITType> argumentTypes;
     public final JITType returnType;
+    /**
+     * If true the function allocates its result (a string) in an arena
+     * owned by the runtime, which is released after each batch is processed.
+     * Such results can be used as arguments of other functions, but they
+     * have to be cloned before being stored in a row.
+     */
+    public final boolean arena;
 
     public JITFunctionCall(long id, String functionName, List<JITInstructionReference> arguments,
-                           List<JITType> argumentTypes, JITType returnType) {
+                           List<JITType> argumentTypes, JITType returnType, boolean arena) {
         super(id, "Call");
         this.functionName = functionName;
         this.arguments = arguments;
         this.argumentTypes = argumentTypes;
         this.returnType = returnType;
+        this.arena = arena;
+    }
+
+    public JITFunctionCall(long id, String functionName, List<JITInstructionReference> arguments,
+                           List<JITType> argumentTypes, JITType returnType) {
+        this(id, functionName, arguments, argumentTypes, returnType, false);
     }
 
     @Override
@@ -60,7 +74,8 @@ public class JITFunctionCall extends JITInstruction {
         //    "function": "some.func",
         //    "args": [100, 200],
         //    "arg_types": [{ "Row": 10 }, { "Scalar": "U32" }],
-        //    "ret_ty": "I32"
+        //    "ret_ty": "I32",
+        //    "arena": true  // only for functions that allocate in the arena
         // }
         ObjectNode result = JITNode.jsonFactory().createObjectNode();
         result.put("function", this.functionName);
@@ -79,6 +94,8 @@ public class JITFunctionCall extends JITInstruction {
             index++;
         }
         result.put("ret_ty", this.returnType.toString());
+        if (this.arena)
+            result.put("arena", true);
         return result;
     }
 
@@ -89,6 +106,23 @@ public class JITFunctionCall extends JITInstruction {
                 .append(this.functionName)
                 .append("(")
                 .joinI(", ", this.arguments)
-                .append(")");
+                .append(")")
+                .append(this.arena ? " arena" : "");
+    }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return this.arguments;
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITFunctionCall(this.id, this.functionName, Linq.map(this.arguments, replacement),
+                this.argumentTypes, this.returnType, this.arena);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
     }
 }
@@ -33,6 +33,9 @@ import org.dbsp.util.IIndentStream;
 import org.dbsp.util.IndentStream;
 import org.dbsp.util.StringPrintStream;
 
+import java.util.List;
+import java.util.function.UnaryOperator;
+
 public abstract class JITInstruction extends JITNode implements IJITId {
     public final long id;
     public final String name;
@@ -63,6 +66,25 @@ public abstract class JITInstruction extends JITNode implements IJITId {
 
     protected abstract BaseJsonNode instructionAsJson();
 
+    /**
+     * The values used by this instruction.
+     */
+    public abstract List<JITInstructionReference> getOperands();
+
+    /**
+     * Create an instruction with the same id that uses different operands.
+     * @param replacement  Function that supplies the new value for each operand.
+     */
+    public abstract JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement);
+
+    /**
+     * True if the instruction does more than computing a value,
+     * so it cannot be removed even if the value is not used.
+     */
+    public boolean hasSideEffects() {
+        return false;
+    }
+
     public JITInstructionReference getInstructionReference() {
         return new JITInstructionReference(this.id);
     }
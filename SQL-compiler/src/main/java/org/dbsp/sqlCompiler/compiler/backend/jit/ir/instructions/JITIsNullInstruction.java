@@ -27,6 +27,10 @@ import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITIsNullInstruction extends JITInstruction {
     public final JITInstructionReference target;
@@ -58,4 +62,15 @@ public class JITIsNullInstruction extends JITInstruction {
                 .append(this.column)
                 .append("]");
     }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return Linq.list(this.target);
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITIsNullInstruction(this.id, replacement.apply(this.target),
+                this.targetType, this.column);
+    }
 }
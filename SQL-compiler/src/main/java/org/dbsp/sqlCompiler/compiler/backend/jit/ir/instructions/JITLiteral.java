@@ -39,6 +39,7 @@ import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI32Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPI64Literal;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPStringLiteral;
+import org.dbsp.sqlCompiler.ir.type.IsNumericType;
 import org.dbsp.util.IIndentStream;
 import org.dbsp.util.Unimplemented;
 
@@ -98,6 +99,9 @@ public class JITLiteral extends JITValue {
             return isNull ? new DoubleNode(0.0) : new DoubleNode(this.literal.to(DBSPDoubleLiteral.class).value);
         } else if (this.literal.is(DBSPFloatLiteral.class)) {
             return isNull ? new FloatNode(0.0F) : new FloatNode(this.literal.to(DBSPFloatLiteral.class).value);
+        } else if (this.literal.isNull && this.literal.getNonVoidType().is(IsNumericType.class)) {
+            // An untyped null, e.g., None::<i32>; the value is never used
+            return new JITLiteral(this.literal.getNonVoidType().to(IsNumericType.class).getZero()).getValueAsJson();
         } else {
             throw new Unimplemented(this.literal);
         }
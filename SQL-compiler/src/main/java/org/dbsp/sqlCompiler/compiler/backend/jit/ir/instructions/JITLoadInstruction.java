@@ -28,6 +28,10 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITScalarType;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITLoadInstruction extends JITInstruction {
     public final JITInstructionReference source;
@@ -69,4 +73,15 @@ public class JITLoadInstruction extends JITInstruction {
                 .append(this.column)
                 .append("]");
     }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return Linq.list(this.source);
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITLoadInstruction(this.id, replacement.apply(this.source),
+                this.sourceType, this.column, this.resultType);
+    }
 }
@@ -27,6 +27,10 @@ import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITSetNullInstruction extends JITInstruction {
     public final JITInstructionReference target;
@@ -70,4 +74,20 @@ public class JITSetNullInstruction extends JITInstruction {
                 .append("]=")
                 .append(this.source);
     }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return Linq.list(this.target, this.source);
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITSetNullInstruction(this.id, replacement.apply(this.target),
+                this.targetType, this.column, replacement.apply(this.source));
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
 }
@@ -28,6 +28,10 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITScalarType;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITStoreInstruction extends JITInstruction {
     public final JITInstructionReference target;
@@ -77,4 +81,20 @@ public class JITStoreInstruction extends JITInstruction {
                 .append("]=")
                 .append(this.source);
     }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return Linq.list(this.target, this.source);
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITStoreInstruction(this.id, replacement.apply(this.target),
+                this.targetType, this.column, replacement.apply(this.source), this.valueType);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
 }
@@ -26,6 +26,7 @@ package org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.ir.expression.DBSPBaseTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPExpression;
 import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
 import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
@@ -34,14 +35,26 @@ import org.dbsp.util.IIndentStream;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A literal row.  Nested tuples are flattened, like the layouts
+ * produced by the TypeCatalog.
+ */
 public class JITTupleLiteral extends JITValue {
     public final List<JITLiteral> fields;
 
     public JITTupleLiteral(DBSPTupleExpression expression) {
         this.fields = new ArrayList<>(expression.size());
+        this.addFields(expression);
+    }
+
+    void addFields(DBSPBaseTupleExpression expression) {
         for (DBSPExpression e: expression.fields) {
-            JITLiteral literal = new JITLiteral(e.to(DBSPLiteral.class));
-            this.fields.add(literal);
+            if (e.is(DBSPBaseTupleExpression.class)) {
+                this.addFields(e.to(DBSPBaseTupleExpression.class));
+            } else {
+                JITLiteral literal = new JITLiteral(e.to(DBSPLiteral.class));
+                this.fields.add(literal);
+            }
         }
     }
 
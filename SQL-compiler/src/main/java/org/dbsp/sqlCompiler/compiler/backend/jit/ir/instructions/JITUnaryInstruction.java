@@ -27,6 +27,10 @@ import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITType;
 import org.dbsp.util.IIndentStream;
+import org.dbsp.util.Linq;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
 
 public class JITUnaryInstruction extends JITInstruction {
     public enum Operation {
@@ -79,4 +83,15 @@ public class JITUnaryInstruction extends JITInstruction {
                 .append(" ")
                 .append(this.operand);
     }
+
+    @Override
+    public List<JITInstructionReference> getOperands() {
+        return Linq.list(this.operand);
+    }
+
+    @Override
+    public JITInstruction replaceOperands(UnaryOperator<JITInstructionReference> replacement) {
+        return new JITUnaryInstruction(this.id, this.operation,
+                replacement.apply(this.operand), this.type);
+    }
 }
@@ -23,20 +23,42 @@
 
 package org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITAggregateDescriptor;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITTupleLiteral;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 
+import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Objects;
 
+/**
+ * An aggregate is computed either by folding each group with a step function
+ * and post-processing the result with a finish function, or, when all the
+ * aggregate functions are standard ones, by a list of aggregate descriptors.
+ * Descriptors are only generated on request (the -ja compiler option),
+ * since runtimes which only know folds cannot execute them.
+ */
 public class JITAggregateOperator extends JITOperator {
-    final JITTupleLiteral init;
-    final JITFunction stepFn;
-    final JITFunction finishFn;
-    final JITRowType accLayout;
-    final JITRowType stepLayout;
+    @Nullable
+    public final JITTupleLiteral init;
+    @Nullable
+    public final JITFunction stepFn;
+    @Nullable
+    public final JITFunction finishFn;
+    public final JITRowType accLayout;
+    @Nullable
+    public final JITRowType stepLayout;
+    /**
+     * If not null the aggregate is described by these descriptors,
+     * and there are no fold functions.  The accumulator is the
+     * concatenation of the accumulators of all descriptors.
+     */
+    @Nullable
+    public final List<JITAggregateDescriptor> aggregates;
 
     public JITAggregateOperator(long id,
                                 JITRowType accLayout,
@@ -49,17 +71,48 @@ public class JITAggregateOperator extends JITOperator {
         this.stepLayout = stepLayout;
         this.finishFn = finishFn;
         this.stepFn = stepFn;
+        this.aggregates = null;
+    }
+
+    public JITAggregateOperator(long id,
+                                JITRowType accLayout,
+                                JITRowType type, List<JITOperatorReference> inputs,
+                                List<JITAggregateDescriptor> aggregates) {
+        super(id, "Aggregate", "", type, inputs, null, null);
+        this.init = null;
+        this.accLayout = accLayout;
+        this.stepLayout = null;
+        this.finishFn = null;
+        this.stepFn = null;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Add to 'data' either the aggregate descriptors or the fold functions.
+     */
+    static void addAggregates(ObjectNode data,
+                              @Nullable List<JITAggregateDescriptor> aggregates,
+                              @Nullable JITTupleLiteral init, @Nullable JITRowType stepLayout,
+                              @Nullable JITFunction stepFn, @Nullable JITFunction finishFn) {
+        if (aggregates != null) {
+            ArrayNode array = data.putArray("aggregates");
+            for (JITAggregateDescriptor aggregate: aggregates)
+                array.add(aggregate.asJson());
+        } else {
+            data.put("step_layout", Objects.requireNonNull(stepLayout).getId());
+            data.set("finish_fn", Objects.requireNonNull(finishFn).asJson());
+            data.set("step_fn", Objects.requireNonNull(stepFn).asJson());
+            data.set("init", Objects.requireNonNull(init).asJson());
+        }
     }
 
     @Override
     public BaseJsonNode asJson() {
-        ObjectNode result = jsonFactory().createObjectNode();
-        result.put("acc_layout", this.accLayout.getId());
-        result.put("step_layout", this.stepLayout.getId());
-        result.put("output_layout", this.type.getId());
-        result.set("finish_fn", this.finishFn.asJson());
-        result.set("step_fn", this.stepFn.asJson());
-        result.set("init", this.init.asJson());
+        BaseJsonNode result = super.asJson();
+        ObjectNode data = this.getInnerObject(result);
+        data.put("acc_layout", this.accLayout.getId());
+        data.put("output_layout", this.type.getId());
+        addAggregates(data, this.aggregates, this.init, this.stepLayout, this.stepFn, this.finishFn);
         return result;
     }
 }
@@ -43,9 +43,10 @@ public class JITIndexWithOperator extends JITOperator {
 
     @Override
     public BaseJsonNode asJson() {
-        ObjectNode result = (ObjectNode)super.asJson();
-        result.put("key_layout", this.keyType.getId());
-        result.put("value_layout", this.valueType.getId());
+        BaseJsonNode result = super.asJson();
+        ObjectNode data = this.getInnerObject(result);
+        data.put("key_layout", this.keyType.getId());
+        data.put("value_layout", this.valueType.getId());
         return result;
     }
 }
@@ -44,10 +44,11 @@ public class JITJoinOperator extends JITOperator {
 
     @Override
     public BaseJsonNode asJson() {
-        ObjectNode result = jsonFactory().createObjectNode();
-        result.put("value_layout", this.valueType.getId());
-        result.put("key_layout", this.keyType.getId());
-        result.put("output_kind", "Set");
+        BaseJsonNode result = super.asJson();
+        ObjectNode data = this.getInnerObject(result);
+        data.put("value_layout", this.valueType.getId());
+        data.put("key_layout", this.keyType.getId());
+        data.put("output_kind", "Set");
         return result;
     }
 }
@@ -48,9 +48,10 @@ public class JITMapIndexOperator extends JITOperator {
 
     @Override
     public BaseJsonNode asJson() {
-        ObjectNode result = (ObjectNode)super.asJson();
-        this.addIndexedZSetLayout(result, "output_layout", this.keyType, this.valueType);
-        this.addZSetLayout(result, "input_layout", this.inputType);
+        BaseJsonNode result = super.asJson();
+        ObjectNode data = this.getInnerObject(result);
+        this.addIndexedZSetLayout(data, "output_layout", this.keyType, this.valueType);
+        this.addZSetLayout(data, "input_layout", this.inputType);
         return result;
     }
 }
@@ -28,15 +28,31 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 
+import javax.annotation.Nullable;
 import java.util.List;
 
 public class JITMapOperator extends JITOperator {
+    /**
+     * Type of the input elements, or of the input keys if the input is an indexed Z-set.
+     */
     public final JITRowType inputType;
+    /**
+     * Type of the input values if the input is an indexed Z-set.
+     */
+    @Nullable
+    public final JITRowType inputValueType;
 
     public JITMapOperator(long id, JITRowType outputType, JITRowType inputType,
                           List<JITOperatorReference> inputs, JITFunction function) {
+        this(id, outputType, inputType, null, inputs, function);
+    }
+
+    public JITMapOperator(long id, JITRowType outputType, JITRowType inputType,
+                          @Nullable JITRowType inputValueType,
+                          List<JITOperatorReference> inputs, JITFunction function) {
         super(id, "Map", "map_fn", outputType, inputs, function, null);
         this.inputType = inputType;
+        this.inputValueType = inputValueType;
     }
 
     @Override
@@ -45,8 +61,12 @@ public class JITMapOperator extends JITOperator {
         ObjectNode map = this.getInnerObject(result);
         ObjectNode layout = map.putObject("output_layout");
         layout.put("Set", this.type.getId());
-        layout = map.putObject("input_layout");
-        layout.put("Set", this.inputType.getId());
+        if (this.inputValueType != null) {
+            this.addIndexedZSetLayout(map, "input_layout", this.inputType, this.inputValueType);
+        } else {
+            layout = map.putObject("input_layout");
+            layout.put("Set", this.inputType.getId());
+        }
         return result;
     }
 }
@@ -28,7 +28,14 @@ import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
 import java.util.List;
 
 public class JITSinkOperator extends JITOperator {
-    public JITSinkOperator(long id, JITRowType type, List<JITOperatorReference> inputs, String comment) {
+    /**
+     * Name of the circuit output.  Not part of the serialized representation.
+     */
+    public final String outputName;
+
+    public JITSinkOperator(long id, JITRowType type, List<JITOperatorReference> inputs,
+                           String outputName, String comment) {
         super(id, "Sink", "", type, inputs, null, comment);
+        this.outputName = outputName;
     }
 }
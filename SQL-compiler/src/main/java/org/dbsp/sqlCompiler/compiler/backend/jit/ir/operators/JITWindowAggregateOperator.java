@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators;
+
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITAggregateDescriptor;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITLiteral;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITTupleLiteral;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Aggregates over a window of rows ordered by a timestamp within each partition.
+ * The input is indexed by the partition key, and the values are pairs (timestamp, row).
+ * Since JIT rows cannot be nested, each value is stored as a single row
+ * whose first column is the timestamp, followed by the columns of the row;
+ * the step function and the aggregate descriptors refer to the columns of this row.
+ * The output is indexed by (partition key, timestamp).
+ */
+public class JITWindowAggregateOperator extends JITOperator {
+    /**
+     * A window bound: an offset before or after the current timestamp.
+     */
+    public static class Bound {
+        public final boolean before;
+        public final JITLiteral offset;
+
+        public Bound(boolean before, JITLiteral offset) {
+            this.before = before;
+            this.offset = offset;
+        }
+
+        public BaseJsonNode asJson() {
+            ObjectNode result = jsonFactory().createObjectNode();
+            result.set(this.before ? "Before" : "After", this.offset.getValueAsJson());
+            return result;
+        }
+    }
+
+    @Nullable
+    public final JITTupleLiteral init;
+    @Nullable
+    public final JITFunction stepFn;
+    @Nullable
+    public final JITFunction finishFn;
+    public final JITRowType accLayout;
+    @Nullable
+    public final JITRowType stepLayout;
+    /**
+     * See JITAggregateOperator.
+     */
+    @Nullable
+    public final List<JITAggregateDescriptor> aggregates;
+    final Bound lower;
+    final Bound upper;
+
+    public JITWindowAggregateOperator(long id,
+                                      JITRowType accLayout,
+                                      JITRowType stepLayout,
+                                      JITRowType type, List<JITOperatorReference> inputs,
+                                      JITTupleLiteral init, JITFunction stepFn, JITFunction finishFn,
+                                      Bound lower, Bound upper) {
+        super(id, "PartitionedRollingFold", "", type, inputs, null, null);
+        this.init = init;
+        this.accLayout = accLayout;
+        this.stepLayout = stepLayout;
+        this.finishFn = finishFn;
+        this.stepFn = stepFn;
+        this.aggregates = null;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    public JITWindowAggregateOperator(long id,
+                                      JITRowType accLayout,
+                                      JITRowType type, List<JITOperatorReference> inputs,
+                                      List<JITAggregateDescriptor> aggregates,
+                                      Bound lower, Bound upper) {
+        super(id, "PartitionedRollingAggregate", "", type, inputs, null, null);
+        this.init = null;
+        this.accLayout = accLayout;
+        this.stepLayout = null;
+        this.finishFn = null;
+        this.stepFn = null;
+        this.aggregates = aggregates;
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    @Override
+    public BaseJsonNode asJson() {
+        BaseJsonNode result = super.asJson();
+        ObjectNode data = this.getInnerObject(result);
+        ObjectNode range = data.putObject("range");
+        range.set("lower", this.lower.asJson());
+        range.set("upper", this.upper.asJson());
+        data.put("acc_layout", this.accLayout.getId());
+        data.put("output_layout", this.type.getId());
+        JITAggregateOperator.addAggregates(
+                data, this.aggregates, this.init, this.stepLayout, this.stepFn, this.finishFn);
+        return result;
+    }
+}
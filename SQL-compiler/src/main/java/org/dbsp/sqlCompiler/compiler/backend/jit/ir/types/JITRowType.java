@@ -77,6 +77,18 @@ public class JITRowType extends JITType implements IJITId {
         return this.id;
     }
 
+    public int size() {
+        return this.fields.size();
+    }
+
+    public JITScalarType getFieldType(int index) {
+        return this.fields.get(index).type;
+    }
+
+    public boolean isNullable(int index) {
+        return this.fields.get(index).nullable;
+    }
+
     @Override
     public JITReference getReference() {
         return this.getRowReference();
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes instructions whose values are never used.
+ * Instructions with side effects and the values used by block
+ * terminators are live; so are all the values they use.
+ */
+public class EliminateDeadInstructions implements IJITFunctionPass {
+    @Override
+    public JITFunction apply(JITFunction function) {
+        Map<Long, JITInstruction> definition = new HashMap<>();
+        List<JITInstructionReference> toVisit = new ArrayList<>();
+        for (JITBlock block: function.blocks) {
+            for (JITInstruction instruction: block.getInstructions()) {
+                definition.put(instruction.getId(), instruction);
+                if (instruction.hasSideEffects())
+                    toVisit.add(instruction.getInstructionReference());
+            }
+            toVisit.addAll(block.getTerminator().getOperands());
+        }
+
+        Set<Long> live = new HashSet<>();
+        while (!toVisit.isEmpty()) {
+            JITInstructionReference reference = toVisit.remove(toVisit.size() - 1);
+            if (!live.add(reference.getId()))
+                continue;
+            // Function parameters are not defined by instructions
+            JITInstruction instruction = definition.get(reference.getId());
+            if (instruction != null)
+                toVisit.addAll(instruction.getOperands());
+        }
+
+        if (live.containsAll(definition.keySet()))
+            return function;
+        List<JITBlock> blocks = new ArrayList<>(function.blocks.size());
+        for (JITBlock block: function.blocks) {
+            JITBlock result = block.emptyCopy();
+            for (JITInstruction instruction: block.getInstructions()) {
+                if (live.contains(instruction.getId()))
+                    result.add(instruction);
+            }
+            result.terminate(block.getTerminator());
+            blocks.add(result);
+        }
+        return new JITFunction(function.parameters, blocks, function.resultType,
+                function.callingConvention);
+    }
+}
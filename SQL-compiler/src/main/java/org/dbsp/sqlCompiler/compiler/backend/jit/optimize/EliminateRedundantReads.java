@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITFunctionCall;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITIsNullInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITLoadInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITSetNullInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITStoreInstruction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Removes null checks and loads that read a row column which
+ * was already read earlier in the same block.
+ * The code generator emits a new IsNull and Load each time a field
+ * is used, so an expression like 'x.1 + x.1 * 2' reads the column twice.
+ * A store to the column, or a function call, which may write to its
+ * row arguments, invalidates the values previously read.
+ */
+public class EliminateRedundantReads implements IJITFunctionPass {
+    static String key(String kind, JITInstructionReference row, int column) {
+        return kind + " " + row.getId() + "[" + column + "]";
+    }
+
+    static void invalidate(Map<String, JITInstructionReference> read, JITInstructionReference row, int column) {
+        read.remove(key("Load", row, column));
+        read.remove(key("IsNull", row, column));
+    }
+
+    @Override
+    public JITFunction apply(JITFunction function) {
+        Substitution substitution = new Substitution();
+        for (JITBlock block: function.blocks) {
+            // Maps each column read to the instruction which produced its value.
+            Map<String, JITInstructionReference> read = new HashMap<>();
+            for (JITInstruction instruction: block.getInstructions()) {
+                String key = null;
+                if (instruction.is(JITLoadInstruction.class)) {
+                    JITLoadInstruction load = instruction.to(JITLoadInstruction.class);
+                    key = key("Load", substitution.apply(load.source), load.column);
+                } else if (instruction.is(JITIsNullInstruction.class)) {
+                    JITIsNullInstruction isNull = instruction.to(JITIsNullInstruction.class);
+                    key = key("IsNull", substitution.apply(isNull.target), isNull.column);
+                } else if (instruction.is(JITStoreInstruction.class)) {
+                    JITStoreInstruction store = instruction.to(JITStoreInstruction.class);
+                    invalidate(read, substitution.apply(store.target), store.column);
+                } else if (instruction.is(JITSetNullInstruction.class)) {
+                    JITSetNullInstruction setNull = instruction.to(JITSetNullInstruction.class);
+                    invalidate(read, substitution.apply(setNull.target), setNull.column);
+                } else if (instruction.is(JITFunctionCall.class)) {
+                    read.clear();
+                }
+                if (key == null)
+                    continue;
+                if (read.containsKey(key))
+                    substitution.replace(instruction, read.get(key));
+                else
+                    read.put(key, instruction.getInstructionReference());
+            }
+        }
+        return substitution.apply(function);
+    }
+}
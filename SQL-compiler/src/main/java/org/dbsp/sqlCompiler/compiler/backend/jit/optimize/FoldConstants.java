@@ -0,0 +1,366 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.*;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.*;
+import org.dbsp.sqlCompiler.ir.expression.literal.*;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates instructions whose operands are constants at compile time.
+ * - arithmetic, comparisons, casts and logical operations on constants
+ *   become constants
+ * - 'x || false', 'x && true', and Select with a constant condition
+ *   or with identical alternatives are replaced by one of their operands
+ * - identical constants in the same block are merged.
+ * Operations that may overflow, division, and comparisons involving NaN
+ * are left for the runtime.
+ */
+public class FoldConstants implements IJITFunctionPass {
+    /**
+     * Value of each constant instruction, when known.
+     * Values are Boolean, Integer, Long, Float, Double.
+     */
+    final Map<Long, Object> constants = new HashMap<>();
+    final Substitution substitution = new Substitution();
+
+    @Nullable
+    Object getConstant(JITInstructionReference reference) {
+        return this.constants.get(this.substitution.apply(reference).getId());
+    }
+
+    @Nullable
+    static Object valueOf(JITConstantInstruction constant) {
+        if (!constant.valueOrNull)
+            return constant.value.isNull();
+        DBSPLiteral literal = constant.value.literal;
+        if (literal.isNull)
+            return null;
+        if (literal.is(DBSPBoolLiteral.class))
+            return literal.to(DBSPBoolLiteral.class).value;
+        if (literal.is(DBSPI32Literal.class))
+            return literal.to(DBSPI32Literal.class).value;
+        if (literal.is(DBSPI64Literal.class))
+            return literal.to(DBSPI64Literal.class).value;
+        if (literal.is(DBSPFloatLiteral.class))
+            return literal.to(DBSPFloatLiteral.class).value;
+        if (literal.is(DBSPDoubleLiteral.class))
+            return literal.to(DBSPDoubleLiteral.class).value;
+        return null;
+    }
+
+    static JITConstantInstruction makeConstant(long id, Object value) {
+        JITScalarType type;
+        DBSPLiteral literal;
+        if (value instanceof Boolean) {
+            type = JITBoolType.INSTANCE;
+            literal = new DBSPBoolLiteral((Boolean) value);
+        } else if (value instanceof Integer) {
+            type = JITI32Type.INSTANCE;
+            literal = new DBSPI32Literal((Integer) value);
+        } else if (value instanceof Long) {
+            type = JITI64Type.INSTANCE;
+            literal = new DBSPI64Literal((Long) value);
+        } else if (value instanceof Float) {
+            type = JITF32Type.INSTANCE;
+            literal = new DBSPFloatLiteral((Float) value);
+        } else {
+            type = JITF64Type.INSTANCE;
+            literal = new DBSPDoubleLiteral((Double) value);
+        }
+        return new JITConstantInstruction(id, type, new JITLiteral(literal), true);
+    }
+
+    static boolean isNaN(Object value) {
+        return (value instanceof Double && ((Double) value).isNaN()) ||
+                (value instanceof Float && ((Float) value).isNaN());
+    }
+
+    @Nullable
+    static Object compare(JITBinaryInstruction.Operation operation, Object left, Object right) {
+        if (isNaN(left) || isNaN(right))
+            return null;
+        int comparison;
+        if (left instanceof Boolean) {
+            comparison = Boolean.compare((Boolean) left, (Boolean) right);
+        } else if (left instanceof Integer || left instanceof Long) {
+            comparison = Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+        } else {
+            double l = ((Number) left).doubleValue();
+            double r = ((Number) right).doubleValue();
+            // Unlike Double.compare, 0.0 and -0.0 are equal
+            comparison = l < r ? -1 : (l == r ? 0 : 1);
+        }
+        switch (operation) {
+            case EQ:
+                return comparison == 0;
+            case NEQ:
+                return comparison != 0;
+            case LT:
+                return comparison < 0;
+            case GT:
+                return comparison > 0;
+            case LTE:
+                return comparison <= 0;
+            case GTE:
+                return comparison >= 0;
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    static Object evaluate(JITBinaryInstruction.Operation operation, Object left, Object right) {
+        if (!left.getClass().equals(right.getClass()))
+            return null;
+        Object result = compare(operation, left, right);
+        if (result != null)
+            return result;
+        try {
+            if (left instanceof Boolean) {
+                boolean l = (Boolean) left;
+                boolean r = (Boolean) right;
+                switch (operation) {
+                    case AND:
+                        return l && r;
+                    case OR:
+                        return l || r;
+                    case XOR:
+                        return l ^ r;
+                    default:
+                        return null;
+                }
+            } else if (left instanceof Integer) {
+                int l = (Integer) left;
+                int r = (Integer) right;
+                switch (operation) {
+                    case ADD:
+                        return Math.addExact(l, r);
+                    case SUB:
+                        return Math.subtractExact(l, r);
+                    case MUL:
+                        return Math.multiplyExact(l, r);
+                    case MAX:
+                        return Math.max(l, r);
+                    case MIN:
+                        return Math.min(l, r);
+                    default:
+                        return null;
+                }
+            } else if (left instanceof Long) {
+                long l = (Long) left;
+                long r = (Long) right;
+                switch (operation) {
+                    case ADD:
+                        return Math.addExact(l, r);
+                    case SUB:
+                        return Math.subtractExact(l, r);
+                    case MUL:
+                        return Math.multiplyExact(l, r);
+                    case MAX:
+                        return Math.max(l, r);
+                    case MIN:
+                        return Math.min(l, r);
+                    default:
+                        return null;
+                }
+            } else if (left instanceof Double) {
+                double l = (Double) left;
+                double r = (Double) right;
+                switch (operation) {
+                    case ADD:
+                        return l + r;
+                    case SUB:
+                        return l - r;
+                    case MUL:
+                        return l * r;
+                    default:
+                        return null;
+                }
+            } else if (left instanceof Float) {
+                float l = (Float) left;
+                float r = (Float) right;
+                switch (operation) {
+                    case ADD:
+                        return l + r;
+                    case SUB:
+                        return l - r;
+                    case MUL:
+                        return l * r;
+                    default:
+                        return null;
+                }
+            }
+        } catch (ArithmeticException ex) {
+            // Overflow: the runtime decides what happens
+            return null;
+        }
+        return null;
+    }
+
+    @Nullable
+    static Object cast(Object value, JITType destination) {
+        if (value instanceof Boolean)
+            return null;
+        Number number = (Number) value;
+        boolean isInteger = value instanceof Integer || value instanceof Long;
+        if (destination.is(JITI32Type.class) && isInteger)
+            return number.intValue();
+        if (destination.is(JITI64Type.class) && isInteger)
+            return number.longValue();
+        if (destination.is(JITF64Type.class))
+            return number.doubleValue();
+        if (destination.is(JITF32Type.class))
+            return number.floatValue();
+        return null;
+    }
+
+    /**
+     * Simplify a binary operation where only one operand is a Boolean constant.
+     * @return The value that replaces the operation, or null.
+     */
+    @Nullable
+    static JITInstructionReference simplifyLogic(JITBinaryInstruction.Operation operation,
+                                                  boolean constant, JITInstructionReference constantRef,
+                                                  JITInstructionReference other) {
+        switch (operation) {
+            case AND:
+                return constant ? other : constantRef;
+            case OR:
+                return constant ? constantRef : other;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Fold one instruction, whose operands have already been substituted.
+     * @return The instruction that replaces it in the block, or null if the
+     * instruction has been replaced by another value.
+     */
+    @Nullable
+    JITInstruction fold(JITInstruction instruction) {
+        long id = instruction.getId();
+        if (instruction.is(JITBinaryInstruction.class)) {
+            JITBinaryInstruction binary = instruction.to(JITBinaryInstruction.class);
+            Object left = this.getConstant(binary.left);
+            Object right = this.getConstant(binary.right);
+            if (left != null && right != null) {
+                Object result = evaluate(binary.operation, left, right);
+                if (result != null)
+                    return makeConstant(id, result);
+            }
+            JITInstructionReference replacement = null;
+            if (left instanceof Boolean)
+                replacement = simplifyLogic(binary.operation, (Boolean) left, binary.left, binary.right);
+            else if (right instanceof Boolean)
+                replacement = simplifyLogic(binary.operation, (Boolean) right, binary.right, binary.left);
+            if (replacement != null) {
+                this.substitution.replace(instruction, replacement);
+                return null;
+            }
+        } else if (instruction.is(JITUnaryInstruction.class)) {
+            JITUnaryInstruction unary = instruction.to(JITUnaryInstruction.class);
+            Object value = this.getConstant(unary.operand);
+            if (unary.operation == JITUnaryInstruction.Operation.NOT && value instanceof Boolean)
+                return makeConstant(id, !(Boolean) value);
+            if (unary.operation == JITUnaryInstruction.Operation.NEG) {
+                if (value instanceof Integer && (Integer) value != Integer.MIN_VALUE)
+                    return makeConstant(id, -(Integer) value);
+                if (value instanceof Long && (Long) value != Long.MIN_VALUE)
+                    return makeConstant(id, -(Long) value);
+                if (value instanceof Double)
+                    return makeConstant(id, -(Double) value);
+                if (value instanceof Float)
+                    return makeConstant(id, -(Float) value);
+            }
+        } else if (instruction.is(JITMuxInstruction.class)) {
+            JITMuxInstruction mux = instruction.to(JITMuxInstruction.class);
+            Object condition = this.getConstant(mux.condition);
+            JITInstructionReference replacement = null;
+            if (condition instanceof Boolean)
+                replacement = (Boolean) condition ? mux.left : mux.right;
+            else if (mux.left.getId() == mux.right.getId())
+                replacement = mux.left;
+            if (replacement != null) {
+                this.substitution.replace(instruction, replacement);
+                return null;
+            }
+        } else if (instruction.is(JITCastInstruction.class)) {
+            JITCastInstruction cast = instruction.to(JITCastInstruction.class);
+            Object value = this.getConstant(cast.operand);
+            if (value != null) {
+                Object result = cast(value, cast.destinationType);
+                if (result != null)
+                    return makeConstant(id, result);
+            }
+        }
+        return instruction;
+    }
+
+    @Override
+    public JITFunction apply(JITFunction function) {
+        // Instruction ids are only unique within a function
+        this.constants.clear();
+        this.substitution.replacement.clear();
+        List<JITBlock> blocks = new ArrayList<>(function.blocks.size());
+        for (JITBlock block: function.blocks) {
+            JITBlock result = block.emptyCopy();
+            // Constants in this block, indexed by type and value
+            Map<String, JITInstructionReference> blockConstants = new HashMap<>();
+            for (JITInstruction instruction: block.getInstructions()) {
+                JITInstruction folded = this.fold(instruction.replaceOperands(this.substitution));
+                if (folded == null)
+                    continue;
+                JITConstantInstruction constant = folded.as(JITConstantInstruction.class);
+                if (constant != null) {
+                    Object value = valueOf(constant);
+                    if (value != null) {
+                        String key = value.getClass().getSimpleName() + ":" + value;
+                        if (blockConstants.containsKey(key)) {
+                            this.substitution.replace(instruction, blockConstants.get(key));
+                            continue;
+                        }
+                        blockConstants.put(key, constant.getInstructionReference());
+                        this.constants.put(constant.getId(), value);
+                    }
+                }
+                result.add(folded);
+            }
+            result.terminate(block.getTerminator().replaceOperands(this.substitution));
+            blocks.add(result);
+        }
+        // Uses that precede definitions in the block list
+        return this.substitution.apply(new JITFunction(function.parameters, blocks, function.resultType,
+                function.callingConvention));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a sequence of optimization passes on a JIT function
+ * until the function does not shrink anymore.
+ */
+public class JITOptimizer implements IJITFunctionPass, IModule {
+    /**
+     * Bound on the number of times the passes are repeated.
+     */
+    static final int MAX_ITERATIONS = 5;
+    final List<IJITFunctionPass> passes;
+
+    public JITOptimizer(IJITFunctionPass... passes) {
+        this.passes = new ArrayList<>();
+        for (IJITFunctionPass pass: passes)
+            this.add(pass);
+    }
+
+    public void add(IJITFunctionPass pass) {
+        this.passes.add(pass);
+    }
+
+    /**
+     * The standard optimization pipeline.
+     */
+    public static JITOptimizer create() {
+        return new JITOptimizer(
+                new MergeBlocks(),
+                new PropagateCopies(),
+                new FoldConstants(),
+                new EliminateRedundantReads(),
+                new EliminateDeadInstructions());
+    }
+
+    static int size(JITFunction function) {
+        int result = function.blocks.size();
+        for (JITBlock block: function.blocks)
+            result += block.getInstructions().size();
+        return result;
+    }
+
+    @Override
+    public JITFunction apply(JITFunction function) {
+        int size = size(function);
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            for (IJITFunctionPass pass: this.passes)
+                function = pass.apply(function);
+            int newSize = size(function);
+            Logger.INSTANCE.from(this, 3)
+                    .append("Optimized JIT function from ")
+                    .append(size)
+                    .append(" to ")
+                    .append(newSize)
+                    .newline();
+            if (newSize >= size)
+                break;
+            size = newSize;
+        }
+        return function;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlockReference;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlockTerminator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITJumpTerminator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstruction;
+import org.dbsp.util.Utilities;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes unreachable blocks and merges each block that is reached
+ * only through an unconditional jump into its predecessor.
+ */
+public class MergeBlocks implements IJITFunctionPass {
+    @Override
+    public JITFunction apply(JITFunction function) {
+        Map<Long, JITBlock> blocks = new HashMap<>();
+        for (JITBlock block: function.blocks)
+            Utilities.putNew(blocks, block.getId(), block);
+        JITBlock entry = function.blocks.get(0);
+
+        // Find the reachable blocks and count the predecessors of each one.
+        Set<Long> reachable = new HashSet<>();
+        Map<Long, Integer> predecessors = new HashMap<>();
+        List<JITBlock> toVisit = new ArrayList<>();
+        toVisit.add(entry);
+        reachable.add(entry.getId());
+        while (!toVisit.isEmpty()) {
+            JITBlock block = toVisit.remove(toVisit.size() - 1);
+            for (JITBlockReference successor: block.getTerminator().getSuccessors()) {
+                predecessors.merge(successor.getId(), 1, Integer::sum);
+                if (reachable.add(successor.getId()))
+                    toVisit.add(Utilities.getExists(blocks, successor.getId()));
+            }
+        }
+
+        // Blocks that are appended to their predecessor
+        Set<Long> absorbed = new HashSet<>();
+        for (JITBlock block: function.blocks) {
+            if (!reachable.contains(block.getId()))
+                continue;
+            JITBlock next = this.mergeableSuccessor(block, entry, blocks, predecessors);
+            if (next != null)
+                absorbed.add(next.getId());
+        }
+
+        List<JITBlock> result = new ArrayList<>();
+        for (JITBlock block: function.blocks) {
+            if (!reachable.contains(block.getId()) || absorbed.contains(block.getId()))
+                continue;
+            JITBlock merged = block.emptyCopy();
+            JITBlock current = block;
+            while (true) {
+                for (JITInstruction instruction: current.getInstructions())
+                    merged.add(instruction);
+                JITBlock next = this.mergeableSuccessor(current, entry, blocks, predecessors);
+                if (next == null)
+                    break;
+                current = next;
+            }
+            merged.terminate(current.getTerminator());
+            result.add(merged);
+        }
+        if (result.size() == function.blocks.size())
+            return function;
+        return new JITFunction(function.parameters, result, function.resultType,
+                function.callingConvention);
+    }
+
+    /**
+     * The block that can be appended to 'block', if any.
+     */
+    @Nullable
+    JITBlock mergeableSuccessor(JITBlock block, JITBlock entry,
+                                Map<Long, JITBlock> blocks, Map<Long, Integer> predecessors) {
+        JITBlockTerminator terminator = block.getTerminator();
+        JITJumpTerminator jump = terminator.as(JITJumpTerminator.class);
+        if (jump == null || jump.hasArguments())
+            return null;
+        JITBlock next = Utilities.getExists(blocks, jump.target.getId());
+        if (next == entry || next == block || next.hasParameters() ||
+                predecessors.get(next.getId()) != 1)
+            return null;
+        return next;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITCopyInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstruction;
+
+/**
+ * Replaces the uses of the result of a copy instruction with the copied value.
+ * The value copied is always defined before the copy, so it is
+ * available everywhere the copy is.
+ */
+public class PropagateCopies implements IJITFunctionPass {
+    @Override
+    public JITFunction apply(JITFunction function) {
+        Substitution substitution = new Substitution();
+        for (JITBlock block: function.blocks) {
+            for (JITInstruction instruction: block.getInstructions()) {
+                JITCopyInstruction copy = instruction.as(JITCopyInstruction.class);
+                if (copy != null)
+                    substitution.replace(copy, copy.operand);
+            }
+        }
+        return substitution.apply(function);
+    }
+}
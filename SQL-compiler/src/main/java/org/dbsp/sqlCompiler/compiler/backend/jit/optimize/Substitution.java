@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.jit.optimize;
+
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.cfg.JITBlock;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstruction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.instructions.JITInstructionReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Replaces the values produced by some instructions with other values.
+ * The replaced instructions are removed from the function.
+ */
+class Substitution implements UnaryOperator<JITInstructionReference> {
+    final Map<Long, JITInstructionReference> replacement;
+
+    Substitution() {
+        this.replacement = new HashMap<>();
+    }
+
+    /**
+     * Replace all uses of the value produced by 'instruction' with 'value'.
+     */
+    void replace(JITInstruction instruction, JITInstructionReference value) {
+        if (instruction.hasSideEffects())
+            throw new RuntimeException("Cannot replace instruction with side effects " + instruction);
+        this.replacement.put(instruction.getId(), this.apply(value));
+    }
+
+    boolean isReplaced(JITInstruction instruction) {
+        return this.replacement.containsKey(instruction.getId());
+    }
+
+    @Override
+    public JITInstructionReference apply(JITInstructionReference reference) {
+        JITInstructionReference result = reference;
+        while (result.isValid() && this.replacement.containsKey(result.getId()))
+            result = this.replacement.get(result.getId());
+        return result;
+    }
+
+    /**
+     * Rewrite all the instructions of the function, removing the replaced ones.
+     */
+    JITFunction apply(JITFunction function) {
+        if (this.replacement.isEmpty())
+            return function;
+        List<JITBlock> blocks = new ArrayList<>(function.blocks.size());
+        for (JITBlock block: function.blocks) {
+            JITBlock result = block.emptyCopy();
+            for (JITInstruction instruction: block.getInstructions()) {
+                if (this.isReplaced(instruction))
+                    continue;
+                result.add(instruction.replaceOperands(this));
+            }
+            result.terminate(block.getTerminator().replaceOperands(this));
+            blocks.add(result);
+        }
+        return new JITFunction(function.parameters, blocks, function.resultType,
+                function.callingConvention);
+    }
+}
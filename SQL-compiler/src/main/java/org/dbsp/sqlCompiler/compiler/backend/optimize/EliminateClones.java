@@ -0,0 +1,297 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.optimize;
+
+import org.dbsp.sqlCompiler.circuit.IDBSPInnerNode;
+import org.dbsp.sqlCompiler.compiler.backend.visitors.InnerExpressionRewriteVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.InnerVisitor;
+import org.dbsp.sqlCompiler.ir.expression.*;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPCloneExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPIsNullExpression;
+import org.dbsp.sqlCompiler.ir.pattern.DBSPIdentifierPattern;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTupleBase;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes clones of values that are only borrowed, or that can be moved.
+ * In Rust a DBSPFieldExpression clones the field value unless it has a Copy type.
+ * This visitor replaces field expressions with DBSPUnclonedFieldExpression when:
+ * - the field is borrowed: &t.0
+ * - the field is only tested for null: t.0.is_none() or indicator(&t.0)
+ * - the field is explicitly cloned: t.0.clone()
+ * - the field is the source of another field expression: t.0.1
+ * - the field belongs to a closure parameter which is an owned tuple,
+ *   the parameter is only used to access fields, and this is the only
+ *   access to this field in the closure body.  In this case the field is moved.
+ * Explicit clones of an owned closure parameter which is used only once are removed.
+ * This pass must run after all other optimizations, just before code generation,
+ * since other rewrites may duplicate expressions.
+ * Fields of the borrowed rows received by join closures must be cloned;
+ * FuseMapIntoJoin, which runs before this pass, ensures that join closures
+ * only clone the fields which are part of the final result.
+ */
+public class EliminateClones extends InnerExpressionRewriteVisitor {
+    /**
+     * Field expressions which do not need to be cloned.
+     * DBSPNode does not override equals, so these are compared by identity.
+     */
+    final Set<DBSPFieldExpression> uncloned;
+    /**
+     * Clone expressions that can be removed.
+     */
+    final Set<DBSPCloneExpression> removable;
+
+    public EliminateClones() {
+        this.uncloned = new HashSet<>();
+        this.removable = new HashSet<>();
+    }
+
+    /**
+     * Finds the field expressions and clones which can be eliminated.
+     */
+    class Analysis extends InnerVisitor {
+        Analysis() {
+            super(false);
+        }
+
+        void unclonedSource(DBSPExpression expression) {
+            if (expression.is(DBSPFieldExpression.class))
+                EliminateClones.this.uncloned.add(expression.to(DBSPFieldExpression.class));
+        }
+
+        @Override
+        public boolean preorder(DBSPBorrowExpression expression) {
+            this.unclonedSource(expression.expression);
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPIsNullExpression expression) {
+            this.unclonedSource(expression.expression);
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPCloneExpression expression) {
+            this.unclonedSource(expression.expression);
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPUnaryExpression expression) {
+            if (expression.operation.equals("indicator"))
+                // The Rust backend passes the argument of indicator by reference
+                this.unclonedSource(expression.source);
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPFieldExpression expression) {
+            this.unclonedSource(expression.expression);
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPClosureExpression expression) {
+            for (DBSPParameter param: expression.parameters) {
+                if (!param.pattern.is(DBSPIdentifierPattern.class))
+                    continue;
+                if (!param.type.is(DBSPTypeTupleBase.class))
+                    // References and values of unknown types cannot be moved
+                    continue;
+                String name = param.pattern.to(DBSPIdentifierPattern.class).identifier;
+                UseCounter counter = new UseCounter(name);
+                expression.body.accept(counter);
+                if (counter.unsafe)
+                    continue;
+                if (counter.uses.isEmpty()) {
+                    for (List<DBSPFieldExpression> fieldUses: counter.fieldUses.values())
+                        if (fieldUses.size() == 1)
+                            EliminateClones.this.uncloned.add(fieldUses.get(0));
+                } else if (counter.uses.size() == 1 && counter.fieldUses.isEmpty()) {
+                    DBSPCloneExpression clone = counter.clones.get(counter.uses.get(0));
+                    if (clone != null)
+                        EliminateClones.this.removable.add(clone);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Finds all uses of a variable in an expression.
+     */
+    static class UseCounter extends InnerVisitor {
+        final String variable;
+        /**
+         * Uses of the variable which are not field accesses.
+         */
+        final List<DBSPVariablePath> uses;
+        /**
+         * For each field index the expressions which access the field.
+         */
+        final Map<Integer, List<DBSPFieldExpression>> fieldUses;
+        /**
+         * Uses of the variable which are cloned explicitly.
+         */
+        final Map<DBSPVariablePath, DBSPCloneExpression> clones;
+        /**
+         * Number of nested closures and loops; uses within these may execute multiple times.
+         */
+        int nesting;
+        /**
+         * Set if the variable cannot be moved.
+         */
+        boolean unsafe;
+
+        UseCounter(String variable) {
+            super(false);
+            this.variable = variable;
+            this.uses = new ArrayList<>();
+            this.fieldUses = new HashMap<>();
+            this.clones = new HashMap<>();
+            this.nesting = 0;
+            this.unsafe = false;
+        }
+
+        @Nullable
+        DBSPVariablePath asVariable(DBSPExpression expression) {
+            DBSPVariablePath var = expression.as(DBSPVariablePath.class);
+            if (var != null && var.variable.equals(this.variable))
+                return var;
+            return null;
+        }
+
+        void use() {
+            if (this.nesting > 0)
+                this.unsafe = true;
+        }
+
+        @Override
+        public boolean preorder(DBSPVariablePath expression) {
+            if (this.asVariable(expression) != null) {
+                this.use();
+                this.uses.add(expression);
+            }
+            return false;
+        }
+
+        @Override
+        public boolean preorder(DBSPFieldExpression expression) {
+            if (this.asVariable(expression.expression) != null) {
+                this.use();
+                this.fieldUses.computeIfAbsent(expression.fieldNo, k -> new ArrayList<>())
+                        .add(expression);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPCloneExpression expression) {
+            DBSPVariablePath var = this.asVariable(expression.expression);
+            if (var != null)
+                this.clones.put(var, expression);
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPIdentifierPattern pattern) {
+            // The variable is shadowed
+            if (pattern.identifier.equals(this.variable))
+                this.unsafe = true;
+            return false;
+        }
+
+        @Override
+        public boolean preorder(DBSPLetStatement statement) {
+            if (statement.variable.equals(this.variable))
+                this.unsafe = true;
+            return true;
+        }
+
+        @Override
+        public boolean preorder(DBSPClosureExpression expression) {
+            this.nesting++;
+            return true;
+        }
+
+        @Override
+        public void postorder(DBSPClosureExpression expression) {
+            this.nesting--;
+        }
+
+        @Override
+        public boolean preorder(DBSPForExpression expression) {
+            this.nesting++;
+            return true;
+        }
+
+        @Override
+        public void postorder(DBSPForExpression expression) {
+            this.nesting--;
+        }
+    }
+
+    @Override
+    public IDBSPInnerNode apply(IDBSPInnerNode node) {
+        this.uncloned.clear();
+        this.removable.clear();
+        node.accept(new Analysis());
+        return super.apply(node);
+    }
+
+    @Override
+    public boolean preorder(DBSPFieldExpression expression) {
+        DBSPExpression source = this.transform(expression.expression);
+        DBSPExpression result = expression;
+        if (this.uncloned.contains(expression))
+            result = new DBSPUnclonedFieldExpression(expression.getNode(), source, expression.fieldNo);
+        else if (source != expression.expression)
+            result = source.field(expression.fieldNo);
+        this.map(expression, result);
+        return false;
+    }
+
+    @Override
+    public boolean preorder(DBSPCloneExpression expression) {
+        DBSPExpression source = this.transform(expression.expression);
+        DBSPExpression result = expression;
+        if (this.removable.contains(expression))
+            result = source;
+        else if (source != expression.expression)
+            result = source.applyClone();
+        this.map(expression, result);
+        return false;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqlCompiler.compiler.backend.optimize;
+
+import org.dbsp.sqlCompiler.circuit.DBSPPartialCircuit;
+import org.dbsp.sqlCompiler.circuit.IDBSPDeclaration;
+import org.dbsp.sqlCompiler.circuit.IDBSPNode;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPJoinOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.compiler.backend.visitors.CircuitCloneVisitor;
+import org.dbsp.sqlCompiler.compiler.backend.visitors.InnerExpressionRewriteVisitor;
+import org.dbsp.sqlCompiler.ir.DBSPParameter;
+import org.dbsp.sqlCompiler.ir.expression.*;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPCloneExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.DBSPLiteral;
+import org.dbsp.sqlCompiler.ir.pattern.DBSPIdentifierPattern;
+import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
+import org.dbsp.util.Linq;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fuses a map operator into the join operator which produces its input.
+ * The closure of a join receives borrowed rows, so every field of the
+ * rows it produces which is not Copy must be cloned; when the join is
+ * followed by a map which drops or reorders the fields, as is the case
+ * for projections after joins and for the joins which implement windows,
+ * the map clones the fields it keeps once more.
+ * The fused join computes the output of the map directly from the borrowed
+ * rows, so only the fields which are kept are cloned, once.
+ * The fusion is performed when:
+ * - the map is the only consumer of the join,
+ * - the join closure body is a tuple constructor,
+ * - the map closure uses its parameter only through field accesses,
+ * - each join field which is not a simple field access or literal is used exactly once.
+ */
+public class FuseMapIntoJoin extends CircuitCloneVisitor {
+    /**
+     * For each map operator that can be fused the closure of the fused join.
+     */
+    final Map<DBSPMapOperator, DBSPClosureExpression> fused;
+    /**
+     * Join operators which are fused with the map that consumes their output.
+     */
+    final Map<DBSPJoinOperator, DBSPMapOperator> fusedJoins;
+    /**
+     * Declarations of the functions of the fused operators, which are not used anymore.
+     */
+    final Set<String> replaced;
+
+    public FuseMapIntoJoin() {
+        super(false);
+        this.fused = new HashMap<>();
+        this.fusedJoins = new HashMap<>();
+        this.replaced = new HashSet<>();
+    }
+
+    /**
+     * True if evaluating the expression multiple times or not at all is
+     * as cheap as evaluating it once, and has no other effects.
+     */
+    static boolean isSimple(DBSPExpression expression) {
+        if (expression.is(DBSPCloneExpression.class))
+            expression = expression.to(DBSPCloneExpression.class).expression;
+        if (expression.is(DBSPLiteral.class) || expression.is(DBSPVariablePath.class))
+            return true;
+        if (expression.is(DBSPFieldExpression.class))
+            return isSimple(expression.to(DBSPFieldExpression.class).expression);
+        return false;
+    }
+
+    /**
+     * Replaces field accesses to a variable with the fields of a tuple.
+     */
+    static class SubstituteFields extends InnerExpressionRewriteVisitor {
+        final String variable;
+        final DBSPExpression[] fields;
+
+        SubstituteFields(String variable, DBSPExpression[] fields) {
+            this.variable = variable;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean preorder(DBSPFieldExpression expression) {
+            DBSPVariablePath var = expression.expression.as(DBSPVariablePath.class);
+            if (var != null && var.variable.equals(this.variable)) {
+                this.map(expression, this.fields[expression.fieldNo]);
+                return false;
+            }
+            return super.preorder(expression);
+        }
+    }
+
+    /**
+     * The closure computing map(join(k, l, r)), or null if it cannot be built.
+     */
+    @Nullable
+    static DBSPClosureExpression compose(DBSPExpression joinFunction, DBSPExpression mapFunction) {
+        DBSPClosureExpression join = joinFunction.as(DBSPClosureExpression.class);
+        DBSPClosureExpression map = mapFunction.as(DBSPClosureExpression.class);
+        if (join == null || map == null || map.parameters.length != 1)
+            return null;
+        DBSPTupleExpression row = join.body.as(DBSPTupleExpression.class);
+        if (row == null)
+            return null;
+        DBSPParameter param = map.parameters[0];
+        if (!param.pattern.is(DBSPIdentifierPattern.class))
+            return null;
+        String name = param.pattern.to(DBSPIdentifierPattern.class).identifier;
+        EliminateClones.UseCounter counter = new EliminateClones.UseCounter(name);
+        map.body.accept(counter);
+        if (counter.unsafe || !counter.uses.isEmpty())
+            return null;
+        for (int i = 0; i < row.size(); i++) {
+            List<DBSPFieldExpression> uses = counter.fieldUses.get(i);
+            int useCount = uses == null ? 0 : uses.size();
+            if (useCount != 1 && !isSimple(row.fields[i]))
+                return null;
+        }
+        for (DBSPParameter joinParam: join.parameters) {
+            if (!joinParam.pattern.is(DBSPIdentifierPattern.class))
+                return null;
+            // The join parameters must not be captured by the map body
+            String joinName = joinParam.pattern.to(DBSPIdentifierPattern.class).identifier;
+            EliminateClones.UseCounter captured = new EliminateClones.UseCounter(joinName);
+            map.body.accept(captured);
+            if (captured.unsafe || !captured.uses.isEmpty() || !captured.fieldUses.isEmpty())
+                return null;
+        }
+        SubstituteFields substitute = new SubstituteFields(name, row.fields);
+        DBSPExpression body = substitute.apply(map.body).to(DBSPExpression.class);
+        return body.closure(join.parameters);
+    }
+
+    /**
+     * The function of an operator; functions declared in the circuit are looked up.
+     */
+    static DBSPExpression resolve(DBSPPartialCircuit circuit, DBSPExpression function) {
+        DBSPVariablePath var = function.as(DBSPVariablePath.class);
+        if (var == null)
+            return function;
+        IDBSPDeclaration declaration = circuit.getDefinition(var.variable);
+        DBSPLetStatement let = declaration.as(DBSPLetStatement.class);
+        if (let == null || let.initializer == null)
+            return function;
+        return let.initializer;
+    }
+
+    @Override
+    public boolean preorder(DBSPPartialCircuit circuit) {
+        Map<DBSPOperator, List<DBSPOperator>> consumers = new HashMap<>();
+        Map<String, Integer> references = new HashMap<>();
+        for (IDBSPNode node: circuit.getCode()) {
+            DBSPOperator op = node.as(DBSPOperator.class);
+            if (op == null)
+                continue;
+            for (DBSPOperator input: op.inputs)
+                consumers.computeIfAbsent(input, k -> new ArrayList<>()).add(op);
+            if (op.function != null && op.function.is(DBSPVariablePath.class))
+                references.merge(op.function.to(DBSPVariablePath.class).variable, 1, Integer::sum);
+        }
+        for (Map.Entry<DBSPOperator, List<DBSPOperator>> entry: consumers.entrySet()) {
+            DBSPJoinOperator join = entry.getKey().as(DBSPJoinOperator.class);
+            List<DBSPOperator> uses = entry.getValue();
+            if (join == null || uses.size() != 1 || !uses.get(0).is(DBSPMapOperator.class))
+                continue;
+            DBSPMapOperator map = uses.get(0).to(DBSPMapOperator.class);
+            DBSPClosureExpression closure = compose(
+                    resolve(circuit, join.getFunction()), resolve(circuit, map.getFunction()));
+            if (closure == null)
+                continue;
+            this.fused.put(map, closure);
+            this.fusedJoins.put(join, map);
+            for (DBSPOperator op: Linq.list(join, map)) {
+                DBSPVariablePath var = op.getFunction().as(DBSPVariablePath.class);
+                if (var != null && references.get(var.variable) == 1)
+                    this.replaced.add(var.variable);
+            }
+        }
+
+        for (IDBSPNode node : circuit.getCode()) {
+            DBSPOperator op = node.as(DBSPOperator.class);
+            if (op != null) {
+                op.accept(this);
+            } else {
+                IDBSPDeclaration declaration = node.to(IDBSPDeclaration.class);
+                // Declarations are only used by operators, so the ones used by
+                // fused operators only are not needed anymore
+                if (!this.replaced.contains(declaration.getName()))
+                    this.getResult().declare(declaration);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void postorder(DBSPJoinOperator operator) {
+        if (!this.fusedJoins.containsKey(operator)) {
+            super.postorder(operator);
+            return;
+        }
+        // Not added to the result: the map which consumes it builds the fused join
+        List<DBSPOperator> sources = Linq.map(operator.inputs, this::mapped);
+        this.map(operator, operator.withInputs(sources, false), false);
+    }
+
+    @Override
+    public void postorder(DBSPMapOperator operator) {
+        DBSPClosureExpression closure = this.fused.get(operator);
+        if (closure == null) {
+            super.postorder(operator);
+            return;
+        }
+        DBSPOperator join = this.mapped(operator.input());
+        DBSPExpression function = this.getResult().declareLocal("join", closure).getVarReference();
+        DBSPOperator result = new DBSPJoinOperator(join.getNode(), operator.outputElementType,
+                function, true, join.inputs.get(0), join.inputs.get(1));
+        this.map(operator, result);
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.sqlCompiler.compiler.backend.rust;
+
+import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSourceOperator;
+import org.dbsp.sqlCompiler.compiler.CompilerOptions;
+import org.dbsp.sqlCompiler.compiler.frontend.TypeCompiler;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeZSet;
+import org.dbsp.sqlCompiler.ir.type.primitive.*;
+import org.dbsp.util.IndentStream;
+import org.dbsp.util.UnsupportedException;
+
+import java.util.List;
+
+/**
+ * Generates a Rust main function which benchmarks a circuit.
+ * The circuit must be emitted in the same file, without handles
+ * (see the -bench option of the compiler).
+ *
+ * <p>For each input table the generator emits a function gen_TABLE
+ * which produces a Z-set with the specified number of random rows,
+ * all with weight 1.  Column values are derived from the column type:
+ * each column draws keys in [0, cardinality), where the cardinality is
+ * either global (-benchCardinality) or per table (-benchTableCardinality),
+ * and must be at least 1.  A positive skew makes small keys more likely.
+ * Nullable columns are NULL with probability -benchNulls.
+ * Randomness comes from a xorshift generator emitted inline,
+ * seeded with -benchSeed, so runs are reproducible and need no extra crates.
+ *
+ * <p>The main function executes -benchSteps steps; at each step it generates
+ * -benchBatch rows for each input (outside the measured time), invokes the
+ * circuit, and records the step latency.  At the end it prints one line:
+ * the number of steps, steps/s, rows/s, and the p50 and p99 latencies in ms.
+ *
+ * <p>Generated code looks like this:
+ * fn gen_T(rng: &mut BenchRng, rows: usize) -> OrdZSet<Tuple2<i32, Option<String>>, Weight> {
+ *     let mut data = Vec::with_capacity(rows);
+ *     for _ in 0..rows {
+ *         data.push((Tuple2::new(rng.key(1000, 0.0) as i32,
+ *                    if rng.chance(0.1) { None } else { Some(format!("s{}", rng.key(1000, 0.0))) }), 1));
+ *     }
+ *     OrdZSet::from_keys((), data)
+ * }
+ * pub fn main() {
+ *     let mut rng = BenchRng::new(1);
+ *     let mut circuit = circuit();
+ *     ...
+ * }
+ */
+public class BenchmarkGenerator {
+    final CompilerOptions.Benchmark options;
+    final IndentStream builder;
+
+    @SuppressWarnings("SpellCheckingInspection")
+    static final String support =
+            "/// Deterministic pseudo-random number generator (xorshift64*).\n" +
+            "struct BenchRng {\n" +
+            "    state: u64,\n" +
+            "}\n" +
+            "\n" +
+            "impl BenchRng {\n" +
+            "    fn new(seed: u64) -> Self {\n" +
+            "        Self { state: seed.wrapping_mul(0x9E3779B97F4A7C15) | 1 }\n" +
+            "    }\n" +
+            "\n" +
+            "    fn next(&mut self) -> u64 {\n" +
+            "        let mut x = self.state;\n" +
+            "        x ^= x >> 12;\n" +
+            "        x ^= x << 25;\n" +
+            "        x ^= x >> 27;\n" +
+            "        self.state = x;\n" +
+            "        x.wrapping_mul(0x2545F4914F6CDD1D)\n" +
+            "    }\n" +
+            "\n" +
+            "    /// Uniform value in [0, 1).\n" +
+            "    fn uniform(&mut self) -> f64 {\n" +
+            "        (self.next() >> 11) as f64 / (1u64 << 53) as f64\n" +
+            "    }\n" +
+            "\n" +
+            "    fn chance(&mut self, probability: f64) -> bool {\n" +
+            "        self.uniform() < probability\n" +
+            "    }\n" +
+            "\n" +
+            "    /// Value in [0, cardinality).  With a positive skew smaller values are more likely.\n" +
+            "    fn key(&mut self, cardinality: u64, skew: f64) -> u64 {\n" +
+            "        let value = (self.uniform().powf(1.0 + skew) * cardinality as f64) as u64;\n" +
+            "        value.min(cardinality - 1)\n" +
+            "    }\n" +
+            "}\n" +
+            "\n" +
+            "fn percentile(sorted: &[std::time::Duration], p: f64) -> f64 {\n" +
+            "    if sorted.is_empty() {\n" +
+            "        return 0.0;\n" +
+            "    }\n" +
+            "    let index = ((sorted.len() - 1) as f64 * p).round() as usize;\n" +
+            "    sorted[index].as_secs_f64() * 1000.0\n" +
+            "}\n";
+
+    public BenchmarkGenerator(IndentStream builder, CompilerOptions.Benchmark options) {
+        options.validate();
+        this.builder = builder;
+        this.options = options;
+    }
+
+    /**
+     * Rust expression which produces a random value of the specified type.
+     */
+    String generateValue(DBSPType type, long cardinality) {
+        String key = "rng.key(" + cardinality + ", " + this.options.skew + ")";
+        String value;
+        if (type.is(DBSPTypeBool.class)) {
+            value = "rng.key(2, 0.0) == 1";
+        } else if (type.is(DBSPTypeInteger.class)) {
+            value = key + " as " + type.setMayBeNull(false).to(DBSPTypeInteger.class).getRustString();
+        } else if (type.is(DBSPTypeDouble.class)) {
+            value = "F64::new(" + key + " as f64)";
+        } else if (type.is(DBSPTypeFloat.class)) {
+            value = "F32::new(" + key + " as f32)";
+        } else if (type.is(DBSPTypeString.class)) {
+            value = "format!(\"s{}\", " + key + ")";
+        } else if (type.is(DBSPTypeDecimal.class)) {
+            DBSPTypeDecimal decimal = type.to(DBSPTypeDecimal.class);
+            // The generated integer is the scaled representation of the value
+            value = "<" + decimal.getRustString() + ">::new(" + key + " as " + decimal.getRustRepresentation() + ")";
+        } else if (type.is(DBSPTypeDate.class)) {
+            value = "Date::new(" + key + " as i32)";
+        } else if (type.is(DBSPTypeTimestamp.class)) {
+            // One value per second
+            value = "Timestamp::new(" + key + " as i64 * 1000)";
+        } else {
+            throw new UnsupportedException("Generating benchmark data for type", type);
+        }
+        if (type.mayBeNull)
+            value = "if rng.chance(" + this.options.nullRatio + ") { None } else { Some(" + value + ") }";
+        return value;
+    }
+
+    static String generatorName(DBSPSourceOperator source) {
+        return "gen_" + source.outputName;
+    }
+
+    void generateInput(DBSPSourceOperator source) {
+        DBSPTypeZSet type = source.getNonVoidType().to(DBSPTypeZSet.class);
+        DBSPTypeTuple tuple = type.elementType.to(DBSPTypeTuple.class);
+        long cardinality = this.options.getCardinality(source.outputName);
+        this.builder.append("fn ")
+                .append(generatorName(source))
+                .append("(rng: &mut BenchRng, rows: usize) -> ");
+        type.accept(new ToRustInnerVisitor(this.builder));
+        this.builder.append(" {")
+                .increase()
+                .append("let mut data = Vec::with_capacity(rows);")
+                .newline()
+                .append("for _ in 0..rows {")
+                .increase()
+                .append("data.push((");
+        if (tuple.size() == 0) {
+            this.builder.append("()");
+        } else {
+            this.builder.append("Tuple")
+                    .append(tuple.size())
+                    .append("::new(")
+                    .increase();
+            for (int i = 0; i < tuple.size(); i++) {
+                if (i > 0)
+                    this.builder.append(",").newline();
+                this.builder.append(this.generateValue(tuple.getFieldType(i), cardinality));
+            }
+            this.builder.append(")")
+                    .decrease();
+        }
+        this.builder.append(", 1 as ")
+                .append(TypeCompiler.WEIGHT_TYPE_NAME)
+                .append("));")
+                .newline()
+                .decrease()
+                .append("}")
+                .newline()
+                .append("OrdZSet::from_keys((), data)")
+                .newline()
+                .decrease()
+                .append("}")
+                .newline()
+                .newline();
+    }
+
+    public void generate(DBSPCircuit circuit) {
+        this.builder.append(support).newline();
+        List<DBSPSourceOperator> inputs = circuit.circuit.inputOperators;
+        for (DBSPSourceOperator source: inputs)
+            this.generateInput(source);
+
+        int steps = this.options.steps;
+        int batch = this.options.batchSize;
+        this.builder.append("pub fn main() {")
+                .increase()
+                .append("let mut rng = BenchRng::new(")
+                .append(this.options.seed)
+                .append(");")
+                .newline()
+                .append("let mut circuit = ")
+                .append(circuit.name)
+                .append("();")
+                .newline()
+                .append("let mut latencies = Vec::with_capacity(")
+                .append(steps)
+                .append(");")
+                .newline()
+                .append("for _ in 0..")
+                .append(steps)
+                .append(" {")
+                .increase();
+        // Data generation is not part of the measured time
+        for (int i = 0; i < inputs.size(); i++) {
+            this.builder.append("let input")
+                    .append(i)
+                    .append(" = ")
+                    .append(generatorName(inputs.get(i)))
+                    .append("(&mut rng, ")
+                    .append(batch)
+                    .append(");")
+                    .newline();
+        }
+        this.builder.append("let start = std::time::Instant::now();")
+                .newline()
+                .append("let _output = circuit(");
+        for (int i = 0; i < inputs.size(); i++) {
+            if (i > 0)
+                this.builder.append(", ");
+            this.builder.append("input").append(i);
+        }
+        this.builder.append(");")
+                .newline()
+                .append("latencies.push(start.elapsed());")
+                .newline()
+                .decrease()
+                .append("}")
+                .newline()
+                .append("let total: f64 = latencies.iter().map(|d| d.as_secs_f64()).sum();")
+                .newline()
+                .append("latencies.sort();")
+                .newline()
+                .append("let rows = ")
+                .append((long)steps * batch * inputs.size())
+                .append(" as f64;")
+                .newline()
+                .append("println!(\"")
+                .append(circuit.name)
+                .append(": {} steps, {:.1} steps/s, {:.1} rows/s, p50 {:.3}ms, p99 {:.3}ms\",")
+                .increase()
+                .append(steps)
+                .append(", ")
+                .append(steps)
+                .append(" as f64 / total, rows / total,")
+                .newline()
+                .append("percentile(&latencies, 0.5), percentile(&latencies, 0.99));")
+                .newline()
+                .decrease()
+                .decrease()
+                .append("}")
+                .newline();
+    }
+}
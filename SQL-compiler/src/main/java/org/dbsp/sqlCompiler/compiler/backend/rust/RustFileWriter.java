@@ -4,8 +4,9 @@ import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.circuit.IDBSPInnerNode;
 import org.dbsp.sqlCompiler.circuit.IDBSPNode;
 import org.dbsp.sqlCompiler.compiler.backend.optimize.BetaReduction;
+import org.dbsp.sqlCompiler.compiler.backend.optimize.EliminateClones;
+import org.dbsp.sqlCompiler.compiler.backend.optimize.FuseMapIntoJoin;
 import org.dbsp.sqlCompiler.compiler.backend.optimize.Simplify;
-import org.dbsp.sqlCompiler.compiler.backend.visitors.CircuitFunctionRewriter;
 import org.dbsp.sqlCompiler.ir.CircuitVisitor;
 import org.dbsp.sqlCompiler.ir.DBSPFunction;
 import org.dbsp.sqlCompiler.ir.InnerVisitor;
@@ -30,6 +31,7 @@ public class RustFileWriter {
     final List<IDBSPNode> toWrite;
     final PrintStream outputStream;
     boolean emitHandles = false;
+    boolean instrument = false;
 
     static class StructuresUsed {
         final Set<Integer> tupleSizesUsed = new HashSet<>();
@@ -62,9 +64,6 @@ public class RustFileWriter {
      */
     FindResources finder = new FindResources();
     CircuitVisitor findInCircuit = this.finder.getCircuitVisitor();
-    LowerCircuitVisitor lower = new LowerCircuitVisitor();
-    BetaReduction reducer = new BetaReduction();
-    CircuitFunctionRewriter circuitReducer = reducer.circuitRewriter();
 
     /**
      * If this is called with 'true' the emitted Rust code will use handles
@@ -74,6 +73,114 @@ public class RustFileWriter {
         this.emitHandles = emit;
     }
 
+    /**
+     * If this is called with 'true' the emitted Rust code will collect
+     * runtime metrics for each operator.
+     */
+    public void instrument(boolean instrument) {
+        this.instrument = instrument;
+    }
+
+    /**
+     * Runtime support for the code generated with instrumentation.
+     * Each operator records the size of every batch it produces.
+     * The time of an operator is measured between the EvalStart and EvalEnd
+     * scheduler events of the circuit node which implements it; an OperatorTimer
+     * is attached to each worker's circuit and maps node ids to operator ids.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    static final String instrumentationSupport =
+            "use dbsp::trace::BatchReader;\n" +
+            "use dbsp::circuit::{GlobalNodeId, SchedulerEvent};\n" +
+            "\n" +
+            "#[derive(Default)]\n" +
+            "pub struct OperatorMetrics {\n" +
+            "    pub operator: &'static str,\n" +
+            "    pub node: &'static str,\n" +
+            "    pub position: &'static str,\n" +
+            "    pub inputs: &'static [usize],\n" +
+            "    pub output_tuples: usize,\n" +
+            "    pub batches: usize,\n" +
+            "    pub max_batch: usize,\n" +
+            "    pub time_ns: u128,\n" +
+            "}\n" +
+            "\n" +
+            "static OPERATOR_METRICS: std::sync::Mutex<std::collections::BTreeMap<usize, OperatorMetrics>> =\n" +
+            "    std::sync::Mutex::new(std::collections::BTreeMap::new());\n" +
+            "\n" +
+
+            "pub fn register_operator(id: usize, operator: &'static str, node: &'static str,\n" +
+            "                         position: &'static str, inputs: &'static [usize]) {\n" +
+            "    let mut metrics = OPERATOR_METRICS.lock().unwrap();\n" +
+            "    let entry = metrics.entry(id).or_default();\n" +
+            "    entry.operator = operator;\n" +
+            "    entry.node = node;\n" +
+            "    entry.position = position;\n" +
+            "    entry.inputs = inputs;\n" +
+            "}\n" +
+            "\n" +
+            "pub fn record_operator_batch(id: usize, tuples: usize) {\n" +
+            "    let mut metrics = OPERATOR_METRICS.lock().unwrap();\n" +
+            "    let entry = metrics.entry(id).or_default();\n" +
+            "    entry.output_tuples += tuples;\n" +
+            "    entry.batches += 1;\n" +
+            "    entry.max_batch = entry.max_batch.max(tuples);\n" +
+            "}\n" +
+            "\n" +
+            "/// Times the evaluation of the operators of one worker's circuit.\n" +
+            "#[derive(Clone, Default)]\n" +
+            "pub struct OperatorTimer {\n" +
+            "    operators: Rc<RefCell<std::collections::HashMap<GlobalNodeId, usize>>>,\n" +
+            "    started: Rc<RefCell<std::collections::HashMap<GlobalNodeId, std::time::Instant>>>,\n" +
+            "}\n" +
+            "\n" +
+            "impl OperatorTimer {\n" +
+            "    pub fn attach(circuit: &dbsp::RootCircuit) -> Self {\n" +
+            "        let timer = Self::default();\n" +
+            "        let handler = timer.clone();\n" +
+            "        circuit.register_scheduler_event_handler(\"operator_timer\", move |event| match event {\n" +
+            "            SchedulerEvent::EvalStart { node } => {\n" +
+            "                handler.started.borrow_mut().insert(node.global_id().clone(), std::time::Instant::now());\n" +
+            "            }\n" +
+            "            SchedulerEvent::EvalEnd { node } => {\n" +
+            "                let start = handler.started.borrow_mut().remove(node.global_id());\n" +
+            "                if let (Some(start), Some(id)) = (start, handler.operators.borrow().get(node.global_id())) {\n" +
+            "                    let mut metrics = OPERATOR_METRICS.lock().unwrap();\n" +
+            "                    metrics.entry(*id).or_default().time_ns += start.elapsed().as_nanos();\n" +
+            "                }\n" +
+            "            }\n" +
+            "            _ => {}\n" +
+            "        });\n" +
+            "        timer\n" +
+            "    }\n" +
+            "\n" +
+            "    /// Charge the evaluation time of the node which produces a stream to an operator.\n" +
+            "    pub fn track<D>(&self, stream: &Stream<dbsp::RootCircuit, D>, id: usize) {\n" +
+            "        self.operators.borrow_mut().insert(stream.origin_node_id().clone(), id);\n" +
+            "    }\n" +
+            "}\n" +
+            "\n" +
+            "/// Metrics of all operators as a JSON map indexed by operator id.\n" +
+            "pub fn metrics_snapshot() -> String {\n" +
+            "    let metrics = OPERATOR_METRICS.lock().unwrap();\n" +
+            "    let mut result = String::from(\"{\");\n" +
+            "    for (index, (id, m)) in metrics.iter().enumerate() {\n" +
+            "        let input_tuples: usize = m.inputs.iter()\n" +
+            "            .map(|input| metrics.get(input).map(|i| i.output_tuples).unwrap_or(0))\n" +
+            "            .sum();\n" +
+            "        if index > 0 {\n" +
+            "            result.push(',');\n" +
+            "        }\n" +
+            "        result.push_str(&format!(\n" +
+            "            \"\\\"{}\\\":{{\\\"operator\\\":\\\"{}\\\",\\\"node\\\":\\\"{}\\\",\\\"position\\\":\\\"{}\\\",\\\n" +
+            "             \\\"input_tuples\\\":{},\\\"output_tuples\\\":{},\\\"batches\\\":{},\\\"max_batch\\\":{},\\\"time_ns\\\":{}}}\",\n" +
+            "            id, m.operator, m.node, m.position,\n" +
+            "            input_tuples, m.output_tuples, m.batches, m.max_batch, m.time_ns));\n" +
+            "    }\n" +
+            "    result.push('}');\n" +
+            "    result\n" +
+            "}\n";
+
     @SuppressWarnings("SpellCheckingInspection")
     static final String rustPreamble =
             "// Automatically-generated file\n" +
@@ -116,13 +223,13 @@ public class RustFileWriter {
                     "    marker::PhantomData,\n" +
                     "    str::FromStr,\n" +
                     "};\n" +
-                    "use rust_decimal::Decimal;\n" +
                     "use tuple::declare_tuples;\n" +
                     "use sqllib::{\n" +
                     "    casts::*,\n" +
                     "    geopoint::*,\n" +
                     "    timestamp::*,\n" +
                     "    interval::*,\n" +
+                    "    fixed::*,\n" +
                     "};\n" +
                     "use sqllib::*;\n" +
                     "use sqlvalue::*;\n" +
@@ -250,28 +357,41 @@ public class RustFileWriter {
         this.toWrite.add(function);
     }
 
+    /**
+     * Apply to a circuit the passes that run before it is translated to Rust.
+     * The result is the circuit whose code is emitted.
+     */
+    public static DBSPCircuit prepare(DBSPCircuit circuit) {
+        circuit = new LowerCircuitVisitor().apply(circuit);
+        circuit = new BetaReduction().circuitRewriter().apply(circuit);
+        circuit = new FuseMapIntoJoin().apply(circuit);
+        circuit = new Simplify().circuitRewriter().apply(circuit);
+        return new EliminateClones().circuitRewriter().apply(circuit);
+    }
+
     public void write() throws FileNotFoundException, UnsupportedEncodingException {
         Simplify simplify = new Simplify();
-        CircuitFunctionRewriter simplifier = simplify.circuitRewriter();
+        EliminateClones clones = new EliminateClones();
         // Lower the circuits
         List<IDBSPNode> lowered = new ArrayList<>();
         for (IDBSPNode node: this.toWrite) {
             IDBSPInnerNode inner = node.as(IDBSPInnerNode.class);
             if (inner != null) {
                 inner = simplify.apply(inner);
+                inner = clones.apply(inner);
                 inner.accept(this.finder);
                 lowered.add(inner);
             } else {
                 DBSPCircuit outer = node.to(DBSPCircuit.class);
-                outer = this.lower.apply(outer);
-                outer = this.circuitReducer.apply(outer);
-                outer = simplifier.apply(outer);
+                outer = prepare(outer);
                 outer.accept(this.findInCircuit);
                 lowered.add(outer);
             }
         }
         // Emit code
         this.outputStream.println(generatePreamble(used));
+        if (this.instrument)
+            this.outputStream.println(instrumentationSupport);
         for (IDBSPNode node: lowered) {
             String str;
             IDBSPInnerNode inner = node.as(IDBSPInnerNode.class);
@@ -280,9 +400,9 @@ public class RustFileWriter {
             } else {
                 DBSPCircuit outer = node.to(DBSPCircuit.class);
                 if (this.emitHandles)
-                    str = ToRustHandleVisitor.toRustString(outer, outer.name);
+                    str = ToRustHandleVisitor.toRustString(outer, outer.name, this.instrument);
                 else
-                    str = ToRustVisitor.toRustString(outer);
+                    str = ToRustVisitor.toRustString(outer, this.instrument);
             }
             this.outputStream.println(str);
         }
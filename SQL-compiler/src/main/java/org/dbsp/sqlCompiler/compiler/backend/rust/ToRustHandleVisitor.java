@@ -105,6 +105,7 @@ public class ToRustHandleVisitor extends ToRustVisitor {
                 .newline()
                 .append("let (circuit, handles) = Runtime::init_circuit(workers, |circuit| {")
                 .increase();
+        this.generateInstrumentationSetup();
 
         for (IDBSPNode node : circuit.getCode())
             super.processNode(node);
@@ -147,9 +148,13 @@ public class ToRustHandleVisitor extends ToRustVisitor {
     }
 
     public static String toRustString(IDBSPOuterNode node, String functionName) {
+        return toRustString(node, functionName, false);
+    }
+
+    public static String toRustString(IDBSPOuterNode node, String functionName, boolean instrument) {
         StringBuilder builder = new StringBuilder();
         IndentStream stream = new IndentStream(builder);
-        ToRustVisitor visitor = new ToRustHandleVisitor(stream, functionName);
+        ToRustVisitor visitor = new ToRustHandleVisitor(stream, functionName).setInstrument(instrument);
         node.accept(visitor);
         return builder.toString();
     }
@@ -311,9 +311,12 @@ public class ToRustInnerVisitor extends InnerVisitor {
         DBSPTypeDecimal type = literal.getNonVoidType().to(DBSPTypeDecimal.class);
         if (type.mayBeNull)
             this.builder.append("Some(");
-        this.builder.append("Decimal::from_str(\"")
-                .append(literal.value.toString())
-                .append("\").unwrap()");
+        // Fixed-point literals are emitted as their integer representation
+        this.builder.append("<")
+                .append(type.getRustString())
+                .append(">::new(")
+                .append(type.getScaledValue(literal.value).toString())
+                .append(")");
         if (type.mayBeNull)
             this.builder.append(")");
         return false;
@@ -338,9 +341,15 @@ public class ToRustInnerVisitor extends InnerVisitor {
         String srcName = baseSource.shortName();
         String functionName = "cast_to_" + destName + baseDest.nullableSuffix() +
                 "_" + srcName + sourceType.nullableSuffix();
-        this.builder.append(functionName).append("(");
-        expression.source.accept(this);
         DBSPTypeDecimal dec = baseDest.as(DBSPTypeDecimal.class);
+        this.builder.append(functionName);
+        if (dec != null)
+            // The scale of the result is part of the Rust type
+            this.builder.append("::<")
+                    .append(dec.getRustString())
+                    .append(">");
+        this.builder.append("(");
+        expression.source.accept(this);
         if (dec != null) {
             // pass precision and scale as arguments to cast method too
             this.builder.append(", ")
@@ -425,6 +434,9 @@ public class ToRustInnerVisitor extends InnerVisitor {
             expression.operation.startsWith("is_")) {
             this.builder.append(expression.operation)
                     .append("(");
+            if (expression.operation.equals("indicator"))
+                // indicator only inspects its argument
+                this.builder.append("&");
             expression.source.accept(this);
             this.builder.append(")");
             return false;
@@ -644,6 +656,14 @@ public class ToRustInnerVisitor extends InnerVisitor {
         return false;
     }
 
+    @Override
+    public boolean preorder(DBSPUnclonedFieldExpression expression) {
+        expression.expression.accept(this);
+        this.builder.append(".")
+                .append(expression.fieldNo);
+        return false;
+    }
+
     @Override
     public boolean preorder(DBSPIfExpression expression) {
         builder.append("(if ");
@@ -884,7 +904,7 @@ public class ToRustInnerVisitor extends InnerVisitor {
 
     @Override
     public boolean preorder(DBSPTypeDecimal type) {
-        type.wrapOption(this.builder,"Decimal");
+        type.wrapOption(this.builder, type.getRustString());
         return false;
     }
 
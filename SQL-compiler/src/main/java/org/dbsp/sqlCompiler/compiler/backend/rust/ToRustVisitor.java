@@ -25,6 +25,7 @@ package org.dbsp.sqlCompiler.compiler.backend.rust;
 
 import org.dbsp.sqlCompiler.circuit.*;
 import org.dbsp.sqlCompiler.circuit.operator.*;
+import org.dbsp.sqlCompiler.compiler.errors.SourcePositionRange;
 import org.dbsp.sqlCompiler.ir.CircuitVisitor;
 import org.dbsp.sqlCompiler.ir.InnerVisitor;
 import org.dbsp.sqlCompiler.ir.type.*;
@@ -38,6 +39,10 @@ import javax.annotation.Nullable;
 public class ToRustVisitor extends CircuitVisitor {
     protected final IndentStream builder;
     public final InnerVisitor innerVisitor;
+    /**
+     * If true generate code which collects runtime metrics for each operator.
+     */
+    boolean instrument = false;
 
     public ToRustVisitor(IndentStream builder) {
         super(true);
@@ -45,6 +50,11 @@ public class ToRustVisitor extends CircuitVisitor {
         this.innerVisitor = new ToRustInnerVisitor(builder);
     }
 
+    public ToRustVisitor setInstrument(boolean instrument) {
+        this.instrument = instrument;
+        return this;
+    }
+
     //////////////// Operators
 
     private void genRcCell(DBSPOperator op) {
@@ -88,11 +98,74 @@ public class ToRustVisitor extends CircuitVisitor {
         }
         operator.accept(this);
         this.builder.newline();
+        if (this.instrument)
+            this.generateInstrumentation(operator);
+    }
+
+    /**
+     * A short description of the Calcite node that produced an operator.
+     * Only characters that need no escaping in Rust strings or JSON are kept.
+     */
+    static String describeNode(DBSPOperator operator) {
+        Object node = operator.getNode();
+        if (node == null)
+            return "";
+        String description = node.toString().split("\n")[0];
+        if (description.length() > 80)
+            description = description.substring(0, 80);
+        return description.replaceAll("[^A-Za-z0-9#_:.,=()\\[\\] -]", "");
+    }
+
+    /**
+     * Generate code which registers an operator with the metrics collector,
+     * counts the tuples it produces, and times the evaluation of the circuit
+     * node which produces its output.  The runtime support is emitted by
+     * the RustFileWriter.
+     */
+    void generateInstrumentation(DBSPOperator operator) {
+        SourcePositionRange position = operator.getSourcePosition();
+        this.builder.append("register_operator(")
+                .append(operator.id)
+                .append(", ")
+                .append(Utilities.doubleQuote(operator.getClass().getSimpleName()))
+                .append(", ")
+                .append(Utilities.doubleQuote(describeNode(operator)))
+                .append(", ")
+                .append(Utilities.doubleQuote(position.isValid() ? position.toString() : ""))
+                .append(", &[")
+                .intercalateS(", ", Linq.map(operator.inputs, i -> Long.toString(i.id)))
+                .append("]);")
+                .newline();
+        if (operator.is(DBSPSinkOperator.class))
+            // Sinks do not produce a stream
+            return;
+        this.builder.append("operator_timer.track(&")
+                .append(operator.getName())
+                .append(", ")
+                .append(operator.id)
+                .append(");")
+                .newline()
+                .append(operator.getName())
+                .append(".inspect(move |batch| record_operator_batch(")
+                .append(operator.id)
+                .append(", batch.len()));")
+                .newline();
+    }
+
+    /**
+     * Generate code which attaches the timer of the operators to the circuit.
+     * Must be emitted in the circuit constructor before any operator.
+     */
+    void generateInstrumentationSetup() {
+        if (this.instrument)
+            this.builder.append("let operator_timer = OperatorTimer::attach(circuit);")
+                    .newline();
     }
 
     public void generateBody(DBSPPartialCircuit circuit) {
         this.builder.append("let root = dbsp::RootCircuit::build(|circuit| {")
                 .increase();
+        this.generateInstrumentationSetup();
         for (IDBSPNode node : circuit.getCode())
             this.processNode(node);
         this.builder.decrease()
@@ -351,11 +424,15 @@ public class ToRustVisitor extends CircuitVisitor {
     }
 
     public static String toRustString(IDBSPOuterNode node) {
+        return toRustString(node, false);
+    }
+
+    public static String toRustString(IDBSPOuterNode node, boolean instrument) {
         StringBuilder builder = new StringBuilder();
         IndentStream stream = new IndentStream(builder);
         LowerCircuitVisitor lower = new LowerCircuitVisitor();
         node = lower.apply(node.to(DBSPCircuit.class));
-        ToRustVisitor visitor = new ToRustVisitor(stream);
+        ToRustVisitor visitor = new ToRustVisitor(stream).setInstrument(instrument);
         node.accept(visitor);
         return builder.toString();
     }
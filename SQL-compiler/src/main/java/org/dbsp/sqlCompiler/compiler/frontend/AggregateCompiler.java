@@ -68,6 +68,8 @@ public class AggregateCompiler {
     // null only for COUNT(*)
     @Nullable
     private final DBSPExpression aggArgument;
+    // Index of the aggregated field, -1 for COUNT(*)
+    private final int aggColumn;
     private final NameGen generator;
 
     public AggregateCompiler(
@@ -84,9 +86,11 @@ public class AggregateCompiler {
         List<Integer> argList = call.getArgList();
         if (argList.size() == 0) {
             this.aggArgument = null;
+            this.aggColumn = -1;
         } else if (argList.size() == 1) {
             int fieldNumber = call.getArgList().get(0);
             this.aggArgument = this.v.field(fieldNumber);
+            this.aggColumn = fieldNumber;
         } else {
             throw new Unimplemented(call);
         }
@@ -144,7 +148,8 @@ public class AggregateCompiler {
         }
         DBSPType semigroup = new DBSPTypeUser(null, "DefaultSemigroup", false, this.resultType);
         this.foldingFunction = new DBSPAggregate.Implementation(
-                function, zero, this.makeRowClosure(increment, accum), zero, semigroup);
+                function, this.aggColumn, !this.isDistinct,
+                zero, this.makeRowClosure(increment, accum), zero, semigroup);
     }
 
     private DBSPExpression getAggregatedValue() {
@@ -177,7 +182,8 @@ public class AggregateCompiler {
                 function, call, this.nullableResultType, accum, aggregatedValue);
         DBSPType semigroup = new DBSPTypeUser(null, semigroupName, false, accum.getNonVoidType());
         this.foldingFunction = new DBSPAggregate.Implementation(
-                function, zero, this.makeRowClosure(increment, accum), zero, semigroup);
+                function, this.aggColumn, !this.isDistinct,
+                zero, this.makeRowClosure(increment, accum), zero, semigroup);
     }
 
     void processSum(SqlSumAggFunction function) {
@@ -200,7 +206,8 @@ public class AggregateCompiler {
         }
         DBSPType semigroup = new DBSPTypeUser(null, "DefaultOptSemigroup", false, accum.getNonVoidType().setMayBeNull(false));
         this.foldingFunction = new DBSPAggregate.Implementation(
-                function, zero, this.makeRowClosure(increment, accum), zero, semigroup);
+                function, this.aggColumn, !this.isDistinct,
+                zero, this.makeRowClosure(increment, accum), zero, semigroup);
     }
 
     void processSumZero(SqlSumEmptyIsZeroAggFunction function) {
@@ -227,7 +234,8 @@ public class AggregateCompiler {
             semigroupName = "DefaultOptSemigroup";
         DBSPType semigroup = new DBSPTypeUser(null, semigroupName, false, accum.getNonVoidType().setMayBeNull(false));
         this.foldingFunction = new DBSPAggregate.Implementation(
-                function, zero, this.makeRowClosure(increment, accum), zero, semigroup);
+                function, this.aggColumn, !this.isDistinct,
+                zero, this.makeRowClosure(increment, accum), zero, semigroup);
     }
 
     void processAvg(SqlAvgAggFunction function) {
@@ -284,7 +292,8 @@ public class AggregateCompiler {
                 new DBSPTypeUser(null, "DefaultOptSemigroup", false, DBSPTypeInteger.SIGNED_64),
                 new DBSPTypeUser(null, "DefaultOptSemigroup", false, DBSPTypeInteger.SIGNED_64));
         this.foldingFunction = new DBSPAggregate.Implementation(
-                function, zero, this.makeRowClosure(increment, accum), post, postZero, semigroup);
+                function, this.aggColumn, !this.isDistinct,
+                zero, this.makeRowClosure(increment, accum), post, postZero, semigroup);
     }
 
     public DBSPAggregate.Implementation compile() {
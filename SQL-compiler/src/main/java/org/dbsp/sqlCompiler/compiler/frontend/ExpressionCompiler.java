@@ -199,6 +199,13 @@ public class ExpressionCompiler extends RexVisitorImpl<DBSPExpression> implement
                 return left.setMayBeNull(false);
             if (rf != null)
                 return right.setMayBeNull(false);
+            if (rd != null) {
+                // Enough digits to represent both operands
+                int scale = Math.max(ld.scale, rd.scale);
+                int precision = Math.max(ld.precision - ld.scale, rd.precision - rd.scale) + scale;
+                precision = Math.min(precision, DBSPTypeDecimal.MAX_PRECISION);
+                return new DBSPTypeDecimal(null, precision, scale, false);
+            }
         }
         throw new Unimplemented("Cast from " + right + " to " + left);
     }
@@ -248,6 +255,11 @@ public class ExpressionCompiler extends RexVisitorImpl<DBSPExpression> implement
 
         if (needCommonType(op, type, leftType, rightType)) {
             DBSPType commonBase = reduceType(leftType, rightType);
+            if ((op.equals("*") || op.equals("/")) &&
+                    commonBase.is(DBSPTypeDecimal.class) && type.is(DBSPTypeDecimal.class))
+                // Fixed-point products and quotients are computed with the scale of
+                // the operands, so compute them directly in the result type.
+                commonBase = type.setMayBeNull(false);
             if (commonBase.is(DBSPTypeNull.class)) {
                 // Result is always NULL.  Perhaps we should give a warning?
                 return DBSPLiteral.none(type);
@@ -171,9 +171,20 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
          * Name of the Type that implements the semigroup for this operation.
          */
         public final DBSPType semigroup;
+        /**
+         * Index of the aggregated column in the input row; -1 for COUNT(*).
+         */
+        public final int column;
+        /**
+         * True if each row contributes to the result according to its weight;
+         * false for DISTINCT aggregates.
+         */
+        public final boolean weighted;
 
         public Implementation(
                 @Nullable SqlOperator operator,
+                int column,
+                boolean weighted,
                 DBSPExpression zero,
                 DBSPClosureExpression increment,
                 @Nullable
@@ -187,16 +198,20 @@ public class DBSPAggregate extends DBSPNode implements IDBSPInnerNode {
             this.postProcess = postProcess;
             this.emptySetResult = emptySetResult;
             this.semigroup = semigroup;
+            this.column = column;
+            this.weighted = weighted;
             this.validate();
         }
 
         public Implementation(
                 @Nullable SqlOperator operator,
+                int column,
+                boolean weighted,
                 DBSPExpression zero,
                 DBSPClosureExpression increment,
                 DBSPExpression emptySetResult,
                 DBSPType semigroup) {
-            this(operator, zero, increment, null, emptySetResult, semigroup);
+            this(operator, column, weighted, zero, increment, null, emptySetResult, semigroup);
         }
 
         void validate() {
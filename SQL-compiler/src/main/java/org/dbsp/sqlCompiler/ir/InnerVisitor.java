@@ -468,6 +468,11 @@ public abstract class InnerVisitor {
         else return true;
     }
 
+    public boolean preorder(DBSPUnclonedFieldExpression node) {
+        if (this.visitSuper) return this.preorder((DBSPFieldExpression) node);
+        else return true;
+    }
+
     public boolean preorder(DBSPIfExpression node) {
         if (this.visitSuper) return this.preorder((DBSPExpression) node);
         else return true;
@@ -923,6 +928,10 @@ public abstract class InnerVisitor {
         if (this.visitSuper) this.postorder((DBSPExpression) node);
     }
 
+    public void postorder(DBSPUnclonedFieldExpression node) {
+        if (this.visitSuper) this.postorder((DBSPFieldExpression) node);
+    }
+
     public void postorder(DBSPIfExpression node) {
         if (this.visitSuper) this.postorder((DBSPExpression) node);
     }
@@ -35,14 +35,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class DBSPTupleExpression extends DBSPBaseTupleExpression {
-    public final DBSPExpression[] fields;
-
-    public int size() { return this.fields.length; }
-
     public DBSPTupleExpression(@Nullable Object object, boolean mayBeNull, DBSPExpression... expressions) {
         super(object,
-                new DBSPTypeTuple(null, mayBeNull, Linq.map(expressions, DBSPExpression::getType, DBSPType.class)));
-        this.fields = expressions;
+                new DBSPTypeTuple(null, mayBeNull, Linq.map(expressions, DBSPExpression::getType, DBSPType.class)),
+                expressions);
     }
 
     public DBSPTupleExpression(DBSPExpression... expressions) {
@@ -32,12 +32,23 @@ import org.dbsp.util.UnsupportedException;
 
 import javax.annotation.Nullable;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.util.Objects;
 
+/**
+ * DECIMAL values are represented in Rust as fixed-point numbers:
+ * an integer holding the value multiplied by 10^scale.
+ * The integer is an i64 when the precision allows it, and an i128 otherwise.
+ */
 public class DBSPTypeDecimal extends DBSPTypeBaseType
         implements IsNumericType {
     public static final int MAX_PRECISION = 38;  // Total digits. Rather arbitrary.
     public static final int MAX_SCALE = 10;       // Digits after decimal period.  Rather arbitrary.
+    /**
+     * Largest precision of values that are represented using an i64.
+     */
+    public static final int MAX_FIXED64_PRECISION = 18;
 
     public final int precision;
     public final int scale;
@@ -57,9 +68,25 @@ public class DBSPTypeDecimal extends DBSPTypeBaseType
         this.scale = scale;
     }
 
+    /**
+     * Rust integer type used to represent the scaled values.
+     */
+    public String getRustRepresentation() {
+        return this.precision <= MAX_FIXED64_PRECISION ? "i64" : "i128";
+    }
+
     @Override
     public String getRustString() {
-        return "Decimal";
+        String type = this.precision <= MAX_FIXED64_PRECISION ? "Fixed64" : "Fixed128";
+        return type + "<" + this.scale + ">";
+    }
+
+    /**
+     * The integer representing the specified value in this type:
+     * the value multiplied by 10^scale, rounded half away from zero.
+     */
+    public BigInteger getScaledValue(BigDecimal value) {
+        return value.setScale(this.scale, RoundingMode.HALF_UP).unscaledValue();
     }
 
     @Override
@@ -74,12 +101,15 @@ public class DBSPTypeDecimal extends DBSPTypeBaseType
 
     @Override
     public DBSPLiteral getMaxValue() {
-        throw new UnsupportedException(this);
+        // 99...9.9...9 with precision digits
+        BigDecimal max = new BigDecimal(BigInteger.TEN.pow(this.precision).subtract(BigInteger.ONE), this.scale);
+        return new DBSPDecimalLiteral(null, this, max);
     }
 
     @Override
     public DBSPLiteral getMinValue() {
-        throw new UnsupportedException(this);
+        BigDecimal max = new BigDecimal(BigInteger.TEN.pow(this.precision).subtract(BigInteger.ONE), this.scale);
+        return new DBSPDecimalLiteral(null, this, max.negate());
     }
 
     @Override
@@ -91,7 +121,7 @@ public class DBSPTypeDecimal extends DBSPTypeBaseType
 
     @Override
     public boolean hasCopy() {
-        return false;
+        return true;
     }
 
     @Override
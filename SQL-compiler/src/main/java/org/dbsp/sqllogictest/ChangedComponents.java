@@ -0,0 +1,368 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqllogictest;
+
+import org.dbsp.sqlCompiler.compiler.backend.CircuitFootprint;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+import org.dbsp.util.Utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The compiler components changed since a git revision, as seen by the SLT tests:
+ * the IR classes of the compiler and the functions of the Rust runtime library,
+ * including the library functions that call the changed ones.
+ * Changes that cannot be attributed to such components, e.g., to optimization
+ * passes or to the DBSP runtime, may affect any test.
+ */
+public class ChangedComponents implements IModule {
+    /**
+     * Java packages whose classes are recorded in circuit footprints.
+     */
+    static final String[] IR_PACKAGES = {
+            "/org/dbsp/sqlCompiler/ir/",
+            "/org/dbsp/sqlCompiler/circuit/"
+    };
+    /**
+     * Directory holding the Rust runtime library.
+     */
+    static final String RUNTIME_LIBRARY = "lib/sqllib/";
+    static final Pattern FUNCTION = Pattern.compile("\\bfn\\s+(\\w+)");
+    /**
+     * The start of a trait implementation.
+     */
+    static final Pattern TRAIT_IMPL = Pattern.compile("^(unsafe\\s+)?impl\\b.*\\sfor\\s");
+
+    /**
+     * If true every test may be affected.
+     */
+    public boolean all;
+    public final Set<String> classes;
+    public final Set<String> functions;
+
+    public ChangedComponents() {
+        this.all = false;
+        this.classes = new HashSet<>();
+        this.functions = new HashSet<>();
+    }
+
+    /**
+     * Compute the components changed between a revision and the working tree
+     * of the git repository that contains the current directory.
+     */
+    public static ChangedComponents since(String revision) throws IOException, InterruptedException {
+        ChangedComponents result = new ChangedComponents();
+        String root = Utilities.runProcessWithOutput(".", "git", "rev-parse", "--show-toplevel").trim();
+        String files = Utilities.runProcessWithOutput(root, "git", "diff", "--name-only", revision);
+        for (String file: files.split("\n")) {
+            if (file.isEmpty())
+                continue;
+            if (file.startsWith(RUNTIME_LIBRARY) && file.endsWith(".rs")) {
+                // -W extends each hunk to the whole top-level items that contain the changes
+                String diff = Utilities.runProcessWithOutput(
+                        root, "git", "diff", "-U0", "-W", revision, "--", file);
+                result.addRustDiff(file, diff);
+            } else {
+                result.addFile(file);
+            }
+        }
+        // New files do not appear in the diff
+        String untracked = Utilities.runProcessWithOutput(
+                root, "git", "ls-files", "--others", "--exclude-standard");
+        for (String file: untracked.split("\n")) {
+            if (!file.isEmpty())
+                result.addFile(file);
+        }
+        if (!result.all && !result.functions.isEmpty())
+            result.addCallers(CallGraph.of(new File(root, RUNTIME_LIBRARY)));
+        Logger.INSTANCE.from(result, 1)
+                .append("Changes since ")
+                .append(revision)
+                .append(": ")
+                .append(result.toString())
+                .newline();
+        return result;
+    }
+
+    public void addFile(String file) {
+        if (file.contains("/src/test/"))
+            return;
+        if (file.endsWith(".java")) {
+            for (String pkg: IR_PACKAGES) {
+                if (file.contains(pkg)) {
+                    String name = file.substring(file.lastIndexOf('/') + 1);
+                    this.classes.add(name.substring(0, name.length() - ".java".length()));
+                    return;
+                }
+            }
+            this.setAll(file);
+        } else if (file.endsWith(".rs") || file.endsWith(".toml") ||
+                file.endsWith(".lock") || file.endsWith("pom.xml")) {
+            this.setAll(file);
+        }
+        // Other files, like documentation, do not affect the tests.
+    }
+
+    /**
+     * Find the functions changed by a diff of a runtime library file.
+     * The diff must be produced with 'git diff -W', so each hunk contains
+     * all the top-level items (functions, impls, macro invocations, etc.)
+     * that contain its changes.  Hunk headers are ignored: the function
+     * they name is just the last one that starts before the hunk.
+     * A changed line is attributed to the functions declared in its item;
+     * attributes and comments between items belong to the following item.
+     * Many functions are generated by macros: a change in an item
+     * which does not declare a function may affect any test.
+     */
+    public void addRustDiff(String file, String diff) {
+        boolean inHunk = false;
+        RustItem item = null;
+        // True if lines between items have changed
+        boolean pending = false;
+        for (String line: diff.split("\n")) {
+            if (line.startsWith("@@")) {
+                if (item != null)
+                    item.finish(this, file);
+                if (pending)
+                    this.setAll(file);
+                inHunk = true;
+                item = null;
+                pending = false;
+                continue;
+            }
+            if (!inHunk || line.isEmpty() || !(line.startsWith(" ") || line.startsWith("+") || line.startsWith("-")))
+                continue;
+            boolean changed = !line.startsWith(" ");
+            String content = line.substring(1);
+            if (RustItem.startsItem(content)) {
+                if (item != null)
+                    item.finish(this, file);
+                item = new RustItem(pending);
+                pending = false;
+            }
+            if (item == null) {
+                pending |= changed && !content.trim().isEmpty();
+                continue;
+            }
+            item.add(content, changed);
+            if (RustItem.endsItem(content)) {
+                item.finish(this, file);
+                item = null;
+            }
+        }
+        if (item != null)
+            item.finish(this, file);
+        if (pending)
+            this.setAll(file);
+    }
+
+    /**
+     * The lines of a top-level Rust item which appear in a diff hunk.
+     */
+    static class RustItem {
+        final Set<String> functions;
+        boolean changed;
+
+        RustItem(boolean changed) {
+            this.functions = new HashSet<>();
+            this.changed = changed;
+        }
+
+        /**
+         * True if the line starts a top-level item.  Attributes and comments
+         * are not items, and neither are lines closing an item.
+         */
+        static boolean startsItem(String line) {
+            if (line.isEmpty() || Character.isWhitespace(line.charAt(0)))
+                return false;
+            return !line.startsWith("#") && !line.startsWith("/") && !endsItem(line);
+        }
+
+        /**
+         * True if the line closes a top-level item.
+         */
+        static boolean endsItem(String line) {
+            return line.startsWith("}") || line.startsWith(")") || line.startsWith("]");
+        }
+
+        void add(String line, boolean changed) {
+            Matcher matcher = FUNCTION.matcher(line);
+            while (matcher.find())
+                this.functions.add(matcher.group(1));
+            this.changed |= changed;
+        }
+
+        void finish(ChangedComponents components, String file) {
+            if (!this.changed)
+                return;
+            if (this.functions.isEmpty())
+                components.setAll(file);
+            components.functions.addAll(this.functions);
+        }
+    }
+
+    /**
+     * Calls between the functions of the runtime library.  Functions are
+     * identified by name only, so a call may be attributed to all the
+     * functions with the same name.
+     */
+    public static class CallGraph {
+        /**
+         * For each function the functions that call it.
+         */
+        public final Map<String, Set<String>> callers;
+        /**
+         * Functions that implement traits.  Generated code reaches them
+         * through operators and generic functions, without naming them.
+         */
+        public final Set<String> traitMethods;
+
+        public CallGraph() {
+            this.callers = new HashMap<>();
+            this.traitMethods = new HashSet<>();
+        }
+
+        /**
+         * Build the call graph of all the Rust files in a directory.
+         */
+        public static CallGraph of(File directory) throws IOException {
+            CallGraph result = new CallGraph();
+            result.addDirectory(directory);
+            return result;
+        }
+
+        void addDirectory(File directory) throws IOException {
+            File[] files = directory.listFiles();
+            if (files == null)
+                return;
+            for (File file: files) {
+                if (file.isDirectory())
+                    this.addDirectory(file);
+                else if (file.getName().endsWith(".rs"))
+                    this.addSource(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * Add the calls in a Rust source file.  A call is attributed to the
+         * last function declared before it; calls outside functions are ignored.
+         */
+        public void addSource(String source) {
+            String function = null;
+            // Indentation of the enclosing trait implementation, -1 if none
+            int traitImpl = -1;
+            for (String line: source.split("\n")) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("//"))
+                    continue;
+                int indent = line.indexOf(trimmed);
+                if (indent <= traitImpl)
+                    traitImpl = -1;
+                if (indent == 0 && RustItem.startsItem(line))
+                    function = null;
+                if (TRAIT_IMPL.matcher(trimmed).find())
+                    traitImpl = indent;
+                Matcher matcher = FUNCTION.matcher(line);
+                String declared = null;
+                while (matcher.find()) {
+                    declared = matcher.group(1);
+                    function = declared;
+                    if (traitImpl >= 0)
+                        this.traitMethods.add(declared);
+                }
+                if (function == null)
+                    continue;
+                matcher = CircuitFootprint.CALL.matcher(line);
+                while (matcher.find()) {
+                    String callee = matcher.group(1);
+                    if (!callee.equals(declared))
+                        this.callers.computeIfAbsent(callee, k -> new HashSet<>()).add(function);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add to the changed functions all the library functions that call them,
+     * directly or indirectly.  Generated code does not name the trait methods,
+     * so a change that reaches one of them may affect any test.
+     */
+    public void addCallers(CallGraph graph) {
+        Deque<String> work = new ArrayDeque<>(this.functions);
+        while (!work.isEmpty()) {
+            String function = work.pop();
+            if (graph.traitMethods.contains(function))
+                this.setAll("trait method " + function);
+            for (String caller: graph.callers.getOrDefault(function, new HashSet<>())) {
+                if (this.functions.add(caller))
+                    work.push(caller);
+            }
+        }
+    }
+
+    void setAll(String file) {
+        if (!this.all)
+            Logger.INSTANCE.from(this, 1)
+                    .append("Change to ")
+                    .append(file)
+                    .append(" may affect all tests")
+                    .newline();
+        this.all = true;
+    }
+
+    /**
+     * True if a test with the specified footprint may be affected by the changes.
+     */
+    public boolean affects(CircuitFootprint footprint) {
+        if (this.all)
+            return true;
+        for (String c: footprint.classes)
+            if (this.classes.contains(c))
+                return true;
+        for (String f: footprint.functions)
+            if (this.functions.contains(f))
+                return true;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (this.all)
+            return "all";
+        return "classes=" + this.classes + ", functions=" + this.functions;
+    }
+}
@@ -29,7 +29,9 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import org.apache.calcite.config.Lex;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.IncrementalWorkload;
 import org.dbsp.sqllogictest.executors.*;
+import org.dbsp.util.BuildCache;
 import org.dbsp.util.UnsupportedException;
 
 import javax.annotation.Nullable;
@@ -81,7 +83,42 @@ public class ExecutionOptions {
     @Parameter(names = "-b", description = "Load a list of buggy commands to skip from this file")
     @Nullable
     String bugsFile = null;
-    // @Parameter(names = "-j", description = "Validate JSON JIT IR representation while compiling")
+    @Parameter(names = "-cache", description = "Directory where compiled Rust test binaries are cached")
+    @Nullable
+    String buildCache = null;
+    @Parameter(names = "-cacheSize", description = "Maximum size of the build cache in MB")
+    long buildCacheSize = 4096;
+    @Parameter(names = "-resultCache", description = "Directory where results of the JDBC executor are cached; " +
+            "queries with cached results are not executed again")
+    @Nullable
+    String resultCache = null;
+    @Parameter(names = "-j", description = "Number of test files to execute in parallel")
+    int jobs = 1;
+    @Parameter(names = "-buildTime", description = "Target Rust build time for a batch of queries in seconds; " +
+            "the number of queries compiled together is adjusted to reach it.  0 uses fixed batch sizes")
+    int targetBuildTime = 60;
+    @Parameter(names = "-runner", description = "Link all queries of a test file into a single binary " +
+            "which runs the tests on demand")
+    boolean singleBinary = false;
+    @Parameter(names = "-workload", description = "Seed for random incremental workloads; with -i each " +
+            "incremental circuit is checked against the non-incremental one after each change")
+    @Nullable
+    Long workloadSeed = null;
+    @Parameter(names = "-workloadBatch", description = "Maximum number of rows inserted by a change in a workload")
+    int workloadBatch = 4;
+    @Parameter(names = "-footprints", description = "File where the compiler components used by each query " +
+            "are recorded")
+    @Nullable
+    public String footprintsFile = null;
+    @Parameter(names = "-since", description = "Git revision; execute only the queries whose recorded footprint " +
+            "is affected by the changes made since this revision.  Requires -footprints")
+    @Nullable
+    public String sinceRevision = null;
+    @Parameter(names = "-timings", description = "Write a JSON report with the time spent in each " +
+            "compilation phase for each batch and query to this file")
+    @Nullable
+    public String timingsFile = null;
+    // @Parameter(names = "-json", description = "Validate JSON JIT IR representation while compiling")
     // TODO: reenable this when the JIT compiler works properly
     boolean validateJson = false;
 
@@ -104,6 +141,11 @@ public class ExecutionOptions {
     }
 
     final JCommander commander;
+    /**
+     * Footprints shared by all executors; null if footprints are not requested.
+     */
+    @Nullable
+    TestFootprints footprints = null;
 
     public ExecutionOptions() {
         this.commander = JCommander.newBuilder()
@@ -112,7 +154,13 @@ public class ExecutionOptions {
         this.commander.setProgramName("slt");
     }
 
-    String jdbcConnectionString() {
+    /**
+     * Connection string for the reference database.
+     * Each parallel worker uses its own in-memory database.
+     */
+    String jdbcConnectionString(int worker) {
+        if (worker > 0)
+            return "jdbc:hsqldb:mem:db" + worker;
         return "jdbc:hsqldb:mem:db";
     }
 
@@ -124,14 +172,52 @@ public class ExecutionOptions {
         return "csv";
     }
 
-    JDBCExecutor jdbcExecutor(HashSet<String> sltBugs) {
-        JDBCExecutor jdbc =  new JDBCExecutor(this.jdbcConnectionString());
+    JDBCExecutor jdbcExecutor(HashSet<String> sltBugs, int worker) {
+        JDBCExecutor jdbc =  new JDBCExecutor(this.jdbcConnectionString(worker));
         jdbc.avoid(sltBugs);
         jdbc.setValidateStatus(this.validateStatus);
         return jdbc;
     }
 
-    SqlSLTTestExecutor getExecutor() throws IOException, SQLException {
+    /**
+     * Workload generator, or null if no workloads are requested.
+     * The generator is reseeded for each test file.
+     */
+    @Nullable
+    IncrementalWorkload getWorkload() {
+        if (this.workloadSeed == null)
+            return null;
+        return new IncrementalWorkload(this.workloadSeed, this.workloadBatch, 0.3);
+    }
+
+    /**
+     * Load the footprints recorded by previous runs and find the changes
+     * that select the queries to execute.
+     */
+    public void loadFootprints() throws IOException, InterruptedException {
+        if (this.footprintsFile == null)
+            return;
+        ChangedComponents changes = null;
+        if (this.sinceRevision != null)
+            changes = ChangedComponents.since(this.sinceRevision);
+        this.footprints = new TestFootprints(changes);
+        this.footprints.load(this.footprintsFile);
+    }
+
+    /**
+     * Save the footprints, including the ones recorded by this run.
+     */
+    public void saveFootprints() throws IOException {
+        if (this.footprints != null && this.footprintsFile != null)
+            this.footprints.save(this.footprintsFile);
+    }
+
+    /**
+     * Create an executor for a worker.
+     * @param worker  Worker number; 0 when the tests are not executed in parallel.
+     *                Each parallel worker uses its own Rust crate and reference database.
+     */
+    SqlSLTTestExecutor getExecutor(int worker) throws IOException, SQLException {
         HashSet<String> sltBugs = new HashSet<>();
         if (this.bugsFile != null) {
             sltBugs = this.readBugsFile(this.bugsFile);
@@ -146,24 +232,37 @@ public class ExecutionOptions {
                 return new NoExecutor();
             case "DBSP":
                 DBSPExecutor dExec = new DBSPExecutor(!this.doNotExecute, this.validateJson, options, connectionString());
+                if (worker > 0)
+                    dExec.setRustDirectory(DBSPExecutor.createWorkerCrate(worker));
+                dExec.setSingleBinary(this.singleBinary);
+                dExec.setWorkload(this.getWorkload());
+                dExec.setFootprints(this.footprints);
                 dExec.avoid(sltBugs);
                 dExec.setValidateStatus(this.validateStatus);
                 return dExec;
             case "JDBC": {
-                return this.jdbcExecutor(sltBugs);
+                JDBCExecutor jdbc = this.jdbcExecutor(sltBugs, worker);
+                if (this.resultCache != null)
+                    jdbc.setResultCache(new ResultCache(this.resultCache));
+                return jdbc;
             }
             case "calcite": {
-                JDBCExecutor jdbc = this.jdbcExecutor(sltBugs);
+                JDBCExecutor jdbc = this.jdbcExecutor(sltBugs, worker);
                 CalciteExecutor result = new CalciteExecutor(jdbc);
                 result.avoid(sltBugs);
                 result.setValidateStatus(this.validateStatus);
                 return result;
             }
             case "hybrid": {
-                JDBCExecutor jdbc = this.jdbcExecutor(sltBugs);
+                JDBCExecutor jdbc = this.jdbcExecutor(sltBugs, worker);
                 DBSP_JDBC_Executor result = new DBSP_JDBC_Executor(
                         jdbc, !this.doNotExecute, this.validateJson,
                         options, connectionString());
+                if (worker > 0)
+                    result.setRustDirectory(DBSPExecutor.createWorkerCrate(worker));
+                result.setSingleBinary(this.singleBinary);
+                result.setWorkload(this.getWorkload());
+                result.setFootprints(this.footprints);
                 result.avoid(sltBugs);
                 result.setValidateStatus(this.validateStatus);
                 return result;
@@ -174,6 +273,16 @@ public class ExecutionOptions {
         throw new UnsupportedException(this.executor);  // unreachable
     }
 
+    /**
+     * The cache for compiled test binaries, or null if caching is disabled.
+     */
+    @Nullable
+    public BuildCache getBuildCache() {
+        if (this.buildCache == null)
+            return null;
+        return new BuildCache(this.buildCache, this.buildCacheSize * 1024 * 1024);
+    }
+
     public List<String> getDirectories() {
         return this.directories;
     }
@@ -192,6 +301,15 @@ public class ExecutionOptions {
                 ", execute=" + !this.doNotExecute +
                 ", executor=" + this.executor +
                 ", stopAtFirstError=" + this.stopAtFirstError +
+                ", buildCache=" + this.buildCache +
+                ", resultCache=" + this.resultCache +
+                ", jobs=" + this.jobs +
+                ", targetBuildTime=" + this.targetBuildTime +
+                ", runner=" + this.singleBinary +
+                ", timings=" + this.timingsFile +
+                ", workload=" + this.workloadSeed +
+                ", footprints=" + this.footprintsFile +
+                ", since=" + this.sinceRevision +
                 '}';
     }
 }
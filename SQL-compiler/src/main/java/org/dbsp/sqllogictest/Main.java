@@ -40,8 +40,9 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -52,9 +53,24 @@ public class Main {
     static final String SLT_GIT = "https://github.com/gregrahn/sqllogictest/archive/refs/heads/master.zip";
 
     static class TestLoader extends SimpleFileVisitor<Path> {
-        int errors = 0;
+        final AtomicInteger errors = new AtomicInteger();
         final TestStatistics statistics;
         public final ExecutionOptions options;
+        /**
+         * Test files collected to be executed.
+         */
+        final List<Path> files;
+        /**
+         * Parses test files in the background, while other files are executed.
+         */
+        @Nullable
+        ExecutorService prefetcher;
+        /**
+         * Batch size used by each worker; it adapts to the build times
+         * observed by the worker over all the files it executes.
+         */
+        final Map<Integer, AdaptiveBatchSize> batchSizes;
+
         /**
          * This policy accepts all SLT queries and statements written in the Postgres SQL language.
          */
@@ -75,50 +91,172 @@ public class Main {
         TestLoader(ExecutionOptions options) {
             this.statistics = new TestStatistics(options.stopAtFirstError);
             this.options = options;
+            this.files = new ArrayList<>();
+            this.batchSizes = new ConcurrentHashMap<>();
+            this.prefetcher = null;
+        }
+
+        /**
+         * Start parsing a test file in the background.
+         */
+        Future<SLTTestFile> prefetch(Path file) {
+            return Objects.requireNonNull(this.prefetcher).submit(() -> {
+                SLTTestFile test = new SLTTestFile(file.toString());
+                test.parse(new PostgresPolicy());
+                return test;
+            });
         }
 
+        /**
+         * Parse and execute a test file.
+         * @param file        File to execute.
+         * @param parsed      If not null the file parsed in the background.  Otherwise,
+         *                    the file is parsed while it is executed.
+         * @param worker      Number of the worker executing the file; 0 when not executing in parallel.
+         * @param statistics  Statistics to update.
+         */
         @SuppressWarnings("ConstantConditions")
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-            SqlSLTTestExecutor executor = null;
+        void runFile(Path file, @Nullable Future<SLTTestFile> parsed, int worker, TestStatistics statistics) {
+            SqlSLTTestExecutor executor;
             try {
-                executor = this.options.getExecutor();
+                executor = this.options.getExecutor(worker);
             } catch (IOException | SQLException e) {
                 throw new RuntimeException(e);
             }
-            String extension = Utilities.getFileExtension(file.toString());
-            int batchSize = 500;
+            int maxBatchSize = 500;
+            int batchSize = maxBatchSize;
             int skipPerFile = 0;
             String name = file.getFileName().toString();
+            // Initial guesses, refined by the adaptive batch size
             if (name.startsWith("select"))
                 batchSize = Math.min(batchSize, 20);
             if (name.startsWith("select5"))
                 batchSize = Math.min(batchSize, 5);
-            if (executor.is(DBSPExecutor.class))
-                executor.to(DBSPExecutor.class).setBatchSize(batchSize, skipPerFile);
-            if (attrs.isRegularFile() && extension != null && extension.equals("test")) {
-                // validates the test
-                SLTTestFile test = null;
-                try {
-                    System.out.println(file);
+            if (executor.is(DBSPExecutor.class)) {
+                DBSPExecutor dbsp = executor.to(DBSPExecutor.class);
+                dbsp.setBatchSize(batchSize, skipPerFile);
+                if (this.options.targetBuildTime > 0) {
+                    AdaptiveBatchSize sizer = this.batchSizes.computeIfAbsent(worker,
+                            w -> new AdaptiveBatchSize(this.options.targetBuildTime, maxBatchSize));
+                    sizer.startFile(batchSize);
+                    dbsp.setBatchSizer(sizer);
+                }
+            }
+            // validates the test
+            SLTTestFile test = null;
+            try {
+                System.out.println(file);
+                if (parsed != null) {
+                    test = parsed.get();
+                } else {
                     test = new SLTTestFile(file.toString());
-                    test.parse(new PostgresPolicy());
-                } catch (Exception ex) {
-                    System.err.println(ex.toString());
-                    this.errors++;
+                    test.stream(new PostgresPolicy());
                 }
-                if (test != null) {
-                    try {
-                        TestStatistics stats = executor.execute(test, options);
-                        this.statistics.add(stats);
-                    } catch (SqlParseException | IOException | SQLException | NoSuchAlgorithmException |
-                             InterruptedException ex) {
-                        throw new RuntimeException(ex);
+            } catch (ExecutionException ex) {
+                System.err.println(ex.getCause().toString());
+                this.errors.incrementAndGet();
+            } catch (Exception ex) {
+                System.err.println(ex.toString());
+                this.errors.incrementAndGet();
+            }
+            if (test != null) {
+                try (SLTTestFile toExecute = test) {
+                    TestStatistics stats = executor.execute(toExecute, options);
+                    statistics.add(stats);
+                    // Errors in streamed files are only discovered while executing;
+                    // the operations preceding the error have been executed.
+                    Exception error = toExecute.getStreamError();
+                    if (error != null) {
+                        System.err.println(error);
+                        this.errors.incrementAndGet();
                     }
+                } catch (SqlParseException | IOException | SQLException | NoSuchAlgorithmException |
+                         InterruptedException ex) {
+                    throw new RuntimeException(ex);
                 }
             }
+        }
+
+        /**
+         * Execute files from a queue until the queue is empty.
+         * Only the first file taken by the worker is streamed, i.e., parsed while it
+         * is executed.  Each following file is parsed completely in the background
+         * while the previous file is executed, so a file with a parse error is
+         * not executed at all, unless it is the first one.
+         */
+        void runFiles(Queue<Path> queue, int worker, TestStatistics statistics) {
+            Path file = queue.poll();
+            Future<SLTTestFile> parsed = null;
+            while (file != null) {
+                Path nextFile = queue.poll();
+                Future<SLTTestFile> next = nextFile != null ? this.prefetch(nextFile) : null;
+                this.runFile(file, parsed, worker, statistics);
+                file = nextFile;
+                parsed = next;
+            }
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            String extension = Utilities.getFileExtension(file.toString());
+            if (attrs.isRegularFile() && extension != null && extension.equals("test"))
+                this.files.add(file);
             return FileVisitResult.CONTINUE;
         }
+
+        /**
+         * Execute the collected test files.  With more than one job the files
+         * are executed on 'options.jobs' workers.
+         * Each worker has its own executors, Rust crate, and statistics;
+         * the statistics are merged when all files have been executed.
+         */
+        void run() throws InterruptedException {
+            if (this.files.isEmpty())
+                return;
+            int jobs = this.options.jobs;
+            this.prefetcher = Executors.newFixedThreadPool(jobs, runnable -> {
+                Thread thread = new Thread(runnable, "slt-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                if (jobs <= 1) {
+                    Queue<Path> queue = new ArrayDeque<>(this.files);
+                    this.files.clear();
+                    this.runFiles(queue, 0, this.statistics);
+                } else {
+                    this.runParallel(jobs);
+                }
+            } finally {
+                this.prefetcher.shutdownNow();
+                this.prefetcher = null;
+            }
+        }
+
+        void runParallel(int jobs) throws InterruptedException {
+            // Start with the largest files, to balance the load of the workers.
+            this.files.sort(Comparator.comparingLong((Path p) -> p.toFile().length()).reversed());
+            Queue<Path> queue = new ConcurrentLinkedQueue<>(this.files);
+            this.files.clear();
+            ExecutorService pool = Executors.newFixedThreadPool(jobs);
+            List<Future<TestStatistics>> results = new ArrayList<>();
+            for (int i = 1; i <= jobs; i++) {
+                final int worker = i;
+                results.add(pool.submit(() -> {
+                    TestStatistics stats = new TestStatistics(this.options.stopAtFirstError);
+                    this.runFiles(queue, worker, stats);
+                    return stats;
+                }));
+            }
+            pool.shutdown();
+            try {
+                for (Future<TestStatistics> result: results)
+                    this.statistics.add(result.get());
+            } catch (ExecutionException ex) {
+                pool.shutdownNow();
+                throw new RuntimeException(ex.getCause());
+            }
+        }
     }
 
     @Nullable
@@ -214,7 +352,7 @@ public class Main {
                 "-e", "hybrid",        // executor
                 "."
                 //"-inc",              // incremental (streaming) testing
-                //"-j"                 // Validate JSON IR.
+                //"-j", "8"            // number of test files to execute in parallel
         };
         if (argv.length > 0) {
             args = argv;
@@ -258,12 +396,28 @@ public class Main {
                 abort(options, options.sltDirectory + " does not exist and no installation was specified");
             }
         }
+        if (options.sinceRevision != null && options.footprintsFile == null)
+            abort(options, "The -since flag requires -footprints");
+        try {
+            options.loadFootprints();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+        Utilities.setBuildCache(options.getBuildCache());
         TestLoader loader = new TestLoader(options);
         for (String file : options.getDirectories()) {
             Path path = Paths.get(options.sltDirectory + "/test/" + file);
             Files.walkFileTree(path, loader);
         }
-        System.out.println("Files that could not be not parsed: " + loader.errors);
+        try {
+            loader.run();
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+        System.out.println("Files that could not be not parsed: " + loader.errors.get());
         System.out.println(loader.statistics);
+        if (options.timingsFile != null)
+            loader.statistics.writeTimes(options.timingsFile);
+        options.saveFootprints();
     }
 }
@@ -31,8 +31,7 @@ import org.dbsp.util.Utilities;
 
 import javax.annotation.Nullable;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * Represents the data from a .test file from the
@@ -63,11 +62,23 @@ import java.util.List;
  *         30 values hashing to 3c13dee48d9356ae19af2515e05e6b54
  *
  */
-public class SLTTestFile implements IModule {
+public class SLTTestFile implements IModule, Iterable<ISqlTestOperation>, Closeable {
+    /**
+     * Error in the contents of a test file.
+     */
+    public static class ParseException extends RuntimeException {
+        public ParseException(String message) {
+            super(message);
+        }
+    }
+
     /**
      * Current line number in test file.
      */
     private int lineno;
+    /**
+     * Operations parsed by 'parse'; empty when the file is streamed.
+     */
     public final List<ISqlTestOperation> fileContents;
     private final BufferedReader reader;
     // To support undo for reading
@@ -76,6 +87,17 @@ public class SLTTestFile implements IModule {
     private final String testFile;
     private boolean done;
     private int testCount;
+    /**
+     * If not null the file is parsed lazily using this policy while it is iterated.
+     */
+    @Nullable
+    private AcceptancePolicy streamPolicy;
+    private boolean streamed;
+    /**
+     * Error that stopped the iteration of a streamed file.
+     */
+    @Nullable
+    private Exception streamError;
 
     public SLTTestFile(String testFile) throws IOException {
         File file = new File(testFile);
@@ -85,10 +107,13 @@ public class SLTTestFile implements IModule {
         this.testFile = testFile;
         this.done = false;
         this.testCount = 0;
+        this.streamPolicy = null;
+        this.streamed = false;
+        this.streamError = null;
     }
 
     void error(String message) {
-        throw new RuntimeException("File " + this.testFile + "\nError at line " + this.lineno + ": " + message);
+        throw new ParseException("File " + this.testFile + "\nError at line " + this.lineno + ": " + message);
     }
 
     private void undoRead(String line) {
@@ -206,67 +231,162 @@ public class SLTTestFile implements IModule {
         return result;
     }
 
-     @SuppressWarnings("SpellCheckingInspection")
-     public void parse(AcceptancePolicy policy) throws IOException {
-         String line;
-         while (!this.done) {
-             line = this.nextLine(true);
-             if (this.done)
-                 return;
-             if (line.isEmpty())
-                 continue;
-             if (line.startsWith("hash-threshold"))
-                 continue;
+    /**
+     * Parse the next operation accepted by the policy.
+     * @return  The operation, or null at the end of the file.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    @Nullable
+    ISqlTestOperation parseNext(AcceptancePolicy policy) throws IOException {
+        String line;
+        while (!this.done) {
+            line = this.nextLine(true);
+            if (this.done)
+                break;
+            if (line.isEmpty())
+                continue;
+            if (line.startsWith("hash-threshold"))
+                continue;
 
-             List<String> skip = new ArrayList<>();
-             List<String> only = new ArrayList<>();
-             while (line.startsWith("onlyif") || line.startsWith("skipif")) {
-                 boolean sk = line.startsWith("skipif");
-                 String cond = line.substring("onlyif".length()).trim();
-                 if (sk)
-                     skip.add(cond);
-                 else
-                     only.add(cond);
-                 line = this.nextLine(false);
-             }
+            List<String> skip = new ArrayList<>();
+            List<String> only = new ArrayList<>();
+            while (line.startsWith("onlyif") || line.startsWith("skipif")) {
+                boolean sk = line.startsWith("skipif");
+                String cond = line.substring("onlyif".length()).trim();
+                if (sk)
+                    skip.add(cond);
+                else
+                    only.add(cond);
+                line = this.nextLine(false);
+            }
 
-             if (line.startsWith("halt")) {
-                 if (policy.accept(skip, only))
-                     break;
-                 continue;
-             }
+            if (line.startsWith("halt")) {
+                if (policy.accept(skip, only))
+                    break;
+                continue;
+            }
 
-             if (line.startsWith("statement")) {
-                 boolean ok = line.startsWith("statement ok");
-                 line = this.nextLine(false);
-                 StringBuilder statement = new StringBuilder();
-                 while (!line.isEmpty()) {
-                     statement.append(line);
-                     line = this.nextLine(false);
-                 }
-                 String command = statement.toString();
-                 SqlStatement stat = new SqlStatement(command, ok);
-                 if (policy.accept(skip, only))
-                    this.add(stat);
-             } else {
-                 this.undoRead(line);
-                 SqlTestQuery test = this.parseTestQuery();
-                 if (test != null && policy.accept(skip, only))
-                     this.add(test);
-             }
+            if (line.startsWith("statement")) {
+                boolean ok = line.startsWith("statement ok");
+                line = this.nextLine(false);
+                StringBuilder statement = new StringBuilder();
+                while (!line.isEmpty()) {
+                    statement.append(line);
+                    line = this.nextLine(false);
+                }
+                String command = statement.toString();
+                SqlStatement stat = new SqlStatement(command, ok);
+                if (policy.accept(skip, only))
+                    return this.parsed(stat);
+            } else {
+                this.undoRead(line);
+                SqlTestQuery test = this.parseTestQuery();
+                if (test != null && policy.accept(skip, only))
+                    return this.parsed(test);
+            }
         }
+        this.done = true;
+        this.reader.close();
+        return null;
     }
 
-    private void add(ISqlTestOperation operation) {
+    /**
+     * Parse the whole file and store the operations accepted by the policy in fileContents.
+     */
+    public void parse(AcceptancePolicy policy) throws IOException {
+        try {
+            while (true) {
+                ISqlTestOperation operation = this.parseNext(policy);
+                if (operation == null)
+                    break;
+                this.fileContents.add(operation);
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Parse the file lazily while it is iterated, instead of parsing it all in advance.
+     * The operations are not stored, so the file can be iterated only once.
+     * An error in the file ends the iteration; it is returned by getStreamError.
+     * The file must be closed if it is not iterated to the end.
+     */
+    public void stream(AcceptancePolicy policy) {
+        this.streamPolicy = policy;
+    }
+
+    @Override
+    public Iterator<ISqlTestOperation> iterator() {
+        if (this.streamPolicy == null)
+            return this.fileContents.iterator();
+        if (this.streamed)
+            throw new RuntimeException("Test file " + this.testFile + " is streamed and can be iterated only once");
+        this.streamed = true;
+        final AcceptancePolicy policy = this.streamPolicy;
+        return new Iterator<ISqlTestOperation>() {
+            @Nullable
+            ISqlTestOperation next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (this.next == null && SLTTestFile.this.streamError == null) {
+                    try {
+                        this.next = SLTTestFile.this.parseNext(policy);
+                    } catch (ParseException | IOException ex) {
+                        SLTTestFile.this.streamError = ex;
+                        try {
+                            SLTTestFile.this.close();
+                        } catch (IOException ignored) {
+                            // The error is already reported
+                        }
+                    }
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public ISqlTestOperation next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                ISqlTestOperation result = Objects.requireNonNull(this.next);
+                this.next = null;
+                return result;
+            }
+        };
+    }
+
+    private ISqlTestOperation parsed(ISqlTestOperation operation) {
         Logger.INSTANCE.from(this, 2)
                 .append("Operation added ")
                 .append(operation.toString())
                 .newline();
-        this.fileContents.add(operation);
         if (operation.is(SqlTestQuery.class))
             this.testCount++;
+        return operation;
+    }
+
+    /**
+     * The error that ended the iteration of a streamed file, if any.
+     * The operations that precede the error have been executed.
+     */
+    @Nullable
+    public Exception getStreamError() {
+        return this.streamError;
     }
 
+    /**
+     * Stop reading the file.
+     */
+    @Override
+    public void close() throws IOException {
+        this.done = true;
+        this.reader.close();
+    }
+
+    /**
+     * Number of queries parsed so far.
+     */
     public int getTestCount() {
         return this.testCount;
     }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqllogictest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dbsp.sqlCompiler.compiler.backend.CircuitFootprint;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The footprints of the circuits compiled for SLT queries.
+ * Footprints recorded in one run select the queries to execute in later runs:
+ * only the queries whose footprint is affected by the changes to the compiler
+ * need to be executed.  Queries without a recorded footprint are always executed.
+ * The footprints may be shared by executors running on multiple threads.
+ */
+public class TestFootprints {
+    /**
+     * Footprints indexed by test file and query.
+     */
+    final Map<String, CircuitFootprint> footprints;
+    /**
+     * If not null only queries affected by these changes are executed.
+     */
+    @Nullable
+    final ChangedComponents changes;
+
+    public TestFootprints(@Nullable ChangedComponents changes) {
+        this.footprints = new HashMap<>();
+        this.changes = changes;
+    }
+
+    static String key(String file, String query) {
+        return file + "\n" + query;
+    }
+
+    public synchronized void record(SqlTestQuery query, CircuitFootprint footprint) {
+        this.footprints.put(key(query.file, query.query), footprint);
+    }
+
+    /**
+     * True if the query has to be executed.
+     */
+    public synchronized boolean isSelected(SqlTestQuery query) {
+        if (this.changes == null)
+            return true;
+        CircuitFootprint footprint = this.footprints.get(key(query.file, query.query));
+        return footprint == null || this.changes.affects(footprint);
+    }
+
+    static void addAll(Set<String> set, JsonNode array) {
+        for (JsonNode element: array)
+            set.add(element.asText());
+    }
+
+    /**
+     * Load the footprints saved in a file, if the file exists.
+     */
+    public synchronized void load(String fileName) throws IOException {
+        File file = new File(fileName);
+        if (!file.exists())
+            return;
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode root = mapper.readTree(file);
+        for (JsonNode entry: root) {
+            CircuitFootprint footprint = new CircuitFootprint();
+            addAll(footprint.classes, entry.get("classes"));
+            addAll(footprint.functions, entry.get("functions"));
+            this.footprints.put(key(entry.get("file").asText(), entry.get("query").asText()), footprint);
+        }
+    }
+
+    public synchronized void save(String fileName) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ArrayNode root = mapper.createArrayNode();
+        for (Map.Entry<String, CircuitFootprint> e: this.footprints.entrySet()) {
+            int separator = e.getKey().indexOf('\n');
+            ObjectNode entry = root.addObject();
+            entry.put("file", e.getKey().substring(0, separator));
+            entry.put("query", e.getKey().substring(separator + 1));
+            ArrayNode classes = entry.putArray("classes");
+            e.getValue().classes.forEach(classes::add);
+            ArrayNode functions = entry.putArray("functions");
+            e.getValue().functions.forEach(functions::add);
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(fileName), root);
+    }
+}
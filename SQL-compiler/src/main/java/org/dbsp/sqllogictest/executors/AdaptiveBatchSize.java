@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqllogictest.executors;
+
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+
+/**
+ * Chooses the number of queries that the DBSPExecutor compiles together in one crate.
+ * Large batches amortize the fixed cost of a cargo invocation, but batches that
+ * take too long to build delay feedback and make failures expensive to bisect.
+ * The build time of a batch is modeled as proportional to the size of the
+ * generated code; the model learns the build time per byte of code,
+ * which is similar for all test files, and the code size per query,
+ * which is estimated anew for each test file.
+ * The batch size is then adjusted to reach a target build time.
+ */
+public class AdaptiveBatchSize implements IModule {
+    /**
+     * Weight of a new measurement in the running averages.
+     */
+    static final double SMOOTHING = 0.5;
+    /**
+     * The batch size grows at most by this factor after each batch.
+     */
+    static final int MAX_GROWTH = 2;
+
+    final long targetNanos;
+    final int minSize;
+    final int maxSize;
+    int current;
+    /**
+     * Estimated build time per byte of generated code; NaN if unknown.
+     */
+    double nanosPerByte;
+    /**
+     * Estimated generated code size per query in the current file; NaN if unknown.
+     */
+    double bytesPerQuery;
+
+    /**
+     * Create an adaptive batch size.
+     * @param targetSeconds  Desired build time for a batch.
+     * @param maxSize        Maximum number of queries in a batch.
+     */
+    public AdaptiveBatchSize(int targetSeconds, int maxSize) {
+        this.targetNanos = targetSeconds * 1_000_000_000L;
+        this.minSize = 1;
+        this.maxSize = maxSize;
+        this.current = maxSize;
+        this.nanosPerByte = Double.NaN;
+        this.bytesPerQuery = Double.NaN;
+    }
+
+    static double average(double previous, double value) {
+        if (Double.isNaN(previous))
+            return value;
+        return SMOOTHING * value + (1 - SMOOTHING) * previous;
+    }
+
+    int clamp(long size) {
+        return (int) Math.max(this.minSize, Math.min(this.maxSize, size));
+    }
+
+    /**
+     * Start executing a new test file.
+     * @param initialSize  Batch size to use until the size of the code generated
+     *                     for the queries in this file is known.
+     */
+    public void startFile(int initialSize) {
+        this.bytesPerQuery = Double.NaN;
+        this.current = this.clamp(initialSize);
+    }
+
+    /**
+     * Number of queries to compile in the next batch.
+     */
+    public int getBatchSize() {
+        return this.current;
+    }
+
+    /**
+     * Estimated build time of the code for a batch, in nanoseconds; NaN if unknown.
+     */
+    double predictNanos(long codeBytes) {
+        return this.nanosPerByte * codeBytes;
+    }
+
+    /**
+     * True if a batch with the specified number of queries and code size
+     * is predicted to take much longer than the target to build,
+     * and should thus be split before building it.
+     */
+    public boolean shouldSplit(int queries, long codeBytes) {
+        double predicted = this.predictNanos(codeBytes);
+        return queries > 1 && !Double.isNaN(predicted) && predicted > 2 * this.targetNanos;
+    }
+
+    /**
+     * Record the build of a batch, and adjust the size of the next batches.
+     * @param queries    Number of queries in the batch.
+     * @param codeBytes  Size of the Rust code generated for the batch.
+     * @param buildNanos Time taken to build the batch, excluding the execution of the tests.
+     */
+    public void recordBatch(int queries, long codeBytes, long buildNanos) {
+        if (queries == 0 || codeBytes == 0)
+            return;
+        this.nanosPerByte = average(this.nanosPerByte, (double) buildNanos / codeBytes);
+        this.bytesPerQuery = average(this.bytesPerQuery, (double) codeBytes / queries);
+        long ideal = Math.round(this.targetNanos / (this.nanosPerByte * this.bytesPerQuery));
+        // Shrink immediately, but grow gradually, since the model may be off for new queries.
+        int next = this.clamp(Math.min(ideal, (long) this.current * MAX_GROWTH));
+        Logger.INSTANCE.from(this, 1)
+                .append("Batch of ")
+                .append(queries)
+                .append(" queries, ")
+                .append(codeBytes)
+                .append(" bytes built in ")
+                .append(buildNanos / 1_000_000)
+                .append("ms; next batch size ")
+                .append(next)
+                .newline();
+        this.current = next;
+    }
+}
@@ -34,7 +34,6 @@ import org.dbsp.util.TestStatistics;
 
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 
@@ -66,7 +65,7 @@ public class CalciteExecutor extends SqlSLTTestExecutor {
         return true;
     }
 
-    void query(SqlTestQuery query, TestStatistics statistics) throws UnsupportedEncodingException {
+    void query(SqlTestQuery query, TestStatistics statistics) throws IOException {
         String q = query.query;
         Logger.INSTANCE.from(this, 1)
                 .append("Executing query ")
@@ -97,45 +96,48 @@ public class CalciteExecutor extends SqlSLTTestExecutor {
         //Hook.QUERY_PLAN.addThread((Consumer<String>)(System.out::println));
 
         TestStatistics result = new TestStatistics(options.stopAtFirstError);
-        for (ISqlTestOperation operation: file.fileContents) {
-            SqlStatement stat = operation.as(SqlStatement.class);
-            if (stat != null) {
-                boolean status;
-                try {
-                    if (this.buggyOperations.contains(stat.statement)) {
+        try {
+            for (ISqlTestOperation operation: file) {
+                SqlStatement stat = operation.as(SqlStatement.class);
+                if (stat != null) {
+                    boolean status;
+                    try {
+                        if (this.buggyOperations.contains(stat.statement)) {
+                            Logger.INSTANCE.from(this, 1)
+                                    .append("Skipping buggy test ")
+                                    .append(stat.statement)
+                                    .newline();
+                            status = stat.shouldPass;
+                        } else {
+                            status = this.statement(stat);
+                        }
+                    } catch (SQLException ex) {
                         Logger.INSTANCE.from(this, 1)
-                                .append("Skipping buggy test ")
+                                .append("Statement failed ")
                                 .append(stat.statement)
                                 .newline();
-                        status = stat.shouldPass;
-                    } else {
-                        status = this.statement(stat);
+                        status = false;
                     }
-                } catch (SQLException ex) {
-                    Logger.INSTANCE.from(this, 1)
-                            .append("Statement failed ")
-                            .append(stat.statement)
-                            .newline();
-                    status = false;
-                }
-                this.statementsExecuted++;
-                if (this.validateStatus &&
-                        status != stat.shouldPass)
-                    throw new RuntimeException("Statement " + stat.statement + " status " + status + " expected " + stat.shouldPass);
-            } else {
-                SqlTestQuery query = operation.to(SqlTestQuery.class);
-                if (this.buggyOperations.contains(query.query)) {
-                    Logger.INSTANCE.from(this, 1)
-                            .append("Skipping buggy test ")
-                            .append(query.query)
-                            .newline();
-                    result.ignored++;
-                    continue;
+                    this.statementsExecuted++;
+                    if (this.validateStatus &&
+                            status != stat.shouldPass)
+                        throw new RuntimeException("Statement " + stat.statement + " status " + status + " expected " + stat.shouldPass);
+                } else {
+                    SqlTestQuery query = operation.to(SqlTestQuery.class);
+                    if (this.buggyOperations.contains(query.query)) {
+                        Logger.INSTANCE.from(this, 1)
+                                .append("Skipping buggy test ")
+                                .append(query.query)
+                                .newline();
+                        result.ignored++;
+                        continue;
+                    }
+                    this.query(query, result);
                 }
-                this.query(query, result);
             }
+        } finally {
+            this.statementExecutor.closeConnection();
         }
-        this.statementExecutor.closeConnection();
         this.reportTime(result.passed);
         Logger.INSTANCE.from(this, 1)
                 .append("Finished executing ")
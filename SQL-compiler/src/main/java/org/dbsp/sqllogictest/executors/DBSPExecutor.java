@@ -27,8 +27,12 @@ import org.apache.calcite.sql.parser.SqlParseException;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.compiler.CompilerOptions;
 import org.dbsp.sqlCompiler.compiler.backend.*;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.IncrementalChecker;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.IncrementalWorkload;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.ZSet;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ToJitVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
 import org.dbsp.sqlCompiler.compiler.frontend.TableContents;
 import org.dbsp.sqlCompiler.compiler.frontend.TypeCompiler;
 import org.dbsp.sqlCompiler.ir.DBSPFunction;
@@ -47,6 +51,9 @@ import org.dbsp.util.*;
 import javax.annotation.Nullable;
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
 import java.util.*;
 
@@ -69,11 +76,48 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
         }
     }
 
-    static final String rustDirectory = "../temp/src/";
+    /**
+     * A batch of queries whose code has been written to a Rust module,
+     * but which has not been built yet.
+     */
+    static class PendingBatch {
+        public final String module;
+        public final List<SqlTestQuery> queries;
+        /**
+         * Name of the tester function for each query.
+         */
+        public final List<String> testers;
+
+        PendingBatch(String module, List<SqlTestQuery> queries, List<String> testers) {
+            this.module = module;
+            this.queries = queries;
+            this.testers = testers;
+        }
+    }
+
+    /**
+     * Source directory of the Rust crate used to run the tests.
+     */
+    static final String defaultRustDirectory = "../temp/src/";
     static final String testFileName = "test";
+    static final String columnsExtension = ".columns";
+    /**
+     * Inputs with more rows are written to files.
+     */
+    static final int maxInlineRows = 10;
+    /**
+     * Directory where the Rust code is written; each executor
+     * running in parallel needs its own crate.
+     */
+    private String rustDirectory;
     private final boolean execute;
     private final boolean validateJson;
     private int batchSize;  // Number of queries to execute together
+    /**
+     * If not null it overrides batchSize.
+     */
+    @Nullable
+    private AdaptiveBatchSize batchSizer;
     private int skip;       // Number of queries to skip in each test file.
     public final CompilerOptions options;
 
@@ -82,12 +126,83 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
     final SqlTestPrepareTables tablePreparation;
     final SqlTestPrepareViews viewPreparation;
     private final List<SqlTestQuery> queriesToRun;
+    /**
+     * If true all batches of a test file are compiled into a single binary,
+     * which is built once and which runs the tests on demand.
+     */
+    private boolean singleBinary;
+    /**
+     * Batches waiting to be built, used when singleBinary is true.
+     */
+    private final List<PendingBatch> pending;
+    /**
+     * If not null, and the circuits are incremental, the input tables are split into
+     * random sequences of changes; each incremental circuit is checked against the
+     * non-incremental circuit for the same query after each change, and the
+     * generated Rust code feeds the changes to the circuit.
+     */
+    @Nullable
+    private IncrementalWorkload workload;
+    /**
+     * If not null the footprint of each compiled query is recorded here,
+     * and queries which are not selected by the footprints are skipped.
+     */
+    @Nullable
+    private TestFootprints footprints;
 
     public void setBatchSize(int batchSize, int skip) {
         this.batchSize = batchSize;
         this.skip = skip;
     }
 
+    public void setBatchSizer(@Nullable AdaptiveBatchSize batchSizer) {
+        this.batchSizer = batchSizer;
+    }
+
+    int getBatchSize() {
+        if (this.batchSizer != null)
+            return this.batchSizer.getBatchSize();
+        return this.batchSize;
+    }
+
+    public void setWorkload(@Nullable IncrementalWorkload workload) {
+        this.workload = workload;
+    }
+
+    public void setFootprints(@Nullable TestFootprints footprints) {
+        this.footprints = footprints;
+    }
+
+    public void setSingleBinary(boolean singleBinary) {
+        this.singleBinary = singleBinary;
+    }
+
+    public void setRustDirectory(String rustDirectory) {
+        this.rustDirectory = rustDirectory;
+    }
+
+    /**
+     * Create a copy of the Rust crate used for testing, to be used by a parallel worker.
+     * The copy is a sibling of the original crate, so that the relative paths
+     * of its dependencies remain valid.  Each crate has its own target directory,
+     * so concurrent cargo invocations do not block each other.
+     * @param worker  Worker number.
+     * @return        The source directory of the worker crate.
+     */
+    public static String createWorkerCrate(int worker) throws IOException {
+        File source = new File(defaultRustDirectory).getParentFile();
+        File crate = new File(source.getParentFile(), source.getName() + "-" + worker);
+        File src = new File(crate, "src");
+        if (!src.isDirectory() && !src.mkdirs())
+            throw new IOException("Cannot create directory " + src);
+        Path manifest = new File(source, "Cargo.toml").toPath();
+        Path copy = new File(crate, "Cargo.toml").toPath();
+        // Do not touch an identical manifest, so that cargo does not rebuild the crate
+        if (!Files.exists(copy) || !Arrays.equals(Files.readAllBytes(manifest), Files.readAllBytes(copy)))
+            Files.copy(manifest, copy, StandardCopyOption.REPLACE_EXISTING);
+        return src.getPath() + "/";
+    }
+
     /**
      * Create an executor that executes SqlLogicTest queries directly compiling to
      * Rust and using the DBSP library.
@@ -103,8 +218,13 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
         this.tablePreparation = new SqlTestPrepareTables();
         this.viewPreparation = new SqlTestPrepareViews();
         this.batchSize = 10;
+        this.batchSizer = null;
+        this.rustDirectory = defaultRustDirectory;
         this.options = options;
         this.queriesToRun = new ArrayList<>();
+        this.singleBinary = false;
+        this.pending = new ArrayList<>();
+        this.workload = null;
         this.connectionString = connectionString;
     }
 
@@ -130,7 +250,12 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
         return tableValues;
     }
 
-    DBSPFunction createInputFunction(TableValue[] tables) throws IOException {
+    /**
+     * Create a function which produces the contents of the input tables.
+     * @param tables  Contents of the tables.
+     * @param prefix  Prefix for the names of the CSV files holding large tables.
+     */
+    DBSPFunction createInputFunction(TableValue[] tables, String prefix) throws IOException {
         DBSPExpression[] fields = new DBSPExpression[tables.length];
         int totalSize = 0;
         Set<String> seen = new HashSet<>();
@@ -142,15 +267,30 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
             seen.add(tables[i].tableName);
         }
 
-        if (totalSize > 10) {
+        if (totalSize > maxInlineRows) {
             if (connectionString.equals("csv")) {
-                // If the data is large write, it to a set of CSV files and read it at runtime.
+                // If the data is large write it to a set of files and read it at runtime.
+                // The binary columnar format is much faster to load; CSV is used
+                // for the types that it cannot represent.
+                // The tests run in the crate directory.  The code uses paths relative to it,
+                // so it does not depend on the crate used by the worker, and cached binaries
+                // built by other workers can read the files.
+                String relative = new File(this.rustDirectory).getName() + "/";
                 for (int i = 0; i < tables.length; i++) {
-                    String fileName = (rustDirectory + tables[i].tableName) + ".csv";
-                    ToCsvVisitor.toCsv(fileName, tables[i].contents);
-                    fields[i] = new DBSPApplyExpression("read_csv",
+                    String fileName = prefix + tables[i].tableName;
+                    String reader;
+                    if (ColumnarWriter.isSupported(tables[i].contents)) {
+                        fileName += columnsExtension;
+                        ColumnarWriter.toColumns(this.rustDirectory + fileName, tables[i].contents);
+                        reader = "read_columns";
+                    } else {
+                        fileName += ".csv";
+                        ToCsvVisitor.toCsv(this.rustDirectory + fileName, tables[i].contents);
+                        reader = "read_csv";
+                    }
+                    fields[i] = new DBSPApplyExpression(reader,
                             tables[i].contents.getNonVoidType(),
-                            new DBSPStrLiteral(fileName));
+                            new DBSPStrLiteral(relative + fileName));
                 }
             } else {
                 // read from DB
@@ -195,7 +335,7 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
      *     vec
      */
     DBSPFunction createStreamInputFunction(
-            DBSPFunction inputGeneratingFunction) {
+            DBSPFunction inputGeneratingFunction, @Nullable List<List<ZSet>> workload) {
         DBSPTypeRawTuple inputType = Objects.requireNonNull(inputGeneratingFunction.returnType).to(DBSPTypeRawTuple.class);
         DBSPType returnType = new DBSPTypeVec(inputType);
         DBSPVariablePath vec = returnType.var("vec");
@@ -205,7 +345,16 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
         DBSPLetStatement let = new DBSPLetStatement(vec.variable,
                 DBSPTypeAny.INSTANCE.path(new DBSPPath("Vec", "new")).call(), true);
         statements.add(let);
-        if (this.options.optimizerOptions.incrementalize) {
+        List<DBSPExpression> steps = null;
+        if (workload != null)
+            steps = this.workloadSteps(inputType, workload);
+        if (steps != null) {
+            for (DBSPExpression step: steps) {
+                DBSPExpression expr = new DBSPApplyMethodExpression(
+                        "push", null, vec, step);
+                statements.add(new DBSPExpressionStatement(expr));
+            }
+        } else if (this.options.optimizerOptions.incrementalize) {
             for (int i = 0; i < inputType.tupFields.length; i++) {
                 DBSPExpression field = input.getVarReference().field(i);
                 DBSPExpression elems = new DBSPApplyExpression("to_elements",
@@ -250,41 +399,215 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
         return new DBSPFunction("stream_input", Linq.list(), returnType, block);
     }
 
+    /**
+     * The steps of a workload as Rust expressions, or null if they cannot be represented.
+     * @param inputType  Type of the tuple of input tables.
+     */
+    @Nullable
+    List<DBSPExpression> workloadSteps(DBSPTypeRawTuple inputType, List<List<ZSet>> workload) {
+        try {
+            List<DBSPExpression> result = new ArrayList<>();
+            for (List<ZSet> step: workload) {
+                DBSPExpression[] fields = new DBSPExpression[inputType.tupFields.length];
+                for (int i = 0; i < fields.length; i++)
+                    fields[i] = step.get(i).toLiteral(inputType.tupFields[i].to(DBSPTypeZSet.class));
+                result.add(new DBSPRawTupleExpression(fields));
+            }
+            return result;
+        } catch (Unimplemented ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate a random workload for the input tables, if requested.
+     * Returns null if there is no workload.
+     */
+    @Nullable
+    List<List<ZSet>> generateWorkload(TableValue[] tables) {
+        if (this.workload == null || !this.options.optimizerOptions.incrementalize)
+            return null;
+        try {
+            return this.workload.generate(Linq.map(Arrays.asList(tables), t -> ZSet.fromLiteral(t.contents)));
+        } catch (Unimplemented ex) {
+            Logger.INSTANCE.from(this, 1)
+                    .append("Cannot generate workload: ")
+                    .append(ex.getMessage())
+                    .newline();
+            return null;
+        }
+    }
+
+    /**
+     * Check an incremental circuit against the non-incremental circuit for the same query
+     * on a workload.  Failures are recorded in 'result'.
+     * @return False if the check has failed.
+     */
+    boolean checkIncremental(DBSPCircuit incremental, SqlTestQuery testQuery, TableValue[] tables,
+                             List<List<ZSet>> workload, TestStatistics result) {
+        try {
+            CompilerOptions options = new CompilerOptions();
+            options.ioOptions.lexicalRules = this.options.ioOptions.lexicalRules;
+            DBSPCompiler compiler = new DBSPCompiler(options);
+            this.createTables(compiler);
+            DBSPCircuit reference = this.compileQuery(compiler, this.viewPreparation, testQuery, "reference");
+            // Order the changes like the circuit inputs
+            List<Integer> inputs = new ArrayList<>();
+            for (String input: incremental.getInputTables()) {
+                int index = -1;
+                for (int i = 0; i < tables.length; i++)
+                    if (tables[i].tableName.equalsIgnoreCase(input))
+                        index = i;
+                if (index < 0)
+                    throw new RuntimeException("No contents for table " + input);
+                inputs.add(index);
+            }
+            List<List<ZSet>> steps = Linq.map(workload, step -> Linq.map(inputs, step::get));
+            List<IncrementalChecker.Step> executed = new IncrementalChecker(reference, incremental).check(steps);
+            Logger.INSTANCE.from(this, 1)
+                    .append("Incremental circuit checked in ")
+                    .append(executed.size())
+                    .append(" steps")
+                    .newline();
+            return true;
+        } catch (IncrementalChecker.Mismatch ex) {
+            if (result.stopAtFirstError())
+                throw ex;
+            result.addFailure(new TestStatistics.FailedTestDescription(testQuery,
+                    "Incremental circuit differs: " + ex.getMessage()));
+            return false;
+        } catch (Unimplemented | UnsupportedException ex) {
+            // The interpreter does not support some operation
+            Logger.INSTANCE.from(this, 1)
+                    .append("Cannot check incremental circuit: ")
+                    .append(ex.getMessage())
+                    .newline();
+            return true;
+        }
+    }
+
     void runBatch(TestStatistics result) throws IOException, InterruptedException, SQLException {
+        List<SqlTestQuery> queries = new ArrayList<>(this.queriesToRun);
+        this.queriesToRun.clear();
+        this.runQueries(queries, result);
+    }
+
+    /**
+     * Run a set of queries split in two halves.
+     */
+    void bisect(List<SqlTestQuery> queries, TestStatistics result)
+            throws IOException, InterruptedException, SQLException {
+        int half = queries.size() / 2;
+        this.runQueries(queries.subList(0, half), result);
+        this.runQueries(queries.subList(half, queries.size()), result);
+    }
+
+    /**
+     * Compile a set of queries into a single Rust crate and run them.
+     * If the crate fails to build or its tests fail the set of queries is bisected,
+     * so that only the queries that fail are reported as failures.
+     */
+    void runQueries(List<SqlTestQuery> queries, TestStatistics result)
+            throws IOException, InterruptedException, SQLException {
+        long start = System.nanoTime();
         DBSPCompiler compiler = new DBSPCompiler(this.options);
         final List<ProgramAndTester> codeGenerated = new ArrayList<>();
+        @Nullable List<TestStatistics.QueryTimes> queryTimes =
+                result.recordQueryTimes() ? new ArrayList<>() : null;
         // Create input tables
         this.createTables(compiler);
         compiler.throwIfErrorsOccurred();
         // Create function which generates inputs for all tests in this batch.
         // We know that all these tests consume the same input tables.
         TableValue[] inputSets = this.getInputSets(compiler);
-        DBSPFunction inputFunction = this.createInputFunction(inputSets);
-        DBSPFunction streamInputFunction = this.createStreamInputFunction(inputFunction);
+        // In single binary mode each batch is written to a separate module
+        String module = this.singleBinary ? testFileName + "_" + this.pending.size() : testFileName;
+        DBSPFunction inputFunction = this.createInputFunction(
+                inputSets, this.singleBinary ? module + "_" : "");
+        @Nullable List<List<ZSet>> workload = this.generateWorkload(inputSets);
+        // Large inputs are read from files, and they are fed to the circuit in a single step
+        int totalSize = 0;
+        for (TableValue table: inputSets)
+            totalSize += table.contents.size();
+        DBSPFunction streamInputFunction = this.createStreamInputFunction(
+                inputFunction, totalSize > maxInlineRows ? null : workload);
 
         // Generate a function and a tester for each query.
         int queryNo = 0;
-        for (SqlTestQuery testQuery : this.queriesToRun) {
+        List<SqlTestQuery> checked = new ArrayList<>();
+        for (SqlTestQuery testQuery : queries) {
             try {
+                long queryStart = System.nanoTime();
+                PhaseTimes before = compiler.phaseTimes.copy();
                 ProgramAndTester pc = this.generateTestCase(
-                        compiler, streamInputFunction, this.viewPreparation, testQuery, queryNo);
+                        compiler, streamInputFunction, this.viewPreparation, testQuery, queryNo,
+                        !this.singleBinary);
+                if (workload != null && !this.checkIncremental(pc.program, testQuery, inputSets, workload, result))
+                    // Failure already recorded; do not run the query
+                    continue;
                 codeGenerated.add(pc);
+                checked.add(testQuery);
+                if (queryTimes != null)
+                    queryTimes.add(new TestStatistics.QueryTimes(testQuery,
+                            generationTimes(compiler, before, queryStart)));
             } catch (Throwable ex) {
                 System.err.println("Error while compiling " + testQuery.query + ": " + ex.getMessage());
                 throw ex;
             }
             queryNo++;
         }
+        if (checked.isEmpty())
+            return;
+        queries = checked;
 
         // Write the code to Rust files on the filesystem.
         String fileGenerated = this.writeCodeToFile(
-                Linq.list(inputFunction, streamInputFunction), codeGenerated);
-        Utilities.writeRustLib(rustDirectory + "/lib.rs", Linq.list(fileGenerated));
+                module, Linq.list(inputFunction, streamInputFunction), codeGenerated);
+        PhaseTimes times = generationTimes(compiler, new PhaseTimes(), start);
+        if (this.singleBinary) {
+            List<String> testers = Linq.map(codeGenerated, pt -> pt.tester.name);
+            this.pending.add(new PendingBatch(module, new ArrayList<>(queries), testers));
+            // Build and execution times are recorded by runPending
+            result.addBatch(new TestStatistics.BatchTimes(queries.get(0).file, queryNo, times, queryTimes));
+            return;
+        }
+        Utilities.writeRustLib(this.rustDirectory + "/lib.rs", Linq.list(fileGenerated));
+        long codeBytes = new File(this.rustDirectory, fileGenerated + ".rs").length();
+        if (this.batchSizer != null && this.batchSizer.shouldSplit(queryNo, codeBytes)) {
+            // Predicted to take too long to build
+            this.cleanupFilesystem();
+            this.bisect(queries, result);
+            return;
+        }
         this.startTest();
         if (this.execute) {
-            Utilities.compileAndTestRust(rustDirectory, true);
+            String sourceKey = getSourceKey(Linq.list(inputFunction, streamInputFunction), codeGenerated);
+            boolean built;
+            try {
+                built = Utilities.compileAndTestRust(this.rustDirectory, true, sourceKey, times);
+            } catch (RuntimeException ex) {
+                result.addBatch(new TestStatistics.BatchTimes(queries.get(0).file, queryNo, times, queryTimes));
+                this.cleanupFilesystem();
+                if (result.stopAtFirstError())
+                    throw ex;
+                if (queries.size() == 1) {
+                    result.addFailure(new TestStatistics.FailedTestDescription(queries.get(0), ex.getMessage()));
+                } else {
+                    Logger.INSTANCE.from(this, 1)
+                            .append("Batch of ")
+                            .append(queries.size())
+                            .append(" queries failed; bisecting")
+                            .newline();
+                    this.bisect(queries, result);
+                }
+                return;
+            }
+            // The batch size bounds the time spent in rustc; binaries found in the
+            // build cache say nothing about it.
+            if (this.batchSizer != null && built)
+                this.batchSizer.recordBatch(queryNo, codeBytes, times.get(PhaseTimes.Phase.BUILD));
         }
-        this.queriesToRun.clear();
+        result.addBatch(new TestStatistics.BatchTimes(queries.get(0).file, queryNo, times, queryTimes));
         this.reportTime(queryNo);
         this.cleanupFilesystem();
         if (this.execute)
@@ -293,11 +616,154 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
             result.ignored += queryNo;
     }
 
+    /**
+     * Build all pending batches into a single binary, and run each query
+     * through a RustTestRunner.  If the binary does not build, each batch
+     * is compiled and executed separately, bisecting the failing ones.
+     */
+    void runPending(TestStatistics result) throws IOException, InterruptedException, SQLException {
+        List<PendingBatch> batches = new ArrayList<>(this.pending);
+        this.pending.clear();
+        List<String> modules = Linq.map(batches, b -> b.module);
+        List<String> tests = new ArrayList<>();
+        int queryCount = 0;
+        for (PendingBatch batch: batches) {
+            for (String tester: batch.testers)
+                tests.add(batch.module + "::" + tester);
+            queryCount += batch.queries.size();
+        }
+        if (!this.execute) {
+            this.cleanupFilesystem();
+            result.ignored += queryCount;
+            return;
+        }
+
+        Utilities.writeRustLib(this.rustDirectory + "/lib.rs", Linq.list());
+        try (PrintStream main = new PrintStream(this.rustDirectory + "/main.rs", "UTF-8")) {
+            main.print(RustTestRunner.generateMain(modules, tests));
+        }
+        this.startTest();
+        String file = batches.get(0).queries.get(0).file;
+        PhaseTimes times = new PhaseTimes();
+        long start = System.nanoTime();
+        File executable;
+        try {
+            executable = RustTestRunner.build(this.rustDirectory);
+        } catch (RuntimeException ex) {
+            times.addSince(PhaseTimes.Phase.BUILD, start);
+            result.addBatch(new TestStatistics.BatchTimes(file, queryCount, times, null));
+            this.cleanupFilesystem();
+            if (result.stopAtFirstError())
+                throw ex;
+            Logger.INSTANCE.from(this, 1)
+                    .append("Test runner with ")
+                    .append(batches.size())
+                    .append(" batches failed to build; building batches separately")
+                    .newline();
+            this.singleBinary = false;
+            try {
+                for (PendingBatch batch: batches)
+                    this.runQueries(batch.queries, result);
+            } finally {
+                this.singleBinary = true;
+            }
+            return;
+        }
+
+        start = times.addSince(PhaseTimes.Phase.BUILD, start);
+        @Nullable List<TestStatistics.QueryTimes> queryTimes =
+                result.recordQueryTimes() ? new ArrayList<>() : null;
+        File crate = new File(this.rustDirectory).getParentFile();
+        RustTestRunner runner = new RustTestRunner(crate, executable);
+        try {
+            int index = 0;
+            for (PendingBatch batch: batches) {
+                for (SqlTestQuery query: batch.queries) {
+                    String test = tests.get(index++);
+                    RustTestRunner.Result run = runner.run(test);
+                    if (queryTimes != null) {
+                        PhaseTimes queryTime = new PhaseTimes();
+                        queryTime.add(PhaseTimes.Phase.EXECUTE, run.micros * 1000);
+                        queryTimes.add(new TestStatistics.QueryTimes(query, queryTime));
+                    }
+                    if (run.passed) {
+                        result.passed++;
+                        continue;
+                    }
+                    if (result.stopAtFirstError())
+                        throw new RuntimeException("Test " + test + " failed: " + run.message);
+                    result.addFailure(new TestStatistics.FailedTestDescription(query, run.message));
+                    if (!runner.isAlive()) {
+                        // The runner has crashed; start a new one for the remaining tests
+                        runner.close();
+                        runner = new RustTestRunner(crate, executable);
+                    }
+                }
+            }
+        } finally {
+            runner.close();
+            times.addSince(PhaseTimes.Phase.EXECUTE, start);
+            result.addBatch(new TestStatistics.BatchTimes(file, queryCount, times, queryTimes));
+        }
+        this.reportTime(queryCount);
+        this.cleanupFilesystem();
+    }
+
+    /**
+     * Times spent generating code since 'start': the compilation phases are
+     * measured by the compiler, and the rest is attributed to code generation.
+     * @param before  Snapshot of the compiler times taken at 'start'.
+     */
+    static PhaseTimes generationTimes(DBSPCompiler compiler, PhaseTimes before, long start) {
+        PhaseTimes result = compiler.phaseTimes.since(before);
+        result.add(PhaseTimes.Phase.CODEGEN, System.nanoTime() - start - result.total());
+        return result;
+    }
+
+    /**
+     * Compute a key describing the code generated for a batch, used to
+     * look up the test binary in the build cache.  Circuits are described
+     * by their canonical hash, which does not depend on the names
+     * of the internal streams.
+     */
+    static String getSourceKey(List<DBSPFunction> inputFunctions, List<ProgramAndTester> functions) {
+        BuildCache.KeyBuilder key = new BuildCache.KeyBuilder();
+        for (DBSPFunction function: inputFunctions)
+            key.add(ToRustInnerVisitor.toRustString(function));
+        for (ProgramAndTester pt: functions) {
+            key.add(pt.program.name);
+            key.add(CircuitHasher.hash(pt.program));
+            key.add(ToRustInnerVisitor.toRustString(pt.tester));
+        }
+        return key.build();
+    }
+
+    /**
+     * Compile a query, together with the views it may depend on, into a circuit.
+     * The compiler must have already compiled the table definitions.
+     */
+    DBSPCircuit compileQuery(DBSPCompiler compiler, SqlTestPrepareViews viewPreparation,
+                             SqlTestQuery testQuery, String name) {
+        String dbspQuery = testQuery.query;
+        if (!dbspQuery.toLowerCase().contains("create view"))
+            dbspQuery = "CREATE VIEW V AS (" + dbspQuery + ")";
+        compiler.generateOutputForNextView(false);
+        for (SqlStatement view: viewPreparation.definitions()) {
+            compiler.compileStatement(view.statement, view.statement);
+            compiler.throwIfErrorsOccurred();
+        }
+        compiler.generateOutputForNextView(true);
+        compiler.compileStatement(dbspQuery, testQuery.name);
+        compiler.throwIfErrorsOccurred();
+        compiler.optimize();
+        return compiler.getFinalCircuit(name);
+    }
+
     ProgramAndTester generateTestCase(
             DBSPCompiler compiler,
             DBSPFunction inputGeneratingFunction,
             SqlTestPrepareViews viewPreparation,
-            SqlTestQuery testQuery, int suffix) {
+            SqlTestQuery testQuery, int suffix, boolean isTest) {
         String origQuery = testQuery.query;
         String dbspQuery = origQuery;
         if (!dbspQuery.toLowerCase().contains("create view"))
@@ -309,16 +775,9 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
                 .append(dbspQuery)
                 .append(testQuery.name != null ? " " + testQuery.name : "")
                 .append("\n");
-        compiler.generateOutputForNextView(false);
-        for (SqlStatement view: viewPreparation.definitions()) {
-            compiler.compileStatement(view.statement, view.statement);
-            compiler.throwIfErrorsOccurred();
-        }
-        compiler.generateOutputForNextView(true);
-        compiler.compileStatement(dbspQuery, testQuery.name);
-        compiler.throwIfErrorsOccurred();
-        compiler.optimize();
-        DBSPCircuit dbsp = compiler.getFinalCircuit("gen" + suffix);
+        DBSPCircuit dbsp = this.compileQuery(compiler, viewPreparation, testQuery, "gen" + suffix);
+        if (this.footprints != null)
+            this.footprints.record(testQuery, CircuitFootprint.compute(dbsp));
         //ToDotVisitor.toDot("circuit.jpg", true, dbsp);
         DBSPZSetLiteral expectedOutput = null;
         if (testQuery.outputDescription.queryResults != null) {
@@ -386,13 +845,14 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
                 "tester" + suffix, dbsp,
                 inputGeneratingFunction,
                 compiler.getTableContents(),
-                expectedOutput, testQuery.outputDescription);
+                expectedOutput, testQuery.outputDescription, isTest);
         return new ProgramAndTester(dbsp, func);
     }
 
     void cleanupFilesystem() {
-        File directory = new File(rustDirectory);
-        FilenameFilter filter = (dir, name) -> name.startsWith(testFileName) || name.endsWith("csv");
+        File directory = new File(this.rustDirectory);
+        FilenameFilter filter = (dir, name) -> name.startsWith(testFileName) || name.endsWith("csv")
+                || name.endsWith(columnsExtension) || name.equals("main.rs");
         File[] files = directory.listFiles(filter);
         if (files == null)
             return;
@@ -414,69 +874,86 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
     public TestStatistics execute(SLTTestFile file, ExecutionOptions options)
             throws SqlParseException, IOException, InterruptedException, SQLException {
         TestStatistics result = new TestStatistics(options.stopAtFirstError);
+        result.setRecordQueryTimes(options.timingsFile != null);
         boolean seenQueries = false;
-        int remainingInBatch = this.batchSize;
+        int remainingInBatch = this.getBatchSize();
         int toSkip = this.skip;
-        for (ISqlTestOperation operation: file.fileContents) {
-            SqlStatement stat = operation.as(SqlStatement.class);
-            if (stat != null) {
-                if (seenQueries) {
-                    this.runBatch(result);
-                    remainingInBatch = this.batchSize;
-                    seenQueries = false;
-                }
-                boolean status;
-                try {
-                    if (this.buggyOperations.contains(stat.statement)) {
+        if (this.workload != null)
+            this.workload.startFile(file.toString());
+        try {
+            for (ISqlTestOperation operation: file) {
+                SqlStatement stat = operation.as(SqlStatement.class);
+                if (stat != null) {
+                    if (seenQueries) {
+                        this.runBatch(result);
+                        remainingInBatch = this.getBatchSize();
+                        seenQueries = false;
+                    }
+                    boolean status;
+                    try {
+                        if (this.buggyOperations.contains(stat.statement)) {
+                            Logger.INSTANCE.from(this, 1)
+                                    .append("Skipping buggy test ")
+                                    .append(stat.statement)
+                                    .newline();
+                            status = stat.shouldPass;
+                        } else {
+                            status = this.statement(stat);
+                        }
+                    } catch (SQLException ex) {
                         Logger.INSTANCE.from(this, 1)
-                                .append("Skipping buggy test ")
+                                .append("Statement failed ")
                                 .append(stat.statement)
                                 .newline();
-                        status = stat.shouldPass;
-                    } else {
-                        status = this.statement(stat);
+                        status = false;
+                    }
+                    this.statementsExecuted++;
+                    if (this.validateStatus &&
+                            status != stat.shouldPass)
+                        throw new RuntimeException("Statement " + stat.statement + " status " + status + " expected " + stat.shouldPass);
+                } else {
+                    SqlTestQuery query = operation.to(SqlTestQuery.class);
+                    if (toSkip > 0) {
+                        toSkip--;
+                        result.ignored++;
+                        continue;
+                    }
+                    if (this.buggyOperations.contains(query.query)) {
+                        Logger.INSTANCE.from(this, 1)
+                                .append("Skipping buggy test ")
+                                .append(query.query)
+                                .newline();
+                        result.ignored++;
+                        continue;
+                    }
+                    if (this.footprints != null && !this.footprints.isSelected(query)) {
+                        Logger.INSTANCE.from(this, 1)
+                                .append("Skipping test not affected by changes ")
+                                .append(query.query)
+                                .newline();
+                        result.ignored++;
+                        continue;
+                    }
+                    seenQueries = true;
+                    this.queriesToRun.add(query);
+                    remainingInBatch--;
+                    if (remainingInBatch == 0) {
+                        this.runBatch(result);
+                        remainingInBatch = this.getBatchSize();
+                        seenQueries = false;
                     }
-                } catch (SQLException ex) {
-                    Logger.INSTANCE.from(this, 1)
-                            .append("Statement failed ")
-                            .append(stat.statement)
-                            .newline();
-                    status = false;
-                }
-                this.statementsExecuted++;
-                if (this.validateStatus &&
-                        status != stat.shouldPass)
-                    throw new RuntimeException("Statement " + stat.statement + " status " + status + " expected " + stat.shouldPass);
-            } else {
-                SqlTestQuery query = operation.to(SqlTestQuery.class);
-                if (toSkip > 0) {
-                    toSkip--;
-                    result.ignored++;
-                    continue;
-                }
-                if (this.buggyOperations.contains(query.query)) {
-                    Logger.INSTANCE.from(this, 1)
-                            .append("Skipping buggy test ")
-                            .append(query.query)
-                            .newline();
-                    result.ignored++;
-                    continue;
-                }
-                seenQueries = true;
-                this.queriesToRun.add(query);
-                remainingInBatch--;
-                if (remainingInBatch == 0) {
-                    this.runBatch(result);
-                    remainingInBatch = this.batchSize;
-                    seenQueries = false;
                 }
             }
+            if (!this.queriesToRun.isEmpty())
+                this.runBatch(result);
+            if (!this.pending.isEmpty())
+                this.runPending(result);
+        } finally {
+            // Make sure there are no left-overs if this executor
+            // is invoked to process a new file.
+            this.reset();
+            this.cleanupFilesystem();
         }
-        if (remainingInBatch != this.batchSize)
-            this.runBatch(result);
-        // Make sure there are no left-overs if this executor
-        // is invoked to process a new file.
-        this.reset();
         Logger.INSTANCE.from(this, 1)
                 .append("Finished executing ")
                 .append(file.toString())
@@ -490,6 +967,7 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
      * @param circuit       DBSP circuit that will be tested.
      * @param output        Expected data from the circuit.
      * @param description   Description of the expected outputs.
+     * @param isTest        If true the function is annotated as a Rust test.
      * @return              The code for a function that runs the circuit with the specified
      *                      input and tests the produced output.
      */
@@ -499,7 +977,8 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
             DBSPFunction inputGeneratingFunction,
             TableContents contents,
             @Nullable DBSPZSetLiteral output,
-            SqlTestQueryOutputDescription description) {
+            SqlTestQueryOutputDescription description,
+            boolean isTest) {
         List<DBSPStatement> list = new ArrayList<>();
         DBSPLetStatement circ = new DBSPLetStatement("circ",
                 new DBSPApplyExpression(circuit.name, DBSPTypeAny.INSTANCE), true);
@@ -608,8 +1087,10 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
                                     new DBSPStringLiteral(description.hash))));
         }
         DBSPExpression body = new DBSPBlockExpression(list, null);
-        return new DBSPFunction(name, new ArrayList<>(), null, body)
-                .addAnnotation("#[test]");
+        DBSPFunction result = new DBSPFunction(name, new ArrayList<>(), null, body);
+        if (isTest)
+            result.addAnnotation("#[test]");
+        return result;
     }
 
     public boolean statement(SqlStatement statement) throws SQLException {
@@ -638,14 +1119,28 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
         this.tablePreparation.clear();
         this.viewPreparation.clear();
         this.queriesToRun.clear();
+        this.pending.clear();
     }
 
     public String writeCodeToFile(
             List<DBSPFunction> inputFunctions,
             List<ProgramAndTester> functions
     ) throws FileNotFoundException, UnsupportedEncodingException {
-        String genFileName = testFileName + ".rs";
-        String testFilePath = rustDirectory + "/" + genFileName;
+        return this.writeCodeToFile(testFileName, inputFunctions, functions);
+    }
+
+    /**
+     * Write the code for a batch of queries to a Rust module.
+     * @param module  Name of the module.
+     * @return        The name of the module.
+     */
+    String writeCodeToFile(
+            String module,
+            List<DBSPFunction> inputFunctions,
+            List<ProgramAndTester> functions
+    ) throws FileNotFoundException, UnsupportedEncodingException {
+        String genFileName = module + ".rs";
+        String testFilePath = this.rustDirectory + "/" + genFileName;
         PrintStream stream = new PrintStream(testFilePath, "UTF-8");
         RustFileWriter rust = new RustFileWriter(stream);
 
@@ -656,6 +1151,6 @@ public class DBSPExecutor extends SqlSLTTestExecutor {
             rust.add(pt.tester);
         }
         rust.writeAndClose();
-        return testFileName;
+        return module;
     }
 }
@@ -262,6 +262,10 @@ public class DBSP_JDBC_Executor extends DBSPExecutor {
         this.statementExecutor.establishConnection();
         this.statementExecutor.dropAllViews();
         this.statementExecutor.dropAllTables();
-        return super.execute(file, options);
+        try {
+            return super.execute(file, options);
+        } finally {
+            this.statementExecutor.closeConnection();
+        }
     }
 }
@@ -27,13 +27,16 @@ import org.dbsp.sqllogictest.*;
 import org.dbsp.util.*;
 
 import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 @SuppressWarnings({"SqlDialectInspection", "SqlNoDataSourceInspection"})
 public class JDBCExecutor extends SqlSLTTestExecutor implements IModule {
@@ -44,59 +47,80 @@ public class JDBCExecutor extends SqlSLTTestExecutor implements IModule {
     String DEFAULT_USER = "";  // no user needed for hsqldb
     String DEFAULT_PASSWORD = "";  // no password needed for hsqldb
 
-    // In the end everything is decoded as a string
-    static class Row {
-        public final List<String> values;
-        Row() {
-            this.values = new ArrayList<>();
-        }
-        void add(String v) {
-            this.values.add(v);
-        }
-        @Override
-        public String toString() {
-            return String.join("\n", this.values);
-        }
-    }
+    /**
+     * Results larger than this many bytes are sorted on disk.
+     */
+    static final long SORT_BUFFER_BYTES = 64L << 20;
 
-    static class Rows {
-        public List<Row> rows;
+    /**
+     * Receives the values of a query result in their final order.
+     * Computes the hash of the result incrementally, and keeps the values
+     * only if they need to be compared with an expected output.
+     */
+    static class ResultConsumer implements Consumer<List<String>> {
+        long valueCount;
+        final MessageDigest digest;
+        /**
+         * Values kept for comparison; at most 'maxKept' are kept, since
+         * a result with more values fails anyway.
+         */
+        @Nullable
+        final List<String> kept;
+        final long maxKept;
 
-        Rows() {
-            this.rows = new ArrayList<>();
+        ResultConsumer(@Nullable List<String> kept, long maxKept) throws NoSuchAlgorithmException {
+            this.valueCount = 0;
+            this.digest = MessageDigest.getInstance("MD5");
+            this.kept = kept;
+            this.maxKept = maxKept;
         }
 
-        void add(Row row) {
-            this.rows.add(row);
+        ResultConsumer(SqlTestQueryOutputDescription description) throws NoSuchAlgorithmException {
+            this(description.queryResults != null ? new ArrayList<>() : null, description.valueCount);
         }
+
         @Override
-        public String toString() {
-            return String.join("\n", Linq.map(this.rows, Row::toString));
-        }
-        public int size() {
-            return this.rows.size();
+        public void accept(List<String> row) {
+            for (String value: row) {
+                this.valueCount++;
+                this.digest.update(value.getBytes(StandardCharsets.UTF_8));
+                this.digest.update((byte)'\n');
+                if (this.kept != null && this.kept.size() < this.maxKept)
+                    this.kept.add(value);
+            }
         }
 
-        public void sort(SqlTestQueryOutputDescription.SortOrder order) {
-            switch (order) {
-                case None:
-                    break;
-                case Row:
-                    this.rows.sort(new RowComparator());
-                    break;
-                case Value:
-                    this.rows = Linq.flatMap(this.rows,
-                            r -> Linq.map(r.values,
-                                    r0 -> { Row res = new Row(); res.add(r0); return res; }));
-                    this.rows.sort(new RowComparator());
-                    break;
-            }
+        /**
+         * The hash of all values, each followed by a newline.
+         */
+        String getHash() {
+            if (this.valueCount == 0)
+                this.digest.update((byte)'\n');
+            return Utilities.toHex(this.digest.digest());
         }
     }
 
+    /**
+     * If not null, results of queries are looked up here before
+     * executing them in the database.
+     */
+    @Nullable
+    ResultCache resultCache;
+    /**
+     * Statements whose execution is postponed until a query
+     * result is not found in the result cache.
+     */
+    final List<SqlStatement> pendingStatements;
+
     public JDBCExecutor(String db_url) {
         this.db_url = db_url;
         this.connection = null;
+        this.resultCache = null;
+        this.pendingStatements = new ArrayList<>();
+    }
+
+    public void setResultCache(@Nullable ResultCache resultCache) {
+        this.resultCache = resultCache;
     }
 
     void statement(SqlStatement statement) throws SQLException {
@@ -118,15 +142,29 @@ public class JDBCExecutor extends SqlSLTTestExecutor implements IModule {
         this.statementsExecuted++;
     }
 
-    void query(SqlTestQuery query, TestStatistics statistics) throws SQLException, NoSuchAlgorithmException {
+    void query(SqlTestQuery query, TestStatistics statistics)
+            throws SQLException, NoSuchAlgorithmException, IOException {
         assert this.connection != null;
         if (this.buggyOperations.contains(query.query)) {
             System.err.println("Skipping " + query.query);
 
         }
+        if (this.resultCache != null) {
+            ResultCache.Result cached = this.resultCache.lookup(query);
+            if (cached != null && this.matches(query.outputDescription, cached)) {
+                statistics.passed++;
+                return;
+            }
+            // Bring the database to the state expected by the query
+            for (SqlStatement statement: this.pendingStatements)
+                this.statement(statement);
+            this.pendingStatements.clear();
+        }
         try (Statement stmt = this.connection.createStatement()) {
             ResultSet resultSet = stmt.executeQuery(query.query);
-            this.validate(query, resultSet, query.outputDescription, statistics);
+            ResultCache.Result result = this.validate(query, resultSet, query.outputDescription, statistics);
+            if (this.resultCache != null)
+                this.resultCache.store(query, result);
             resultSet.close();
         }
         Logger.INSTANCE.from(this, 1)
@@ -136,8 +174,9 @@ public class JDBCExecutor extends SqlSLTTestExecutor implements IModule {
                 .newline();
     }
 
-    Row getValue(ResultSet rs, String columnTypes) throws SQLException {
-        Row row = new Row();
+    // In the end everything is decoded as a string
+    List<String> getValue(ResultSet rs, String columnTypes) throws SQLException {
+        List<String> row = new ArrayList<>(columnTypes.length());
         // Column numbers start from 1
         for (int i = 1; i <= columnTypes.length(); i++) {
             char c = columnTypes.charAt(i - 1);
@@ -186,64 +225,82 @@ public class JDBCExecutor extends SqlSLTTestExecutor implements IModule {
         return row;
     }
 
-    static class RowComparator implements Comparator<Row> {
-        @Override
-        public int compare(Row o1, Row o2) {
-            if (o1.values.size() != o2.values.size())
-                throw new RuntimeException("Comparing rows of different lengths");
-            for (int i = 0; i < o1.values.size(); i++) {
-                int r = o1.values.get(i).compareTo(o2.values.get(i));
-                if (r != 0)
-                    return r;
-            }
-            return 0;
+    /**
+     * True if a result with this hash and number of values is the expected one.
+     */
+    boolean matches(SqlTestQueryOutputDescription description, ResultCache.Result result)
+            throws NoSuchAlgorithmException {
+        if (description.valueCount != result.valueCount)
+            return false;
+        if (description.queryResults != null) {
+            ResultConsumer expected = new ResultConsumer(null, 0);
+            expected.accept(description.queryResults);
+            if (!expected.getHash().equals(result.hash))
+                return false;
         }
+        return description.hash == null || description.hash.equals(result.hash);
     }
 
-    void validate(SqlTestQuery query, ResultSet rs,
+    /**
+     * Check the result of a query against the expected output.
+     * @return  The number of values in the result and their hash.
+     */
+    ResultCache.Result validate(SqlTestQuery query, ResultSet rs,
                   SqlTestQueryOutputDescription description,
                   TestStatistics statistics)
-            throws SQLException, NoSuchAlgorithmException {
+            throws SQLException, NoSuchAlgorithmException, IOException {
         assert description.columnTypes != null;
-        Rows rows = new Rows();
-        while (rs.next()) {
-            Row row = this.getValue(rs, description.columnTypes);
-            rows.add(row);
+        ResultConsumer result = new ResultConsumer(description);
+        IIndentStream log = Logger.INSTANCE.from(this, 3);
+        log.append("Result is").newline();
+        Consumer<List<String>> consumer = row -> {
+            result.accept(row);
+            for (String value: row)
+                log.append(value).newline();
+        };
+        if (description.order == SqlTestQueryOutputDescription.SortOrder.None) {
+            while (rs.next())
+                consumer.accept(this.getValue(rs, description.columnTypes));
+        } else {
+            try (SpillingRowSorter sorter = new SpillingRowSorter(SORT_BUFFER_BYTES)) {
+                while (rs.next()) {
+                    List<String> row = this.getValue(rs, description.columnTypes);
+                    if (description.order == SqlTestQueryOutputDescription.SortOrder.Value) {
+                        for (String value: row)
+                            sorter.add(Linq.list(value));
+                    } else {
+                        sorter.add(row);
+                    }
+                }
+                sorter.forEachSorted(consumer);
+            }
         }
-        if (description.valueCount != rows.size() * description.columnTypes.length()) {
+
+        ResultCache.Result actual = new ResultCache.Result(result.valueCount, result.getHash());
+        if (description.valueCount != result.valueCount) {
             statistics.addFailure(new TestStatistics.FailedTestDescription(
                     query, "Expected " + description.valueCount + " rows, got " +
-                    rows.size() * description.columnTypes.length()));
-            return;
+                    result.valueCount));
+            return actual;
         }
-        rows.sort(description.order);
-        Logger.INSTANCE.from(this, 3)
-                .append("Result is ")
-                .newline()
-                .append(rows.toString())
-                .newline();
         if (description.queryResults != null) {
-            String r = rows.toString();
+            String r = String.join("\n", Objects.requireNonNull(result.kept));
             String q = String.join("\n", description.queryResults);
             if (!r.equals(q)) {
                 statistics.addFailure(new TestStatistics.FailedTestDescription(
                         query, "Output differs: " + r + " vs " + q));
-                return;
+                return actual;
             }
         }
         if (description.hash != null) {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            String repr = rows + "\n";
-            md.update(repr.getBytes(StandardCharsets.UTF_8));
-            byte[] digest = md.digest();
-            String hash = Utilities.toHex(digest);
-            if (!description.hash.equals(hash)) {
+            if (!description.hash.equals(actual.hash)) {
                 statistics.addFailure(new TestStatistics.FailedTestDescription(
                         query, "Hash of data does not match expected value"));
-                return;
+                return actual;
             }
         }
         statistics.passed++;
+        return actual;
     }
 
     List<String> getTableList() throws SQLException {
@@ -319,26 +376,39 @@ public class JDBCExecutor extends SqlSLTTestExecutor implements IModule {
 
     @Override
     public TestStatistics execute(SLTTestFile file, ExecutionOptions options)
-            throws SQLException, NoSuchAlgorithmException {
+            throws SQLException, NoSuchAlgorithmException, IOException {
         this.startTest();
         this.establishConnection();
         this.dropAllTables();
+        this.pendingStatements.clear();
+        if (this.resultCache != null)
+            this.resultCache.startFile(new File(file.toString()));
         TestStatistics result = new TestStatistics(options.stopAtFirstError);
-        for (ISqlTestOperation operation: file.fileContents) {
-            try {
-                SqlStatement stat = operation.as(SqlStatement.class);
-                if (stat != null) {
-                    this.statement(stat);
-                } else {
-                    SqlTestQuery query = operation.to(SqlTestQuery.class);
-                    this.query(query, result);
+        try {
+            for (ISqlTestOperation operation: file) {
+                try {
+                    SqlStatement stat = operation.as(SqlStatement.class);
+                    if (stat != null) {
+                        if (this.resultCache != null) {
+                            this.resultCache.statement(stat);
+                            this.pendingStatements.add(stat);
+                        } else {
+                            this.statement(stat);
+                        }
+                    } else {
+                        SqlTestQuery query = operation.to(SqlTestQuery.class);
+                        this.query(query, result);
+                    }
+                } catch (SQLException ex) {
+                    System.err.println("Error while processing #" + result.testsRun() + " " + operation);
+                    throw ex;
                 }
-            } catch (SQLException ex) {
-                System.err.println("Error while processing #" + result.testsRun() + " " + operation);
-                throw ex;
             }
+        } finally {
+            this.closeConnection();
         }
-        this.closeConnection();
+        if (this.resultCache != null)
+            this.resultCache.endFile();
         this.reportTime(result.passed);
         return result;
     }
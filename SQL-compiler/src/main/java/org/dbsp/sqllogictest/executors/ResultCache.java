@@ -0,0 +1,173 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqllogictest.executors;
+
+import org.dbsp.sqllogictest.SqlStatement;
+import org.dbsp.sqllogictest.SqlTestQuery;
+import org.dbsp.util.BuildCache;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A persistent cache of the results produced by the reference database for SLT queries.
+ * A result is identified by the contents of the test file, the statements executed
+ * before the query, and the query itself; the cache stores the number of values
+ * in the result and the hash of the sorted values.
+ * The entries for a test file are stored in one file in the cache directory,
+ * named by the hash of the test file, with one line per entry.
+ * A cache instance is used by a single executor, which processes one test file at a time.
+ */
+public class ResultCache implements IModule {
+    /**
+     * Changes whenever the way results are hashed changes.
+     */
+    static final String VERSION = "1";
+
+    public static class Result {
+        public final long valueCount;
+        public final String hash;
+
+        public Result(long valueCount, String hash) {
+            this.valueCount = valueCount;
+            this.hash = hash;
+        }
+    }
+
+    final File directory;
+    /**
+     * File holding the entries of the current test file.
+     */
+    @Nullable
+    File entriesFile;
+    final Map<String, Result> entries;
+    boolean modified;
+    /**
+     * Hash of the statements executed so far in the current test file.
+     */
+    String state;
+
+    public ResultCache(String directory) {
+        this.directory = new File(directory);
+        this.entries = new HashMap<>();
+        this.modified = false;
+        this.state = "";
+        this.entriesFile = null;
+    }
+
+    /**
+     * Start processing a test file: load the cached results for its contents.
+     * Only the contents identify the file, not its path.
+     */
+    public void startFile(File testFile) throws IOException {
+        String fileHash = new BuildCache.KeyBuilder()
+                .add(VERSION)
+                .add(new String(Files.readAllBytes(testFile.toPath()), StandardCharsets.UTF_8))
+                .build();
+        this.entriesFile = new File(this.directory, fileHash);
+        this.entries.clear();
+        this.modified = false;
+        this.state = "";
+        if (!this.entriesFile.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(this.entriesFile.toPath()), StandardCharsets.UTF_8))) {
+            while (true) {
+                String line = reader.readLine();
+                if (line == null)
+                    break;
+                String[] parts = line.split(" ");
+                if (parts.length != 3)
+                    throw new IOException("Malformed entry in " + this.entriesFile + ": " + line);
+                this.entries.put(parts[0], new Result(Long.parseLong(parts[1]), parts[2]));
+            }
+        }
+        Logger.INSTANCE.from(this, 1)
+                .append("Loaded ")
+                .append(this.entries.size())
+                .append(" cached results for ")
+                .append(testFile.getPath())
+                .newline();
+    }
+
+    /**
+     * Record a statement that changes the state of the database.
+     */
+    public void statement(SqlStatement statement) {
+        this.state = new BuildCache.KeyBuilder()
+                .add(this.state)
+                .add(statement.statement)
+                .build();
+    }
+
+    String key(SqlTestQuery query) {
+        return new BuildCache.KeyBuilder()
+                .add(this.state)
+                .add(query.query)
+                .add(Objects.requireNonNull(query.outputDescription.columnTypes))
+                .add(query.outputDescription.order.toString())
+                .build();
+    }
+
+    /**
+     * The cached result of a query in the current state, or null if it is not cached.
+     */
+    @Nullable
+    public Result lookup(SqlTestQuery query) {
+        return this.entries.get(this.key(query));
+    }
+
+    public void store(SqlTestQuery query, Result result) {
+        this.entries.put(this.key(query), result);
+        this.modified = true;
+    }
+
+    /**
+     * Finish processing a test file: save the new results.
+     */
+    public void endFile() throws IOException {
+        if (!this.modified || this.entriesFile == null)
+            return;
+        if (!this.directory.exists() && !this.directory.mkdirs())
+            throw new IOException("Cannot create directory " + this.directory);
+        // Write and rename, so that readers never observe a partial file.
+        File tmp = new File(this.directory, this.entriesFile.getName() + ".tmp");
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                Files.newOutputStream(tmp.toPath()), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Result> entry: this.entries.entrySet())
+                writer.println(entry.getKey() + " " + entry.getValue().valueCount + " " + entry.getValue().hash);
+        }
+        Files.move(tmp.toPath(), this.entriesFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        this.modified = false;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqllogictest.executors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+import org.dbsp.util.Utilities;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A long-lived process that executes generated Rust test functions on demand.
+ * All tests are linked into a single binary, which reads the names of the
+ * tests to run from its standard input, and writes one result line
+ * for each test to its standard output.  A test fails if it panics.
+ * Result lines start with a prefix, so that they can be distinguished
+ * from other output produced by the tests.
+ */
+public class RustTestRunner implements IModule, AutoCloseable {
+    static final String PREFIX = "@@runner ";
+    static final String QUIT = "quit";
+
+    /**
+     * Result of running one test.
+     */
+    public static class Result {
+        public final boolean passed;
+        /**
+         * Time to run the test, in microseconds; 0 if the test failed.
+         */
+        public final long micros;
+        /**
+         * Panic message for failed tests.
+         */
+        public final String message;
+
+        Result(boolean passed, long micros, String message) {
+            this.passed = passed;
+            this.micros = micros;
+            this.message = message;
+        }
+    }
+
+    final Process process;
+    final BufferedReader output;
+    final PrintWriter input;
+    /**
+     * Set when the output of the runner has been closed.
+     */
+    boolean exited;
+
+    /**
+     * Start a runner.
+     * @param crate       Crate directory; the tests find their input files relative to it.
+     * @param executable  Runner executable, produced by 'build'.
+     */
+    public RustTestRunner(File crate, File executable) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(executable.getPath());
+        builder.directory(crate);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        this.process = builder.start();
+        this.output = new BufferedReader(new InputStreamReader(
+                this.process.getInputStream(), StandardCharsets.UTF_8));
+        this.input = new PrintWriter(new OutputStreamWriter(
+                this.process.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generate the main file of the runner binary.
+     * @param modules  Rust modules containing the tests.
+     * @param tests    Tests that can be executed, as module::function paths.
+     */
+    public static String generateMain(List<String> modules, List<String> tests) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("// automatically-generated file\n");
+        for (String module: modules)
+            builder.append("mod ").append(module).append(";\n");
+        builder.append("\n")
+                .append("use std::io::{BufRead, Write};\n")
+                .append("use std::panic;\n")
+                .append("use std::time::Instant;\n\n")
+                .append("static TESTS: &[(&str, fn())] = &[\n");
+        for (String test: tests)
+            builder.append("    (").append(Utilities.doubleQuote(test)).append(", ").append(test).append("),\n");
+        builder.append("];\n\n")
+                .append("fn main() {\n")
+                .append("    let stdin = std::io::stdin();\n")
+                .append("    let mut stdout = std::io::stdout();\n")
+                .append("    for line in stdin.lock().lines() {\n")
+                .append("        let name = line.unwrap();\n")
+                .append("        if name == \"").append(QUIT).append("\" {\n")
+                .append("            break;\n")
+                .append("        }\n")
+                .append("        match TESTS.iter().find(|(n, _)| *n == name) {\n")
+                .append("            None => writeln!(stdout, \"").append(PREFIX).append("unknown {}\", name).unwrap(),\n")
+                .append("            Some((_, test)) => {\n")
+                .append("                let start = Instant::now();\n")
+                .append("                match panic::catch_unwind(*test) {\n")
+                .append("                    Ok(()) => writeln!(stdout, \"").append(PREFIX)
+                .append("ok {} {}\", name, start.elapsed().as_micros()).unwrap(),\n")
+                .append("                    Err(e) => {\n")
+                .append("                        let message = e.downcast_ref::<String>().cloned()\n")
+                .append("                            .or_else(|| e.downcast_ref::<&str>().map(|s| s.to_string()))\n")
+                .append("                            .unwrap_or_default();\n")
+                .append("                        writeln!(stdout, \"").append(PREFIX)
+                .append("failed {} {}\", name, message.replace('\\n', \" \")).unwrap()\n")
+                .append("                    }\n")
+                .append("                }\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("        stdout.flush().unwrap();\n")
+                .append("    }\n")
+                .append("}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Build the binary of the crate in the specified directory.
+     * @return The executable produced.
+     */
+    public static File build(String directory) throws IOException, InterruptedException {
+        String output = Utilities.runProcessWithOutput(directory,
+                "cargo", "build", "-q", "--bins", "--message-format=json");
+        ObjectMapper mapper = new ObjectMapper();
+        for (String line: output.split("\n")) {
+            if (!line.startsWith("{"))
+                continue;
+            JsonNode message = mapper.readTree(line);
+            JsonNode executable = message.get("executable");
+            if (executable == null || executable.isNull())
+                continue;
+            return new File(executable.asText());
+        }
+        throw new RuntimeException("Could not find the runner executable in cargo output");
+    }
+
+    public boolean isAlive() {
+        return !this.exited && this.process.isAlive();
+    }
+
+    /**
+     * Run a test and wait for its result.
+     * @param test  Name of the test, as passed to generateMain.
+     */
+    public Result run(String test) throws IOException {
+        this.input.println(test);
+        this.input.flush();
+        while (true) {
+            String line = this.output.readLine();
+            if (line == null) {
+                // The runner has crashed, e.g., because of a stack overflow
+                this.exited = true;
+                return new Result(false, 0, "Test runner exited while running " + test);
+            }
+            if (!line.startsWith(PREFIX)) {
+                // Output produced by the test itself
+                Logger.INSTANCE.from(this, 2)
+                        .append(line)
+                        .newline();
+                continue;
+            }
+            String[] parts = line.substring(PREFIX.length()).split(" ", 3);
+            if (parts.length < 2 || !parts[1].equals(test))
+                throw new RuntimeException("Unexpected response from test runner: " + line);
+            String detail = parts.length > 2 ? parts[2] : "";
+            switch (parts[0]) {
+                case "ok":
+                    return new Result(true, Long.parseLong(detail), "");
+                case "failed":
+                    return new Result(false, 0, detail);
+                default:
+                    return new Result(false, 0, "Test runner does not know test " + test);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (this.isAlive()) {
+            this.input.println(QUIT);
+            this.input.flush();
+        }
+        this.input.close();
+        this.process.waitFor();
+    }
+}
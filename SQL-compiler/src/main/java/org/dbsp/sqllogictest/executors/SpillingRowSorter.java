@@ -0,0 +1,230 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.sqllogictest.executors;
+
+import org.dbsp.util.IModule;
+import org.dbsp.util.Logger;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Sorts rows of strings using a bounded amount of memory.
+ * Rows are buffered in memory; when the buffer exceeds a size threshold
+ * it is sorted and written to a temporary file as a sorted run.
+ * The sorted rows are produced by merging all runs with the rows still in memory.
+ * The temporary files are deleted when the sorter is closed.
+ */
+public class SpillingRowSorter implements IModule, AutoCloseable {
+    /**
+     * Approximate memory used by a row in addition to the characters of its values.
+     */
+    static final int ROW_OVERHEAD = 64;
+
+    /**
+     * Compares rows lexicographically, value by value.
+     */
+    public static final Comparator<List<String>> ROW_COMPARATOR = (o1, o2) -> {
+        if (o1.size() != o2.size())
+            throw new RuntimeException("Comparing rows of different lengths");
+        for (int i = 0; i < o1.size(); i++) {
+            int r = o1.get(i).compareTo(o2.get(i));
+            if (r != 0)
+                return r;
+        }
+        return 0;
+    };
+
+    final long maxBufferedBytes;
+    List<List<String>> buffer;
+    long bufferedBytes;
+    final List<File> runs;
+
+    /**
+     * Create a sorter.
+     * @param maxBufferedBytes  Approximate memory size of the rows kept in memory
+     *                          before they are spilled to disk.
+     */
+    public SpillingRowSorter(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.buffer = new ArrayList<>();
+        this.bufferedBytes = 0;
+        this.runs = new ArrayList<>();
+    }
+
+    public void add(List<String> row) throws IOException {
+        this.buffer.add(row);
+        this.bufferedBytes += ROW_OVERHEAD;
+        for (String value: row)
+            this.bufferedBytes += 2L * value.length();
+        if (this.bufferedBytes > this.maxBufferedBytes)
+            this.spill();
+    }
+
+    /**
+     * Number of sorted runs written to disk so far.
+     */
+    public int getSpilledRuns() {
+        return this.runs.size();
+    }
+
+    void spill() throws IOException {
+        this.buffer.sort(ROW_COMPARATOR);
+        File file = File.createTempFile("rows", ".run");
+        this.runs.add(file);
+        Logger.INSTANCE.from(this, 2)
+                .append("Spilling ")
+                .append(this.buffer.size())
+                .append(" rows to ")
+                .append(file.getPath())
+                .newline();
+        try (DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (List<String> row: this.buffer) {
+                stream.writeInt(row.size());
+                for (String value: row) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    stream.writeInt(bytes.length);
+                    stream.write(bytes);
+                }
+            }
+        }
+        this.buffer = new ArrayList<>();
+        this.bufferedBytes = 0;
+    }
+
+    /**
+     * A sorted sequence of rows; 'current' is the smallest row not yet consumed.
+     */
+    static abstract class Run implements Closeable {
+        @Nullable
+        List<String> current;
+
+        abstract void advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {}
+    }
+
+    static class MemoryRun extends Run {
+        final Iterator<List<String>> iterator;
+
+        MemoryRun(List<List<String>> rows) {
+            this.iterator = rows.iterator();
+        }
+
+        @Override
+        void advance() {
+            this.current = this.iterator.hasNext() ? this.iterator.next() : null;
+        }
+    }
+
+    static class FileRun extends Run {
+        final DataInputStream stream;
+
+        FileRun(File file) throws IOException {
+            this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        @Override
+        void advance() throws IOException {
+            int size;
+            try {
+                size = this.stream.readInt();
+            } catch (EOFException ex) {
+                this.current = null;
+                return;
+            }
+            List<String> row = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[this.stream.readInt()];
+                this.stream.readFully(bytes);
+                row.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            this.current = row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.stream.close();
+        }
+    }
+
+    /**
+     * Pass all rows added so far to the consumer in sorted order.
+     * Can be called only once.
+     */
+    public void forEachSorted(Consumer<List<String>> consumer) throws IOException {
+        this.buffer.sort(ROW_COMPARATOR);
+        if (this.runs.isEmpty()) {
+            this.buffer.forEach(consumer);
+            return;
+        }
+
+        List<Run> sources = new ArrayList<>();
+        PriorityQueue<Run> queue = new PriorityQueue<>(this.runs.size() + 1,
+                (r0, r1) -> ROW_COMPARATOR.compare(
+                        Objects.requireNonNull(r0.current), Objects.requireNonNull(r1.current)));
+        try {
+            for (File file: this.runs)
+                sources.add(new FileRun(file));
+            sources.add(new MemoryRun(this.buffer));
+            for (Run run: sources) {
+                run.advance();
+                if (run.current != null)
+                    queue.add(run);
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.remove();
+                consumer.accept(Objects.requireNonNull(run.current));
+                run.advance();
+                if (run.current != null)
+                    queue.add(run);
+            }
+        } finally {
+            for (Run run: sources)
+                run.close();
+        }
+    }
+
+    /**
+     * Delete the temporary files.
+     */
+    @Override
+    public void close() {
+        for (File file: this.runs) {
+            if (!file.delete())
+                Logger.INSTANCE.from(this, 1)
+                        .append("Could not delete ")
+                        .append(file.getPath())
+                        .newline();
+        }
+        this.runs.clear();
+        this.buffer = new ArrayList<>();
+    }
+}
@@ -63,16 +63,21 @@ public class SqlTestExecutor implements ICastable, IModule {
 
     protected void reportTime(int tests) {
         long end = System.nanoTime();
-        totalTests += tests;
-        System.out.println(df.format(tests) + " tests took " +
-                df.format(seconds(end, this.lastTestStartTime)) + "s, "
-                + df.format(totalTests) + " took " +
-                df.format(seconds(end, startTime)) + "s");
+        // The totals are shared by all executors, which may run in parallel.
+        synchronized (SqlTestExecutor.class) {
+            totalTests += tests;
+            System.out.println(df.format(tests) + " tests took " +
+                    df.format(seconds(end, this.lastTestStartTime)) + "s, "
+                    + df.format(totalTests) + " took " +
+                    df.format(seconds(end, startTime)) + "s");
+        }
     }
 
     protected void startTest() {
         this.lastTestStartTime = System.nanoTime();
-        if (startTime == -1)
-            startTime = lastTestStartTime;
+        synchronized (SqlTestExecutor.class) {
+            if (startTime == -1)
+                startTime = lastTestStartTime;
+        }
     }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.util;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A content-addressed cache of build artifacts stored in a local directory.
+ * Each entry is a subdirectory whose name is the key of the entry.
+ * The total size of the cache is bounded; when the bound is exceeded
+ * the least recently used entries are evicted.  The last modification
+ * time of an entry directory records when it was last used.
+ * The cache may be shared by executors running on multiple threads.
+ */
+public class BuildCache implements IModule {
+    public final File directory;
+    /**
+     * Maximum size of all cached artifacts, in bytes.
+     */
+    public final long maxBytes;
+
+    public BuildCache(String directory, long maxBytes) {
+        this.directory = new File(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    File entry(String key) {
+        return new File(this.directory, key);
+    }
+
+    /**
+     * Look up an artifact in the cache.
+     * @param key   Key of the cache entry.
+     * @param name  Name of the artifact within the entry.
+     * @return      The cached file, or null if it is not in the cache.
+     */
+    @Nullable
+    public synchronized File lookup(String key, String name) {
+        File entry = this.entry(key);
+        File file = new File(entry, name);
+        if (!file.exists()) {
+            Logger.INSTANCE.from(this, 1)
+                    .append("Build cache miss ")
+                    .append(key)
+                    .newline();
+            return null;
+        }
+        Logger.INSTANCE.from(this, 1)
+                .append("Build cache hit ")
+                .append(key)
+                .newline();
+        // Record the use for the LRU policy
+        //noinspection ResultOfMethodCallIgnored
+        entry.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Copy an artifact into the cache and evict old entries if the cache is too large.
+     * @param key       Key of the cache entry.
+     * @param artifact  File to store.
+     * @return          The copy of the artifact in the cache.
+     */
+    public synchronized File store(String key, File artifact) throws IOException {
+        File entry = this.entry(key);
+        if (!entry.exists() && !entry.mkdirs())
+            throw new IOException("Cannot create directory " + entry);
+        File result = new File(entry, artifact.getName());
+        // Copy and rename, so that readers never observe a partial file.
+        File tmp = new File(entry, artifact.getName() + ".tmp");
+        Files.copy(artifact.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp.toPath(), result.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (artifact.canExecute())
+            //noinspection ResultOfMethodCallIgnored
+            result.setExecutable(true);
+        //noinspection ResultOfMethodCallIgnored
+        entry.setLastModified(System.currentTimeMillis());
+        this.evict(key);
+        return result;
+    }
+
+    static long size(File file) {
+        if (!file.isDirectory())
+            return file.length();
+        long result = 0;
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File f: files)
+                result += size(f);
+        return result;
+    }
+
+    static void delete(File file) throws IOException {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File f: files)
+                delete(f);
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits in the size bound.
+     * @param keep  Key of an entry that should never be evicted.
+     */
+    void evict(String keep) throws IOException {
+        File[] entries = this.directory.listFiles(File::isDirectory);
+        if (entries == null)
+            return;
+        long total = 0;
+        for (File entry: entries)
+            total += size(entry);
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry: entries) {
+            if (total <= this.maxBytes)
+                break;
+            if (entry.getName().equals(keep))
+                continue;
+            Logger.INSTANCE.from(this, 1)
+                    .append("Evicting ")
+                    .append(entry.getName())
+                    .newline();
+            total -= size(entry);
+            delete(entry);
+        }
+    }
+
+    /**
+     * Incrementally computes a key for the cache.
+     */
+    public static class KeyBuilder {
+        private final MessageDigest digest;
+
+        public KeyBuilder() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        public KeyBuilder add(String data) {
+            this.digest.update(data.getBytes(StandardCharsets.UTF_8));
+            this.digest.update((byte)0);
+            return this;
+        }
+
+        /**
+         * Add the contents of a file, or of all the files in a directory tree.
+         * Files are identified by their path relative to the parent of 'file',
+         * so the key does not depend on the location of the tree.
+         * Directories named 'target' contain Rust build outputs and are skipped.
+         */
+        public KeyBuilder addFile(File file) throws IOException {
+            return this.addFile(file, file.getName());
+        }
+
+        KeyBuilder addFile(File file, String path) throws IOException {
+            if (file.isDirectory()) {
+                if (file.getName().equals("target"))
+                    return this;
+                File[] files = file.listFiles();
+                if (files == null)
+                    return this;
+                List<File> sorted = new ArrayList<>(Arrays.asList(files));
+                sorted.sort(Comparator.comparing(File::getName));
+                for (File f: sorted)
+                    this.addFile(f, path + "/" + f.getName());
+            } else if (file.exists()) {
+                this.add(path);
+                this.digest.update(Files.readAllBytes(file.toPath()));
+            }
+            return this;
+        }
+
+        public String build() {
+            return Utilities.toHex(this.digest.digest());
+        }
+    }
+}
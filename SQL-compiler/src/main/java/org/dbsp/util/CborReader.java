@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads data written by CborWriter as a JSON tree.
+ * Only supports the subset of CBOR produced by CborWriter.
+ */
+public class CborReader {
+    final DataInputStream stream;
+    final JsonNodeFactory factory;
+
+    public CborReader(InputStream stream) {
+        this.stream = new DataInputStream(stream);
+        this.factory = JsonNodeFactory.instance;
+    }
+
+    long argument(int initial) throws IOException {
+        int info = initial & 0x1F;
+        if (info < 24)
+            return info;
+        switch (info) {
+            case 24:
+                return this.stream.readUnsignedByte();
+            case 25:
+                return this.stream.readUnsignedShort();
+            case 26:
+                return Integer.toUnsignedLong(this.stream.readInt());
+            case 27:
+                return this.stream.readLong();
+            default:
+                throw new RuntimeException("Unsupported CBOR item " + Integer.toHexString(initial));
+        }
+    }
+
+    JsonNode number(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+            return this.factory.numberNode((int)value);
+        return this.factory.numberNode(value);
+    }
+
+    int size(int initial) throws IOException {
+        long size = this.argument(initial);
+        if (size > Integer.MAX_VALUE)
+            throw new RuntimeException("CBOR item too large: " + size);
+        return (int)size;
+    }
+
+    String text(int initial) throws IOException {
+        byte[] bytes = new byte[this.size(initial)];
+        this.stream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public JsonNode read() throws IOException {
+        int initial = this.stream.readUnsignedByte();
+        int major = initial >> 5;
+        switch (major) {
+            case CborWriter.MAJOR_UNSIGNED:
+                return this.number(this.argument(initial));
+            case CborWriter.MAJOR_NEGATIVE:
+                return this.number(-1 - this.argument(initial));
+            case CborWriter.MAJOR_TEXT:
+                return this.factory.textNode(this.text(initial));
+            case CborWriter.MAJOR_ARRAY: {
+                int size = this.size(initial);
+                ArrayNode result = this.factory.arrayNode(size);
+                for (int i = 0; i < size; i++)
+                    result.add(this.read());
+                return result;
+            }
+            case CborWriter.MAJOR_MAP: {
+                int size = this.size(initial);
+                ObjectNode result = this.factory.objectNode();
+                for (int i = 0; i < size; i++) {
+                    int keyInitial = this.stream.readUnsignedByte();
+                    if (keyInitial >> 5 != CborWriter.MAJOR_TEXT)
+                        throw new RuntimeException("Expected a text key in CBOR map");
+                    String key = this.text(keyInitial);
+                    result.set(key, this.read());
+                }
+                return result;
+            }
+            default:
+                break;
+        }
+        switch (initial) {
+            case CborWriter.FALSE:
+                return this.factory.booleanNode(false);
+            case CborWriter.TRUE:
+                return this.factory.booleanNode(true);
+            case CborWriter.NULL:
+                return this.factory.nullNode();
+            case CborWriter.FLOAT32:
+                return this.factory.numberNode(this.stream.readFloat());
+            case CborWriter.FLOAT64:
+                return this.factory.numberNode(this.stream.readDouble());
+            default:
+                throw new RuntimeException("Unsupported CBOR item " + Integer.toHexString(initial));
+        }
+    }
+}
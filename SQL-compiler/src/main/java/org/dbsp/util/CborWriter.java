@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.dbsp.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writer for the CBOR binary encoding (RFC 8949).
+ * Items are written to the output stream as soon as they are received.
+ * CBOR has the same data model as JSON, so data that is
+ * serialized as JSON can be written in this format too.
+ * Only definite-length items are produced: the caller
+ * must know the size of each map and array when starting it.
+ */
+public class CborWriter {
+    static final int MAJOR_UNSIGNED = 0;
+    static final int MAJOR_NEGATIVE = 1;
+    static final int MAJOR_TEXT = 3;
+    static final int MAJOR_ARRAY = 4;
+    static final int MAJOR_MAP = 5;
+    static final int FALSE = 0xF4;
+    static final int TRUE = 0xF5;
+    static final int NULL = 0xF6;
+    static final int FLOAT32 = 0xFA;
+    static final int FLOAT64 = 0xFB;
+
+    final DataOutputStream stream;
+
+    public CborWriter(OutputStream stream) {
+        this.stream = new DataOutputStream(stream);
+    }
+
+    /**
+     * Write the header of an item: the major type and an argument,
+     * using the shortest encoding for the argument.
+     */
+    void header(int major, long argument) throws IOException {
+        int type = major << 5;
+        if (argument < 0)
+            throw new RuntimeException("Negative CBOR argument " + argument);
+        if (argument < 24) {
+            this.stream.writeByte(type | (int)argument);
+        } else if (argument < 0x100) {
+            this.stream.writeByte(type | 24);
+            this.stream.writeByte((int)argument);
+        } else if (argument < 0x10000) {
+            this.stream.writeByte(type | 25);
+            this.stream.writeShort((int)argument);
+        } else if (argument < 0x100000000L) {
+            this.stream.writeByte(type | 26);
+            this.stream.writeInt((int)argument);
+        } else {
+            this.stream.writeByte(type | 27);
+            this.stream.writeLong(argument);
+        }
+    }
+
+    public CborWriter writeMapHeader(int size) throws IOException {
+        this.header(MAJOR_MAP, size);
+        return this;
+    }
+
+    public CborWriter writeArrayHeader(int size) throws IOException {
+        this.header(MAJOR_ARRAY, size);
+        return this;
+    }
+
+    public CborWriter write(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.header(MAJOR_TEXT, bytes.length);
+        this.stream.write(bytes);
+        return this;
+    }
+
+    public CborWriter write(long value) throws IOException {
+        if (value >= 0)
+            this.header(MAJOR_UNSIGNED, value);
+        else
+            // Encoded as -1 - argument
+            this.header(MAJOR_NEGATIVE, -(value + 1));
+        return this;
+    }
+
+    public CborWriter write(boolean value) throws IOException {
+        this.stream.writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public CborWriter write(double value) throws IOException {
+        this.stream.writeByte(FLOAT64);
+        this.stream.writeDouble(value);
+        return this;
+    }
+
+    public CborWriter write(float value) throws IOException {
+        this.stream.writeByte(FLOAT32);
+        this.stream.writeFloat(value);
+        return this;
+    }
+
+    public CborWriter writeNull() throws IOException {
+        this.stream.writeByte(NULL);
+        return this;
+    }
+
+    /**
+     * Write a JSON tree.
+     */
+    public CborWriter write(JsonNode node) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT: {
+                this.writeMapHeader(node.size());
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    this.write(field.getKey());
+                    this.write(field.getValue());
+                }
+                break;
+            }
+            case ARRAY:
+                this.writeArrayHeader(node.size());
+                for (JsonNode element: node)
+                    this.write(element);
+                break;
+            case STRING:
+                this.write(node.textValue());
+                break;
+            case BOOLEAN:
+                this.write(node.booleanValue());
+                break;
+            case NULL:
+                this.writeNull();
+                break;
+            case NUMBER:
+                if (node.isFloat())
+                    this.write(node.floatValue());
+                else if (node.isFloatingPointNumber())
+                    this.write(node.doubleValue());
+                else if (node.canConvertToLong())
+                    this.write(node.longValue());
+                else
+                    throw new Unimplemented("CBOR encoding of " + node);
+                break;
+            default:
+                throw new Unimplemented("CBOR encoding of " + node.getNodeType());
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        this.stream.flush();
+    }
+}
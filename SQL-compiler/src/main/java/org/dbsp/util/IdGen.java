@@ -25,14 +25,17 @@
 
 package org.dbsp.util;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Base class for objects that have unique Ids.
  */
 public class IdGen {
-    static long idGen = 0;
+    // Shared by all compilers, which may run on multiple threads.
+    static final AtomicLong idGen = new AtomicLong();
     public final long id;
 
     public IdGen() {
-        this.id = idGen++;
+        this.id = idGen.getAndIncrement();
     }
 }
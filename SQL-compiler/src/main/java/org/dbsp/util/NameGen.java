@@ -25,8 +25,8 @@
 
 package org.dbsp.util;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Used to generate new names during a program execution.
@@ -34,7 +34,8 @@ import java.util.Map;
 public class NameGen {
     private final String prefix;
 
-    static final Map<String, Integer> nextId = new HashMap<>();
+    // Shared by all compilers, which may run on multiple threads.
+    static final Map<String, Integer> nextId = new ConcurrentHashMap<>();
 
     @SuppressWarnings("unused")
     public NameGen() {
@@ -49,8 +50,14 @@ public class NameGen {
      */
     public NameGen(String prefix) {
         this.prefix = prefix;
-        if (!nextId.containsKey(this.prefix))
-            nextId.put(this.prefix, 0);
+        nextId.putIfAbsent(this.prefix, 0);
+    }
+
+    /**
+     * True if names starting with the specified prefix have been generated.
+     */
+    public static boolean isPrefix(String prefix) {
+        return nextId.containsKey(prefix);
     }
 
     public int getNext() {
@@ -58,8 +65,7 @@ public class NameGen {
     }
 
     public String nextName() {
-        int id = this.getNext();
-        nextId.put(this.prefix, id+1);
+        int id = nextId.merge(this.prefix, 1, Integer::sum) - 1;
         return this.prefix + id;
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 VMware, Inc.
+ * SPDX-License-Identifier: MIT
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.dbsp.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Time spent in each phase of compiling and executing SQL programs.
+ * The times are accumulated, so an object can describe a single query,
+ * a batch of queries, or a whole test run.
+ */
+public class PhaseTimes {
+    public enum Phase {
+        /**
+         * Calcite parsing and validation.
+         */
+        PARSE("parse"),
+        /**
+         * Conversion of Calcite plans to DBSP circuits.
+         */
+        TRANSLATE("translate"),
+        /**
+         * Circuit optimizations.
+         */
+        OPTIMIZE("optimize"),
+        /**
+         * Generation of Rust code.
+         */
+        CODEGEN("codegen"),
+        /**
+         * Compilation of the Rust code.
+         */
+        BUILD("build"),
+        /**
+         * Execution of the compiled tests.
+         */
+        EXECUTE("execute");
+
+        public final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    final long[] nanos;
+
+    public PhaseTimes() {
+        this.nanos = new long[Phase.values().length];
+    }
+
+    public void add(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Add the time elapsed since 'start', obtained from System.nanoTime().
+     * @return The current time.
+     */
+    public long addSince(Phase phase, long start) {
+        long now = System.nanoTime();
+        this.add(phase, now - start);
+        return now;
+    }
+
+    public void add(PhaseTimes other) {
+        for (int i = 0; i < this.nanos.length; i++)
+            this.nanos[i] += other.nanos[i];
+    }
+
+    public long get(Phase phase) {
+        return this.nanos[phase.ordinal()];
+    }
+
+    /**
+     * Sum of the times of all phases.
+     */
+    public long total() {
+        long result = 0;
+        for (long n: this.nanos)
+            result += n;
+        return result;
+    }
+
+    /**
+     * The times accumulated since a previous snapshot of this object.
+     */
+    public PhaseTimes since(PhaseTimes snapshot) {
+        PhaseTimes result = new PhaseTimes();
+        for (int i = 0; i < this.nanos.length; i++)
+            result.nanos[i] = this.nanos[i] - snapshot.nanos[i];
+        return result;
+    }
+
+    public PhaseTimes copy() {
+        PhaseTimes result = new PhaseTimes();
+        result.add(this);
+        return result;
+    }
+
+    /**
+     * Times in microseconds, keyed by the phase names.
+     */
+    public ObjectNode asJson(ObjectMapper mapper) {
+        ObjectNode result = mapper.createObjectNode();
+        for (Phase phase: Phase.values())
+            result.put(phase.name, this.get(phase) / 1000);
+        return result;
+    }
+}
@@ -23,8 +23,14 @@
 
 package org.dbsp.util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.dbsp.sqllogictest.SqlTestQuery;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,15 +54,102 @@ public class TestStatistics {
         }
     }
 
+    /**
+     * Time spent compiling and executing a query.
+     * The build and execute phases are only known for a whole batch,
+     * except when tests are executed by a test runner.
+     */
+    public static class QueryTimes {
+        public final String file;
+        public final int line;
+        public final PhaseTimes times;
+
+        public QueryTimes(SqlTestQuery query, PhaseTimes times) {
+            this.file = query.file;
+            this.line = query.line;
+            this.times = times;
+        }
+
+        ObjectNode asJson(ObjectMapper mapper) {
+            ObjectNode result = mapper.createObjectNode();
+            result.put("file", this.file);
+            result.put("line", this.line);
+            result.set("phases", this.times.asJson(mapper));
+            return result;
+        }
+    }
+
+    /**
+     * Time spent compiling and executing a batch of queries built together.
+     */
+    public static class BatchTimes {
+        public final String file;
+        public final int size;
+        public final PhaseTimes times;
+        /**
+         * Times for each query; null when they are not recorded.
+         */
+        @Nullable
+        public final List<QueryTimes> queries;
+
+        public BatchTimes(String file, int size, PhaseTimes times, @Nullable List<QueryTimes> queries) {
+            this.file = file;
+            this.size = size;
+            this.times = times;
+            this.queries = queries;
+        }
+
+        ObjectNode asJson(ObjectMapper mapper) {
+            ObjectNode result = mapper.createObjectNode();
+            result.put("file", this.file);
+            result.put("queries", this.size);
+            result.set("phases", this.times.asJson(mapper));
+            if (this.queries != null) {
+                ArrayNode array = result.putArray("query_times");
+                for (QueryTimes query: this.queries)
+                    array.add(query.asJson(mapper));
+            }
+            return result;
+        }
+    }
+
     public int failed;
     public int passed;
     public int ignored;
+    /**
+     * Times of all batches executed.
+     */
+    final List<BatchTimes> batches = new ArrayList<>();
+    /**
+     * Sum of the times of all batches.
+     */
+    public final PhaseTimes totalTimes = new PhaseTimes();
+    /**
+     * If true the times of each query are recorded as well.
+     * Off by default, since this needs memory proportional to the number of queries.
+     */
+    boolean recordQueryTimes = false;
 
     public void add(TestStatistics stats) {
         this.failed += stats.failed;
         this.passed += stats.passed;
         this.ignored += stats.ignored;
         this.failures.addAll(stats.failures);
+        this.batches.addAll(stats.batches);
+        this.totalTimes.add(stats.totalTimes);
+    }
+
+    public void setRecordQueryTimes(boolean record) {
+        this.recordQueryTimes = record;
+    }
+
+    public boolean recordQueryTimes() {
+        return this.recordQueryTimes;
+    }
+
+    public void addBatch(BatchTimes batch) {
+        this.batches.add(batch);
+        this.totalTimes.add(batch.times);
     }
 
     List<FailedTestDescription> failures = new ArrayList<>();
@@ -66,6 +159,10 @@ public class TestStatistics {
         this.stopAtFirstErrror = stopAtFirstError;
     }
 
+    public boolean stopAtFirstError() {
+        return this.stopAtFirstErrror;
+    }
+
     public void addFailure(FailedTestDescription failure) {
         this.failures.add(failure);
         this.failed++;
@@ -93,4 +190,25 @@ public class TestStatistics {
     public int totalTests() {
         return this.failed + this.passed + this.ignored;
     }
+
+    /**
+     * A machine-readable report with the test results and the time spent
+     * in each phase, in microseconds, in total and for each batch.
+     */
+    public ObjectNode timesAsJson(ObjectMapper mapper) {
+        ObjectNode result = mapper.createObjectNode();
+        result.put("passed", this.passed);
+        result.put("failed", this.failed);
+        result.put("ignored", this.ignored);
+        result.set("phases", this.totalTimes.asJson(mapper));
+        ArrayNode array = result.putArray("batches");
+        for (BatchTimes batch: this.batches)
+            array.add(batch.asJson(mapper));
+        return result;
+    }
+
+    public void writeTimes(String fileName) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(fileName), this.timesAsJson(mapper));
+    }
 }
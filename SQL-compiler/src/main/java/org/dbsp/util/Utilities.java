@@ -47,8 +47,14 @@ package org.dbsp.util;/*
  *
  */
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import javax.annotation.Nullable;
 import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
@@ -177,9 +183,176 @@ public class Utilities {
             throw new RuntimeException("Process failed with exit code " + exitCode);
     }
 
+    /**
+     * Run a process and return its standard output.
+     * Standard error is inherited from the current process.
+     */
+    public static String runProcessWithOutput(String directory, String... commands)
+            throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder();
+        processBuilder.command(commands);
+        processBuilder.directory(new File(directory));
+        processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = processBuilder.start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                output.append(line).append("\n");
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0)
+            throw new RuntimeException("Process failed with exit code " + exitCode);
+        return output.toString();
+    }
+
+    /**
+     * If not null, cache used for the test binaries built by compileAndTestRust.
+     */
+    @Nullable
+    static BuildCache buildCache = null;
+
+    public static void setBuildCache(@Nullable BuildCache cache) {
+        buildCache = cache;
+    }
+
+    /**
+     * Find the directory containing the Cargo.toml file of the crate that
+     * contains the specified directory.
+     */
+    static File getCrateDirectory(String directory) throws IOException {
+        File dir = new File(directory).getCanonicalFile();
+        while (dir != null) {
+            if (new File(dir, "Cargo.toml").exists())
+                return dir;
+            dir = dir.getParentFile();
+        }
+        throw new RuntimeException("Could not find Cargo.toml for " + directory);
+    }
+
+    /**
+     * Build the tests of a Rust crate without running them.
+     * @return The test executable produced.
+     */
+    static File buildRustTests(String directory) throws IOException, InterruptedException {
+        String output = runProcessWithOutput(directory,
+                "cargo", "test", "--no-run", "-q", "--message-format=json");
+        ObjectMapper mapper = new ObjectMapper();
+        for (String line: output.split("\n")) {
+            if (!line.startsWith("{"))
+                continue;
+            JsonNode message = mapper.readTree(line);
+            JsonNode executable = message.get("executable");
+            if (executable == null || executable.isNull())
+                continue;
+            JsonNode profile = message.get("profile");
+            if (profile != null && profile.get("test").asBoolean())
+                return new File(executable.asText());
+        }
+        throw new RuntimeException("Could not find test executable in cargo output");
+    }
+
+    static void runRustTests(File crate, File executable, boolean quiet)
+            throws IOException, InterruptedException {
+        if (quiet)
+            runProcess(crate.getPath(), executable.getPath(), "-q");
+        else
+            runProcess(crate.getPath(), executable.getPath(), "--show-output");
+    }
+
     static final boolean retry = false;
     public static void compileAndTestRust(String directory, boolean quiet)
             throws IOException, InterruptedException {
+        compileAndTestRust(directory, quiet, null);
+    }
+
+    @Nullable
+    private static String compilerVersion = null;
+
+    /**
+     * A hash of the classes of the compiler, which identifies the code generator.
+     */
+    public static synchronized String getCompilerVersion() throws IOException {
+        if (compilerVersion == null) {
+            try {
+                File classes = new File(Utilities.class.getProtectionDomain()
+                        .getCodeSource().getLocation().toURI());
+                compilerVersion = new BuildCache.KeyBuilder().addFile(classes).build();
+            } catch (URISyntaxException ex) {
+                throw new IOException(ex);
+            }
+        }
+        return compilerVersion;
+    }
+
+    /**
+     * Compile the Rust crate in the specified directory and run its tests.
+     * If a build cache is set, the test binary is looked up in the cache and cargo
+     * is not invoked at all when it is found.
+     * @param directory  Directory with the generated Rust sources.
+     * @param quiet      If true do not show the output of the tests.
+     * @param sourceKey  Key describing the generated code, e.g., built from the
+     *                   canonical hashes of the circuits compiled; may be null.
+     *                   The key is combined with the version of the compiler, so
+     *                   that a change in the code generator produces a different key.
+     *                   If it is null the contents of the Rust files in directory are used,
+     *                   and the cache only hits for identical files.
+     */
+    public static void compileAndTestRust(String directory, boolean quiet, @Nullable String sourceKey)
+            throws IOException, InterruptedException {
+        //noinspection ResultOfMethodCallIgnored
+        compileAndTestRust(directory, quiet, sourceKey, null);
+    }
+
+    /**
+     * Same as compileAndTestRust, but if 'times' is not null the time spent building
+     * and running the tests is added to it.  Building and running are then separate
+     * steps.
+     * @return  True if the test binary was built, false if it was found in the build cache.
+     */
+    public static boolean compileAndTestRust(String directory, boolean quiet, @Nullable String sourceKey,
+                                             @Nullable PhaseTimes times)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        if (buildCache != null) {
+            File crate = getCrateDirectory(directory);
+            BuildCache.KeyBuilder key = new BuildCache.KeyBuilder();
+            if (sourceKey != null) {
+                key.add(sourceKey).add(getCompilerVersion());
+            } else {
+                File[] sources = new File(directory).listFiles((d, n) -> n.endsWith(".rs"));
+                if (sources != null) {
+                    Arrays.sort(sources);
+                    for (File source : sources)
+                        key.addFile(source);
+                }
+            }
+            // The binary also depends on the crate configuration and the support libraries.
+            key.addFile(new File(crate, "Cargo.toml"));
+            key.addFile(new File(crate.getParentFile(), "lib"));
+            String cacheKey = key.build();
+            File executable = buildCache.lookup(cacheKey, "tests");
+            boolean built = executable == null;
+            if (built) {
+                File binary = buildRustTests(directory);
+                File tests = new File(binary.getParentFile(), "tests");
+                Files.copy(binary.toPath(), tests.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                executable = buildCache.store(cacheKey, tests);
+            }
+            if (times != null)
+                start = times.addSince(PhaseTimes.Phase.BUILD, start);
+            runRustTests(crate, executable, quiet);
+            if (times != null)
+                times.addSince(PhaseTimes.Phase.EXECUTE, start);
+            return built;
+        }
+        if (times != null) {
+            File executable = buildRustTests(directory);
+            start = times.addSince(PhaseTimes.Phase.BUILD, start);
+            runRustTests(getCrateDirectory(directory), executable, quiet);
+            times.addSince(PhaseTimes.Phase.EXECUTE, start);
+            return true;
+        }
         try {
             if (quiet)
                 runProcess(directory, "cargo", "test", "-q");
@@ -195,6 +368,7 @@ public class Utilities {
             else
                 runProcess(directory, "cargo", "test", "--", "--show-output");
         }
+        return true;
     }
 
     @SuppressWarnings("SpellCheckingInspection")
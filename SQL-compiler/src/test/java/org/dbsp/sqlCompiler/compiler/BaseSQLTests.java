@@ -29,6 +29,7 @@ import org.dbsp.sqlCompiler.compiler.backend.jit.ToJitVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.optimize.*;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustSqlRuntimeLibrary;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.visitors.*;
 import org.dbsp.sqlCompiler.ir.CircuitVisitor;
 import org.dbsp.sqlCompiler.ir.DBSPFunction;
@@ -41,6 +42,7 @@ import org.dbsp.sqlCompiler.ir.type.DBSPTypeAny;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeBool;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDouble;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeInteger;
+import org.dbsp.util.BuildCache;
 import org.dbsp.util.Logger;
 import org.dbsp.util.Utilities;
 import org.junit.AfterClass;
@@ -59,6 +61,8 @@ import java.util.List;
 public class BaseSQLTests {
     public static final String rustDirectory = "../temp/src";
     public static final String testFilePath = rustDirectory + "/lib.rs";
+    public static final String buildCacheDirectory = "../temp/build-cache";
+    public static final long buildCacheSize = 4L * 1024 * 1024 * 1024;
 
     public static class InputOutputPair {
         public final DBSPZSetLiteral[] inputs;
@@ -129,6 +133,11 @@ public class BaseSQLTests {
     public static void prepareTests() throws IOException {
         //generateLib();
         testsToRun.clear();
+        // The cache of test binaries is only used when requested, e.g., with -Ddbsp.buildCache=true
+        if (Boolean.getBoolean("dbsp.buildCache"))
+            Utilities.setBuildCache(new BuildCache(buildCacheDirectory, buildCacheSize));
+        else
+            Utilities.setBuildCache(null);
     }
 
     @AfterClass
@@ -137,13 +146,17 @@ public class BaseSQLTests {
             return;
         PrintStream outputStream = new PrintStream(Files.newOutputStream(Paths.get(testFilePath)));
         RustFileWriter writer = new RustFileWriter(outputStream);
+        BuildCache.KeyBuilder key = new BuildCache.KeyBuilder();
         for (TestCase test: testsToRun) {
             writer.add(test.circuit);
             DBSPFunction tester = test.createTesterCode();
             writer.add(tester);
+            key.add(test.circuit.name)
+                    .add(CircuitHasher.hash(test.circuit))
+                    .add(ToRustInnerVisitor.toRustString(tester));
         }
         writer.writeAndClose();
-        Utilities.compileAndTestRust(rustDirectory, false);
+        Utilities.compileAndTestRust(rustDirectory, false, key.build());
         testsToRun.clear();
     }
 
@@ -25,14 +25,55 @@
 
 package org.dbsp.sqlCompiler.compiler;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
 import org.dbsp.sqlCompiler.compiler.backend.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.CircuitInterpreter;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.IncrementalChecker;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.IncrementalWorkload;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.JITBatch;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.JITFunctionInterpreter;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.JITInterpreter;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.JITRow;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.Tuple;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.ZSet;
 import org.dbsp.sqlCompiler.compiler.backend.jit.ToJitVisitor;
+import org.dbsp.sqlCompiler.compiler.backend.jit.TypeCatalog;
+import org.dbsp.sqlCompiler.compiler.backend.jit.JITValidator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITFunction;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.JITProgram;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.JITFilterOperator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.JITMapOperator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.operators.JITOperator;
+import org.dbsp.sqlCompiler.compiler.backend.jit.ir.types.JITRowType;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustVisitor;
 import org.dbsp.sqlCompiler.compiler.frontend.TableContents;
-import org.dbsp.sqlCompiler.ir.expression.literal.DBSPZSetLiteral;
+import org.dbsp.sqlCompiler.ir.expression.DBSPTupleExpression;
+import org.dbsp.sqlCompiler.ir.expression.literal.*;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeTuple;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDecimal;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeInteger;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeString;
+import org.dbsp.util.CborReader;
+import org.dbsp.util.Linq;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Tests that invoke the CalciteToDBSPCompiler.
  */
@@ -62,6 +103,169 @@ public class DBSPCompilerTests {
         ToJitVisitor.validateJson(dbsp, false);
     }
 
+    @Test
+    public void incrementalJitTest() {
+        CompilerOptions options = new CompilerOptions();
+        options.optimizerOptions.incrementalize = true;
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT DISTINCT T.COL1 FROM T JOIN T AS S ON T.COL1 = S.COL1");
+        DBSPCircuit dbsp = compiler.getFinalCircuit("circuit");
+        ToJitVisitor.validateJson(dbsp, false);
+    }
+
+    @Test
+    public void binaryJitTest() throws IOException {
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1, T.COL2 * CAST(2.5 AS DOUBLE), -T.COL1 - 100000 " +
+                "FROM T WHERE T.COL4 = 'x' AND NOT T.COL3");
+        DBSPCircuit dbsp = compiler.getFinalCircuit("circuit");
+        JITProgram program = ToJitVisitor.circuitToJIT(dbsp);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        program.writeBinary(bytes);
+        String json = program.asJson().toString();
+        String decoded = new CborReader(new ByteArrayInputStream(bytes.toByteArray())).read().toString();
+        Assert.assertEquals(json, decoded);
+        Assert.assertTrue(bytes.size() < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void jitOptimizerTest() {
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement("CREATE TABLE T (COL1 INT NOT NULL, COL2 INT, COL3 VARCHAR)");
+        compiler.compileStatement("CREATE VIEW V AS SELECT COL1 + COL2, COL2 * 2 + (3 + 4), COL3 || 'x' " +
+                "FROM T WHERE COL2 > 3 + 4");
+        DBSPCircuit dbsp = compiler.getFinalCircuit("circuit");
+        CompilerOptions.Jit options = new CompilerOptions.Jit();
+        options.optimize = false;
+        String unoptimized = ToJitVisitor.circuitToJIT(dbsp, options).asJson().toString();
+        String optimized = ToJitVisitor.circuitToJIT(dbsp).asJson().toString();
+        Assert.assertTrue(unoptimized.contains("\"Copy\""));
+        Assert.assertFalse(optimized.contains("\"Copy\""));
+        // 3 + 4 is folded
+        Assert.assertTrue(optimized.contains("{\"I32\":7}"));
+        Assert.assertFalse(optimized.contains("{\"I32\":3}"));
+        Assert.assertTrue(optimized.length() < unoptimized.length());
+    }
+
+    @Test
+    public void decimalTypeTest() {
+        DBSPTypeDecimal small = new DBSPTypeDecimal(null, 10, 2, false);
+        DBSPTypeDecimal medium = new DBSPTypeDecimal(null, 18, 4, true);
+        DBSPTypeDecimal large = new DBSPTypeDecimal(null, 19, 2, false);
+        Assert.assertEquals("Fixed64<2>", small.getRustString());
+        Assert.assertEquals("Fixed64<4>", medium.getRustString());
+        Assert.assertEquals("Fixed128<2>", large.getRustString());
+        Assert.assertEquals("i64", medium.getRustRepresentation());
+        Assert.assertEquals("i128", large.getRustRepresentation());
+        Assert.assertEquals(BigInteger.valueOf(101), small.getScaledValue(new BigDecimal("1.005")));
+        Assert.assertEquals(BigInteger.valueOf(-101), small.getScaledValue(new BigDecimal("-1.005")));
+        Assert.assertEquals(BigInteger.valueOf(12000), medium.getScaledValue(new BigDecimal("1.2")));
+    }
+
+    @Test
+    public void decimalArithmeticTypeTest() {
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement("CREATE TABLE D (A DECIMAL(10,2) NOT NULL, B DECIMAL(8,3) NOT NULL)");
+        compiler.compileStatement("CREATE VIEW V AS SELECT A * B, A / B, A + B FROM D");
+        DBSPCircuit dbsp = compiler.getFinalCircuit("circuit");
+        String rust = ToRustVisitor.toRustString(dbsp);
+        // Products and quotients are computed in the result type chosen by Calcite
+        Assert.assertTrue(rust.contains("times_decimal_decimal(" +
+                "cast_to_decimal_decimal::<Fixed64<5>>(t.0, 18, 5), " +
+                "cast_to_decimal_decimal::<Fixed64<5>>(t.1, 18, 5))"));
+        Assert.assertTrue(rust.contains("div_decimal_decimal(" +
+                "cast_to_decimal_decimal::<Fixed128<10>>(t.0, 21, 10), " +
+                "cast_to_decimal_decimal::<Fixed128<10>>(t.1, 21, 10))"));
+        // Sums are computed with the larger scale and enough integer digits for both operands
+        Assert.assertTrue(rust.contains("plus_decimal_decimal(" +
+                "cast_to_decimal_decimal::<Fixed64<3>>(t.0, 11, 3), " +
+                "cast_to_decimal_decimal::<Fixed64<3>>(t.1, 11, 3))"));
+    }
+
+    @Test
+    public void jitLayoutTest() {
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE TABLE S (COL1 INT NOT NULL, COL2 INT)");
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1, S.COL2 FROM T JOIN S ON T.COL1 = S.COL1");
+        DBSPCircuit dbsp = compiler.getFinalCircuit("circuit");
+        JITProgram program = ToJitVisitor.circuitToJIT(dbsp);
+        // Both inputs of the join are indexed by a non-nullable i32
+        List<String> keyLayouts = new ArrayList<>();
+        for (JsonNode node: program.asJson().get("nodes")) {
+            if (node.has("IndexWith"))
+                keyLayouts.add(node.get("IndexWith").get("key_layout").asText());
+        }
+        Assert.assertEquals(2, keyLayouts.size());
+        Assert.assertEquals(keyLayouts.get(0), keyLayouts.get(1));
+
+        TypeCatalog catalog = new TypeCatalog();
+        JITRowType row = catalog.convertTupleType(
+                new DBSPTypeTuple(DBSPTypeInteger.SIGNED_32, DBSPTypeString.INSTANCE));
+        JITRowType same = catalog.convertTupleType(
+                new DBSPTypeTuple(DBSPTypeInteger.SIGNED_32, DBSPTypeString.INSTANCE));
+        JITRowType raw = catalog.convertTupleType(
+                new DBSPTypeRawTuple(DBSPTypeInteger.SIGNED_32, DBSPTypeString.INSTANCE));
+        JITRowType nullable = catalog.convertTupleType(
+                new DBSPTypeTuple(DBSPTypeInteger.NULLABLE_SIGNED_32, DBSPTypeString.INSTANCE));
+        Assert.assertEquals(row.getId(), same.getId());
+        Assert.assertEquals(row.getId(), raw.getId());
+        // A nullable column changes the layout
+        Assert.assertNotEquals(row.getId(), nullable.getId());
+        Assert.assertEquals(2, catalog.asJson().size());
+    }
+
+    @Test
+    public void jitWindowTest() {
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement("CREATE TABLE T (COL1 INT NOT NULL, COL4 VARCHAR NOT NULL, COL5 INT)");
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1, SUM(T.COL5) OVER " +
+                "(PARTITION BY T.COL4 ORDER BY T.COL1 RANGE BETWEEN 2 PRECEDING AND CURRENT ROW) FROM T");
+        DBSPCircuit dbsp = compiler.getFinalCircuit("circuit");
+        CompilerOptions.Jit options = new CompilerOptions.Jit();
+        options.describeAggregates = true;
+        JITProgram program = ToJitVisitor.circuitToJIT(dbsp, options);
+        JITValidator.validateProgram(program);
+        JsonNode json = program.asJson();
+        JsonNode window = null;
+        for (JsonNode node: json.get("nodes")) {
+            Map.Entry<String, JsonNode> kind = node.fields().next();
+            if (kind.getKey().startsWith("PartitionedRolling"))
+                window = kind.getValue();
+        }
+        Assert.assertNotNull(window);
+        Assert.assertEquals("{\"lower\":{\"Before\":2},\"upper\":{\"After\":0}}", window.get("range").toString());
+        // The (timestamp, row) values of the window input are stored in a flat row
+        // The input is the derivative of a MapIndex
+        JsonNode input = json.get("nodes").get(window.get("input").asText()).get("Differentiate");
+        String inputLayout = json.get("nodes").get(input.get("input").asText())
+                .get("Map").get("output_layout").get("Map").get(1).asText();
+        Assert.assertEquals("{\"columns\":[{\"nullable\":false,\"ty\":\"I32\"}," +
+                        "{\"nullable\":false,\"ty\":\"I32\"},{\"nullable\":false,\"ty\":\"String\"}," +
+                        "{\"nullable\":true,\"ty\":\"I32\"}]}",
+                json.get("layouts").get(inputLayout).toString());
+        // so COL5 is column 3 of the values seen by the aggregate
+        Assert.assertTrue(window.toString().contains("\"kind\":\"Sum\",\"column\":3"));
+        Assert.assertEquals(json.get("layouts").get(window.get("output_layout").asText()).size(), 1);
+    }
+
+    @Test
+    public void jitDivisionTest() {
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1 / (T.COL1 - 2), T.COL2 / 0 FROM T");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        DBSPZSetLiteral input = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(2), new DBSPDoubleLiteral(1.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("a")),
+                new DBSPTupleExpression(new DBSPI32Literal(6), new DBSPDoubleLiteral(-1.0),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("b")));
+        // Integer division by 0 produces NULL
+        JITInterpreter.crossCheck(circuit, Linq.list(Linq.list(input)));
+    }
+
     @Test
     public void floatJitTest() {
         String ddl = "CREATE TABLE bid (\n" +
@@ -99,4 +303,261 @@ public class DBSPCompilerTests {
         Assert.assertNotNull(t);
         Assert.assertEquals(1, t.size());
     }
+
+    @Test
+    public void interpreterTest() {
+        CompilerOptions options = new CompilerOptions();
+        options.optimizerOptions.incrementalize = true;
+        DBSPCompiler compiler = new DBSPCompiler(options);
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1, COUNT(*), SUM(T.COL2) " +
+                "FROM T JOIN T AS S ON T.COL1 = S.COL1 WHERE T.COL3 GROUP BY T.COL1");
+        compiler.optimize();
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        CircuitInterpreter interpreter = new CircuitInterpreter(circuit);
+
+        DBSPTupleExpression removed = new DBSPTupleExpression(new DBSPI32Literal(1), new DBSPDoubleLiteral(2.0),
+                new DBSPBoolLiteral(true), new DBSPStringLiteral("b"));
+        DBSPZSetLiteral insert = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(1), new DBSPDoubleLiteral(1.0),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("a")),
+                removed,
+                new DBSPTupleExpression(new DBSPI32Literal(2), new DBSPDoubleLiteral(3.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("c")));
+        List<DBSPZSetLiteral> output = interpreter.step(insert);
+        ZSet expected = new ZSet();
+        expected.add(new Tuple(1, 4L, 6.0), 1);
+        Assert.assertEquals(expected, ZSet.fromLiteral(output.get(0)));
+
+        // The output of an incremental circuit is the change of the view
+        DBSPZSetLiteral delete = DBSPZSetLiteral.emptyWithType(insert.getNonVoidType());
+        delete.add(removed, -1);
+        List<ZSet> change = interpreter.step(Collections.singletonList(ZSet.fromLiteral(delete)));
+        expected = new ZSet();
+        expected.add(new Tuple(1, 4L, 6.0), -1);
+        expected.add(new Tuple(1, 1L, 1.0), 1);
+        Assert.assertEquals(expected, change.get(0));
+    }
+
+    @Test
+    public void incrementalWorkloadTest() {
+        String view = "CREATE VIEW V AS SELECT T.COL1, COUNT(*), SUM(T.COL2) FROM T " +
+                "WHERE T.COL3 GROUP BY T.COL1";
+        DBSPCircuit[] circuits = new DBSPCircuit[2];
+        for (int i = 0; i < 2; i++) {
+            CompilerOptions options = new CompilerOptions();
+            options.optimizerOptions.incrementalize = i == 1;
+            DBSPCompiler compiler = new DBSPCompiler(options);
+            compiler.compileStatement(ddl);
+            compiler.compileStatement(view);
+            compiler.optimize();
+            circuits[i] = compiler.getFinalCircuit("circuit");
+        }
+        ZSet table = new ZSet();
+        for (int i = 0; i < 30; i++)
+            table.add(new Tuple(i % 4, (double) i, i % 3 != 0, "s" + i), 1 + i % 2);
+
+        IncrementalWorkload workload = new IncrementalWorkload(1, 4, 0.5);
+        List<List<ZSet>> steps = workload.generate(Collections.singletonList(table));
+        ZSet sum = new ZSet();
+        boolean retracted = false;
+        for (List<ZSet> step: steps) {
+            sum.add(step.get(0));
+            for (Map.Entry<Object, Long> entry: step.get(0).entrySet())
+                retracted |= entry.getValue() < 0;
+        }
+        Assert.assertEquals(table, sum);
+        Assert.assertTrue(retracted);
+        // The workload for a file does not depend on the workloads generated before it
+        workload.startFile("test/select1.test");
+        List<List<ZSet>> forFile = workload.generate(Collections.singletonList(table));
+        IncrementalWorkload fresh = new IncrementalWorkload(1, 4, 0.5);
+        fresh.startFile("test/select1.test");
+        Assert.assertEquals(forFile, fresh.generate(Collections.singletonList(table)));
+
+        List<IncrementalChecker.Step> executed = new IncrementalChecker(circuits[0], circuits[1]).check(steps);
+        Assert.assertEquals(steps.size(), executed.size());
+    }
+
+    @Test
+    public void compiledClosuresTest() {
+        DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1 / (T.COL1 - 1), " +
+                "CASE WHEN T.COL3 OR T.COL2 > 2 THEN T.COL4 || 'x' ELSE NULL END, " +
+                "-T.COL2 * 2, CAST(T.COL1 AS BIGINT) + 1 " +
+                "FROM T WHERE T.COL1 < 10 AND NOT (T.COL4 = 'z')");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        DBSPZSetLiteral input = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(1), new DBSPDoubleLiteral(1.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("a")),
+                new DBSPTupleExpression(new DBSPI32Literal(2), new DBSPDoubleLiteral(3.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("b")),
+                new DBSPTupleExpression(new DBSPI32Literal(3), new DBSPDoubleLiteral(0.5),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("z")),
+                new DBSPTupleExpression(new DBSPI32Literal(20), new DBSPDoubleLiteral(0.5),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("c")));
+        List<DBSPZSetLiteral> interpreted = new CircuitInterpreter(circuit).step(input);
+        List<DBSPZSetLiteral> compiled = new CircuitInterpreter(circuit, true).step(input);
+        ZSet result = ZSet.fromLiteral(compiled.get(0));
+        Assert.assertEquals(ZSet.fromLiteral(interpreted.get(0)), result);
+        ZSet expected = new ZSet();
+        expected.add(new Tuple(null, null, -2.0, 2L), 1);
+        expected.add(new Tuple(2, "bx", -6.0, 3L), 1);
+        Assert.assertEquals(expected, result);
+    }
+
+    @Test
+    public void jitInterpreterTest() {
+        DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1 + 1, T.COL4 FROM T WHERE T.COL1 > 1");
+        compiler.compileStatement("CREATE VIEW W AS SELECT DISTINCT T.COL3 FROM T");
+        compiler.compileStatement("CREATE VIEW J AS SELECT T1.COL1, T2.COL4 FROM T AS T1 JOIN T AS T2 ON T1.COL1 = T2.COL1");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        DBSPZSetLiteral first = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(1), new DBSPDoubleLiteral(1.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("a")),
+                new DBSPTupleExpression(new DBSPI32Literal(2), new DBSPDoubleLiteral(0.5),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("b")));
+        DBSPZSetLiteral second = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(3), new DBSPDoubleLiteral(3.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("c")));
+        JITInterpreter.crossCheck(circuit, Linq.list(
+                Linq.list(first), Linq.list(second)));
+    }
+
+    @Test
+    public void jitFunctionsTest() {
+        DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+        compiler.compileStatement("CREATE TABLE E (TS TIMESTAMP NOT NULL, D DATE, S VARCHAR NOT NULL)");
+        compiler.compileStatement("CREATE VIEW V AS SELECT E.S || '-' || E.S, EXTRACT(YEAR FROM E.TS), " +
+                "EXTRACT(DOW FROM E.D), EXTRACT(MILLISECOND FROM E.TS) FROM E");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        JITProgram program = ToJitVisitor.circuitToJIT(circuit);
+        JITValidator.validateProgram(program);
+        String json = program.asJson().toString();
+        // The inner concatenation is allocated in the arena, the outer one on the heap
+        Assert.assertTrue(json.contains("\"dbsp.str.concat\""));
+        Assert.assertTrue(json.contains("\"dbsp.str.concat_clone\""));
+
+        // Sunday, March 5, 2023
+        long timestamp = LocalDateTime.of(2023, 3, 5, 10, 20, 30, 456_000_000)
+                .toInstant(ZoneOffset.UTC).toEpochMilli();
+        int date = (int) LocalDate.of(2023, 3, 5).toEpochDay();
+        ZSet input = new ZSet();
+        input.add(new Tuple(timestamp, date, "x"), 1);
+        input.add(new Tuple(timestamp, null, "y"), 1);
+        Map<String, ZSet> output = new JITInterpreter(program).step(
+                Collections.singletonMap("E", input));
+        ZSet expected = new ZSet();
+        expected.add(new Tuple("x-x", 2023L, 1L, 30456L), 1);
+        expected.add(new Tuple("y-y", 2023L, null, 30456L), 1);
+        Assert.assertEquals(expected, output.get("V"));
+    }
+
+    @Test
+    public void jitBatchTest() {
+        DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL1 * 2, T.COL4 || 'x' FROM T WHERE T.COL1 > 1 AND T.COL3");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        JITProgram rows = ToJitVisitor.circuitToJIT(circuit);
+        CompilerOptions.Jit options = new CompilerOptions.Jit();
+        options.batch = true;
+        JITProgram batch = ToJitVisitor.circuitToJIT(circuit, options);
+        JITValidator.validateProgram(batch);
+        Assert.assertFalse(rows.asJson().toString().contains("calling_convention"));
+        Assert.assertTrue(batch.asJson().toString().contains("\"calling_convention\":\"Batch\""));
+
+        ZSet input = new ZSet();
+        for (int i = 0; i < 10; i++)
+            input.add(new Tuple(i, (double) i, i % 3 != 0, "s" + i), 1);
+        Map<String, ZSet> tables = Collections.singletonMap("T", input);
+        ZSet expected = new JITInterpreter(rows).step(tables).get("V");
+        Assert.assertEquals(5, expected.entrySet().size());
+        Assert.assertEquals(expected, new JITInterpreter(batch).step(tables).get("V"));
+    }
+
+    @Test
+    public void jitBatchLayoutTest() {
+        DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+        compiler.compileStatement("CREATE TABLE S(A INT, B INT NOT NULL)");
+        compiler.compileStatement("CREATE VIEW V AS SELECT S.A + S.B FROM S WHERE S.B > 1");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        CompilerOptions.Jit options = new CompilerOptions.Jit();
+        options.batch = true;
+        JITProgram program = ToJitVisitor.circuitToJIT(circuit, options);
+        JITFunction filter = null;
+        JITFunction map = null;
+        for (JITOperator operator: program.getOperators()) {
+            if (operator.is(JITFilterOperator.class))
+                filter = operator.function;
+            else if (operator.is(JITMapOperator.class))
+                map = operator.function;
+        }
+        Assert.assertNotNull(filter);
+        Assert.assertNotNull(map);
+
+        // 10 rows; A is null in even rows
+        JITBatch filterBatch = new JITBatch(filter, 10);
+        JITBatch mapBatch = new JITBatch(map, 10);
+        for (int i = 0; i < 10; i++) {
+            Tuple row = new Tuple(i % 2 == 0 ? null : i, i);
+            filterBatch.setRow(0, i, JITRow.fromTuple(row, filter.parameters.get(0).type));
+            mapBatch.setRow(0, i, JITRow.fromTuple(row, map.parameters.get(0).type));
+        }
+        // Filter: A values, A null bitmap, B values, N, result bitmap
+        Assert.assertEquals(5, filterBatch.arguments.size());
+        Assert.assertArrayEquals(new byte[] { 0x55, 0x01 }, (byte[]) filterBatch.arguments.get(1));
+        Assert.assertEquals(10L, filterBatch.arguments.get(3));
+        new JITFunctionInterpreter(filter).callBatch(filterBatch);
+        // Rows 2 to 9 are selected
+        Assert.assertArrayEquals(new byte[] { (byte) 0xFC, 0x03 }, (byte[]) filterBatch.arguments.get(4));
+
+        // Map: the input columns, the output column and its null bitmap, N; the result is unit
+        Assert.assertEquals(6, mapBatch.arguments.size());
+        new JITFunctionInterpreter(map).callBatch(mapBatch);
+        Object[] sums = (Object[]) mapBatch.arguments.get(3);
+        Assert.assertEquals(6, sums[3]);
+        Assert.assertArrayEquals(new byte[] { 0x55, 0x01 }, (byte[]) mapBatch.arguments.get(4));
+        Assert.assertNull(mapBatch.getResult(0));
+    }
+
+    @Test
+    public void jitAggregateTest() {
+        DBSPCompiler compiler = new DBSPCompiler(new CompilerOptions());
+        compiler.compileStatement(ddl);
+        compiler.compileStatement("CREATE VIEW V AS SELECT T.COL3, COUNT(*), SUM(T.COL1), " +
+                "MIN(T.COL1), MAX(T.COL1), AVG(T.COL1) FROM T GROUP BY T.COL3");
+        DBSPCircuit circuit = compiler.getFinalCircuit("circuit");
+        // By default aggregates are folds
+        JITProgram fold = ToJitVisitor.circuitToJIT(circuit);
+        JITValidator.validateProgram(fold);
+        String json = fold.asJson().toString();
+        Assert.assertTrue(json.contains("step_fn"));
+        Assert.assertFalse(json.contains("\"aggregates\""));
+        CompilerOptions.Jit options = new CompilerOptions.Jit();
+        options.describeAggregates = true;
+        JITProgram program = ToJitVisitor.circuitToJIT(circuit, options);
+        JITValidator.validateProgram(program);
+        json = program.asJson().toString();
+        // All aggregates are described by typed accumulators, and there is no generic fold
+        Assert.assertTrue(json.contains("\"kind\":\"Average\""));
+        Assert.assertTrue(json.contains("\"semigroup\":\"PairSemigroup\""));
+        Assert.assertFalse(json.contains("step_fn"));
+        DBSPZSetLiteral first = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(1), new DBSPDoubleLiteral(1.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("a")),
+                new DBSPTupleExpression(new DBSPI32Literal(2), new DBSPDoubleLiteral(0.5),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("b")),
+                new DBSPTupleExpression(new DBSPI32Literal(4), new DBSPDoubleLiteral(0.5),
+                        new DBSPBoolLiteral(true), new DBSPStringLiteral("c")));
+        DBSPZSetLiteral second = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(3), new DBSPDoubleLiteral(3.0),
+                        new DBSPBoolLiteral(false), new DBSPStringLiteral("c")));
+        List<List<DBSPZSetLiteral>> inputs = Linq.list(Linq.list(first), Linq.list(second));
+        JITInterpreter.crossCheck(circuit, fold, inputs);
+        JITInterpreter.crossCheck(circuit, program, inputs);
+    }
 }
@@ -26,6 +26,7 @@ package org.dbsp.sqlCompiler.compiler;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.beust.jcommander.ParameterException;
 import org.apache.calcite.adapter.jdbc.JdbcSchema;
 import org.apache.calcite.jdbc.CalciteConnection;
 import org.apache.calcite.rel.RelNode;
@@ -34,11 +35,25 @@ import org.apache.calcite.tools.FrameworkConfig;
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.tools.RelBuilder;
 import org.apache.calcite.tools.RelRunner;
+import org.dbsp.sqlCompiler.compiler.backend.optimize.EliminateClones;
+import org.dbsp.sqlCompiler.compiler.backend.rust.BenchmarkGenerator;
 import org.dbsp.sqlCompiler.compiler.backend.rust.RustFileWriter;
+import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustInnerVisitor;
 import org.dbsp.sqlCompiler.compiler.errors.CompilerMessages;
 import org.dbsp.sqlCompiler.CompilerMain;
 import org.dbsp.sqlCompiler.circuit.DBSPCircuit;
+import org.dbsp.sqlCompiler.circuit.IDBSPNode;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPMapOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPOperator;
+import org.dbsp.sqlCompiler.circuit.operator.DBSPSinkOperator;
+import org.dbsp.sqlCompiler.compiler.backend.CircuitFootprint;
+import org.dbsp.sqlCompiler.compiler.backend.CircuitHasher;
+import org.dbsp.sqlCompiler.compiler.backend.ColumnarWriter;
 import org.dbsp.sqlCompiler.compiler.backend.DBSPCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.ClosureCompiler;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.ExpressionEvaluator;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.ICompiledClosure;
+import org.dbsp.sqlCompiler.compiler.backend.interpreter.Tuple;
 import org.dbsp.sqlCompiler.compiler.backend.ToCsvVisitor;
 import org.dbsp.sqlCompiler.compiler.backend.rust.ToRustVisitor;
 import org.dbsp.sqlCompiler.compiler.frontend.CollectIdentifiers;
@@ -48,10 +63,27 @@ import org.dbsp.sqlCompiler.ir.expression.literal.*;
 import org.dbsp.sqlCompiler.ir.statement.DBSPExpressionStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPLetStatement;
 import org.dbsp.sqlCompiler.ir.statement.DBSPStatement;
+import org.dbsp.sqlCompiler.ir.type.DBSPType;
+import org.dbsp.sqlCompiler.ir.type.DBSPTypeRawTuple;
 import org.dbsp.sqlCompiler.ir.type.DBSPTypeUser;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeDate;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeString;
+import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeTimestamp;
 import org.dbsp.sqlCompiler.ir.type.primitive.DBSPTypeInteger;
+import org.dbsp.sqllogictest.AcceptancePolicy;
+import org.dbsp.sqllogictest.ChangedComponents;
+import org.dbsp.sqllogictest.ISqlTestOperation;
+import org.dbsp.sqllogictest.SLTTestFile;
+import org.dbsp.sqllogictest.SqlStatement;
+import org.dbsp.sqllogictest.SqlTestQuery;
+import org.dbsp.sqllogictest.executors.AdaptiveBatchSize;
+import org.dbsp.sqllogictest.executors.ResultCache;
+import org.dbsp.sqllogictest.executors.SpillingRowSorter;
+import org.dbsp.util.BuildCache;
 import org.dbsp.util.FreshName;
 import org.dbsp.util.IModule;
+import org.dbsp.util.IndentStream;
+import org.dbsp.util.Linq;
 import org.dbsp.util.Logger;
 import org.dbsp.util.StringPrintStream;
 import org.dbsp.util.Utilities;
@@ -62,6 +94,7 @@ import sun.awt.image.JPEGImageDecoder;
 
 import javax.sql.DataSource;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.*;
@@ -69,6 +102,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 
@@ -117,6 +151,172 @@ public class OtherTests extends BaseSQLTests implements IModule {
         this.testQuery(query);
     }
 
+    @Test
+    public void testCircuitHash() {
+        String query = "CREATE VIEW V AS SELECT T.COL3 FROM T WHERE T.COL1 > 5";
+        DBSPCircuit first = this.queryToCircuit(query);
+        DBSPCircuit second = this.queryToCircuit(query);
+        // Stream names differ, but the hash does not depend on them
+        Assert.assertEquals(CircuitHasher.hash(first), CircuitHasher.hash(second));
+        DBSPCircuit other = this.queryToCircuit("CREATE VIEW V AS SELECT T.COL3 FROM T WHERE T.COL1 > 6");
+        Assert.assertNotEquals(CircuitHasher.hash(first), CircuitHasher.hash(other));
+        // Names of aggregation variables are generated too
+        String aggregate = "CREATE VIEW V AS SELECT T.COL1, SUM(T.COL2) FROM T GROUP BY T.COL1";
+        Assert.assertEquals(CircuitHasher.hash(this.queryToCircuit(aggregate)),
+                CircuitHasher.hash(this.queryToCircuit(aggregate)));
+    }
+
+    @Test
+    public void buildCacheKeyTest() throws IOException {
+        // Keys do not depend on the location of the files
+        File first = Files.createTempDirectory("first").toFile();
+        File second = Files.createTempDirectory("second").toFile();
+        for (File dir: Linq.list(first, second)) {
+            File lib = new File(dir, "lib");
+            Assert.assertTrue(lib.mkdir());
+            Files.write(new File(lib, "lib.rs").toPath(), "fn f() {}".getBytes(StandardCharsets.UTF_8));
+        }
+        String key = new BuildCache.KeyBuilder().addFile(new File(first, "lib")).build();
+        Assert.assertEquals(key, new BuildCache.KeyBuilder().addFile(new File(second, "lib")).build());
+        Files.write(new File(second, "lib/lib.rs").toPath(), "fn g() {}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNotEquals(key, new BuildCache.KeyBuilder().addFile(new File(second, "lib")).build());
+        Assert.assertEquals(Utilities.getCompilerVersion(), Utilities.getCompilerVersion());
+        for (File dir: Linq.list(first, second)) {
+            Assert.assertTrue(new File(dir, "lib/lib.rs").delete());
+            Assert.assertTrue(new File(dir, "lib").delete());
+            Assert.assertTrue(dir.delete());
+        }
+    }
+
+    @Test
+    public void testEliminateClones() throws IOException {
+        DBSPType pair = new DBSPTypeRawTuple(DBSPTypeString.INSTANCE, DBSPTypeString.NULLABLE_INSTANCE);
+        DBSPVariablePath a = pair.var("a");
+        EliminateClones clones = new EliminateClones();
+        // Each field of an owned tuple used once is moved
+        DBSPExpression moved = new DBSPTupleExpression(a.field(0), a.field(1).is_null())
+                .closure(a.asParameter());
+        String rust = ToRustInnerVisitor.toRustString(clones.apply(moved));
+        Assert.assertFalse(rust.contains("clone"));
+        // A field used twice is cloned
+        DBSPExpression twice = new DBSPTupleExpression(a.field(0), a.field(0))
+                .closure(a.asParameter());
+        rust = ToRustInnerVisitor.toRustString(clones.apply(twice));
+        Assert.assertTrue(rust.contains("a.0.clone()"));
+        // A field behind a reference is cloned, unless it is only borrowed
+        DBSPExpression ref = new DBSPTupleExpression(a.field(0), a.field(1).is_null())
+                .closure(a.asRefParameter());
+        rust = ToRustInnerVisitor.toRustString(clones.apply(ref));
+        Assert.assertTrue(rust.contains("a.0.clone()"));
+        Assert.assertTrue(rust.contains("a.1.is_none()"));
+
+        // The projection after a join is fused into the join closure,
+        // so only the string column which is kept is cloned, once
+        DBSPCircuit circuit = this.queryToCircuit("CREATE VIEW V AS SELECT T.COL1, S.COL4 " +
+                "FROM T JOIN T AS S ON T.COL1 = S.COL5");
+        StringPrintStream stream = new StringPrintStream();
+        RustFileWriter writer = new RustFileWriter(stream.getPrintStream());
+        writer.add(circuit);
+        writer.write();
+        rust = stream.toString();
+        String join = rust.substring(rust.indexOf("let join"));
+        join = join.substring(0, join.indexOf("};"));
+        Assert.assertTrue(join.contains("Tuple2::new(l.0, r.3.clone())"));
+        Assert.assertFalse(join.contains("l.3.clone()"));
+        Assert.assertFalse(rust.contains(".map("));
+
+        // The join which implements a window only clones the columns in the output
+        circuit = this.queryToCircuit("CREATE VIEW V AS SELECT T.COL1, " +
+                "SUM(T.COL5) OVER (PARTITION BY T.COL4 ORDER BY T.COL1 " +
+                "RANGE BETWEEN 2 PRECEDING AND CURRENT ROW) FROM T");
+        stream = new StringPrintStream();
+        writer = new RustFileWriter(stream.getPrintStream());
+        writer.add(circuit);
+        writer.write();
+        rust = stream.toString();
+        join = rust.substring(rust.indexOf("let join"));
+        join = join.substring(0, join.indexOf("};"));
+        Assert.assertFalse(join.contains("clone"));
+    }
+
+    /**
+     * Compares the compiled closures with the ExpressionEvaluator on a Map closure.
+     * Run with the debug level of this module set to 1 to see the timings.
+     */
+    @Test
+    public void closureCompilerBenchmark() {
+        String query = "CREATE VIEW V AS SELECT T.COL1 * 2 + T.COL5, T.COL2 / T.COL6, " +
+                "CASE WHEN T.COL3 AND T.COL1 > 10 THEN T.COL4 ELSE 'n' END FROM T";
+        DBSPCircuit circuit = this.queryToCircuit(query);
+        DBSPClosureExpression closure = null;
+        for (IDBSPNode node: circuit.circuit.getCode()) {
+            DBSPMapOperator map = node.as(DBSPMapOperator.class);
+            if (map != null)
+                closure = circuit.circuit.resolve(map.getFunction()).to(DBSPClosureExpression.class);
+        }
+        Assert.assertNotNull(closure);
+
+        final int rows = 2_000;
+        List<Tuple> data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            data.add(new Tuple(i, (double) i, i % 2 == 0, "s" + i,
+                    i % 7 == 0 ? null : i, i % 5 == 0 ? null : (double) i));
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(circuit.circuit);
+        DBSPClosureExpression toInterpret = closure;
+        ICompiledClosure interpreted = arguments -> evaluator.apply(toInterpret, arguments);
+        ICompiledClosure compiled = ClosureCompiler.compile(closure);
+
+        long[] times = new long[2];
+        int[] hashes = new int[2];
+        ICompiledClosure[] closures = new ICompiledClosure[] { interpreted, compiled };
+        // The first iteration warms up the JVM
+        for (int iteration = 0; iteration < 3; iteration++) {
+            for (int c = 0; c < closures.length; c++) {
+                long start = System.nanoTime();
+                for (Tuple row: data)
+                    hashes[c] += Objects.hashCode(closures[c].apply(new Object[] { row }));
+                if (iteration > 0)
+                    times[c] += System.nanoTime() - start;
+            }
+        }
+        Assert.assertEquals(hashes[0], hashes[1]);
+        for (Tuple row: data)
+            Assert.assertEquals(interpreted.apply(new Object[] { row }), compiled.apply(new Object[] { row }));
+        Logger.INSTANCE.from(this, 1)
+                .append("ExpressionEvaluator: ")
+                .append(times[0] / 2_000_000)
+                .append("ms, ClosureCompiler: ")
+                .append(times[1] / 2_000_000)
+                .append("ms for ")
+                .append(rows)
+                .append(" rows")
+                .newline();
+    }
+
+    @Test
+    public void instrumentationTest() {
+        String query = "CREATE VIEW V AS SELECT T.COL3 FROM T WHERE T.COL1 > 5";
+        DBSPCircuit circuit = this.queryToCircuit(query);
+        String rust = ToRustVisitor.toRustString(circuit, true);
+        // The timer is attached before any operator is built
+        int attach = rust.indexOf("let operator_timer = OperatorTimer::attach(circuit);");
+        Assert.assertTrue(attach > 0);
+        Assert.assertTrue(attach < rust.indexOf("register_operator("));
+        for (IDBSPNode node: circuit.circuit.getCode()) {
+            DBSPOperator operator = node.as(DBSPOperator.class);
+            if (operator == null)
+                continue;
+            Assert.assertTrue(rust.contains("register_operator(" + operator.id + ", "));
+            if (operator.is(DBSPSinkOperator.class))
+                continue;
+            // Each operator output is timed by its own circuit node, not by its neighbors
+            Assert.assertTrue(rust.contains("operator_timer.track(&" + operator.getName() + ", " + operator.id + ");"));
+            Assert.assertTrue(rust.contains(operator.getName() +
+                    ".inspect(move |batch| record_operator_batch(" + operator.id + ", batch.len()));"));
+        }
+        Assert.assertFalse(ToRustVisitor.toRustString(circuit, false).contains("operator_timer"));
+    }
+
     @Test
     public void loggerTest() {
         StringBuilder builder = new StringBuilder();
@@ -221,6 +421,59 @@ public class OtherTests extends BaseSQLTests implements IModule {
         Assert.assertTrue(success);
     }
 
+    @Test
+    public void toColumnsTest() throws IOException {
+        DBSPZSetLiteral s = new DBSPZSetLiteral(BaseSQLTests.e0, BaseSQLTests.e1);
+        Assert.assertTrue(ColumnarWriter.isSupported(s));
+        File file = File.createTempFile("test", ".columns");
+        ColumnarWriter.toColumns(file.getPath(), s);
+        byte[] data = Files.readAllBytes(file.toPath());
+        Assert.assertTrue(file.delete());
+        Assert.assertEquals("DBSPCOL1", new String(data, 0, 8, StandardCharsets.US_ASCII));
+        // header 20, column descriptors 12, weights 16, and columns:
+        // i32 8, f64 16, bool 2, string 12 + 4, nullable i32 1 + 8, nullable f64 1 + 16
+        Assert.assertEquals(116, data.length);
+    }
+
+    @Test
+    public void rustColumnsTest() throws IOException, InterruptedException {
+        DBSPZSetLiteral data = new DBSPZSetLiteral(BaseSQLTests.e0, BaseSQLTests.e1);
+        // Dates and timestamps are stored as strings, parsed by their deserializers
+        DBSPZSetLiteral times = new DBSPZSetLiteral(
+                new DBSPTupleExpression(new DBSPI32Literal(1),
+                        new DBSPDateLiteral("2023-01-31", true),
+                        new DBSPTimestampLiteral("2023-01-31 10:20:30.456", true)),
+                new DBSPTupleExpression(new DBSPI32Literal(2),
+                        new DBSPDateLiteral("1969-12-31", true),
+                        new DBSPTimestampLiteral("1969-12-31 23:59:59.999", true)),
+                new DBSPTupleExpression(new DBSPI32Literal(3),
+                        DBSPLiteral.none(DBSPTypeDate.NULLABLE_INSTANCE),
+                        DBSPLiteral.none(DBSPTypeTimestamp.NULLABLE_INSTANCE)));
+        List<DBSPStatement> list = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (DBSPZSetLiteral literal: Linq.list(data, times)) {
+            String fileName = BaseSQLTests.rustDirectory + "/" + "test" + files.size() + ".columns";
+            files.add(ColumnarWriter.toColumns(fileName, literal));
+            DBSPLetStatement src = new DBSPLetStatement("src" + files.size(),
+                    new DBSPApplyExpression("read_columns", literal.getNonVoidType(),
+                            new DBSPStrLiteral(fileName)));
+            list.add(src);
+            list.add(new DBSPExpressionStatement(new DBSPApplyExpression(
+                    "assert_eq!", null, src.getVarReference(),
+                    literal)));
+        }
+        DBSPExpression body = new DBSPBlockExpression(list, null);
+        DBSPFunction tester = new DBSPFunction("test", new ArrayList<>(), null, body)
+                .addAnnotation("#[test]");
+
+        RustFileWriter writer = new RustFileWriter(BaseSQLTests.testFilePath);
+        writer.add(tester);
+        writer.writeAndClose();
+        Utilities.compileAndTestRust(BaseSQLTests.rustDirectory, false);
+        for (File file: files)
+            Assert.assertTrue(file.delete());
+    }
+
     @SuppressWarnings("SqlDialectInspection")
     @Test
     public void rustSqlTest() throws IOException, InterruptedException, SQLException {
@@ -375,6 +628,46 @@ public class OtherTests extends BaseSQLTests implements IModule {
         Assert.assertTrue(success);
     }
 
+    @Test
+    public void benchmarkGeneratorTest() throws IOException {
+        String[] statements = new String[]{
+                "CREATE TABLE T (\n" +
+                        "COL1 INT NOT NULL" +
+                        ", COL2 VARCHAR" +
+                        ")",
+                "CREATE VIEW V AS SELECT COL1 FROM T WHERE COL1 > 5"
+        };
+        File file = this.createInputScript(statements);
+        File rust = File.createTempFile("out", ".rs", new File("."));
+        CompilerMessages message = CompilerMain.execute("-bench", "-benchSteps", "7",
+                "-benchBatch", "3", "-benchTableCardinality", "T=5", "-benchSeed", "42",
+                "-o", rust.getPath(), file.getPath());
+        Assert.assertEquals(0, message.exitCode);
+        String output = new String(Files.readAllBytes(rust.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(output.contains("struct BenchRng"));
+        Assert.assertTrue(output.contains("fn gen_T(rng: &mut BenchRng, rows: usize)"));
+        Assert.assertTrue(output.contains("rng.key(5, 0.0) as i32"));
+        Assert.assertTrue(output.contains(
+                "if rng.chance(0.1) { None } else { Some(format!(\"s{}\", rng.key(5, 0.0))) }"));
+        Assert.assertTrue(output.contains("let mut rng = BenchRng::new(42);"));
+        Assert.assertTrue(output.contains("for _ in 0..7 {"));
+        Assert.assertTrue(output.contains("let input0 = gen_T(&mut rng, 3);"));
+        Assert.assertTrue(output.contains("let rows = 21 as f64;"));
+        boolean success = file.delete();
+        Assert.assertTrue(success);
+        success = rust.delete();
+        Assert.assertTrue(success);
+
+        CompilerOptions.Benchmark options = new CompilerOptions.Benchmark();
+        options.cardinality = 0;
+        Assert.assertThrows(ParameterException.class,
+                () -> new BenchmarkGenerator(new IndentStream(new StringBuilder()), options));
+        options.cardinality = 1;
+        options.tableCardinality.add("T=0");
+        Assert.assertThrows(ParameterException.class,
+                () -> new BenchmarkGenerator(new IndentStream(new StringBuilder()), options));
+    }
+
     @Test
     public void testCompilerToJpeg() throws IOException {
         String[] statements = new String[]{
@@ -470,6 +763,246 @@ public class OtherTests extends BaseSQLTests implements IModule {
         Assert.assertTrue(success);
     }
 
+    @Test
+    public void adaptiveBatchSizeTest() {
+        // Target: batches that build in 60 seconds
+        AdaptiveBatchSize size = new AdaptiveBatchSize(60, 500);
+        size.startFile(20);
+        Assert.assertEquals(20, size.getBatchSize());
+        // 20 queries, 1000 bytes each, built in 10 seconds: grow, but at most 2x
+        size.recordBatch(20, 20_000, 10_000_000_000L);
+        Assert.assertEquals(40, size.getBatchSize());
+        size.recordBatch(40, 40_000, 20_000_000_000L);
+        Assert.assertEquals(80, size.getBatchSize());
+        size.recordBatch(80, 80_000, 40_000_000_000L);
+        Assert.assertEquals(120, size.getBatchSize());
+        // Code three times larger than the target allows should be split before building
+        Assert.assertTrue(size.shouldSplit(120, 360_000));
+        Assert.assertFalse(size.shouldSplit(120, 120_000));
+        // A new file with queries that generate 10 times more code shrinks immediately
+        size.startFile(120);
+        size.recordBatch(120, 1_200_000, 600_000_000_000L);
+        Assert.assertEquals(12, size.getBatchSize());
+    }
+
+    @Test
+    public void spillingRowSorterTest() throws IOException {
+        java.util.Random random = new java.util.Random(0);
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            rows.add(Linq.list(Integer.toString(random.nextInt(100)), "x" + random.nextInt()));
+        List<List<String>> sorted = new ArrayList<>();
+        try (SpillingRowSorter sorter = new SpillingRowSorter(4096)) {
+            for (List<String> row: rows)
+                sorter.add(row);
+            Assert.assertTrue(sorter.getSpilledRuns() > 1);
+            sorter.forEachSorted(sorted::add);
+        }
+        rows.sort(SpillingRowSorter.ROW_COMPARATOR);
+        Assert.assertEquals(rows, sorted);
+    }
+
+    @Test
+    public void resultCacheTest() throws IOException {
+        File dir = Files.createTempDirectory("results").toFile();
+        File test = new File(dir, "t.test");
+        Files.write(test.toPath(), (
+                "statement ok\nCREATE TABLE t(a INTEGER)\n\n" +
+                "query I nosort\nSELECT a FROM t\n----\n\n" +
+                "statement ok\nINSERT INTO t VALUES(1)\n\n" +
+                "query I nosort\nSELECT a FROM t\n----\n1\n").getBytes(StandardCharsets.UTF_8));
+        SLTTestFile file = new SLTTestFile(test.getPath());
+        file.parse((skip, only) -> true);
+        File cacheDir = new File(dir, "cache");
+        ResultCache cache = new ResultCache(cacheDir.getPath());
+        ResultCache.Result result = new ResultCache.Result(1, "b026324c6904b2a9cb4b88d6d61c81d1");
+        // The results are found for a copy of the file elsewhere
+        File copyDir = new File(dir, "copy");
+        Assert.assertTrue(copyDir.mkdir());
+        File copy = new File(copyDir, "other.test");
+        Files.copy(test.toPath(), copy.toPath());
+        for (int run = 0; run < 2; run++) {
+            cache.startFile(run == 0 ? test : copy);
+            List<SqlTestQuery> queries = new ArrayList<>();
+            for (ISqlTestOperation operation: file.fileContents) {
+                SqlStatement statement = operation.as(SqlStatement.class);
+                if (statement != null)
+                    cache.statement(statement);
+                else
+                    queries.add(operation.to(SqlTestQuery.class));
+            }
+            // The two queries have the same text, but run in different states
+            SqlTestQuery query = queries.get(1);
+            if (run == 0) {
+                Assert.assertNull(cache.lookup(query));
+                cache.store(query, result);
+                cache.endFile();
+            } else {
+                ResultCache.Result cached = cache.lookup(query);
+                Assert.assertNotNull(cached);
+                Assert.assertEquals(result.valueCount, cached.valueCount);
+                Assert.assertEquals(result.hash, cached.hash);
+            }
+        }
+        // A different test file does not see these results
+        Files.write(test.toPath(), "statement ok\nCREATE TABLE t(a INTEGER)\n".getBytes(StandardCharsets.UTF_8));
+        cache.startFile(test);
+        cache.statement(new SqlStatement("CREATE TABLE t(a INTEGER)", true));
+        cache.statement(new SqlStatement("INSERT INTO t VALUES(1)", true));
+        Assert.assertNull(cache.lookup(file.fileContents.get(3).to(SqlTestQuery.class)));
+        File[] entries = cacheDir.listFiles();
+        Assert.assertNotNull(entries);
+        Assert.assertEquals(1, entries.length);
+        Assert.assertTrue(entries[0].delete());
+        Assert.assertTrue(cacheDir.delete());
+        Assert.assertTrue(copy.delete());
+        Assert.assertTrue(copyDir.delete());
+        Assert.assertTrue(test.delete());
+        Assert.assertTrue(dir.delete());
+    }
+
+    @Test
+    public void footprintTest() throws IOException {
+        String query = "CREATE VIEW V AS SELECT T.COL1 + 1 FROM T WHERE T.COL2 > 0";
+        DBSPCircuit circuit = this.queryToCircuit(query);
+        CircuitFootprint footprint = CircuitFootprint.compute(circuit);
+        Assert.assertTrue(footprint.classes.contains("DBSPFilterOperator"));
+        // Superclasses are part of the footprint
+        Assert.assertTrue(footprint.classes.contains("DBSPOperator"));
+        Assert.assertTrue(footprint.functions.contains("plus_i32_i32"));
+
+        ChangedComponents changes = new ChangedComponents();
+        changes.addFile("docs/README.md");
+        changes.addFile("SQL-compiler/src/main/java/org/dbsp/sqlCompiler/ir/expression/DBSPApplyExpression.java");
+        // Diffs as produced by 'git diff -U0 -W'
+        changes.addRustDiff("lib/sqllib/src/lib.rs",
+                "@@ -3,8 +3,8 @@ use std::ops::Add;\n" +
+                " pub fn plus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                "     left + right\n" +
+                " }\n" +
+                " \n" +
+                "-#[inline(always)]\n" +
+                "+#[inline]\n" +
+                " pub fn minus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                "-    left + right\n" +
+                "+    left - right\n" +
+                " }\n");
+        Assert.assertEquals(Linq.list("minus_i32_i32"), new ArrayList<>(changes.functions));
+        Assert.assertFalse(changes.affects(footprint));
+        changes.addRustDiff("lib/sqllib/src/lib.rs",
+                "@@ -20,3 +20,3 @@ pub fn minus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                " pub fn plus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                "-    left - right\n" +
+                "+    left + right\n" +
+                " }\n");
+        Assert.assertTrue(changes.affects(footprint));
+
+        changes = new ChangedComponents();
+        changes.addFile("SQL-compiler/src/main/java/org/dbsp/sqlCompiler/ir/DBSPNode.java");
+        Assert.assertTrue(changes.affects(footprint));
+        changes = new ChangedComponents();
+        // The header names the function preceding the hunk, but the hunk
+        // only changes a macro invocation, which may define any function.
+        changes.addRustDiff("lib/sqllib/src/lib.rs",
+                "@@ -12 +12 @@ pub fn minus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                "-some_function2!(abs, i32);\n" +
+                "+some_function2!(abs, i64);\n");
+        Assert.assertTrue(changes.all);
+        changes = new ChangedComponents();
+        // A change to a function defined by a macro
+        changes.addRustDiff("lib/sqllib/src/lib.rs",
+                "@@ -40,5 +40,5 @@ pub fn plus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                " some_macro! {\n" +
+                "     fn $name(left: $t) -> $t {\n" +
+                "-        left\n" +
+                "+        -left\n" +
+                "     }\n" +
+                " }\n");
+        Assert.assertTrue(changes.all);
+        changes = new ChangedComponents();
+        changes.addFile("SQL-compiler/src/main/java/org/dbsp/sqlCompiler/compiler/backend/optimize/EliminateClones.java");
+        Assert.assertTrue(changes.affects(footprint));
+
+        // A change to a helper selects the queries that call it indirectly
+        ChangedComponents.CallGraph graph = new ChangedComponents.CallGraph();
+        graph.addSource(
+                "fn wrap(value: i32) -> i32 {\n" +
+                "    value\n" +
+                "}\n\n" +
+                "pub fn plus_i32_i32(left: i32, right: i32) -> i32 {\n" +
+                "    wrap(left + right)\n" +
+                "}\n");
+        changes = new ChangedComponents();
+        changes.addRustDiff("lib/sqllib/src/lib.rs",
+                "@@ -1,3 +1,3 @@\n" +
+                " fn wrap(value: i32) -> i32 {\n" +
+                "-    value\n" +
+                "+    -value\n" +
+                " }\n");
+        Assert.assertFalse(changes.affects(footprint));
+        changes.addCallers(graph);
+        Assert.assertFalse(changes.all);
+        Assert.assertTrue(changes.affects(footprint));
+
+        // Decimal multiplication reaches the helper through the Mul trait
+        DBSPCompiler compiler = this.compileDef();
+        compiler.compileStatement("CREATE TABLE D (X DECIMAL(10, 2))");
+        compiler.compileStatement("CREATE VIEW V AS SELECT D.X * D.X FROM D");
+        CircuitFootprint decimal = CircuitFootprint.compute(getCircuit(compiler));
+        Assert.assertFalse(decimal.functions.contains("div_round"));
+        changes = new ChangedComponents();
+        changes.addRustDiff("lib/sqllib/src/fixed.rs",
+                "@@ -116,3 +116,3 @@\n" +
+                " fn div_round(value: i128, divisor: i128) -> i128 {\n" +
+                "-    value / divisor\n" +
+                "+    (value + divisor / 2) / divisor\n" +
+                " }\n");
+        Assert.assertFalse(changes.affects(decimal));
+        changes.addCallers(ChangedComponents.CallGraph.of(new File("../lib/sqllib/src")));
+        Assert.assertTrue(changes.affects(decimal));
+    }
+
+    @Test
+    public void streamingParseTest() throws IOException {
+        File test = File.createTempFile("stream", ".test");
+        Files.write(test.toPath(), (
+                "hash-threshold 8\n\n" +
+                "statement ok\nCREATE TABLE t(a INTEGER)\n\n" +
+                "onlyif mysql\nstatement ok\nINSERT INTO t VALUES(2)\n\n" +
+                "statement ok\nINSERT INTO t VALUES(1)\n\n" +
+                "query I rowsort\nSELECT a FROM t\n----\n1\n\n" +
+                "query I nosort\nSELECT a + 1 FROM t\n----\n1 values hashing to 26ab0db90d72e28ad0ba1e22ee510510\n")
+                .getBytes(StandardCharsets.UTF_8));
+        AcceptancePolicy policy = (skip, only) -> only.isEmpty();
+        SLTTestFile parsed = new SLTTestFile(test.getPath());
+        parsed.parse(policy);
+        SLTTestFile streamed = new SLTTestFile(test.getPath());
+        streamed.stream(policy);
+        List<String> operations = new ArrayList<>();
+        for (ISqlTestOperation operation: streamed)
+            operations.add(operation.toString());
+        Assert.assertEquals(Linq.map(parsed.fileContents, Object::toString), operations);
+        Assert.assertEquals(4, operations.size());
+        Assert.assertEquals(2, streamed.getTestCount());
+        Assert.assertThrows(RuntimeException.class, streamed::iterator);
+        Assert.assertNull(streamed.getStreamError());
+
+        // An error ends the iteration after the preceding operations
+        Files.write(test.toPath(), (
+                "statement ok\nCREATE TABLE t(a INTEGER)\n\n" +
+                "garbage\n\n" +
+                "statement ok\nINSERT INTO t VALUES(1)\n")
+                .getBytes(StandardCharsets.UTF_8));
+        streamed = new SLTTestFile(test.getPath());
+        streamed.stream(policy);
+        operations.clear();
+        for (ISqlTestOperation operation: streamed)
+            operations.add(operation.toString());
+        Assert.assertEquals(1, operations.size());
+        Assert.assertTrue(streamed.getStreamError() instanceof SLTTestFile.ParseException);
+        Assert.assertTrue(test.delete());
+    }
+
     @Test
     public void testFreshName() {
         String query = "CREATE VIEW V AS SELECT T.COL1 FROM T WHERE T.COL2 > 0";
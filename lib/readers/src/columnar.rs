@@ -0,0 +1,349 @@
+//! Reader for the binary columnar format produced by the SQL compiler
+//! (see ColumnarWriter.java for a description of the layout).
+//! The file is memory-mapped, and each row is deserialized directly
+//! from the typed column blocks, without parsing strings.
+
+use dbsp::{
+    DBData,
+    DBWeight,
+    OrdZSet,
+};
+use memmap2::Mmap;
+use serde::{
+    de::{self, DeserializeSeed, Deserializer, SeqAccess, Visitor},
+    forward_to_deserialize_any,
+    Deserialize,
+};
+use std::{
+    convert::TryFrom,
+    fmt::Debug,
+    fs::File,
+};
+
+const MAGIC: &[u8] = b"DBSPCOL1";
+
+type Error = de::value::Error;
+
+/// Column type codes; must match the ones in ColumnarWriter.
+#[derive(Clone, Copy, Debug, PartialEq)]
+enum ColumnType {
+    Bool,
+    I16,
+    I32,
+    I64,
+    U32,
+    U64,
+    F32,
+    F64,
+    Str,
+}
+
+impl ColumnType {
+    fn from_code(code: u8) -> Self {
+        match code {
+            0 => ColumnType::Bool,
+            1 => ColumnType::I16,
+            2 => ColumnType::I32,
+            3 => ColumnType::I64,
+            4 => ColumnType::U32,
+            5 => ColumnType::U64,
+            6 => ColumnType::F32,
+            7 => ColumnType::F64,
+            8 => ColumnType::Str,
+            _ => panic!("unknown column type {}", code),
+        }
+    }
+
+    /// Size of a value in bytes, 0 for variable-size values.
+    fn width(self) -> usize {
+        match self {
+            ColumnType::Bool => 1,
+            ColumnType::I16 => 2,
+            ColumnType::I32 | ColumnType::U32 | ColumnType::F32 => 4,
+            ColumnType::I64 | ColumnType::U64 | ColumnType::F64 => 8,
+            ColumnType::Str => 0,
+        }
+    }
+}
+
+struct Column<'a> {
+    column_type: ColumnType,
+    /// One bit per row, set when the value is present; None if the column is not nullable.
+    present: Option<&'a [u8]>,
+    /// Fixed-width values, or the offsets of the strings.
+    values: &'a [u8],
+    /// Contents of the strings.
+    strings: &'a [u8],
+}
+
+impl<'a> Column<'a> {
+    fn is_null(&self, row: usize) -> bool {
+        match self.present {
+            None => false,
+            Some(bits) => bits[row / 8] & (1 << (row % 8)) == 0,
+        }
+    }
+
+    fn fixed<const N: usize>(&self, row: usize) -> [u8; N] {
+        self.values[row * N..(row + 1) * N].try_into().unwrap()
+    }
+
+    fn string(&self, row: usize) -> Result<&'a str, Error> {
+        let start = u32::from_le_bytes(self.fixed::<4>(row)) as usize;
+        let end = u32::from_le_bytes(self.fixed::<4>(row + 1)) as usize;
+        std::str::from_utf8(&self.strings[start..end]).map_err(de::Error::custom)
+    }
+}
+
+/// Parses the file header and locates the blocks of each column.
+struct Table<'a> {
+    rows: usize,
+    weights: &'a [u8],
+    columns: Vec<Column<'a>>,
+}
+
+struct Cursor<'a> {
+    data: &'a [u8],
+    position: usize,
+}
+
+impl<'a> Cursor<'a> {
+    fn take(&mut self, size: usize) -> &'a [u8] {
+        let result = &self.data[self.position..self.position + size];
+        self.position += size;
+        result
+    }
+
+    fn u8(&mut self) -> u8 {
+        self.take(1)[0]
+    }
+
+    fn u32(&mut self) -> u32 {
+        u32::from_le_bytes(self.take(4).try_into().unwrap())
+    }
+
+    fn u64(&mut self) -> u64 {
+        u64::from_le_bytes(self.take(8).try_into().unwrap())
+    }
+}
+
+impl<'a> Table<'a> {
+    fn parse(data: &'a [u8]) -> Self {
+        let mut cursor = Cursor { data, position: 0 };
+        assert_eq!(cursor.take(MAGIC.len()), MAGIC, "not a columnar data file");
+        let column_count = cursor.u32() as usize;
+        let rows = cursor.u64() as usize;
+        let descriptors: Vec<(ColumnType, bool)> = (0..column_count)
+            .map(|_| (ColumnType::from_code(cursor.u8()), cursor.u8() != 0))
+            .collect();
+        let weights = cursor.take(rows * 8);
+        let columns = descriptors
+            .into_iter()
+            .map(|(column_type, nullable)| {
+                let present = if nullable {
+                    Some(cursor.take((rows + 7) / 8))
+                } else {
+                    None
+                };
+                if column_type == ColumnType::Str {
+                    let values = cursor.take((rows + 1) * 4);
+                    let size = u32::from_le_bytes(values[rows * 4..].try_into().unwrap());
+                    let strings = cursor.take(size as usize);
+                    Column { column_type, present, values, strings }
+                } else {
+                    let values = cursor.take(rows * column_type.width());
+                    Column { column_type, present, values, strings: &[] }
+                }
+            })
+            .collect();
+        Table { rows, weights, columns }
+    }
+
+    fn weight(&self, row: usize) -> i64 {
+        i64::from_le_bytes(self.weights[row * 8..(row + 1) * 8].try_into().unwrap())
+    }
+}
+
+/// Deserializes a row as a sequence with one element per column.
+struct RowDeserializer<'a, 'b> {
+    columns: &'b [Column<'a>],
+    row: usize,
+}
+
+impl<'de, 'b> Deserializer<'de> for RowDeserializer<'de, 'b> {
+    type Error = Error;
+
+    fn deserialize_any<V: Visitor<'de>>(self, visitor: V) -> Result<V::Value, Error> {
+        visitor.visit_seq(FieldAccess { columns: self.columns, row: self.row, index: 0 })
+    }
+
+    forward_to_deserialize_any! {
+        bool i8 i16 i32 i64 i128 u8 u16 u32 u64 u128 f32 f64 char str string
+        bytes byte_buf option unit unit_struct newtype_struct seq tuple
+        tuple_struct map struct enum identifier ignored_any
+    }
+}
+
+struct FieldAccess<'a, 'b> {
+    columns: &'b [Column<'a>],
+    row: usize,
+    index: usize,
+}
+
+impl<'de, 'b> SeqAccess<'de> for FieldAccess<'de, 'b> {
+    type Error = Error;
+
+    fn next_element_seed<T: DeserializeSeed<'de>>(&mut self, seed: T) -> Result<Option<T::Value>, Error> {
+        if self.index == self.columns.len() {
+            return Ok(None);
+        }
+        let column = &self.columns[self.index];
+        self.index += 1;
+        seed.deserialize(ValueDeserializer { column, row: self.row }).map(Some)
+    }
+
+    fn size_hint(&self) -> Option<usize> {
+        Some(self.columns.len() - self.index)
+    }
+}
+
+/// Deserializes the value of one column in one row.
+struct ValueDeserializer<'a, 'b> {
+    column: &'b Column<'a>,
+    row: usize,
+}
+
+impl<'de, 'b> Deserializer<'de> for ValueDeserializer<'de, 'b> {
+    type Error = Error;
+
+    fn deserialize_any<V: Visitor<'de>>(self, visitor: V) -> Result<V::Value, Error> {
+        let column = self.column;
+        let row = self.row;
+        match column.column_type {
+            ColumnType::Bool => visitor.visit_bool(column.values[row] != 0),
+            ColumnType::I16 => visitor.visit_i16(i16::from_le_bytes(column.fixed::<2>(row))),
+            ColumnType::I32 => visitor.visit_i32(i32::from_le_bytes(column.fixed::<4>(row))),
+            ColumnType::I64 => visitor.visit_i64(i64::from_le_bytes(column.fixed::<8>(row))),
+            ColumnType::U32 => visitor.visit_u32(u32::from_le_bytes(column.fixed::<4>(row))),
+            ColumnType::U64 => visitor.visit_u64(u64::from_le_bytes(column.fixed::<8>(row))),
+            ColumnType::F32 => visitor.visit_f32(f32::from_le_bytes(column.fixed::<4>(row))),
+            ColumnType::F64 => visitor.visit_f64(f64::from_le_bytes(column.fixed::<8>(row))),
+            ColumnType::Str => visitor.visit_borrowed_str(column.string(row)?),
+        }
+    }
+
+    fn deserialize_option<V: Visitor<'de>>(self, visitor: V) -> Result<V::Value, Error> {
+        if self.column.is_null(self.row) {
+            visitor.visit_none()
+        } else {
+            visitor.visit_some(self)
+        }
+    }
+
+    fn deserialize_newtype_struct<V: Visitor<'de>>(self, _name: &'static str, visitor: V) -> Result<V::Value, Error> {
+        // Wrappers such as F64 deserialize their contents
+        visitor.visit_newtype_struct(self)
+    }
+
+    forward_to_deserialize_any! {
+        bool i8 i16 i32 i64 i128 u8 u16 u32 u64 u128 f32 f64 char str string
+        bytes byte_buf unit unit_struct seq tuple
+        tuple_struct map struct enum identifier ignored_any
+    }
+}
+
+/// Read a Z-set from a file in the binary columnar format.
+pub fn read_columns<T, Weight>(source_file_path: &str) -> OrdZSet<T, Weight>
+where
+    T: DBData + for<'de> Deserialize<'de>,
+    Weight: DBWeight + TryFrom<i64>,
+    <Weight as TryFrom<i64>>::Error: Debug,
+{
+    let file = File::open(source_file_path).unwrap_or_else(|error| {
+        panic!(
+            "failed to open file '{}': {}",
+            source_file_path,
+            error,
+        )
+    });
+    // Safety: the file is created before the program starts and is not modified while mapped.
+    let data = unsafe { Mmap::map(&file) }.unwrap_or_else(|error| {
+        panic!(
+            "failed to map file '{}': {}",
+            source_file_path,
+            error,
+        )
+    });
+    let table = Table::parse(&data);
+    let vec = (0..table.rows)
+        .map(|row| {
+            let value = T::deserialize(RowDeserializer { columns: &table.columns, row })
+                .unwrap_or_else(|error| panic!("row {} of '{}': {}", row, source_file_path, error));
+            (value, Weight::try_from(table.weight(row)).unwrap())
+        })
+        .collect();
+    OrdZSet::from_keys((), vec)
+}
+
+#[cfg(test)]
+mod test {
+    use super::*;
+    use dbsp::zset;
+    use serde::Serialize;
+    use size_of::SizeOf;
+    use sqlvalue::{SqlRow, SqlValue, ToSqlRow};
+    use tuple::declare_tuples;
+
+    declare_tuples! {
+        Tuple3<T0, T1, T2>,
+    }
+
+    /// Encode the same data as test.csv, with a weight of 2 for the first row.
+    fn encode() -> Vec<u8> {
+        let flags = [true, false, true, false, true, false, true];
+        let names = [Some("Mihai"), Some("Leonid"), Some("Chase"), Some("Gerd"), None, Some("Nina"), None];
+        let ids = [Some(0u32), Some(1), Some(2), Some(3), None, None, Some(6)];
+        let rows = flags.len();
+        let mut data = Vec::new();
+        data.extend_from_slice(MAGIC);
+        data.extend_from_slice(&3u32.to_le_bytes());
+        data.extend_from_slice(&(rows as u64).to_le_bytes());
+        data.extend_from_slice(&[0, 0, 8, 1, 4, 1]);
+        for row in 0..rows {
+            data.extend_from_slice(&(if row == 0 { 2i64 } else { 1 }).to_le_bytes());
+        }
+        data.extend(flags.iter().map(|f| *f as u8));
+        data.push(names.iter().enumerate().map(|(i, n)| (n.is_some() as u8) << i).sum());
+        let mut offset = 0u32;
+        data.extend_from_slice(&offset.to_le_bytes());
+        for name in names {
+            offset += name.map(|n| n.len()).unwrap_or(0) as u32;
+            data.extend_from_slice(&offset.to_le_bytes());
+        }
+        for name in names.iter().flatten() {
+            data.extend_from_slice(name.as_bytes());
+        }
+        data.push(ids.iter().enumerate().map(|(i, n)| (n.is_some() as u8) << i).sum());
+        for id in ids {
+            data.extend_from_slice(&id.unwrap_or(0).to_le_bytes());
+        }
+        data
+    }
+
+    #[test]
+    fn columns_test() {
+        let path = std::env::temp_dir().join("readers_columns_test.columns");
+        std::fs::write(&path, encode()).unwrap();
+        let src = read_columns::<Tuple3<bool, Option<String>, Option<u32>>, isize>(path.to_str().unwrap());
+        std::fs::remove_file(&path).unwrap();
+        assert_eq!(zset!(
+            Tuple3::new(true, Some(String::from("Mihai")),Some(0)) => 2,
+            Tuple3::new(false, Some(String::from("Leonid")),Some(1)) => 1,
+            Tuple3::new(true, Some(String::from("Chase")),Some(2)) => 1,
+            Tuple3::new(false, Some(String::from("Gerd")),Some(3)) => 1,
+            Tuple3::new(true, None, None) => 1,
+            Tuple3::new(false, Some(String::from("Nina")),None) => 1,
+            Tuple3::new(true, None, Some(6)) => 1,
+        ), src);
+    }
+}
@@ -48,6 +48,9 @@ use sqlx::{
     sqlite::SqliteRow
 };
 
+mod columnar;
+pub use columnar::read_columns;
+
 pub fn read_csv<T, Weight>(source_file_path: &str) -> OrdZSet<T, Weight>
 where
     T: DBData + for<'de> serde::Deserialize<'de>,
@@ -2,7 +2,7 @@
 // Map of type names
 // * Bool -> b
 // * Date -> date      (no implementation yet)
-// * Decimal -> decimal
+// * Decimal -> decimal (Fixed64 or Fixed128)
 // * Double -> d
 // * Float -> f
 // * GeoPoint -> geopoint
@@ -21,8 +21,8 @@
 #![allow(non_snake_case)]
 
 use dbsp::algebra::{F32, F64, HasZero, HasOne};
-use rust_decimal::Decimal;
 use crate::{
+    fixed::{SqlDecimal, pow10},
     interval::*,
     geopoint::*,
     timestamp::*,
@@ -30,7 +30,6 @@ use crate::{
 use num::{
     Zero,
     One,
-    FromPrimitive,
     ToPrimitive,
 };
 use chrono::{Datelike,Timelike,NaiveDateTime,NaiveDate};
@@ -50,15 +49,15 @@ pub fn cast_to_b_bN(value: Option<bool>) -> bool
 }
 
 #[inline]
-pub fn cast_to_b_decimal(value: Decimal) -> bool
+pub fn cast_to_b_decimal<T: SqlDecimal>(value: T) -> bool
 {
-    value != Decimal::zero()
+    value.scaled() != 0
 }
 
 #[inline]
-pub fn cast_to_b_decimalN(value: Option<Decimal>) -> bool
+pub fn cast_to_b_decimalN<T: SqlDecimal>(value: Option<T>) -> bool
 {
-    value.unwrap() != Decimal::zero()
+    value.unwrap().scaled() != 0
 }
 
 #[inline]
@@ -172,15 +171,15 @@ pub fn cast_to_bN_bN(value: Option<bool>) -> Option<bool>
 }
 
 #[inline]
-pub fn cast_to_bN_decimal(value: Decimal) -> Option<bool>
+pub fn cast_to_bN_decimal<T: SqlDecimal>(value: T) -> Option<bool>
 {
-    Some(value != Decimal::zero())
+    Some(value.scaled() != 0)
 }
 
 #[inline]
-pub fn cast_to_bN_decimalN(value: Option<Decimal>) -> Option<bool>
+pub fn cast_to_bN_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<bool>
 {
-    value.map(|x| x != Decimal::zero())
+    value.map(|x| x.scaled() != 0)
 }
 
 #[inline]
@@ -306,304 +305,260 @@ pub fn cast_to_dateN_date(value: Date) -> Option<Date>
 
 /////////// cast to decimal
 
+// The scale of the result is part of the result type, so it is
+// supplied by the caller as a generic argument; the scale argument
+// is redundant and only kept for uniformity with the other casts.
+// The precision is checked by every cast: a value which has more than
+// `precision` digits panics, unless the result is nullable and the source
+// is a floating point value, in which case the result is None.
+
+/// The value, if it has at most `precision` digits.
+/// The scale is part of the type of the value, so only the number
+/// of digits of the scaled representation needs to be checked.
 #[inline]
-pub fn cast_to_decimal_b(value: bool, precision: u32, scale: i32) -> Decimal
+pub fn check_decimal_precision<T: SqlDecimal>(value: T, precision: u32) -> Option<T>
 {
-    let result = if value { Decimal::one() } else { Decimal::zero() };
-    cast_to_decimal_decimal(result, precision, scale)
+    if precision < 39 && value.scaled().unsigned_abs() >= pow10(precision).unsigned_abs() {
+        None
+    } else {
+        Some(value)
+    }
 }
 
 #[inline]
-pub fn cast_to_decimal_bN(value: Option<bool>, precision: u32, scale: i32) -> Decimal
+fn fit_decimal<T: SqlDecimal>(value: T, precision: u32, scale: i32) -> T
 {
-    let result = if value.unwrap() {Decimal::one()} else {Decimal::zero()};
-    cast_to_decimal_decimal(result, precision, scale)
+    match check_decimal_precision(value, precision) {
+        None => panic!("Value {} out of range for DECIMAL({}, {})", value, precision, scale),
+        Some(value) => value,
+    }
 }
 
 #[inline]
-pub fn cast_to_decimal_decimal(value: Decimal, _precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_b<T: SqlDecimal>(value: bool, precision: u32, scale: i32) -> T
 {
-    //value.with_prec(precision as u64).with_scale(scale as i64)
-    let mut result = value.clone();
-    result.rescale(scale as u32);
-    result
+    fit_decimal(T::from_i128(if value { 1 } else { 0 }), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_decimalN(value: Option<Decimal>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_bN<T: SqlDecimal>(value: Option<bool>, precision: u32, scale: i32) -> T
 {
-    let result = value.unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    cast_to_decimal_b(value.unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_d(value: F64, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_decimal<T: SqlDecimal>(value: impl SqlDecimal, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_f64(value.into_inner()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::rescale(value), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_dN(value: Option<F64>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_decimalN<T: SqlDecimal>(value: Option<impl SqlDecimal>, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_f64(value.unwrap().into_inner()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    cast_to_decimal_decimal(value.unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_f(value: F32, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_d<T: SqlDecimal>(value: F64, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_f32(value.into_inner()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::from_f64(value.into_inner()).unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_fN(value: Option<F32>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_dN<T: SqlDecimal>(value: Option<F64>, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_f32(value.unwrap().into_inner()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    cast_to_decimal_d(value.unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_s(value: String, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_f<T: SqlDecimal>(value: F32, precision: u32, scale: i32) -> T
 {
-    let result = match value.parse().ok() {
-        None => Decimal::zero(),
-        Some(x) => x,
-    };
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::from_f64(value.into_inner() as f64).unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_sN(value: Option<String>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_fN<T: SqlDecimal>(value: Option<F32>, precision: u32, scale: i32) -> T
 {
-    let result = match value {
-        None => Decimal::zero(),
-        Some(x) => match x.parse().ok() {
-            None => Decimal::zero(),
-            Some(x) => x,
-        },
-    };
-    cast_to_decimal_decimal(result, precision, scale)
+    cast_to_decimal_f(value.unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_i(value: isize, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_s<T: SqlDecimal>(value: String, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_isize(value).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::parse(&value).unwrap_or_default(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_i16(value: i16, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_sN<T: SqlDecimal>(value: Option<String>, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_i16(value).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    match value {
+        None => T::default(),
+        Some(x) => cast_to_decimal_s(x, precision, scale),
+    }
 }
 
 #[inline]
-pub fn cast_to_decimal_i16N(value: Option<i16>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_i<T: SqlDecimal>(value: isize, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_i16(value.unwrap()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::from_i128(value as i128), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_i32(value: i32, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_i16<T: SqlDecimal>(value: i16, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_i32(value).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::from_i128(value as i128), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_i32N(value: Option<i32>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_i16N<T: SqlDecimal>(value: Option<i16>, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_i32(value.unwrap()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    cast_to_decimal_i16(value.unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_i64(value: i64, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_i32<T: SqlDecimal>(value: i32, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_i64(value).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::from_i128(value as i128), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_i64N(value: Option<i64>, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_i32N<T: SqlDecimal>(value: Option<i32>, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_i64(value.unwrap()).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    cast_to_decimal_i32(value.unwrap(), precision, scale)
 }
 
 #[inline]
-pub fn cast_to_decimal_u(value: usize, precision: u32, scale: i32) -> Decimal
+pub fn cast_to_decimal_i64<T: SqlDecimal>(value: i64, precision: u32, scale: i32) -> T
 {
-    let result = Decimal::from_usize(value).unwrap();
-    cast_to_decimal_decimal(result, precision, scale)
+    fit_decimal(T::from_i128(value as i128), precision, scale)
 }
 
-/////////// cast to decimalN
+#[inline]
+pub fn cast_to_decimal_i64N<T: SqlDecimal>(value: Option<i64>, precision: u32, scale: i32) -> T
+{
+    cast_to_decimal_i64(value.unwrap(), precision, scale)
+}
 
 #[inline]
-fn set_ps(value: Option<Decimal>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimal_u<T: SqlDecimal>(value: usize, precision: u32, scale: i32) -> T
 {
-    value.map(|v| cast_to_decimal_decimal(v, precision, scale))
+    fit_decimal(T::from_i128(value as i128), precision, scale)
 }
 
+/////////// cast to decimalN
+
 #[inline]
-pub fn cast_to_decimalN_nullN(_value: Option<()>, _precision: u32, _scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_nullN<T: SqlDecimal>(_value: Option<()>, _precision: u32, _scale: i32) -> Option<T>
 {
     None
 }
 
 #[inline]
-pub fn cast_to_decimalN_b(value: bool, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_b<T: SqlDecimal>(value: bool, precision: u32, scale: i32) -> Option<T>
 {
-    let result = if value { Some(Decimal::one()) } else { Some(Decimal::zero()) };
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_b(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_bN(value: Option<bool>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_bN<T: SqlDecimal>(value: Option<bool>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = value.map(|x| if x {Decimal::one()} else {Decimal::zero()});
-    set_ps(result, precision, scale)
+    value.map(|x| cast_to_decimal_b(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_decimal(value: Decimal, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_decimal<T: SqlDecimal>(value: impl SqlDecimal, precision: u32, scale: i32) -> Option<T>
 {
-    let result = Some(value);
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_decimal(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_decimalN(value: Option<Decimal>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_decimalN<T: SqlDecimal>(value: Option<impl SqlDecimal>, precision: u32, scale: i32) -> Option<T>
 {
-    set_ps(value, precision, scale)
+    value.map(|x| cast_to_decimal_decimal(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_d(value: F64, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_d<T: SqlDecimal>(value: F64, precision: u32, _scale: i32) -> Option<T>
 {
-    let result = Decimal::from_f64(value.into_inner());
-    set_ps(result, precision, scale)
+    T::from_f64(value.into_inner()).and_then(|x| check_decimal_precision(x, precision))
 }
 
 #[inline]
-pub fn cast_to_decimalN_dN(value: Option<F64>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_dN<T: SqlDecimal>(value: Option<F64>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value {
-        None => None,
-        Some(x) => Decimal::from_f64(x.into_inner()),
-    };
-    set_ps(result, precision, scale)
+    value.and_then(|x| cast_to_decimalN_d(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_f(value: F32, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_f<T: SqlDecimal>(value: F32, precision: u32, _scale: i32) -> Option<T>
 {
-    let result = Decimal::from_f32(value.into_inner());
-    set_ps(result, precision, scale)
+    T::from_f64(value.into_inner() as f64).and_then(|x| check_decimal_precision(x, precision))
 }
 
 #[inline]
-pub fn cast_to_decimalN_fN(value: Option<F32>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_fN<T: SqlDecimal>(value: Option<F32>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value {
-        None => None,
-        Some(x) => Decimal::from_f32(x.into_inner()),
-    };
-    set_ps(result, precision, scale)
+    value.and_then(|x| cast_to_decimalN_f(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_s(value: String, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_s<T: SqlDecimal>(value: String, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value.parse() {
-        Err(_) => Some(Decimal::zero()),
-        Ok(x) => Some(x),
-    };
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_s(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_sN(value: Option<String>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_sN<T: SqlDecimal>(value: Option<String>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value {
-        None => None,
-        Some(x) => match x.parse() {
-            Err(_) => Some(Decimal::zero()),
-            Ok(y) => Some(y),
-        },
-    };
-    set_ps(result, precision, scale)
+    value.map(|x| cast_to_decimal_s(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i(value: isize, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i<T: SqlDecimal>(value: isize, precision: u32, scale: i32) -> Option<T>
 {
-    let result = Decimal::from_isize(value);
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_i(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i16(value: i16, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i16<T: SqlDecimal>(value: i16, precision: u32, scale: i32) -> Option<T>
 {
-    let result = Decimal::from_i16(value);
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_i16(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i16N(value: Option<i16>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i16N<T: SqlDecimal>(value: Option<i16>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value {
-        None => None,
-        Some(x) => Decimal::from_i16(x),
-    };
-    set_ps(result, precision, scale)
+    value.map(|x| cast_to_decimal_i16(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i32(value: i32, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i32<T: SqlDecimal>(value: i32, precision: u32, scale: i32) -> Option<T>
 {
-    let result = Decimal::from_i32(value);
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_i32(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i32N(value: Option<i32>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i32N<T: SqlDecimal>(value: Option<i32>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value {
-        None => None,
-        Some(x) => Decimal::from_i32(x),
-    };
-    set_ps(result, precision, scale)
+    value.map(|x| cast_to_decimal_i32(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i64(value: i64, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i64<T: SqlDecimal>(value: i64, precision: u32, scale: i32) -> Option<T>
 {
-    let result = Decimal::from_i64(value);
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_i64(value, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_i64N(value: Option<i64>, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_i64N<T: SqlDecimal>(value: Option<i64>, precision: u32, scale: i32) -> Option<T>
 {
-    let result = match value {
-        None => None,
-        Some(x) => Decimal::from_i64(x),
-    };
-    set_ps(result, precision, scale)
+    value.map(|x| cast_to_decimal_i64(x, precision, scale))
 }
 
 #[inline]
-pub fn cast_to_decimalN_u(value: usize, precision: u32, scale: i32) -> Option<Decimal>
+pub fn cast_to_decimalN_u<T: SqlDecimal>(value: usize, precision: u32, scale: i32) -> Option<T>
 {
-    let result = Decimal::from_usize(value);
-    set_ps(result, precision, scale)
+    Some(cast_to_decimal_u(value, precision, scale))
 }
 
 /////////// cast to double
@@ -621,15 +576,15 @@ pub fn cast_to_d_bN(value: Option<bool>) -> F64
 }
 
 #[inline]
-pub fn cast_to_d_decimal(value: Decimal) -> F64
+pub fn cast_to_d_decimal<T: SqlDecimal>(value: T) -> F64
 {
-    F64::from(value.to_f64().unwrap())
+    F64::from(value.to_f64())
 }
 
 #[inline]
-pub fn cast_to_d_decimalN(value: Option<Decimal>) -> F64
+pub fn cast_to_d_decimalN<T: SqlDecimal>(value: Option<T>) -> F64
 {
-    F64::from(value.unwrap().to_f64().unwrap())
+    F64::from(value.unwrap().to_f64())
 }
 
 #[inline]
@@ -743,17 +698,17 @@ pub fn cast_to_dN_bN(value: Option<bool>) -> Option<F64>
 }
 
 #[inline]
-pub fn cast_to_dN_decimal(value: Decimal) -> Option<F64>
+pub fn cast_to_dN_decimal<T: SqlDecimal>(value: T) -> Option<F64>
 {
-    value.to_f64().map(|x| F64::from(x))
+    Some(F64::from(value.to_f64()))
 }
 
 #[inline]
-pub fn cast_to_dN_decimalN(value: Option<Decimal>) -> Option<F64>
+pub fn cast_to_dN_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<F64>
 {
     match value {
         None => None,
-        Some(x) => x.to_f64().map(|y| F64::from(y)),
+        Some(x) => Some(F64::from(x.to_f64())),
     }
 }
 
@@ -865,15 +820,15 @@ pub fn cast_to_f_bN(value: Option<bool>) -> F32
 }
 
 #[inline]
-pub fn cast_to_f_decimal(value: Decimal) -> F32
+pub fn cast_to_f_decimal<T: SqlDecimal>(value: T) -> F32
 {
-    F32::from(value.to_f32().unwrap())
+    F32::from(value.to_f64() as f32)
 }
 
 #[inline]
-pub fn cast_to_f_decimalN(value: Option<Decimal>) -> F32
+pub fn cast_to_f_decimalN<T: SqlDecimal>(value: Option<T>) -> F32
 {
-    F32::from(value.unwrap().to_f32().unwrap())
+    F32::from(value.unwrap().to_f64() as f32)
 }
 
 #[inline]
@@ -987,17 +942,17 @@ pub fn cast_to_fN_bN(value: Option<bool>) -> Option<F32>
 }
 
 #[inline]
-pub fn cast_to_fN_decimal(value: Decimal) -> Option<F32>
+pub fn cast_to_fN_decimal<T: SqlDecimal>(value: T) -> Option<F32>
 {
-    value.to_f32().map(|x| F32::from(x))
+    Some(F32::from(value.to_f64() as f32))
 }
 
 #[inline]
-pub fn cast_to_fN_decimalN(value: Option<Decimal>) -> Option<F32>
+pub fn cast_to_fN_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<F32>
 {
     match value {
         None => None,
-        Some(x) => x.to_f32().map(|y| F32::from(y)),
+        Some(x) => Some(F32::from(x.to_f64() as f32)),
     }
 }
 
@@ -1127,13 +1082,13 @@ pub fn cast_to_s_bN(value: Option<bool>) -> String
 }
 
 #[inline]
-pub fn cast_to_s_decimal(value: Decimal) -> String
+pub fn cast_to_s_decimal<T: SqlDecimal>(value: T) -> String
 {
     value.to_string()
 }
 
 #[inline]
-pub fn cast_to_s_decimalN(value: Option<Decimal>) -> String
+pub fn cast_to_s_decimalN<T: SqlDecimal>(value: Option<T>) -> String
 {
     s_helper(value)
 }
@@ -1264,13 +1219,13 @@ pub fn cast_to_sN_bN(value: Option<bool>) -> Option<String>
 }
 
 #[inline]
-pub fn cast_to_sN_decimal(value: Decimal) -> Option<String>
+pub fn cast_to_sN_decimal<T: SqlDecimal>(value: T) -> Option<String>
 {
     Some(value.to_string())
 }
 
 #[inline]
-pub fn cast_to_sN_decimalN(value: Option<Decimal>) -> Option<String>
+pub fn cast_to_sN_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<String>
 {
     sN_helper(value)
 }
@@ -1374,15 +1329,15 @@ pub fn cast_to_i16_bN(value: Option<bool>) -> i16
 }
 
 #[inline]
-pub fn cast_to_i16_decimal(value: Decimal) -> i16
+pub fn cast_to_i16_decimal<T: SqlDecimal>(value: T) -> i16
 {
-    value.to_i16().unwrap()
+    value.trunc_i128().to_i16().unwrap()
 }
 
 #[inline]
-pub fn cast_to_i16_decimalN(value: Option<Decimal>) -> i16
+pub fn cast_to_i16_decimalN<T: SqlDecimal>(value: Option<T>) -> i16
 {
-    value.unwrap().to_i16().unwrap()
+    value.unwrap().trunc_i128().to_i16().unwrap()
 }
 
 #[inline]
@@ -1496,17 +1451,17 @@ pub fn cast_to_i16N_bN(value: Option<bool>) -> Option<i16>
 }
 
 #[inline]
-pub fn cast_to_i16N_decimal(value: Decimal) -> Option<i16>
+pub fn cast_to_i16N_decimal<T: SqlDecimal>(value: T) -> Option<i16>
 {
-    value.to_i16()
+    value.trunc_i128().to_i16()
 }
 
 #[inline]
-pub fn cast_to_i16N_decimalN(value: Option<Decimal>) -> Option<i16>
+pub fn cast_to_i16N_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<i16>
 {
     match value {
         None => None,
-        Some(x) => x.to_i16(),
+        Some(x) => x.trunc_i128().to_i16(),
     }
 }
 
@@ -1618,15 +1573,15 @@ pub fn cast_to_i32_bN(value: Option<bool>) -> i32
 }
 
 #[inline]
-pub fn cast_to_i32_decimal(value: Decimal) -> i32
+pub fn cast_to_i32_decimal<T: SqlDecimal>(value: T) -> i32
 {
-    value.to_i32().unwrap()
+    value.trunc_i128().to_i32().unwrap()
 }
 
 #[inline]
-pub fn cast_to_i32_decimalN(value: Option<Decimal>) -> i32
+pub fn cast_to_i32_decimalN<T: SqlDecimal>(value: Option<T>) -> i32
 {
-    value.unwrap().to_i32().unwrap()
+    value.unwrap().trunc_i128().to_i32().unwrap()
 }
 
 #[inline]
@@ -1747,17 +1702,17 @@ pub fn cast_to_i32N_bN(value: Option<bool>) -> Option<i32>
 }
 
 #[inline]
-pub fn cast_to_i32N_decimal(value: Decimal) -> Option<i32>
+pub fn cast_to_i32N_decimal<T: SqlDecimal>(value: T) -> Option<i32>
 {
-    value.to_i32()
+    value.trunc_i128().to_i32()
 }
 
 #[inline]
-pub fn cast_to_i32N_decimalN(value: Option<Decimal>) -> Option<i32>
+pub fn cast_to_i32N_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<i32>
 {
     match value {
         None => None,
-        Some(x) => x.to_i32(),
+        Some(x) => x.trunc_i128().to_i32(),
     }
 }
 
@@ -1869,15 +1824,15 @@ pub fn cast_to_i64_bN(value: Option<bool>) -> i64
 }
 
 #[inline]
-pub fn cast_to_i64_decimal(value: Decimal) -> i64
+pub fn cast_to_i64_decimal<T: SqlDecimal>(value: T) -> i64
 {
-    value.to_i64().unwrap()
+    value.trunc_i128().to_i64().unwrap()
 }
 
 #[inline]
-pub fn cast_to_i64_decimalN(value: Option<Decimal>) -> i64
+pub fn cast_to_i64_decimalN<T: SqlDecimal>(value: Option<T>) -> i64
 {
-    value.unwrap().to_i64().unwrap()
+    value.unwrap().trunc_i128().to_i64().unwrap()
 }
 
 #[inline]
@@ -2003,17 +1958,17 @@ pub fn cast_to_i64N_bN(value: Option<bool>) -> Option<i64>
 }
 
 #[inline]
-pub fn cast_to_i64N_decimal(value: Decimal) -> Option<i64>
+pub fn cast_to_i64N_decimal<T: SqlDecimal>(value: T) -> Option<i64>
 {
-    value.to_i64()
+    value.trunc_i128().to_i64()
 }
 
 #[inline]
-pub fn cast_to_i64N_decimalN(value: Option<Decimal>) -> Option<i64>
+pub fn cast_to_i64N_decimalN<T: SqlDecimal>(value: Option<T>) -> Option<i64>
 {
     match value {
         None => None,
-        Some(x) => x.to_i64(),
+        Some(x) => x.trunc_i128().to_i64(),
     }
 }
 
@@ -2225,3 +2180,23 @@ pub fn cast_to_u_i32(value: i32) -> usize {
 pub fn cast_to_u_i64(value: i64) -> usize {
     value.try_into().unwrap()
 }
+
+#[cfg(test)]
+mod test {
+    use super::*;
+    use crate::fixed::{Fixed64, Fixed128};
+
+    #[test]
+    fn decimal_precision() {
+        let value: Fixed64<2> = cast_to_decimal_i32(999, 5, 2);
+        assert_eq!(value.to_string(), "999.00");
+        let value: Fixed128<2> = cast_to_decimal_s("-123.456".to_string(), 5, 2);
+        assert_eq!(value.to_string(), "-123.46");
+        assert_eq!(cast_to_decimalN_d::<Fixed64<2>>(F64::new(1000.0), 5, 2), None);
+        assert_eq!(cast_to_decimalN_f::<Fixed64<2>>(F32::new(99.5), 4, 2).unwrap().to_string(), "99.50");
+        assert!(std::panic::catch_unwind(|| cast_to_decimal_i32::<Fixed64<2>>(1000, 5, 2)).is_err());
+        assert!(std::panic::catch_unwind(|| {
+            cast_to_decimal_decimal::<Fixed64<1>>(Fixed64::<2>::new(99_999), 3, 1)
+        }).is_err());
+    }
+}
@@ -0,0 +1,389 @@
+//! Fixed-point representation of SQL DECIMAL values.
+//! A DECIMAL(p, s) value is stored as an integer holding the
+//! value multiplied by 10^s:
+//! - Fixed64<s> uses an i64 and is used when p <= 18
+//! - Fixed128<s> uses an i128 and is used when p <= 38
+//! The scale is part of the type, so arithmetic on values of the
+//! same type never needs to rescale (except for multiplication
+//! and division).  All operations panic on overflow.
+
+use dbsp::algebra::MulByRef;
+use num::{ToPrimitive, Zero};
+use serde::{de, Deserialize, Deserializer, Serialize, Serializer};
+use size_of::SizeOf;
+use std::{
+    fmt::{Debug, Display, Formatter, Result as FmtResult},
+    ops::{Add, Mul, Neg, Rem, Sub},
+};
+
+/// Operations shared by all fixed-point DECIMAL representations.
+pub trait SqlDecimal:
+    Copy + Ord + Debug + Display + Default
+    + Add<Output = Self> + Sub<Output = Self> + Mul<Output = Self>
+    + Rem<Output = Self> + Neg<Output = Self>
+{
+    /// Number of digits after the decimal point.
+    const SCALE: u32;
+
+    /// Build a value from its representation, i.e., the value multiplied by 10^SCALE.
+    /// Panics if the value does not fit in the representation.
+    fn from_scaled(scaled: i128) -> Self;
+
+    /// The value multiplied by 10^SCALE.
+    fn scaled(self) -> i128;
+
+    /// Division rounding half away from zero; None when dividing by zero.
+    fn checked_div(self, other: Self) -> Option<Self> {
+        let (left, right) = (self.scaled(), other.scaled());
+        if right == 0 {
+            return None;
+        }
+        let mut result = left / right;
+        let mut remainder = left % right;
+        // Long division, one decimal digit at a time, avoids
+        // multiplying the dividend by 10^SCALE.
+        for _ in 0..Self::SCALE {
+            remainder = remainder.checked_mul(10).expect("DECIMAL overflow");
+            result = result.checked_mul(10)
+                .and_then(|r| r.checked_add(remainder / right))
+                .expect("DECIMAL overflow");
+            remainder %= right;
+        }
+        if remainder.unsigned_abs() * 2 >= right.unsigned_abs() {
+            result += left.signum() * right.signum();
+        }
+        Some(Self::from_scaled(result))
+    }
+
+    /// Convert a value with a different scale or representation to this type.
+    fn rescale<T: SqlDecimal>(value: T) -> Self {
+        Self::from_scaled(rescale_scaled(value.scaled(), T::SCALE, Self::SCALE))
+    }
+
+    fn from_i128(value: i128) -> Self {
+        Self::from_scaled(value.checked_mul(pow10(Self::SCALE)).expect("DECIMAL overflow"))
+    }
+
+    fn from_f64(value: f64) -> Option<Self> {
+        let scaled = (value * pow10(Self::SCALE) as f64).round();
+        if scaled.is_finite() {
+            scaled.to_i128().map(Self::from_scaled)
+        } else {
+            None
+        }
+    }
+
+    /// Parse a decimal number, rounding it to SCALE digits.
+    fn parse(value: &str) -> Option<Self> {
+        parse_scaled(value, Self::SCALE).map(Self::from_scaled)
+    }
+
+    /// Integer part of the value; the fractional part is truncated.
+    fn trunc_i128(self) -> i128 {
+        self.scaled() / pow10(Self::SCALE)
+    }
+
+    fn to_f64(self) -> f64 {
+        self.scaled() as f64 / pow10(Self::SCALE) as f64
+    }
+
+    fn abs(self) -> Self {
+        if self.scaled() < 0 { -self } else { self }
+    }
+
+    /// Round to the specified number of digits after the decimal point,
+    /// half away from zero.  The scale of the result is unchanged.
+    fn round_digits(self, digits: i32) -> Self {
+        if digits >= Self::SCALE as i32 {
+            return self;
+        }
+        let drop = (Self::SCALE as i32 - digits) as u32;
+        if drop > 38 {
+            return Self::default();
+        }
+        let rounded = rescale_scaled(self.scaled(), drop, 0);
+        Self::from_scaled(rounded.checked_mul(pow10(drop)).expect("DECIMAL overflow"))
+    }
+}
+
+#[inline(always)]
+pub const fn pow10(exponent: u32) -> i128 {
+    10i128.pow(exponent)
+}
+
+/// Divide rounding half away from zero.
+#[inline(always)]
+fn div_round(value: i128, divisor: i128) -> i128 {
+    let result = value / divisor;
+    let remainder = value % divisor;
+    if remainder.unsigned_abs() * 2 >= divisor.unsigned_abs() {
+        result + value.signum()
+    } else {
+        result
+    }
+}
+
+/// Change the scale of a scaled value.
+#[inline(always)]
+pub fn rescale_scaled(value: i128, from: u32, to: u32) -> i128 {
+    if from == to {
+        value
+    } else if to > from {
+        value.checked_mul(pow10(to - from)).expect("DECIMAL overflow")
+    } else {
+        div_round(value, pow10(from - to))
+    }
+}
+
+/// Parse a decimal number like -12.345 or 1e3 and return the value
+/// multiplied by 10^scale, rounded half away from zero.
+pub fn parse_scaled(value: &str, scale: u32) -> Option<i128> {
+    let value = value.trim();
+    let (mantissa, exponent) = match value.find(|c| c == 'e' || c == 'E') {
+        None => (value, 0i32),
+        Some(index) => (&value[..index], value[index + 1..].parse::<i32>().ok()?),
+    };
+    let (negative, digits) = match mantissa.strip_prefix('-') {
+        Some(rest) => (true, rest),
+        None => (false, mantissa.strip_prefix('+').unwrap_or(mantissa)),
+    };
+    let (integer, fraction) = match digits.find('.') {
+        None => (digits, ""),
+        Some(index) => (&digits[..index], &digits[index + 1..]),
+    };
+    if integer.is_empty() && fraction.is_empty() {
+        return None;
+    }
+    let mut result: i128 = 0;
+    let mut fraction_digits: i32 = 0;
+    for (position, c) in integer.chars().chain(fraction.chars()).enumerate() {
+        let digit = c.to_digit(10)? as i128;
+        if position >= integer.len() {
+            fraction_digits += 1;
+        }
+        result = result.checked_mul(10)?.checked_add(digit)?;
+    }
+    // result * 10^(exponent - fraction_digits) * 10^scale
+    let shift = exponent - fraction_digits + scale as i32;
+    let result = if shift >= 0 {
+        result.checked_mul(10i128.checked_pow(shift as u32)?)?
+    } else if -shift > 38 {
+        0
+    } else {
+        div_round(result, pow10((-shift) as u32))
+    };
+    Some(if negative { -result } else { result })
+}
+
+/// Format a scaled value with exactly `scale` digits after the decimal point.
+fn format_scaled(value: i128, scale: u32, f: &mut Formatter<'_>) -> FmtResult {
+    let factor = pow10(scale).unsigned_abs();
+    let magnitude = value.unsigned_abs();
+    if value < 0 {
+        write!(f, "-")?;
+    }
+    write!(f, "{}", magnitude / factor)?;
+    if scale > 0 {
+        write!(f, ".{:0width$}", magnitude % factor, width = scale as usize)?;
+    }
+    Ok(())
+}
+
+macro_rules! fixed_decimal {
+    ($name: ident, $repr: ty) => {
+        #[derive(Default, Clone, Copy, PartialEq, Eq, PartialOrd, Ord, Hash, SizeOf)]
+        pub struct $name<const S: u32> {
+            scaled: $repr,
+        }
+
+        impl<const S: u32> $name<S> {
+            /// Value represented by the integer `scaled` / 10^S.
+            pub const fn new(scaled: $repr) -> Self {
+                Self { scaled }
+            }
+        }
+
+        impl<const S: u32> SqlDecimal for $name<S> {
+            const SCALE: u32 = S;
+
+            #[inline(always)]
+            fn from_scaled(scaled: i128) -> Self {
+                Self::new(<$repr>::try_from(scaled).expect("DECIMAL overflow"))
+            }
+
+            #[inline(always)]
+            fn scaled(self) -> i128 {
+                self.scaled as i128
+            }
+        }
+
+        impl<const S: u32> Add for $name<S> {
+            type Output = Self;
+
+            #[inline(always)]
+            fn add(self, other: Self) -> Self {
+                Self::new(self.scaled.checked_add(other.scaled).expect("DECIMAL overflow"))
+            }
+        }
+
+        impl<'a, const S: u32> Add for &'a $name<S> {
+            type Output = $name<S>;
+
+            #[inline(always)]
+            fn add(self, other: Self) -> $name<S> {
+                *self + *other
+            }
+        }
+
+        impl<const S: u32> Sub for $name<S> {
+            type Output = Self;
+
+            #[inline(always)]
+            fn sub(self, other: Self) -> Self {
+                Self::new(self.scaled.checked_sub(other.scaled).expect("DECIMAL overflow"))
+            }
+        }
+
+        impl<const S: u32> Neg for $name<S> {
+            type Output = Self;
+
+            #[inline(always)]
+            fn neg(self) -> Self {
+                Self::new(self.scaled.checked_neg().expect("DECIMAL overflow"))
+            }
+        }
+
+        impl<'a, const S: u32> Neg for &'a $name<S> {
+            type Output = $name<S>;
+
+            #[inline(always)]
+            fn neg(self) -> $name<S> {
+                -*self
+            }
+        }
+
+        impl<const S: u32> Mul for $name<S> {
+            type Output = Self;
+
+            /// The product has the same scale as the operands;
+            /// it is rounded half away from zero.
+            #[inline(always)]
+            fn mul(self, other: Self) -> Self {
+                // With a = qa * 10^S + ra the product divided by 10^S is
+                // qa * b + ra * qb + ra * rb / 10^S, which only overflows
+                // when the result does not fit.
+                let factor = pow10(S);
+                let (a, b) = (self.scaled as i128, other.scaled as i128);
+                let (qa, ra) = (a / factor, a % factor);
+                let (qb, rb) = (b / factor, b % factor);
+                let result = qa.checked_mul(b)
+                    .and_then(|x| x.checked_add(ra.checked_mul(qb)?))
+                    .and_then(|x| x.checked_add(div_round(ra * rb, factor)))
+                    .expect("DECIMAL overflow");
+                Self::from_scaled(result)
+            }
+        }
+
+        impl<const S: u32> Rem for $name<S> {
+            type Output = Self;
+
+            #[inline(always)]
+            fn rem(self, other: Self) -> Self {
+                Self::new(self.scaled % other.scaled)
+            }
+        }
+
+        impl<const S: u32> MulByRef<i64> for $name<S> {
+            type Output = Self;
+
+            #[inline(always)]
+            fn mul_by_ref(&self, weight: &i64) -> Self {
+                Self::from_scaled(
+                    (self.scaled as i128).checked_mul(*weight as i128).expect("DECIMAL overflow"))
+            }
+        }
+
+        impl<const S: u32> Zero for $name<S> {
+            fn zero() -> Self {
+                Self::new(0)
+            }
+
+            fn is_zero(&self) -> bool {
+                self.scaled == 0
+            }
+        }
+
+        impl<const S: u32> Display for $name<S> {
+            fn fmt(&self, f: &mut Formatter<'_>) -> FmtResult {
+                format_scaled(self.scaled as i128, S, f)
+            }
+        }
+
+        impl<const S: u32> Debug for $name<S> {
+            fn fmt(&self, f: &mut Formatter<'_>) -> FmtResult {
+                format_scaled(self.scaled as i128, S, f)
+            }
+        }
+
+        impl<const S: u32> Serialize for $name<S> {
+            fn serialize<Ser: Serializer>(&self, serializer: Ser) -> Result<Ser::Ok, Ser::Error> {
+                serializer.collect_str(self)
+            }
+        }
+
+        impl<'de, const S: u32> Deserialize<'de> for $name<S> {
+            fn deserialize<D: Deserializer<'de>>(deserializer: D) -> Result<Self, D::Error> {
+                deserializer.deserialize_any(DecimalVisitor::<Self>(std::marker::PhantomData))
+            }
+        }
+    };
+}
+
+fixed_decimal!(Fixed64, i64);
+fixed_decimal!(Fixed128, i128);
+
+/// Accepts decimals written both as strings and as numbers.
+struct DecimalVisitor<T>(std::marker::PhantomData<T>);
+
+impl<'de, T: SqlDecimal> de::Visitor<'de> for DecimalVisitor<T> {
+    type Value = T;
+
+    fn expecting(&self, f: &mut Formatter<'_>) -> FmtResult {
+        write!(f, "a decimal number")
+    }
+
+    fn visit_str<E: de::Error>(self, value: &str) -> Result<T, E> {
+        T::parse(value).ok_or_else(|| E::custom(format!("invalid decimal {}", value)))
+    }
+
+    fn visit_i64<E: de::Error>(self, value: i64) -> Result<T, E> {
+        Ok(T::from_i128(value as i128))
+    }
+
+    fn visit_u64<E: de::Error>(self, value: u64) -> Result<T, E> {
+        Ok(T::from_i128(value as i128))
+    }
+
+    fn visit_f64<E: de::Error>(self, value: f64) -> Result<T, E> {
+        T::from_f64(value).ok_or_else(|| E::custom(format!("invalid decimal {}", value)))
+    }
+}
+
+#[cfg(test)]
+mod test {
+    use super::*;
+
+    #[test]
+    fn arithmetic() {
+        let a = Fixed64::<4>::parse("12.5").unwrap();
+        let b = Fixed64::<4>::parse("-0.0003").unwrap();
+        assert_eq!(a.to_string(), "12.5000");
+        assert_eq!((a + b).to_string(), "12.4997");
+        assert_eq!((a * b).to_string(), "-0.0038");
+        assert_eq!(a.checked_div(b).unwrap().to_string(), "-41666.6667");
+        assert_eq!(a.checked_div(Fixed64::<4>::default()), None);
+        assert_eq!(Fixed128::<2>::rescale(a).to_string(), "12.50");
+        assert_eq!(Fixed64::<2>::parse("1.005").unwrap().to_string(), "1.01");
+        assert_eq!(a.round_digits(0).to_string(), "13.0000");
+    }
+}
@@ -1,11 +1,12 @@
 #![allow(non_snake_case)]
 
 pub mod casts;
+pub mod fixed;
 pub mod geopoint;
 pub mod interval;
 pub mod timestamp;
 
-use rust_decimal::{Decimal,MathematicalOps};
+use fixed::{pow10, SqlDecimal};
 use std::ops::Add;
 use dbsp::algebra::{F32, F64, ZRingValue, Semigroup, SemigroupValue};
 use geopoint::GeoPoint;
@@ -139,7 +140,7 @@ pub fn is_null<T>(value: Option<T>) -> bool
 }
 
 #[inline(always)]
-pub fn indicator<T>(value: Option<T>) -> i64
+pub fn indicator<T>(value: &Option<T>) -> i64
 {
     match value {
         None => 0,
@@ -487,37 +488,37 @@ pub fn abs_dN(left: Option<F64>) -> Option<F64>
 }
 
 #[inline(always)]
-pub fn abs_decimal(left: Decimal) -> Decimal
+pub fn abs_decimal<T: SqlDecimal>(left: T) -> T
 {
     left.abs()
 }
 
 #[inline(always)]
-pub fn abs_decimalN(left: Option<Decimal>) -> Option<Decimal>
+pub fn abs_decimalN<T: SqlDecimal>(left: Option<T>) -> Option<T>
 {
     left.map(|l| abs_decimal(l))
 }
 
 #[inline(always)]
-pub fn ln_decimal(left: Decimal) -> F64
+pub fn ln_decimal<T: SqlDecimal>(left: T) -> F64
 {
-    F64::new(left.ln().to_f64().unwrap())
+    F64::new(left.to_f64().ln())
 }
 
 #[inline(always)]
-pub fn ln_decimalN(left: Option<Decimal>) -> Option<F64>
+pub fn ln_decimalN<T: SqlDecimal>(left: Option<T>) -> Option<F64>
 {
     left.map(|l| ln_decimal(l))
 }
 
 #[inline(always)]
-pub fn log10_decimal(left: Decimal) -> F64
+pub fn log10_decimal<T: SqlDecimal>(left: T) -> F64
 {
-    F64::new(left.log10().to_f64().unwrap())
+    F64::new(left.to_f64().log10())
 }
 
 #[inline(always)]
-pub fn log10_decimalN(left: Option<Decimal>) -> Option<F64>
+pub fn log10_decimalN<T: SqlDecimal>(left: Option<T>) -> Option<F64>
 {
     left.map(|l| log10_decimal(l))
 }
@@ -695,68 +696,66 @@ pub fn times_ShortIntervalN_i64N(left: Option<ShortInterval>, right: Option<i64>
 /***** decimals ******/
 
 #[inline(always)]
-pub fn round_decimal<T>(left: Decimal, right: T) -> Decimal
+pub fn round_decimal<D, T>(left: D, right: T) -> D
 where
-    u32: TryFrom<T>,
-    <u32 as TryFrom<T>>::Error: Debug,
+    D: SqlDecimal,
+    i32: TryFrom<T>,
+    <i32 as TryFrom<T>>::Error: Debug,
 {
-    left.round_dp(u32::try_from(right).unwrap())
+    left.round_digits(i32::try_from(right).unwrap())
 }
 
 #[inline(always)]
-pub fn round_decimalN<T>(left: Option<Decimal>, right: T) -> Option<Decimal>
+pub fn round_decimalN<D, T>(left: Option<D>, right: T) -> Option<D>
 where
-    u32: TryFrom<T>,
-    <u32 as TryFrom<T>>::Error: Debug,
+    D: SqlDecimal,
+    i32: TryFrom<T>,
+    <i32 as TryFrom<T>>::Error: Debug,
 {
     left.map(|x| round_decimal(x, right))
 }
 
 #[inline(always)]
-pub fn times_decimal_decimal(left: Decimal, right: Decimal) -> Decimal
+pub fn times_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> T
 {
     left * right
 }
 
 #[inline(always)]
-pub fn times_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<Decimal>
+pub fn times_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<T>
 {
     match left {
         Some(l) => Some(l * right),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn times_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<Decimal>
+pub fn times_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<T>
 {
     match right {
         Some(r) => Some(left * r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn times_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<Decimal>
+pub fn times_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<T>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l * r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn div_decimal_decimal(left: Decimal, right: Decimal) -> Option<Decimal>
+pub fn div_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> Option<T>
 {
-    if right.is_zero() {
-        None
-    } else {
-        Some(left/right)
-    }
+    left.checked_div(right)
 }
 
 #[inline(always)]
-pub fn div_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<Decimal>
+pub fn div_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<T>
 {
     match left {
         None => None,
@@ -765,130 +764,130 @@ pub fn div_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<Dec
 }
 
 #[inline(always)]
-pub fn div_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<Decimal>
+pub fn div_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<T>
 {
     match right {
         Some(r) => div_decimal_decimal(left, r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn div_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<Decimal>
+pub fn div_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<T>
 {
     match (left, right) {
         (Some(l), Some(r)) => div_decimal_decimal(l, r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn plus_decimal_decimal(left: Decimal, right: Decimal) -> Decimal
+pub fn plus_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> T
 {
     left + right
 }
 
 #[inline(always)]
-pub fn plus_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<Decimal>
+pub fn plus_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<T>
 {
     match left {
         Some(l) => Some(l + right),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn plus_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<Decimal>
+pub fn plus_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<T>
 {
     match right {
         Some(r) => Some(left + r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn plus_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<Decimal>
+pub fn plus_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<T>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l + r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn minus_decimal_decimal(left: Decimal, right: Decimal) -> Decimal
+pub fn minus_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> T
 {
     left - right
 }
 
 #[inline(always)]
-pub fn minus_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<Decimal>
+pub fn minus_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<T>
 {
     match left {
         Some(l) => Some(l - right),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn minus_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<Decimal>
+pub fn minus_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<T>
 {
     match right {
         Some(r) => Some(left - r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn minus_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<Decimal>
+pub fn minus_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<T>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l - r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn mod_decimal_decimal(left: Decimal, right: Decimal) -> Decimal
+pub fn mod_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> T
 {
     left % right
 }
 
 #[inline(always)]
-pub fn mod_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<Decimal>
+pub fn mod_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<T>
 {
     match left {
         Some(l) => Some(l % right),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn mod_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<Decimal>
+pub fn mod_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<T>
 {
     match right {
         Some(r) => Some(left % r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn mod_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<Decimal>
+pub fn mod_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<T>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l % r),
-        _ => None::<Decimal>,
+        _ => None::<T>,
     }
 }
 
 #[inline(always)]
-pub fn lt_decimal_decimal(left: Decimal, right: Decimal) -> bool
+pub fn lt_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> bool
 {
     left < right
 }
 
 #[inline(always)]
-pub fn lt_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool>
+pub fn lt_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<bool>
 {
     match left {
         Some(l) => Some(l < right),
@@ -897,7 +896,7 @@ pub fn lt_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool
 }
 
 #[inline(always)]
-pub fn lt_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool>
+pub fn lt_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<bool>
 {
     match right {
         Some(r) => Some(left < r),
@@ -906,7 +905,7 @@ pub fn lt_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool
 }
 
 #[inline(always)]
-pub fn lt_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<bool>
+pub fn lt_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<bool>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l < r),
@@ -915,13 +914,13 @@ pub fn lt_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Op
 }
 
 #[inline(always)]
-pub fn eq_decimal_decimal(left: Decimal, right: Decimal) -> bool
+pub fn eq_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> bool
 {
     left == right
 }
 
 #[inline(always)]
-pub fn eq_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool>
+pub fn eq_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<bool>
 {
     match left {
         Some(l) => Some(l == right),
@@ -930,7 +929,7 @@ pub fn eq_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool
 }
 
 #[inline(always)]
-pub fn eq_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool>
+pub fn eq_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<bool>
 {
     match right {
         Some(r) => Some(left == r),
@@ -939,7 +938,7 @@ pub fn eq_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool
 }
 
 #[inline(always)]
-pub fn eq_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<bool>
+pub fn eq_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<bool>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l == r),
@@ -948,13 +947,13 @@ pub fn eq_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Op
 }
 
 #[inline(always)]
-pub fn gt_decimal_decimal(left: Decimal, right: Decimal) -> bool
+pub fn gt_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> bool
 {
     left > right
 }
 
 #[inline(always)]
-pub fn gt_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool>
+pub fn gt_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<bool>
 {
     match left {
         Some(l) => Some(l > right),
@@ -963,7 +962,7 @@ pub fn gt_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool
 }
 
 #[inline(always)]
-pub fn gt_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool>
+pub fn gt_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<bool>
 {
     match right {
         Some(r) => Some(left > r),
@@ -972,7 +971,7 @@ pub fn gt_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool
 }
 
 #[inline(always)]
-pub fn gt_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<bool>
+pub fn gt_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<bool>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l > r),
@@ -981,13 +980,13 @@ pub fn gt_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Op
 }
 
 #[inline(always)]
-pub fn gte_decimal_decimal(left: Decimal, right: Decimal) -> bool
+pub fn gte_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> bool
 {
     left >= right
 }
 
 #[inline(always)]
-pub fn gte_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool>
+pub fn gte_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<bool>
 {
     match left {
         Some(l) => Some(l >= right),
@@ -996,7 +995,7 @@ pub fn gte_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<boo
 }
 
 #[inline(always)]
-pub fn gte_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool>
+pub fn gte_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<bool>
 {
     match right {
         Some(r) => Some(left >= r),
@@ -1005,7 +1004,7 @@ pub fn gte_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<boo
 }
 
 #[inline(always)]
-pub fn gte_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<bool>
+pub fn gte_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<bool>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l >= r),
@@ -1014,13 +1013,13 @@ pub fn gte_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> O
 }
 
 #[inline(always)]
-pub fn neq_decimal_decimal(left: Decimal, right: Decimal) -> bool
+pub fn neq_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> bool
 {
     left != right
 }
 
 #[inline(always)]
-pub fn neq_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool>
+pub fn neq_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<bool>
 {
     match left {
         Some(l) => Some(l != right),
@@ -1029,7 +1028,7 @@ pub fn neq_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<boo
 }
 
 #[inline(always)]
-pub fn neq_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool>
+pub fn neq_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<bool>
 {
     match right {
         Some(r) => Some(left != r),
@@ -1038,7 +1037,7 @@ pub fn neq_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<boo
 }
 
 #[inline(always)]
-pub fn neq_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<bool>
+pub fn neq_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<bool>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l != r),
@@ -1047,13 +1046,13 @@ pub fn neq_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> O
 }
 
 #[inline(always)]
-pub fn lte_decimal_decimal(left: Decimal, right: Decimal) -> bool
+pub fn lte_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> bool
 {
     left <= right
 }
 
 #[inline(always)]
-pub fn lte_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<bool>
+pub fn lte_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<bool>
 {
     match left {
         Some(l) => Some(l <= right),
@@ -1062,7 +1061,7 @@ pub fn lte_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<boo
 }
 
 #[inline(always)]
-pub fn lte_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<bool>
+pub fn lte_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<bool>
 {
     match right {
         Some(r) => Some(left <= r),
@@ -1071,7 +1070,7 @@ pub fn lte_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<boo
 }
 
 #[inline(always)]
-pub fn lte_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<bool>
+pub fn lte_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<bool>
 {
     match (left, right) {
         (Some(l), Some(r)) => Some(l <= r),
@@ -1135,27 +1134,27 @@ pub fn power_d_d(left: F64, right: F64) -> F64
     F64::new(left.into_inner().powf(right.into_inner()))
 }
 
-pub fn power_decimal_decimal(left: Decimal, right: Decimal) -> F64
+pub fn power_decimal_decimal<T: SqlDecimal>(left: T, right: T) -> F64
 {
-    if right == Decimal::new(5, 1) {
+    if right.scaled() * 2 == pow10(T::SCALE) {
         // special case for sqrt, has higher precision than pow
-        F64::from(left.sqrt().unwrap().to_f64().unwrap())
+        F64::from(left.to_f64().sqrt())
     } else {
-        F64::from(left.powd(right).to_f64().unwrap())
+        F64::from(left.to_f64().powf(right.to_f64()))
     }
 }
 
-pub fn power_decimalN_decimal(left: Option<Decimal>, right: Decimal) -> Option<F64>
+pub fn power_decimalN_decimal<T: SqlDecimal>(left: Option<T>, right: T) -> Option<F64>
 {
     left.map(|l| power_decimal_decimal(l, right))
 }
 
-pub fn power_decimal_decimalN(left: Decimal, right: Option<Decimal>) -> Option<F64>
+pub fn power_decimal_decimalN<T: SqlDecimal>(left: T, right: Option<T>) -> Option<F64>
 {
     right.map(|r| power_decimal_decimal(left, r))
 }
 
-pub fn power_decimalN_decimalN(left: Option<Decimal>, right: Option<Decimal>) -> Option<F64>
+pub fn power_decimalN_decimalN<T: SqlDecimal>(left: Option<T>, right: Option<T>) -> Option<F64>
 {
     match (left, right) {
         (_, None) => None,
@@ -5,7 +5,7 @@ use std::{
     ops::Add
 };
 use size_of::SizeOf;
-use chrono::{DateTime, Datelike, NaiveDateTime, TimeZone, Timelike, Utc};
+use chrono::{DateTime, Datelike, NaiveDate, NaiveDateTime, TimeZone, Timelike, Utc};
 use serde::{de::Error as _, ser::Error as _, Deserialize, Deserializer, Serialize, Serializer};
 use crate::interval::{
     ShortInterval,
@@ -556,10 +556,12 @@ impl<'de> Deserialize<'de> for Date {
         D: Deserializer<'de>,
     {
         let str: &'de str = Deserialize::deserialize(deserializer)?;
-        let timestamp = NaiveDateTime::parse_from_str(&str, "%Y-%m-%d").map_err(|e| {
+        // A NaiveDateTime cannot be parsed from a string without a time
+        let date = NaiveDate::parse_from_str(&str, "%Y-%m-%d").map_err(|e| {
             D::Error::custom(format!("invalid date string '{str}': {e}"))
         })?;
-        Ok(Self::new((timestamp.timestamp() / 86400) as i32))
+        let epoch = NaiveDate::from_ymd_opt(1970, 1, 1).unwrap();
+        Ok(Self::new(date.signed_duration_since(epoch).num_days() as i32))
     }
 }
 
@@ -6,7 +6,7 @@
 
 use dbsp::algebra::{F32, F64};
 use sqllib::casts::*;
-use rust_decimal::Decimal;
+use sqllib::fixed::{Fixed64, Fixed128};
 
 #[derive(Debug)]
 pub enum SqlValue {
@@ -16,7 +16,8 @@ pub enum SqlValue {
     Flt(f32),
     Dbl(f64),
     Bool(bool),
-    Decimal(Decimal),
+    /// Decimals are only displayed, so they are stored already formatted.
+    Decimal(String),
 
     OptInt(Option<i32>),
     OptLong(Option<i64>),
@@ -24,7 +25,7 @@ pub enum SqlValue {
     OptFlt(Option<f32>),
     OptDbl(Option<f64>),
     OptBool(Option<bool>),
-    OptDecimal(Option<Decimal>),
+    OptDecimal(Option<String>),
 }
 
 impl From<i32> for SqlValue {
@@ -75,9 +76,15 @@ impl From<String> for SqlValue {
     }
 }
 
-impl From<Decimal> for SqlValue {
-    fn from(value: Decimal) -> Self {
-        SqlValue::Decimal(value)
+impl<const S: u32> From<Fixed64<S>> for SqlValue {
+    fn from(value: Fixed64<S>) -> Self {
+        SqlValue::Decimal(value.to_string())
+    }
+}
+
+impl<const S: u32> From<Fixed128<S>> for SqlValue {
+    fn from(value: Fixed128<S>) -> Self {
+        SqlValue::Decimal(value.to_string())
     }
 }
 
@@ -135,9 +142,15 @@ impl From<Option<String>> for SqlValue {
     }
 }
 
-impl From<Option<Decimal>> for SqlValue {
-    fn from(value: Option<Decimal>) -> Self {
-        SqlValue::OptDecimal(value)
+impl<const S: u32> From<Option<Fixed64<S>>> for SqlValue {
+    fn from(value: Option<Fixed64<S>>) -> Self {
+        SqlValue::OptDecimal(value.map(|x| x.to_string()))
+    }
+}
+
+impl<const S: u32> From<Option<Fixed128<S>>> for SqlValue {
+    fn from(value: Option<Fixed128<S>>) -> Self {
+        SqlValue::OptDecimal(value.map(|x| x.to_string()))
     }
 }
 